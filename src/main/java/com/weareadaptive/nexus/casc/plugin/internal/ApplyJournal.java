@@ -0,0 +1,204 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+import org.sonatype.goodies.common.ComponentSupport;
+import org.sonatype.nexus.common.app.ApplicationDirectories;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Append-only journal of the entity operations completed by a casc run.
+ * <p>
+ * Every completed operation is appended to {@code <data-dir>/casc/apply-journal.log} together with the digest of
+ * the applied configuration. If a run gets interrupted, e.g. because Nexus is killed, the next run with the same
+ * digest resumes from the last checkpoint and skips the operations which were already applied. A run with another
+ * digest starts a new journal.
+ * <p>
+ * Lines are flushed after every operation, so the journal survives the process being killed. Set the env var
+ * {@code NEXUS_CASC_JOURNAL} to {@code false} to disable it.
+ */
+@Named
+@Singleton
+public class ApplyJournal extends ComponentSupport {
+    public static final String ENV_JOURNAL = "NEXUS_CASC_JOURNAL";
+
+    static final String FILE_NAME = "apply-journal.log";
+
+    private static final String BEGIN = "BEGIN";
+    private static final String RESUME = "RESUME";
+    private static final String DONE = "DONE";
+    private static final String END = "END";
+
+    private final ApplicationDirectories applicationDirectories;
+
+    private final Set<String> completed = new HashSet<>();
+    private String digest;
+    private BufferedWriter writer;
+    private boolean resuming;
+
+    @Inject
+    public ApplyJournal(final ApplicationDirectories applicationDirectories) {
+        this.applicationDirectories = applicationDirectories;
+    }
+
+    /**
+     * Calculate the digest identifying a configuration.
+     */
+    public static String digest(String... parts) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            for (String part : parts) {
+                md.update(part.getBytes(StandardCharsets.UTF_8));
+                md.update((byte) 0);
+            }
+            StringBuilder sb = new StringBuilder();
+            for (byte b : md.digest()) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Open the journal for a run applying the configuration with the given digest.
+     *
+     * @return true if an interrupted run with the same digest is resumed
+     */
+    public synchronized boolean begin(String digest) {
+        close();
+        this.digest = digest;
+        this.completed.clear();
+        this.resuming = false;
+
+        if ("false".equalsIgnoreCase(System.getenv(ENV_JOURNAL))) {
+            log.debug("Apply journal is disabled");
+            return false;
+        }
+
+        Path file = applicationDirectories.getWorkDirectory("casc").toPath().resolve(FILE_NAME);
+        try {
+            if (Files.exists(file)) {
+                resuming = readInterruptedRun(Files.readAllLines(file, StandardCharsets.UTF_8));
+            }
+
+            if (resuming) {
+                writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                log.info("Resuming interrupted casc run, {} operations were already applied", completed.size());
+                append(RESUME, Long.toString(System.currentTimeMillis()));
+            } else {
+                // Older runs are of no use anymore, start the journal from scratch
+                writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                append(BEGIN, Long.toString(System.currentTimeMillis()));
+            }
+        } catch (IOException e) {
+            log.warn("Could not open apply journal {}, continuing without it", file, e);
+            completed.clear();
+            resuming = false;
+            writer = null;
+        }
+
+        return resuming;
+    }
+
+    private boolean readInterruptedRun(List<String> lines) {
+        int lastBegin = -1;
+        for (int i = 0; i < lines.size(); ++i) {
+            if (lines.get(i).startsWith(BEGIN + " ")) {
+                lastBegin = i;
+            }
+        }
+        if (lastBegin < 0) {
+            return false;
+        }
+
+        Set<String> done = new HashSet<>();
+        for (int i = lastBegin; i < lines.size(); ++i) {
+            String[] parts = lines.get(i).split(" ", 3);
+            if (parts.length < 2 || !digest.equals(parts[1])) {
+                return false;
+            }
+            if (END.equals(parts[0])) {
+                return false;
+            }
+            if (DONE.equals(parts[0]) && parts.length == 3) {
+                done.add(parts[2]);
+            }
+        }
+
+        completed.addAll(done);
+        return true;
+    }
+
+    public synchronized boolean isResuming() {
+        return resuming;
+    }
+
+    /**
+     * @return true if the operation was completed by an interrupted run of the same configuration
+     */
+    public synchronized boolean isDone(String operation) {
+        return completed.contains(operation);
+    }
+
+    /**
+     * Record the operation as completed.
+     */
+    public synchronized void done(String operation) {
+        completed.add(operation);
+        append(DONE, operation);
+    }
+
+    /**
+     * Mark the run as completed, the next run will start from scratch.
+     */
+    public synchronized void complete() {
+        append(END, Long.toString(System.currentTimeMillis()));
+        close();
+        completed.clear();
+        resuming = false;
+    }
+
+    /**
+     * Close the journal without completing the run, e.g. because it failed.
+     */
+    public synchronized void close() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                log.warn("Could not close apply journal", e);
+            }
+            writer = null;
+        }
+    }
+
+    private void append(String type, String value) {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.write(type + " " + digest + " " + value);
+            writer.newLine();
+            writer.flush();
+        } catch (IOException e) {
+            log.warn("Could not write to apply journal, continuing without it", e);
+            close();
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+import com.weareadaptive.nexus.casc.plugin.internal.config.ConfigApply;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Limits a casc run to selected sections of the configuration and to entities matching a selector.
+ * <p>
+ * The selection is read from the {@code apply} block of the YAML file, each list can be overridden with a comma
+ * separated env var. An empty selection applies everything, just like a run without an {@code apply} block.
+ */
+public class ApplySelection {
+    public static final String ENV_SECTIONS = "NEXUS_CASC_SECTIONS";
+    public static final String ENV_REPOSITORIES = "NEXUS_CASC_REPOSITORIES";
+    public static final String ENV_USER_SOURCES = "NEXUS_CASC_USER_SOURCES";
+    public static final String ENV_CAPABILITY_TYPES = "NEXUS_CASC_CAPABILITY_TYPES";
+
+    public static final String CORE = "core";
+    public static final String REPOSITORY = "repository";
+    public static final String SECURITY = "security";
+    public static final String LDAP = "ldap";
+    public static final String CAPABILITIES = "capabilities";
+    public static final String TASKS = "tasks";
+
+    private static final Map<String, Set<String>> KNOWN_SECTIONS = new HashMap<>();
+
+    static {
+        KNOWN_SECTIONS.put(CORE, Collections.emptySet());
+        KNOWN_SECTIONS.put(REPOSITORY, new HashSet<>(Arrays.asList(
+                "blobStores", "cleanupPolicies", "contentSelectors", "routingRules", "repositories")));
+        KNOWN_SECTIONS.put(SECURITY, new HashSet<>(Arrays.asList(
+                "anonymousAccess", "realms", "privileges", "roles", "users")));
+        KNOWN_SECTIONS.put(LDAP, Collections.emptySet());
+        KNOWN_SECTIONS.put(CAPABILITIES, Collections.emptySet());
+        KNOWN_SECTIONS.put(TASKS, Collections.emptySet());
+    }
+
+    private final Set<String> sections;
+    private final List<String> repositoryGlobs;
+    private final List<Pattern> repositoryPatterns;
+    private final Set<String> userSources;
+    private final Set<String> capabilityTypes;
+
+    private ApplySelection(
+            Set<String> sections,
+            List<String> repositoryGlobs,
+            Set<String> userSources,
+            Set<String> capabilityTypes
+    ) {
+        this.sections = sections;
+        this.repositoryGlobs = repositoryGlobs;
+        this.repositoryPatterns = new ArrayList<>(repositoryGlobs.size());
+        for (String glob : repositoryGlobs) {
+            repositoryPatterns.add(globToPattern(glob));
+        }
+        this.userSources = userSources;
+        this.capabilityTypes = capabilityTypes;
+    }
+
+    /**
+     * Build the selection from the {@code apply} block, env vars take precedence over the YAML values.
+     *
+     * @param apply The apply config, may be null
+     * @param env   Lookup for env vars, usually {@code System::getenv}
+     * @throws IllegalArgumentException if an unknown section is selected
+     */
+    public static ApplySelection from(ConfigApply apply, Function<String, String> env) {
+        List<String> sections = pick(env.apply(ENV_SECTIONS), apply == null ? null : apply.getSections());
+        List<String> repositories = pick(env.apply(ENV_REPOSITORIES), apply == null ? null : apply.getRepositories());
+        List<String> userSources = pick(env.apply(ENV_USER_SOURCES), apply == null ? null : apply.getUserSources());
+        List<String> capabilityTypes = pick(env.apply(ENV_CAPABILITY_TYPES), apply == null ? null : apply.getCapabilityTypes());
+
+        for (String section : sections) {
+            String[] parts = section.split("\\.", 2);
+            Set<String> knownParts = KNOWN_SECTIONS.get(parts[0]);
+            if (knownParts == null || (parts.length > 1 && !knownParts.contains(parts[1]))) {
+                throw new IllegalArgumentException("Unknown section " + section + ", expected one of "
+                        + KNOWN_SECTIONS.keySet() + " optionally followed by .<part>");
+            }
+        }
+
+        return new ApplySelection(
+                new LinkedHashSet<>(sections),
+                repositories,
+                new LinkedHashSet<>(userSources),
+                new LinkedHashSet<>(capabilityTypes)
+        );
+    }
+
+    public static ApplySelection everything() {
+        return new ApplySelection(
+                Collections.emptySet(),
+                Collections.emptyList(),
+                Collections.emptySet(),
+                Collections.emptySet()
+        );
+    }
+
+    private static List<String> pick(String envValue, List<String> yamlValue) {
+        List<String> values = new ArrayList<>();
+        if (envValue != null && !envValue.trim().isEmpty()) {
+            values.addAll(Arrays.asList(envValue.split(",")));
+        } else if (yamlValue != null) {
+            values.addAll(yamlValue);
+        }
+
+        List<String> trimmed = new ArrayList<>(values.size());
+        for (String value : values) {
+            if (value != null && !value.trim().isEmpty()) {
+                trimmed.add(value.trim());
+            }
+        }
+        return trimmed;
+    }
+
+    private static Pattern globToPattern(String glob) {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (char c : glob.toCharArray()) {
+            if (c == '*' || c == '?') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(c == '*' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    public boolean isEverything() {
+        return sections.isEmpty() && repositoryGlobs.isEmpty() && userSources.isEmpty() && capabilityTypes.isEmpty();
+    }
+
+    /**
+     * @return true if the top level section or any of its parts is selected
+     */
+    public boolean includesSection(String section) {
+        if (sections.isEmpty() || sections.contains(section)) {
+            return true;
+        }
+        for (String selected : sections) {
+            if (selected.startsWith(section + ".")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the given part of a section, e.g. {@code repository.blobStores}, is selected
+     */
+    public boolean includesSection(String section, String part) {
+        return sections.isEmpty() || sections.contains(section) || sections.contains(section + "." + part);
+    }
+
+    public boolean hasRepositorySelector() {
+        return !repositoryPatterns.isEmpty();
+    }
+
+    public boolean includesRepository(String name) {
+        if (repositoryPatterns.isEmpty()) {
+            return true;
+        }
+        for (Pattern pattern : repositoryPatterns) {
+            if (pattern.matcher(name).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * If every repository selector is a plain name, the selected repositories can be looked up one by one
+     * instead of browsing all of them.
+     *
+     * @return the selected repository names or empty if a glob is used or no selector is set
+     */
+    public Optional<Set<String>> literalRepositoryNames() {
+        if (repositoryGlobs.isEmpty()) {
+            return Optional.empty();
+        }
+        for (String glob : repositoryGlobs) {
+            if (glob.indexOf('*') >= 0 || glob.indexOf('?') >= 0) {
+                return Optional.empty();
+            }
+        }
+        return Optional.of(new LinkedHashSet<>(repositoryGlobs));
+    }
+
+    public boolean hasUserSourceSelector() {
+        return !userSources.isEmpty();
+    }
+
+    public boolean includesUserSource(String source) {
+        return userSources.isEmpty() || userSources.contains(source);
+    }
+
+    public Set<String> getUserSources() {
+        return Collections.unmodifiableSet(userSources);
+    }
+
+    public boolean includesCapabilityType(String type) {
+        return capabilityTypes.isEmpty() || capabilityTypes.contains(type);
+    }
+
+    @Override
+    public String toString() {
+        return "sections=" + (sections.isEmpty() ? "*" : sections)
+                + ", repositories=" + (repositoryGlobs.isEmpty() ? "*" : repositoryGlobs)
+                + ", userSources=" + (userSources.isEmpty() ? "*" : userSources)
+                + ", capabilityTypes=" + (capabilityTypes.isEmpty() ? "*" : capabilityTypes);
+    }
+}
@@ -0,0 +1,69 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+import com.weareadaptive.nexus.casc.plugin.internal.config.ConfigBlobStore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Blob store groups spread the blobs of their repositories over their member blob stores, following a fill policy.
+ * <p>
+ * A group is a blob store of type {@value #TYPE} with the attributes {@code group.members}, in order, and
+ * {@code group.fillPolicy}. Its members must exist before it is created and it must be deleted before them, so groups
+ * are created last and pruned first. Groups can not be nested and a blob store is a member of one group at most.
+ */
+final class BlobStoreGroups {
+    static final String TYPE = "Group";
+    static final String CONFIG_KEY = "group";
+    static final String MEMBERS_KEY = "members";
+    static final String FILL_POLICY_KEY = "fillPolicy";
+
+    static final String ROUND_ROBIN = "roundRobin";
+    static final String WRITE_TO_FIRST = "writeToFirst";
+    static final List<String> FILL_POLICIES = Arrays.asList(ROUND_ROBIN, WRITE_TO_FIRST);
+
+    private BlobStoreGroups() {
+    }
+
+    static boolean isGroup(ConfigBlobStore blobStore) {
+        return TYPE.equals(blobStore.getType());
+    }
+
+    /**
+     * @return the members of a group in order, empty if there are none
+     */
+    static List<String> members(Map<String, Map<String, Object>> attributes) {
+        Map<String, Object> group = ConfigValidator.facet(attributes, CONFIG_KEY);
+        Object members = group == null ? null : group.get(MEMBERS_KEY);
+        if (!(members instanceof Collection)) {
+            return Collections.emptyList();
+        }
+        return ((Collection<?>) members).stream().map(String::valueOf).collect(toList());
+    }
+
+    /**
+     * @return the blob stores with the groups after the other blob stores
+     */
+    static List<ConfigBlobStore> inCreationOrder(List<ConfigBlobStore> blobStores) {
+        List<ConfigBlobStore> ordered = new ArrayList<>(blobStores);
+        ordered.sort(Comparator.comparing(BlobStoreGroups::isGroup));
+        return ordered;
+    }
+
+    /**
+     * @return the names of the blob stores to prune with the groups first
+     */
+    static List<String> inPruneOrder(List<String> names, Predicate<String> isGroup) {
+        List<String> ordered = new ArrayList<>(names);
+        ordered.sort(Comparator.comparing(name -> !isGroup.test(name)));
+        return ordered;
+    }
+}
@@ -0,0 +1,48 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+import org.apache.shiro.authz.annotation.RequiresAuthentication;
+import org.apache.shiro.authz.annotation.RequiresPermissions;
+import org.sonatype.goodies.common.ComponentSupport;
+import org.sonatype.nexus.rest.Resource;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+
+/**
+ * Exposes the progress of the casc run at {@code /service/rest/v1/casc/status}
+ */
+@Named
+@Singleton
+@Path(CascStatusResource.RESOURCE_URI)
+@Produces(APPLICATION_JSON)
+public class CascStatusResource extends ComponentSupport implements Resource {
+    public static final String RESOURCE_URI = "/v1/casc/status";
+
+    private final ReconcileStatus status;
+    private final DeletionQueue deletionQueue;
+    private final ProxyWarmup proxyWarmup;
+
+    @Inject
+    public CascStatusResource(final ReconcileStatus status, final DeletionQueue deletionQueue,
+                              final ProxyWarmup proxyWarmup) {
+        this.status = status;
+        this.deletionQueue = deletionQueue;
+        this.proxyWarmup = proxyWarmup;
+    }
+
+    @GET
+    @RequiresAuthentication
+    @RequiresPermissions("nexus:settings:read")
+    public ReconcileStatusXO getStatus() {
+        ReconcileStatusXO xo = status.snapshot();
+        xo.setDeletions(deletionQueue.progress());
+        xo.setWarmup(proxyWarmup.progress());
+        return xo;
+    }
+}
@@ -0,0 +1,694 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+import com.weareadaptive.nexus.casc.plugin.internal.config.Config;
+import com.weareadaptive.nexus.casc.plugin.internal.config.ConfigBlobStore;
+import com.weareadaptive.nexus.casc.plugin.internal.config.ConfigCapability;
+import com.weareadaptive.nexus.casc.plugin.internal.config.ConfigCleanupPolicy;
+import com.weareadaptive.nexus.casc.plugin.internal.config.ConfigContentSelector;
+import com.weareadaptive.nexus.casc.plugin.internal.config.ConfigContentSelectorLimits;
+import com.weareadaptive.nexus.casc.plugin.internal.config.ConfigLdap;
+import com.weareadaptive.nexus.casc.plugin.internal.config.ConfigLdapMapping;
+import com.weareadaptive.nexus.casc.plugin.internal.config.ConfigLdapServer;
+import com.weareadaptive.nexus.casc.plugin.internal.config.ConfigRepository;
+import com.weareadaptive.nexus.casc.plugin.internal.config.ConfigRepositoryEntry;
+import com.weareadaptive.nexus.casc.plugin.internal.config.ConfigRoutingRule;
+import com.weareadaptive.nexus.casc.plugin.internal.config.ConfigSecurity;
+import com.weareadaptive.nexus.casc.plugin.internal.config.ConfigSecurityPrivilege;
+import com.weareadaptive.nexus.casc.plugin.internal.config.ConfigSecurityRole;
+import com.weareadaptive.nexus.casc.plugin.internal.config.ConfigSecurityUser;
+import com.weareadaptive.nexus.casc.plugin.internal.config.ConfigSecurityUserRole;
+import com.weareadaptive.nexus.casc.plugin.internal.config.ConfigTask;
+import com.weareadaptive.nexus.casc.plugin.internal.config.ConfigWarmup;
+import org.sonatype.goodies.common.ComponentSupport;
+import org.sonatype.nexus.blobstore.api.BlobStore;
+import org.sonatype.nexus.blobstore.api.BlobStoreConfiguration;
+import org.sonatype.nexus.blobstore.file.FileBlobStore;
+import org.sonatype.nexus.repository.Repository;
+import org.sonatype.nexus.repository.routing.RoutingMode;
+import org.sonatype.nexus.security.user.UserManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+
+/**
+ * Validates a configuration before anything of it is applied, so an invalid configuration is rejected as a whole
+ * instead of being found out entity by entity halfway through a run.
+ * <p>
+ * {@link #validate(Config)} checks the configuration on its own: required fields, duplicate names, enum values, the
+ * attributes accepted by the installed repository recipes ({@link RecipeSchemas}) and references to entities the
+ * configuration disables. The sections are checked in parallel and every error is reported. {@link #validateExisting(Config, ApplySelection, LiveStateSnapshot)}
+ * checks the configuration against the existing entities: changes Nexus does not support and references to entities
+ * which are neither configured nor existing, or are about to be pruned.
+ */
+public class ConfigValidator extends ComponentSupport {
+    static final Set<String> PRIVILEGE_TYPES = new HashSet<>(Arrays.asList(
+            "application", "repository-admin", "repository-content-selector", "repository-view", "script", "wildcard"));
+
+    /**
+     * The cleanup policy Nexus shows for repositories without one
+     */
+    static final String NO_CLEANUP_POLICY = "None";
+
+    private final RoutingRuleMatchers routingRuleMatchers;
+    private final HttpClientReconciler httpClientReconciler;
+    private final RecipeSchemas recipeSchemas;
+    private final ContentSelectorReconciler contentSelectorReconciler;
+
+    public ConfigValidator(RoutingRuleMatchers routingRuleMatchers, HttpClientReconciler httpClientReconciler,
+                           RecipeSchemas recipeSchemas, ContentSelectorReconciler contentSelectorReconciler) {
+        this.routingRuleMatchers = routingRuleMatchers;
+        this.httpClientReconciler = httpClientReconciler;
+        this.recipeSchemas = recipeSchemas;
+        this.contentSelectorReconciler = contentSelectorReconciler;
+    }
+
+    /**
+     * @return every error of the configuration, empty if it is valid
+     */
+    public List<String> validate(Config config) {
+        List<Supplier<List<String>>> checks = new ArrayList<>();
+        ConfigRepository repository = config.getRepository();
+        if (repository != null) {
+            checks.add(() -> checkBlobStores(repository.getBlobStores()));
+            checks.add(() -> checkCleanupPolicies(repository.getCleanupPolicies()));
+            checks.add(() -> checkContentSelectors(repository));
+            checks.add(() -> checkRoutingRules(repository.getRoutingRules()));
+            checks.add(() -> checkRepositories(repository));
+        }
+        ConfigSecurity security = config.getSecurity();
+        if (security != null) {
+            checks.add(() -> checkPrivileges(security.getPrivileges()));
+            checks.add(() -> checkRoles(security));
+            checks.add(() -> checkUsers(security));
+        }
+        if (config.getLdap() != null) {
+            checks.add(() -> checkLdap(config.getLdap()));
+        }
+        if (config.getCapabilities() != null) {
+            checks.add(() -> checkCapabilities(config.getCapabilities()));
+        }
+        if (config.getTasks() != null) {
+            checks.add(() -> checkTasks(config.getTasks()));
+        }
+
+        return checks.parallelStream()
+                .flatMap(check -> check.get().stream())
+                .collect(toList());
+    }
+
+    /**
+     * @return every error of the selected parts of the configuration with respect to the existing entities, empty if
+     * there is none
+     */
+    public List<String> validateExisting(Config config, ApplySelection selection, LiveStateSnapshot snapshot) {
+        List<String> errors = new ArrayList<>();
+        ConfigRepository repository = config.getRepository();
+        if (repository == null || !selection.includesSection(ApplySelection.REPOSITORY)) {
+            return errors;
+        }
+
+        if (repository.getBlobStores() != null && selection.includesSection(ApplySelection.REPOSITORY, "blobStores")) {
+            Set<String> members = resolvable(repository.getBlobStores(), ConfigBlobStore::getName,
+                    repository.getPruneBlobStores(), () -> snapshot.blobStores().keySet());
+            for (ConfigBlobStore configBlobStore : repository.getBlobStores()) {
+                if (BlobStoreGroups.isGroup(configBlobStore)) {
+                    for (String member : BlobStoreGroups.members(configBlobStore.getAttributes())) {
+                        if (!members.contains(member)) {
+                            errors.add("repository.blobStores[" + configBlobStore.getName() + "]: member " + member
+                                    + " does not exist");
+                        }
+                    }
+                }
+
+                BlobStore existing = snapshot.blobStores().get(configBlobStore.getName());
+                if (existing == null) {
+                    continue;
+                }
+                BlobStoreConfiguration existingConfig = existing.getBlobStoreConfiguration();
+                String path = "repository.blobStores[" + configBlobStore.getName() + "]";
+                if (!Objects.equals(configBlobStore.getType(), existingConfig.getType())) {
+                    errors.add(path + ": can not change type " + existingConfig.getType() + " to " + configBlobStore.getType());
+                } else if (FileBlobStore.TYPE.equals(configBlobStore.getType())
+                        && !Objects.equals(filePath(configBlobStore.getAttributes()), filePath(existingConfig.getAttributes()))) {
+                    errors.add(path + ": can not change attributes.file.path " + filePath(existingConfig.getAttributes())
+                            + " to " + filePath(configBlobStore.getAttributes()));
+                }
+            }
+        }
+
+        if (repository.getRepositories() == null || !selection.includesSection(ApplySelection.REPOSITORY, "repositories")) {
+            return errors;
+        }
+        List<ConfigRepositoryEntry> selected = repository.getRepositories().stream()
+                .filter(repoConfig -> selection.includesRepository(repoConfig.getName()))
+                .collect(toList());
+        Map<String, Repository> existingRepositories = snapshot.repositories();
+        for (ConfigRepositoryEntry repoConfig : selected) {
+            Repository existing = existingRepositories.get(repoConfig.getName());
+            if (existing != null && !existing.getConfiguration().getRecipeName().equals(repoConfig.getRecipeName())) {
+                errors.add("repository.repositories[" + repoConfig.getName() + "]: can not change recipeName "
+                        + existing.getConfiguration().getRecipeName() + " to " + repoConfig.getRecipeName());
+            }
+        }
+
+        Set<String> blobStores = resolvable(repository.getBlobStores(), ConfigBlobStore::getName,
+                repository.getPruneBlobStores(), () -> snapshot.blobStores().keySet());
+        // Only loaded if referenced
+        Set<String> cleanupPolicies = selected.stream().anyMatch(repoConfig -> !values(attribute(repoConfig.getAttributes(), "cleanup", "policyName")).isEmpty())
+                ? resolvable(repository.getCleanupPolicies(), ConfigCleanupPolicy::getName,
+                        repository.getPruneCleanupPolicies(), () -> snapshot.cleanupPolicies().keySet())
+                : Collections.emptySet();
+        // Routing rules in use are never pruned
+        Set<String> routingRules = selected.stream().anyMatch(repoConfig -> repoConfig.getRoutingRuleName() != null)
+                ? resolvable(repository.getRoutingRules(), ConfigRoutingRule::getName, false, () -> snapshot.routingRules().keySet())
+                : Collections.emptySet();
+        Set<String> repositories = resolvable(repository.getRepositories(), ConfigRepositoryEntry::getName,
+                repository.getPruneRepositories(), () -> existingRepositories.keySet());
+        // Repositories selected by name are the only ones loaded, others may exist
+        boolean allRepositoriesKnown = snapshot.hasAllRepositories()
+                || repository.getPruneRepositories() != null && repository.getPruneRepositories();
+
+        for (ConfigRepositoryEntry repoConfig : selected) {
+            String path = "repository.repositories[" + repoConfig.getName() + "]";
+            Map<String, Map<String, Object>> attributes = repoConfig.getAttributes() == null
+                    ? Collections.emptyMap() : repoConfig.getAttributes();
+            Object blobStoreName = attribute(attributes, "storage", "blobStoreName");
+            if (blobStoreName instanceof String && !blobStores.contains(blobStoreName)) {
+                errors.add(path + ": blob store " + blobStoreName + " does not exist");
+            }
+            if (repoConfig.getRoutingRuleName() != null && !routingRules.contains(repoConfig.getRoutingRuleName())) {
+                errors.add(path + ": routing rule " + repoConfig.getRoutingRuleName() + " does not exist");
+            }
+            for (Object policyName : values(attribute(attributes, "cleanup", "policyName"))) {
+                if (!NO_CLEANUP_POLICY.equals(policyName) && !cleanupPolicies.contains(String.valueOf(policyName))) {
+                    errors.add(path + ": cleanup policy " + policyName + " does not exist");
+                }
+            }
+            if (allRepositoriesKnown) {
+                for (Object member : values(attribute(attributes, "group", "memberNames"))) {
+                    if (!repositories.contains(String.valueOf(member))) {
+                        errors.add(path + ": group member " + member + " does not exist");
+                    }
+                }
+            }
+        }
+        return errors;
+    }
+
+    /**
+     * @return the names of the configured entities, plus the existing ones unless the others are pruned
+     */
+    private static <T> Set<String> resolvable(List<T> configured, Function<T, String> name, Boolean prune,
+                                              Supplier<Set<String>> existing) {
+        Set<String> names = configured == null ? new HashSet<>() : configured.stream().map(name).collect(toSet());
+        if (configured == null || prune == null || !prune) {
+            names.addAll(existing.get());
+        }
+        return names;
+    }
+
+    private List<String> checkBlobStores(List<ConfigBlobStore> blobStores) {
+        List<String> errors = new ArrayList<>();
+        if (blobStores == null) {
+            return errors;
+        }
+        Set<String> names = new HashSet<>();
+        for (int i = 0; i < blobStores.size(); ++i) {
+            ConfigBlobStore blobStore = blobStores.get(i);
+            String path = "repository.blobStores[" + (blobStore.getName() != null ? blobStore.getName() : i) + "]";
+            if (blobStore.getName() == null) {
+                errors.add(path + ": name is required");
+            } else if (!names.add(blobStore.getName())) {
+                errors.add(path + ": duplicate name");
+            }
+            if (blobStore.getType() == null) {
+                errors.add(path + ": type is required");
+            } else if (FileBlobStore.TYPE.equals(blobStore.getType()) && !(filePath(blobStore.getAttributes()) instanceof String)) {
+                errors.add(path + ": attributes.file.path must be a string");
+            } else if (BlobStoreGroups.isGroup(blobStore)) {
+                errors.addAll(checkBlobStoreGroup(path, blobStore));
+            } else if (S3BlobStoreAttributes.isS3(blobStore)) {
+                errors.addAll(S3BlobStoreAttributes.check(path, blobStore.getAttributes()));
+                S3BlobStoreAttributes.warnings(path, blobStore.getAttributes()).forEach(log::warn);
+            }
+        }
+
+        Set<String> groups = blobStores.stream().filter(BlobStoreGroups::isGroup).map(ConfigBlobStore::getName).collect(toSet());
+        Map<String, String> groupByMember = new HashMap<>();
+        for (ConfigBlobStore group : blobStores) {
+            if (!BlobStoreGroups.isGroup(group)) {
+                continue;
+            }
+            String path = "repository.blobStores[" + group.getName() + "]";
+            for (String member : BlobStoreGroups.members(group.getAttributes())) {
+                if (groups.contains(member)) {
+                    errors.add(path + ": member " + member + " is a group, groups can not be nested");
+                }
+                String otherGroup = groupByMember.putIfAbsent(member, group.getName());
+                if (otherGroup != null && !otherGroup.equals(group.getName())) {
+                    errors.add(path + ": member " + member + " is a member of group " + otherGroup + " already");
+                }
+            }
+        }
+        return errors;
+    }
+
+    private static List<String> checkBlobStoreGroup(String path, ConfigBlobStore group) {
+        List<String> errors = new ArrayList<>();
+        Object members = attribute(group.getAttributes(), BlobStoreGroups.CONFIG_KEY, BlobStoreGroups.MEMBERS_KEY);
+        if (!(members instanceof Collection) || ((Collection<?>) members).isEmpty()) {
+            errors.add(path + ": attributes.group.members must be a list of blob stores");
+        } else if (new HashSet<>((Collection<?>) members).size() < ((Collection<?>) members).size()) {
+            errors.add(path + ": attributes.group.members has duplicates: " + members);
+        }
+        Object fillPolicy = attribute(group.getAttributes(), BlobStoreGroups.CONFIG_KEY, BlobStoreGroups.FILL_POLICY_KEY);
+        if (!BlobStoreGroups.FILL_POLICIES.contains(fillPolicy)) {
+            errors.add(path + ": attributes.group.fillPolicy must be one of " + BlobStoreGroups.FILL_POLICIES + ": " + fillPolicy);
+        }
+        return errors;
+    }
+
+    private List<String> checkCleanupPolicies(List<ConfigCleanupPolicy> cleanupPolicies) {
+        List<String> errors = new ArrayList<>();
+        if (cleanupPolicies == null) {
+            return errors;
+        }
+        Set<String> names = new HashSet<>();
+        for (int i = 0; i < cleanupPolicies.size(); ++i) {
+            ConfigCleanupPolicy policy = cleanupPolicies.get(i);
+            String path = "repository.cleanupPolicies[" + (policy.getName() != null ? policy.getName() : i) + "]";
+            if (policy.getName() == null) {
+                errors.add(path + ": name is required");
+            } else if (!names.add(policy.getName())) {
+                errors.add(path + ": duplicate name");
+            }
+            if (policy.getFormat() == null) {
+                errors.add(path + ": format is required");
+            }
+            String regex = policy.getCriteria() == null ? null : policy.getCriteria().get("regex");
+            if (regex != null) {
+                try {
+                    Pattern.compile(regex);
+                } catch (PatternSyntaxException e) {
+                    errors.add(path + ": criteria.regex '" + regex + "': " + e.getDescription() + " at index " + e.getIndex());
+                }
+            }
+        }
+        return errors;
+    }
+
+    /**
+     * Validate the expression of every content selector with Nexus. Expensive expressions are logged, or rejected if
+     * {@code repository.contentSelectorLimits.reject} is set.
+     */
+    private List<String> checkContentSelectors(ConfigRepository repository) {
+        List<String> errors = new ArrayList<>();
+        List<ConfigContentSelector> selectors = repository.getContentSelectors();
+        if (selectors == null) {
+            return errors;
+        }
+        ConfigContentSelectorLimits limits = repository.getContentSelectorLimits();
+        int maxAlternatives = limits == null || limits.getMaxAlternatives() == null
+                ? Csel.DEFAULT_MAX_ALTERNATIVES : limits.getMaxAlternatives();
+        boolean reject = limits != null && limits.getReject() != null && limits.getReject();
+
+        Set<String> names = new HashSet<>();
+        for (int i = 0; i < selectors.size(); ++i) {
+            ConfigContentSelector selector = selectors.get(i);
+            String path = "repository.contentSelectors[" + (selector.getName() != null ? selector.getName() : i) + "]";
+            if (selector.getName() == null) {
+                errors.add(path + ": name is required");
+            } else if (!names.add(selector.getName())) {
+                errors.add(path + ": duplicate name");
+            }
+            if (selector.getExpression() == null) {
+                errors.add(path + ": expression is required");
+                continue;
+            }
+            String invalid = contentSelectorReconciler.checkExpression(selector.getExpression());
+            if (invalid != null) {
+                errors.add(path + ": invalid expression, " + invalid);
+                continue;
+            }
+            List<String> costs;
+            try {
+                costs = Csel.parse(selector.getExpression()).costs(maxAlternatives);
+            } catch (IllegalArgumentException e) {
+                // Valid for Nexus but beyond the subset Csel estimates the cost of
+                log.debug("{}: cost of the expression not estimated, {}", path, e.getMessage());
+                continue;
+            }
+            for (String cost : costs) {
+                if (reject) {
+                    errors.add(path + ": expensive expression, " + cost);
+                } else {
+                    log.warn("{}: expensive expression, {}", path, cost);
+                }
+            }
+        }
+        return errors;
+    }
+
+    private List<String> checkRoutingRules(List<ConfigRoutingRule> routingRules) {
+        List<String> errors = new ArrayList<>();
+        if (routingRules == null) {
+            return errors;
+        }
+        Set<String> names = new HashSet<>();
+        for (int i = 0; i < routingRules.size(); ++i) {
+            ConfigRoutingRule rule = routingRules.get(i);
+            String path = "repository.routingRules[" + (rule.getName() != null ? rule.getName() : i) + "]";
+            if (rule.getName() == null) {
+                errors.add(path + ": name is required");
+            } else if (!names.add(rule.getName())) {
+                errors.add(path + ": duplicate name");
+            }
+            if (Arrays.stream(RoutingMode.values()).noneMatch(mode -> mode.name().equals(rule.getMode()))) {
+                errors.add(path + ": mode must be one of " + Arrays.toString(RoutingMode.values()) + ": " + rule.getMode());
+            }
+            routingRuleMatchers.validate(rule.getMatchers()).forEach(error -> errors.add(path + ": " + error));
+        }
+        return errors;
+    }
+
+    private List<String> checkRepositories(ConfigRepository repository) {
+        List<ConfigRepositoryEntry> repositories = repository.getRepositories();
+        if (repositories == null) {
+            return new ArrayList<>();
+        }
+        List<String> errors = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        for (ConfigRepositoryEntry repoConfig : repositories) {
+            if (repoConfig.getName() == null) {
+                errors.add("repository.repositories: name is required");
+            } else if (!names.add(repoConfig.getName())) {
+                errors.add("repository.repositories[" + repoConfig.getName() + "]: duplicate name");
+            }
+        }
+
+        ConfigWarmup warmup = repository.getWarmup();
+        if (warmup != null && warmup.getThreads() != null && warmup.getThreads() < 1) {
+            errors.add("repository.warmup: threads must be positive: " + warmup.getThreads());
+        }
+        if (warmup != null && warmup.getRequestsPerSecond() != null && warmup.getRequestsPerSecond() < 0) {
+            errors.add("repository.warmup: requestsPerSecond must not be negative: " + warmup.getRequestsPerSecond());
+        }
+
+        errors.addAll(repositories.parallelStream()
+                .filter(repoConfig -> repoConfig.getName() != null)
+                .flatMap(repoConfig -> checkRepository(repoConfig).stream())
+                .collect(toList()));
+        return errors;
+    }
+
+    private List<String> checkRepository(ConfigRepositoryEntry repoConfig) {
+        List<String> errors = new ArrayList<>();
+        String path = "repository.repositories[" + repoConfig.getName() + "]";
+        Map<String, Map<String, Object>> attributes = repoConfig.getAttributes() == null
+                ? Collections.emptyMap() : repoConfig.getAttributes();
+
+        if (repoConfig.getRecipeName() == null) {
+            errors.add(path + ": recipeName is required");
+        } else {
+            recipeSchemas.validate(repoConfig).forEach(error -> errors.add(path + ": " + error));
+            Object members = attribute(attributes, "group", "memberNames");
+            if (members instanceof Collection && ((Collection<?>) members).contains(repoConfig.getName())) {
+                errors.add(path + ": a group can not be a member of itself");
+            }
+        }
+
+        Object warmupPaths = repoConfig.getWarmup();
+        if (warmupPaths != null && !(warmupPaths instanceof Collection) && !(warmupPaths instanceof String)) {
+            errors.add(path + ": warmup must be a list of paths or one path per line");
+        } else if (warmupPaths != null && repoConfig.getRecipeName() != null && !repoConfig.getRecipeName().endsWith("-proxy")) {
+            errors.add(path + ": warmup is only supported by proxy repositories");
+        }
+
+        String invalidConnection = httpClientReconciler.checkRepositoryConnection(repoConfig.getName(), attributes);
+        if (invalidConnection != null) {
+            errors.add(path + ": " + invalidConnection);
+        }
+        return errors;
+    }
+
+    private List<String> checkPrivileges(List<ConfigSecurityPrivilege> privileges) {
+        List<String> errors = new ArrayList<>();
+        if (privileges == null) {
+            return errors;
+        }
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < privileges.size(); ++i) {
+            ConfigSecurityPrivilege privilege = privileges.get(i);
+            String path = "security.privileges[" + (privilege.getId() != null ? privilege.getId() : i) + "]";
+            if (privilege.getId() == null) {
+                errors.add(path + ": id is required");
+            } else if (!ids.add(privilege.getId())) {
+                errors.add(path + ": duplicate id");
+            }
+            if (privilege.isEnabled() && !PRIVILEGE_TYPES.contains(privilege.getType())) {
+                errors.add(path + ": type must be one of " + PRIVILEGE_TYPES.stream().sorted().collect(toList()) + ": " + privilege.getType());
+            }
+        }
+        return errors;
+    }
+
+    private List<String> checkRoles(ConfigSecurity security) {
+        List<String> errors = new ArrayList<>();
+        if (security.getRoles() == null) {
+            return errors;
+        }
+        Set<String> disabledPrivileges = security.getPrivileges() == null ? Collections.emptySet()
+                : security.getPrivileges().stream().filter(p -> !p.isEnabled()).map(ConfigSecurityPrivilege::getId).collect(toSet());
+        Set<String> disabledRoles = disabledRoles(security);
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < security.getRoles().size(); ++i) {
+            ConfigSecurityRole role = security.getRoles().get(i);
+            String path = "security.roles[" + (role.getId() != null ? role.getId() : i) + "]";
+            if (role.getId() == null) {
+                errors.add(path + ": id is required");
+            } else if (!ids.add(role.getSource() + ":" + role.getId())) {
+                errors.add(path + ": duplicate id of source " + role.getSource());
+            }
+            if (role.getSource() == null) {
+                errors.add(path + ": source is required");
+            }
+            if (role.getEnabled() == null) {
+                errors.add(path + ": enabled is required");
+            } else if (role.getEnabled()) {
+                if (role.getPrivileges() != null) {
+                    role.getPrivileges().stream()
+                            .filter(disabledPrivileges::contains)
+                            .forEach(privilege -> errors.add(path + ": privilege " + privilege + " is disabled"));
+                }
+                if (role.getRoles() != null) {
+                    role.getRoles().stream()
+                            .filter(disabledRoles::contains)
+                            .forEach(contained -> errors.add(path + ": role " + contained + " is disabled"));
+                }
+            }
+        }
+        return errors;
+    }
+
+    private List<String> checkUsers(ConfigSecurity security) {
+        List<String> errors = new ArrayList<>();
+        if (security.getUsers() == null) {
+            return errors;
+        }
+        Set<String> disabledRoles = disabledRoles(security);
+        Set<String> usernames = new HashSet<>();
+        for (int i = 0; i < security.getUsers().size(); ++i) {
+            ConfigSecurityUser user = security.getUsers().get(i);
+            String path = "security.users[" + (user.getUsername() != null ? user.getUsername() : i) + "]";
+            if (user.getUsername() == null) {
+                errors.add(path + ": username is required");
+            } else if (!usernames.add(user.getUsername())) {
+                errors.add(path + ": duplicate username");
+            }
+            if (user.getRoles() != null) {
+                for (ConfigSecurityUserRole role : user.getRoles()) {
+                    if (role.getRole() == null) {
+                        errors.add(path + ": role is required");
+                    } else if (UserManager.DEFAULT_SOURCE.equals(role.getSource()) && disabledRoles.contains(role.getRole())) {
+                        errors.add(path + ": role " + role.getRole() + " is disabled");
+                    }
+                }
+            }
+        }
+        return errors;
+    }
+
+    private List<String> checkCapabilities(List<ConfigCapability> capabilities) {
+        List<String> errors = new ArrayList<>();
+        for (int i = 0; i < capabilities.size(); ++i) {
+            if (capabilities.get(i).getType() == null) {
+                errors.add("capabilities[" + i + "]: type is required");
+            }
+        }
+        return errors;
+    }
+
+    private List<String> checkTasks(List<ConfigTask> tasks) {
+        List<String> errors = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        for (int i = 0; i < tasks.size(); ++i) {
+            ConfigTask task = tasks.get(i);
+            String path = "tasks[" + (task.getName() != null ? task.getName() : i) + "]";
+            if (task.getName() == null) {
+                errors.add(path + ": name is required");
+            } else if (!names.add(task.getName())) {
+                errors.add(path + ": duplicate name");
+            }
+            if (task.getType() == null) {
+                errors.add(path + ": type is required");
+            }
+            if (task.getCron() == null) {
+                errors.add(path + ": cron is required");
+            } else {
+                int fields = task.getCron().trim().split("\\s+").length;
+                if (fields < 6 || fields > 7) {
+                    errors.add(path + ": cron must have 6 or 7 fields, seconds first: " + task.getCron());
+                }
+            }
+        }
+        return errors;
+    }
+
+    private List<String> checkLdap(ConfigLdap ldap) {
+        List<String> errors = new ArrayList<>();
+        if (ldap.getCache() != null && ldap.getCache().getTimeToLive() != null && ldap.getCache().getTimeToLive() < 0) {
+            errors.add("ldap.cache: timeToLive must not be negative: " + ldap.getCache().getTimeToLive());
+        }
+        if (ldap.getServers() == null) {
+            return errors;
+        }
+
+        Set<String> names = new HashSet<>();
+        for (int i = 0; i < ldap.getServers().size(); ++i) {
+            ConfigLdapServer server = ldap.getServers().get(i);
+            String path = "ldap.servers[" + (server.getName() != null ? server.getName() : i) + "]";
+            if (server.getName() == null) {
+                errors.add(path + ": name is required");
+            } else if (!names.add(server.getName())) {
+                errors.add(path + ": duplicate name");
+            }
+            if (server.getHost() == null) {
+                errors.add(path + ": host is required");
+            }
+            if (!LdapReconciler.LDAP.equals(server.getProtocol()) && !LdapReconciler.LDAPS.equals(server.getProtocol())) {
+                errors.add(path + ": protocol must be ldap or ldaps: " + server.getProtocol());
+            }
+            if (server.getPort() != null && (server.getPort() < 1 || server.getPort() > 65535)) {
+                errors.add(path + ": port must be between 1 and 65535: " + server.getPort());
+            }
+            if (server.getSearchBase() == null) {
+                errors.add(path + ": searchBase is required");
+            }
+            if (!LdapReconciler.AUTH_SCHEMES.contains(server.getAuthScheme())) {
+                errors.add(path + ": authScheme must be one of " + LdapReconciler.AUTH_SCHEMES + ": " + server.getAuthScheme());
+            } else if (!LdapReconciler.AUTH_NONE.equals(server.getAuthScheme())
+                    && (server.getSystemUsername() == null || server.getSystemPassword() == null)) {
+                errors.add(path + ": systemUsername and systemPassword are required with authScheme " + server.getAuthScheme());
+            }
+            if (server.getConnectionTimeout() == null || server.getConnectionTimeout() < 1
+                    || server.getConnectionTimeout() > 3600) {
+                errors.add(path + ": connectionTimeout must be between 1 and 3600 seconds: " + server.getConnectionTimeout());
+            }
+            if (server.getConnectionRetryDelay() == null || server.getConnectionRetryDelay() < 0) {
+                errors.add(path + ": connectionRetryDelay must not be negative: " + server.getConnectionRetryDelay());
+            }
+            if (server.getMaxIncidentsCount() == null || server.getMaxIncidentsCount() < 0) {
+                errors.add(path + ": maxIncidentsCount must not be negative: " + server.getMaxIncidentsCount());
+            }
+            if (server.getMapping() != null) {
+                errors.addAll(checkLdapMapping(path, server.getMapping()));
+            }
+        }
+        return errors;
+    }
+
+    private static List<String> checkLdapMapping(String path, ConfigLdapMapping mapping) {
+        List<String> errors = new ArrayList<>();
+        Map<String, String> required = new LinkedHashMap<>();
+        required.put("userObjectClass", mapping.getUserObjectClass());
+        required.put("userIdAttribute", mapping.getUserIdAttribute());
+        required.put("userRealNameAttribute", mapping.getUserRealNameAttribute());
+        required.put("emailAddressAttribute", mapping.getEmailAddressAttribute());
+        if (mapping.getLdapGroupsAsRoles() != null && mapping.getLdapGroupsAsRoles()
+                && mapping.getUserMemberOfAttribute() == null) {
+            // Static groups, dynamic groups only need the member of attribute of the users
+            required.put("groupObjectClass", mapping.getGroupObjectClass());
+            required.put("groupIdAttribute", mapping.getGroupIdAttribute());
+            required.put("groupMemberAttribute", mapping.getGroupMemberAttribute());
+            required.put("groupMemberFormat", mapping.getGroupMemberFormat());
+        }
+        required.forEach((name, value) -> {
+            if (value == null) {
+                errors.add(path + ": mapping." + name + " is required");
+            }
+        });
+        return errors;
+    }
+
+    /**
+     * @return the ids of the roles of the {@code default} source the configuration disables
+     */
+    private static Set<String> disabledRoles(ConfigSecurity security) {
+        if (security.getRoles() == null) {
+            return Collections.emptySet();
+        }
+        return security.getRoles().stream()
+                .filter(role -> UserManager.DEFAULT_SOURCE.equals(role.getSource()))
+                .filter(role -> role.getEnabled() != null && !role.getEnabled())
+                .map(ConfigSecurityRole::getId)
+                .collect(toSet());
+    }
+
+    private static Object filePath(Map<String, Map<String, Object>> attributes) {
+        return attribute(attributes, "file", "path");
+    }
+
+    private static Object attribute(Map<String, Map<String, Object>> attributes, String facet, String name) {
+        Map<String, Object> facetAttributes = facet(attributes, facet);
+        return facetAttributes == null ? null : facetAttributes.get(name);
+    }
+
+    /**
+     * The attributes of a facet, read before the values of the configuration are checked: a facet which is not a map,
+     * e.g. {@code storage: maven}, is reported by {@link RecipeSchemas} and treated as absent here
+     *
+     * @return the attributes of the facet, null if there are none or they are not a map
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> facet(Map<String, ? extends Map<String, Object>> attributes, String facet) {
+        // The raw map does not cast the value to a map, YAML may have loaded any value
+        Object value = attributes == null ? null : ((Map<?, ?>) attributes).get(facet);
+        return value instanceof Map ? (Map<String, Object>) value : null;
+    }
+
+    /**
+     * @return the values of an attribute which is either a single value or a list
+     */
+    private static Collection<?> values(Object attribute) {
+        if (attribute == null) {
+            return Collections.emptyList();
+        }
+        return attribute instanceof Collection ? (Collection<?>) attribute : Collections.singletonList(attribute);
+    }
+}
@@ -0,0 +1,85 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+import com.weareadaptive.nexus.casc.plugin.internal.config.ConfigContentSelector;
+import org.sonatype.goodies.common.ComponentSupport;
+import org.sonatype.nexus.selector.CselSelector;
+import org.sonatype.nexus.selector.SelectorConfiguration;
+import org.sonatype.nexus.selector.SelectorManager;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Reconciles the configured content selectors against the selectors of Nexus, matched by name.
+ * <p>
+ * Every selector change invalidates the selectors cached by the privileges using it, so a selector is only updated if
+ * its description or expression differ. The expressions are validated by Nexus beforehand, with
+ * {@link #checkExpression(String)}.
+ */
+@Named
+@Singleton
+public class ContentSelectorReconciler extends ComponentSupport {
+    static final String EXPRESSION = "expression";
+
+    private final SelectorManager selectorManager;
+    private final SelectorValidator selectorValidator;
+
+    @Inject
+    public ContentSelectorReconciler(final SelectorManager selectorManager, final SelectorValidator selectorValidator) {
+        this.selectorManager = selectorManager;
+        this.selectorValidator = selectorValidator;
+    }
+
+    /**
+     * @return the reason Nexus would reject the expression, null if it is valid
+     */
+    public String checkExpression(String expression) {
+        return selectorValidator.check(expression);
+    }
+
+    /**
+     * @return the content selectors by name
+     */
+    public Map<String, SelectorConfiguration> existingSelectors() {
+        Map<String, SelectorConfiguration> selectors = new LinkedHashMap<>();
+        selectorManager.browse().forEach(selector -> selectors.put(selector.getName(), selector));
+        return selectors;
+    }
+
+    /**
+     * @param existing The content selector of the same name, null if there is none
+     * @return the created or updated selector, null if it is up to date
+     */
+    public SelectorConfiguration apply(ConfigContentSelector selectorConfig, SelectorConfiguration existing) {
+        String description = selectorConfig.getDescription() == null ? "" : selectorConfig.getDescription();
+        if (existing != null
+                && CselSelector.TYPE.equals(existing.getType())
+                && Objects.equals(existing.getDescription(), description)
+                && existing.getAttributes() != null
+                && selectorConfig.getExpression().equals(existing.getAttributes().get(EXPRESSION))) {
+            log.debug("Content selector {} is up to date", selectorConfig.getName());
+            return null;
+        }
+
+        SelectorConfiguration selector = existing != null ? existing : selectorManager.newSelectorConfiguration();
+        selector.setName(selectorConfig.getName());
+        selector.setType(CselSelector.TYPE);
+        selector.setDescription(description);
+        selector.setAttributes(Collections.singletonMap(EXPRESSION, selectorConfig.getExpression()));
+        if (existing != null) {
+            selectorManager.update(selector);
+        } else {
+            selectorManager.create(selector);
+        }
+        return selector;
+    }
+
+    public void delete(SelectorConfiguration selector) {
+        selectorManager.delete(selector);
+    }
+}
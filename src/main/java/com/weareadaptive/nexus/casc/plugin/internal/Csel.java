@@ -0,0 +1,279 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A parsed CSEL expression, the expression language of content selectors.
+ * <p>
+ * CSEL is the subset of JEXL Nexus accepts: the variables {@value #FORMAT} and {@value #PATH} compared to string
+ * literals with {@code ==}, {@code !=}, {@code =~} (the whole value matches the regular expression) and {@code =^}
+ * (the value starts with), combined with {@code and}/{@code &&}, {@code or}/{@code ||}, {@code not}/{@code !} and
+ * parentheses. {@link #parse(String)} rejects anything else, and regular expressions which do not compile. Nexus
+ * validates the expressions, this model is only used to estimate their cost.
+ * <p>
+ * Selectors are evaluated for every asset of every authorised request, {@link #costs(int)} lists the patterns which make
+ * an evaluation expensive.
+ */
+final class Csel {
+    static final String FORMAT = "format";
+    static final String PATH = "path";
+
+    static final int DEFAULT_MAX_ALTERNATIVES = 10;
+
+    private static final List<String> VARIABLES = Arrays.asList(FORMAT, PATH);
+    private static final List<String> OPERATORS = Arrays.asList("==", "!=", "=~", "=^");
+
+    /**
+     * A group followed by a quantifier which contains a quantifier, e.g. {@code (a+)*}, backtracks exponentially on
+     * values which do not match
+     */
+    private static final Pattern NESTED_QUANTIFIER = Pattern.compile("\\((?:[^()\\\\]|\\\\.)*[*+}](?:[^()\\\\]|\\\\.)*\\)[*+{]");
+
+    private interface Node {
+        boolean matches(Map<String, String> variables);
+    }
+
+    private final String expression;
+    private final Node root;
+    private final List<String> regexes = new ArrayList<>();
+    private int orTerms;
+
+    private int position;
+    private String token;
+    private int tokenStart;
+
+    private Csel(String expression) {
+        this.expression = expression;
+        next();
+        this.root = parseOr();
+        if (token != null) {
+            throw error("unexpected " + token);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the expression is not valid CSEL
+     */
+    static Csel parse(String expression) {
+        if (expression == null || expression.trim().isEmpty()) {
+            throw new IllegalArgumentException("expression is empty");
+        }
+        return new Csel(expression);
+    }
+
+    /**
+     * @return true if an asset of the format at the path is selected
+     */
+    boolean matches(String format, String path) {
+        return root.matches(Map.of(FORMAT, format, PATH, path));
+    }
+
+    /**
+     * @param maxAlternatives The max number of alternatives of the expression and of each regular expression
+     * @return the patterns of the expression which make it expensive to evaluate, empty if there is none
+     */
+    List<String> costs(int maxAlternatives) {
+        List<String> costs = new ArrayList<>();
+        if (orTerms > maxAlternatives) {
+            costs.add(orTerms + " alternatives combined with or exceed " + maxAlternatives);
+        }
+        for (String regex : regexes) {
+            if (regex.startsWith(".*") || regex.startsWith(".+")) {
+                costs.add("regular expression \"" + regex + "\" starts with a wildcard, every value is scanned in full"
+                        + ", use =^ for a prefix");
+            }
+            int alternatives = topLevelAlternatives(regex);
+            if (alternatives > maxAlternatives) {
+                costs.add("regular expression \"" + regex + "\" has " + alternatives + " alternatives, more than "
+                        + maxAlternatives);
+            }
+            if (NESTED_QUANTIFIER.matcher(regex).find()) {
+                costs.add("regular expression \"" + regex + "\" nests quantifiers, it backtracks exponentially");
+            }
+        }
+        return costs;
+    }
+
+    /**
+     * @return the number of alternatives of the regular expression outside of groups
+     */
+    private static int topLevelAlternatives(String regex) {
+        int alternatives = 1;
+        int depth = 0;
+        boolean inClass = false;
+        for (int i = 0; i < regex.length(); ++i) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                ++i;
+            } else if (inClass) {
+                inClass = c != ']';
+            } else if (c == '[') {
+                inClass = true;
+            } else if (c == '(') {
+                ++depth;
+            } else if (c == ')') {
+                --depth;
+            } else if (c == '|' && depth <= 1) {
+                // A whole expression in one group, e.g. (a|b|c), is as expensive as its alternatives
+                ++alternatives;
+            }
+        }
+        return alternatives;
+    }
+
+    // -- Parser, one method per precedence level
+
+    private Node parseOr() {
+        List<Node> terms = new ArrayList<>();
+        terms.add(parseAnd());
+        while ("or".equals(token) || "||".equals(token)) {
+            next();
+            terms.add(parseAnd());
+        }
+        if (terms.size() == 1) {
+            return terms.get(0);
+        }
+        orTerms += terms.size();
+        return variables -> terms.stream().anyMatch(term -> term.matches(variables));
+    }
+
+    private Node parseAnd() {
+        List<Node> terms = new ArrayList<>();
+        terms.add(parseNot());
+        while ("and".equals(token) || "&&".equals(token)) {
+            next();
+            terms.add(parseNot());
+        }
+        return terms.size() == 1 ? terms.get(0) : variables -> terms.stream().allMatch(term -> term.matches(variables));
+    }
+
+    private Node parseNot() {
+        if ("not".equals(token) || "!".equals(token)) {
+            next();
+            Node negated = parseNot();
+            return variables -> !negated.matches(variables);
+        }
+        if ("(".equals(token)) {
+            next();
+            Node grouped = parseOr();
+            expect(")");
+            return grouped;
+        }
+        return parseComparison();
+    }
+
+    private Node parseComparison() {
+        if (token == null || !VARIABLES.contains(token)) {
+            throw error("expected one of " + VARIABLES + (token != null ? " but found " + token : ""));
+        }
+        String variable = token;
+        next();
+        if (token == null || !OPERATORS.contains(token)) {
+            throw error("expected one of " + OPERATORS + (token != null ? " but found " + token : ""));
+        }
+        String operator = token;
+        next();
+        if (token == null || !(token.startsWith("\"") || token.startsWith("'"))) {
+            throw error("expected a string literal" + (token != null ? " but found " + token : ""));
+        }
+        String literal = unquote(token);
+        int literalStart = tokenStart;
+        next();
+
+        switch (operator) {
+            case "==":
+                return variables -> literal.equals(variables.get(variable));
+            case "!=":
+                return variables -> !literal.equals(variables.get(variable));
+            case "=^":
+                return variables -> variables.get(variable).startsWith(literal);
+            default:
+                Pattern pattern;
+                try {
+                    pattern = Pattern.compile(literal);
+                } catch (PatternSyntaxException e) {
+                    throw new IllegalArgumentException("invalid regular expression \"" + literal + "\": "
+                            + e.getDescription() + " at position " + literalStart);
+                }
+                regexes.add(literal);
+                return variables -> pattern.matcher(variables.get(variable)).matches();
+        }
+    }
+
+    private void expect(String expected) {
+        if (!expected.equals(token)) {
+            throw error("expected " + expected + (token != null ? " but found " + token : ""));
+        }
+        next();
+    }
+
+    // -- Tokenizer
+
+    /**
+     * Read the next token, null at the end of the expression
+     */
+    private void next() {
+        while (position < expression.length() && Character.isWhitespace(expression.charAt(position))) {
+            ++position;
+        }
+        tokenStart = position;
+        if (position >= expression.length()) {
+            token = null;
+            return;
+        }
+
+        char c = expression.charAt(position);
+        if (c == '"' || c == '\'') {
+            int end = position + 1;
+            while (end < expression.length() && expression.charAt(end) != c) {
+                end += expression.charAt(end) == '\\' ? 2 : 1;
+            }
+            if (end >= expression.length()) {
+                throw error("unterminated string literal");
+            }
+            position = end + 1;
+        } else if (Character.isLetter(c)) {
+            int end = position;
+            while (end < expression.length() && (Character.isLetterOrDigit(expression.charAt(end)) || expression.charAt(end) == '.')) {
+                ++end;
+            }
+            position = end;
+        } else if (c == '(' || c == ')') {
+            position += 1;
+        } else if (expression.startsWith("&&", position) || expression.startsWith("||", position)) {
+            position += 2;
+        } else if ("=!<>".indexOf(c) >= 0) {
+            // Also reads the JEXL operators CSEL does not support, e.g. =$, to report them
+            boolean twoCharacters = position + 1 < expression.length() && "=~^$".indexOf(expression.charAt(position + 1)) >= 0;
+            position += twoCharacters ? 2 : 1;
+        } else {
+            throw error("unexpected character " + c);
+        }
+        token = expression.substring(tokenStart, position);
+    }
+
+    /**
+     * @return the value of a string literal, JEXL escapes the quote and the backslash only
+     */
+    private static String unquote(String literal) {
+        StringBuilder value = new StringBuilder();
+        for (int i = 1; i < literal.length() - 1; ++i) {
+            char c = literal.charAt(i);
+            if (c == '\\' && i + 1 < literal.length() - 1
+                    && (literal.charAt(i + 1) == literal.charAt(0) || literal.charAt(i + 1) == '\\')) {
+                c = literal.charAt(++i);
+            }
+            value.append(c);
+        }
+        return value.toString();
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at position " + tokenStart);
+    }
+}
@@ -0,0 +1,267 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+import org.sonatype.goodies.common.ComponentSupport;
+import org.sonatype.nexus.blobstore.api.BlobStoreManager;
+import org.sonatype.nexus.common.app.ApplicationDirectories;
+import org.sonatype.nexus.repository.manager.RepositoryManager;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Deletes pruned repositories and blob stores in the background, so deleting their content does not hold up the
+ * startup of Nexus.
+ * <p>
+ * Pruning only takes a repository offline and queues it, a worker thread then deletes the queued entities one at a
+ * time, at most {@code prune.deletionsPerMinute}. Repositories are deleted before blob stores as a blob store can only be
+ * deleted once no repository uses it. The queue is persisted in {@code <data-dir>/casc/deletion-queue.txt}, one
+ * {@code <kind> <name>} per line, so deletions resume on the next start. An entity which fails to be deleted stays
+ * queued and is retried on the next start.
+ */
+@Named
+@Singleton
+public class DeletionQueue extends ComponentSupport {
+    static final String FILE_NAME = "deletion-queue.txt";
+
+    /**
+     * Max number of pending entities reported by {@link #progress()}
+     */
+    static final int MAX_REPORTED = 100;
+
+    static final String REPOSITORY = "repository";
+    static final String BLOB_STORE = "blobStore";
+
+    private final ApplicationDirectories applicationDirectories;
+    private final RepositoryManager repositoryManager;
+    private final BlobStoreManager blobStoreManager;
+
+    private final Set<String> queued = new LinkedHashSet<>();
+    /**
+     * Queued entities which failed to be deleted since the start
+     */
+    private final Set<String> failedSinceStart = new HashSet<>();
+    private String deleting;
+    private long deleted;
+    private long failed;
+
+    private ScheduledExecutorService worker;
+
+    @Inject
+    public DeletionQueue(final ApplicationDirectories applicationDirectories, final RepositoryManager repositoryManager,
+                         final BlobStoreManager blobStoreManager) {
+        this.applicationDirectories = applicationDirectories;
+        this.repositoryManager = repositoryManager;
+        this.blobStoreManager = blobStoreManager;
+    }
+
+    /**
+     * Load the queue persisted by the last start, unless the worker is running already
+     */
+    public synchronized void load() {
+        if (worker != null) {
+            return;
+        }
+        queued.clear();
+        failedSinceStart.clear();
+        Path file = file();
+        if (!Files.exists(file)) {
+            return;
+        }
+        try {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                if (line.startsWith(REPOSITORY + " ") || line.startsWith(BLOB_STORE + " ")) {
+                    queued.add(line);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Could not read deletion queue {}, pruned entities are queued again by the next run", file, e);
+            queued.clear();
+        }
+    }
+
+    public synchronized int size() {
+        return queued.size();
+    }
+
+    /**
+     * Start the worker, unless it is running already. The first entity is deleted after the delay between two
+     * deletions, not to compete with the startup of Nexus.
+     *
+     * @param deletionsPerMinute The max number of entities deleted per minute, 0 for no limit
+     */
+    public synchronized void start(int deletionsPerMinute) {
+        if (worker != null) {
+            return;
+        }
+        if (!queued.isEmpty()) {
+            log.info("Resuming the deletion of {} pruned entities in the background", queued.size());
+        }
+        worker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "casc-deletion");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (deletionsPerMinute > 0) {
+            long delayMs = TimeUnit.MINUTES.toMillis(1) / deletionsPerMinute;
+            worker.scheduleWithFixedDelay(this::deleteNext, delayMs, delayMs, TimeUnit.MILLISECONDS);
+        } else {
+            // Polls for newly queued entities once the queue is drained
+            worker.scheduleWithFixedDelay(() -> {
+                while (!Thread.currentThread().isInterrupted() && deleteNext()) {
+                    log.debug("Deleting the next pruned entity without delay");
+                }
+            }, 1, 1, TimeUnit.SECONDS);
+        }
+    }
+
+    public void stop() throws InterruptedException {
+        ScheduledExecutorService stopping;
+        synchronized (this) {
+            stopping = worker;
+            worker = null;
+        }
+        if (stopping != null) {
+            stopping.shutdownNow();
+            if (!stopping.awaitTermination(30, TimeUnit.SECONDS)) {
+                log.warn("Background deletion did not stop in time, it will resume on next start");
+            }
+        }
+    }
+
+    public synchronized void enqueue(String kind, String name) {
+        if (queued.add(kind + " " + name)) {
+            save();
+        }
+    }
+
+    /**
+     * @return the names of the entities of the given kind which are queued or being deleted
+     */
+    public synchronized List<String> queued(String kind) {
+        return queued.stream()
+                .filter(entry -> entry.startsWith(kind + " "))
+                .map(entry -> entry.substring(kind.length() + 1))
+                .collect(toList());
+    }
+
+    public synchronized boolean isQueued(String kind, String name) {
+        return queued.contains(kind + " " + name);
+    }
+
+    /**
+     * Remove an entity from the queue, e.g. because it is part of the configuration again
+     *
+     * @return false if the entity is being deleted already
+     */
+    public synchronized boolean cancel(String kind, String name) {
+        String entry = kind + " " + name;
+        if (entry.equals(deleting)) {
+            return false;
+        }
+        if (queued.remove(entry)) {
+            failedSinceStart.remove(entry);
+            save();
+        }
+        return true;
+    }
+
+    /**
+     * Delete the next queued entity
+     *
+     * @return true if there was one to delete
+     */
+    boolean deleteNext() {
+        String entry;
+        synchronized (this) {
+            entry = queued.stream()
+                    .filter(queuedEntry -> !failedSinceStart.contains(queuedEntry))
+                    .filter(queuedEntry -> queuedEntry.startsWith(REPOSITORY + " "))
+                    .findFirst()
+                    .orElseGet(() -> queued.stream()
+                            .filter(queuedEntry -> !failedSinceStart.contains(queuedEntry))
+                            .findFirst()
+                            .orElse(null));
+            if (entry == null) {
+                return false;
+            }
+            deleting = entry;
+        }
+
+        String kind = entry.substring(0, entry.indexOf(' '));
+        String name = entry.substring(entry.indexOf(' ') + 1);
+        long start = System.currentTimeMillis();
+        boolean success = false;
+        try {
+            if (REPOSITORY.equals(kind)) {
+                if (repositoryManager.get(name) != null) {
+                    repositoryManager.delete(name);
+                }
+            } else if (blobStoreManager.get(name) != null) {
+                blobStoreManager.delete(name);
+            }
+            success = true;
+            log.info("Deleted pruned {} {} in {} ms", kind, name, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("Failed to delete pruned {} {}, retrying on next start", kind, name, e);
+        }
+
+        synchronized (this) {
+            deleting = null;
+            if (success) {
+                ++deleted;
+                queued.remove(entry);
+                save();
+            } else {
+                ++failed;
+                failedSinceStart.add(entry);
+            }
+        }
+        return true;
+    }
+
+    public synchronized ReconcileStatusXO.DeletionProgress progress() {
+        ReconcileStatusXO.DeletionProgress progress = new ReconcileStatusXO.DeletionProgress();
+        progress.setQueued(queued.size());
+        progress.setDeleting(deleting);
+        progress.setDeleted(deleted);
+        progress.setFailed(failed);
+        progress.setPending(queued.stream().limit(MAX_REPORTED).collect(toList()));
+        return progress;
+    }
+
+    private Path file() {
+        return applicationDirectories.getWorkDirectory("casc").toPath().resolve(FILE_NAME);
+    }
+
+    private void save() {
+        Path file = file();
+        try {
+            Path tmp = file.resolveSibling(FILE_NAME + ".tmp");
+            try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                for (String line : queued) {
+                    writer.write(line);
+                    writer.write('\n');
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Could not write deletion queue {}", file, e);
+        }
+    }
+}
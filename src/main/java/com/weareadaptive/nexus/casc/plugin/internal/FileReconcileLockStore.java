@@ -0,0 +1,132 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * {@link ReconcileLockStore} keeping the lease in a directory shared by all nodes, e.g. the NFS volume holding the
+ * blob stores. Every operation holds an exclusive {@link FileLock} on {@code casc.lock} while it reads and writes the
+ * {@code casc.lease} and {@code casc.completed} files.
+ */
+public class FileReconcileLockStore implements ReconcileLockStore {
+    static final String LOCK_FILE = "casc.lock";
+    static final String LEASE_FILE = "casc.lease";
+    static final String COMPLETED_FILE = "casc.completed";
+
+    // FileLock is held by the JVM, threads of the same JVM must be serialized separately
+    private static final Object JVM_LOCK = new Object();
+
+    private final Path directory;
+
+    public FileReconcileLockStore(Path directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public boolean tryAcquire(String nodeId, String digest, long ttlMs) {
+        return locked(() -> {
+            String[] lease = readLease();
+            if (lease != null && !lease[0].equals(nodeId)) {
+                return false;
+            }
+            write(LEASE_FILE, nodeId + " " + digest + " " + (System.currentTimeMillis() + ttlMs));
+            return true;
+        });
+    }
+
+    @Override
+    public boolean renew(String nodeId, long ttlMs) {
+        return locked(() -> {
+            String[] lease = readLease();
+            if (lease == null || !lease[0].equals(nodeId)) {
+                return false;
+            }
+            write(LEASE_FILE, nodeId + " " + lease[1] + " " + (System.currentTimeMillis() + ttlMs));
+            return true;
+        });
+    }
+
+    @Override
+    public void release(String nodeId, String completedDigest) {
+        locked(() -> {
+            String[] lease = readLease();
+            if (lease != null && lease[0].equals(nodeId)) {
+                Files.delete(directory.resolve(LEASE_FILE));
+            }
+            if (completedDigest != null) {
+                write(COMPLETED_FILE, completedDigest + " " + nodeId + " " + System.currentTimeMillis());
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public String getHolder() {
+        return locked(() -> {
+            String[] lease = readLease();
+            return lease == null ? null : lease[0];
+        });
+    }
+
+    @Override
+    public Completion getLastCompletion() {
+        return locked(() -> {
+            String[] parts = read(COMPLETED_FILE);
+            return parts == null ? null : new Completion(parts[0], parts[1], Long.parseLong(parts[2]));
+        });
+    }
+
+    /**
+     * @return node id, digest and expiry of the lease, null if there is no valid lease
+     */
+    private String[] readLease() throws IOException {
+        String[] lease = read(LEASE_FILE);
+        if (lease == null || Long.parseLong(lease[2]) < System.currentTimeMillis()) {
+            return null;
+        }
+        return lease;
+    }
+
+    private String[] read(String fileName) throws IOException {
+        Path file = directory.resolve(fileName);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        if (lines.isEmpty()) {
+            return null;
+        }
+        String[] parts = lines.get(0).split(" ");
+        return parts.length == 3 ? parts : null;
+    }
+
+    private void write(String fileName, String content) throws IOException {
+        Files.write(directory.resolve(fileName), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private <T> T locked(IOCallable<T> callable) {
+        try {
+            Files.createDirectories(directory);
+            synchronized (JVM_LOCK) {
+                try (FileChannel channel = FileChannel.open(directory.resolve(LOCK_FILE),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                     FileLock ignored = channel.lock()) {
+                    return callable.call();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private interface IOCallable<T> {
+        T call() throws IOException;
+    }
+}
@@ -0,0 +1,193 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+import com.weareadaptive.nexus.casc.plugin.internal.config.ConfigGroupLimits;
+import com.weareadaptive.nexus.casc.plugin.internal.config.ConfigRepository;
+import com.weareadaptive.nexus.casc.plugin.internal.config.ConfigRepositoryEntry;
+import org.sonatype.goodies.common.ComponentSupport;
+import org.sonatype.nexus.repository.Repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The membership graph of the group repositories, to keep the fan-out of a request to a group in check.
+ * <p>
+ * A request to a group is looked up in its members one after the other, descending into nested groups, so the cost of
+ * a request grows with the number of repositories it flattens to and with the depth of the nesting. The graph is built
+ * from the configured groups and the existing groups they are not replacing. Every configured group is analysed for
+ * its depth, flattened members, members reached more than once and cycles. Cycles are always errors, exceeding
+ * {@code repository.groupLimits} is logged or, with {@code reject}, an error.
+ */
+public class GroupGraph extends ComponentSupport {
+    /**
+     * The direct members by group
+     */
+    private final Map<String, List<String>> groups;
+    private final Set<String> configured;
+    private final Map<String, Analysis> analyses = new HashMap<>();
+
+    GroupGraph(Map<String, List<String>> groups, Set<String> configured) {
+        this.groups = groups;
+        this.configured = configured;
+    }
+
+    /**
+     * @param repository The repository section of the configuration
+     * @param existing   The existing repositories, not consulted if the configuration prunes the others
+     */
+    public static GroupGraph build(ConfigRepository repository, Map<String, Repository> existing) {
+        Map<String, List<String>> groups = new LinkedHashMap<>();
+        if (repository.getPruneRepositories() == null || !repository.getPruneRepositories()) {
+            existing.forEach((name, existingRepository) -> {
+                Map<String, Object> group = ConfigValidator.facet(existingRepository.getConfiguration().getAttributes(), "group");
+                if (group != null) {
+                    groups.put(name, memberNames(group.get("memberNames")));
+                }
+            });
+        }
+        Set<String> configured = new LinkedHashSet<>();
+        for (ConfigRepositoryEntry repoConfig : repository.getRepositories()) {
+            Map<String, Object> group = ConfigValidator.facet(repoConfig.getAttributes(), "group");
+            if (group == null) {
+                // A group may be replaced by a repository of another type
+                groups.remove(repoConfig.getName());
+            } else {
+                groups.put(repoConfig.getName(), memberNames(group.get("memberNames")));
+                configured.add(repoConfig.getName());
+            }
+        }
+        return new GroupGraph(groups, configured);
+    }
+
+    private static List<String> memberNames(Object memberNames) {
+        List<String> members = new ArrayList<>();
+        if (memberNames instanceof Collection) {
+            ((Collection<?>) memberNames).forEach(member -> members.add(String.valueOf(member)));
+        }
+        return members;
+    }
+
+    /**
+     * @return the analysis of every configured group
+     */
+    public Map<String, ReconcileStatusXO.GroupReport> report() {
+        Map<String, ReconcileStatusXO.GroupReport> report = new LinkedHashMap<>();
+        for (String group : configured) {
+            Analysis analysis = analyse(group);
+            ReconcileStatusXO.GroupReport groupReport = new ReconcileStatusXO.GroupReport();
+            groupReport.setDirectMembers(groups.get(group).size());
+            groupReport.setMembers(analysis.flattened.size());
+            groupReport.setDepth(analysis.depth);
+            groupReport.setDuplicates(new ArrayList<>(analysis.duplicates));
+            groupReport.setCycle(analysis.cycle);
+            report.put(group, groupReport);
+        }
+        return report;
+    }
+
+    /**
+     * @return the cycles and, if the limits reject, the groups exceeding the limits
+     */
+    public List<String> check(ConfigGroupLimits limits) {
+        boolean reject = limits != null && limits.getReject() != null && limits.getReject();
+        List<String> errors = new ArrayList<>();
+        for (String group : configured) {
+            Analysis analysis = analyse(group);
+            String path = "repository.repositories[" + group + "]";
+            if (analysis.cycle != null) {
+                errors.add(path + ": group cycle " + String.join(" -> ", analysis.cycle));
+                continue;
+            }
+            if (!analysis.duplicates.isEmpty()) {
+                log.warn("Group {} reaches {} through more than one member, requests look them up more than once",
+                        group, analysis.duplicates);
+            }
+
+            List<String> exceeded = new ArrayList<>();
+            if (limits != null && limits.getMaxDepth() != null && analysis.depth > limits.getMaxDepth()) {
+                exceeded.add("depth " + analysis.depth + " exceeds repository.groupLimits.maxDepth " + limits.getMaxDepth());
+            }
+            if (limits != null && limits.getMaxMembers() != null && analysis.flattened.size() > limits.getMaxMembers()) {
+                exceeded.add(analysis.flattened.size() + " flattened members exceeds repository.groupLimits.maxMembers "
+                        + limits.getMaxMembers());
+            }
+            for (String problem : exceeded) {
+                if (reject) {
+                    errors.add(path + ": group " + problem);
+                } else {
+                    log.warn("Group {}: {}", group, problem);
+                }
+            }
+        }
+        return errors;
+    }
+
+    private Analysis analyse(String group) {
+        return analyse(group, new LinkedHashSet<>());
+    }
+
+    /**
+     * @param path The groups being analysed, the outermost first
+     */
+    private Analysis analyse(String group, LinkedHashSet<String> path) {
+        Analysis analysed = analyses.get(group);
+        if (analysed != null) {
+            return analysed;
+        }
+        Analysis analysis = new Analysis();
+        path.add(group);
+        Map<String, Integer> reached = new LinkedHashMap<>();
+        for (String member : groups.get(group)) {
+            if (path.contains(member)) {
+                if (analysis.cycle == null) {
+                    List<String> groupsOnPath = new ArrayList<>(path);
+                    analysis.cycle = new ArrayList<>(groupsOnPath.subList(groupsOnPath.indexOf(member), groupsOnPath.size()));
+                    analysis.cycle.add(member);
+                }
+                continue;
+            }
+            if (!groups.containsKey(member)) {
+                reached.merge(member, 1, Integer::sum);
+                continue;
+            }
+            Analysis nested = analyse(member, path);
+            analysis.depth = Math.max(analysis.depth, nested.depth);
+            nested.flattened.forEach(leaf -> reached.merge(leaf, 1, Integer::sum));
+            analysis.duplicates.addAll(nested.duplicates);
+            if (analysis.cycle == null) {
+                analysis.cycle = nested.cycle;
+            }
+        }
+        path.remove(group);
+
+        analysis.depth += 1;
+        analysis.flattened.addAll(reached.keySet());
+        reached.forEach((member, times) -> {
+            if (times > 1) {
+                analysis.duplicates.add(member);
+            }
+        });
+        analyses.put(group, analysis);
+        return analysis;
+    }
+
+    private static class Analysis {
+        /**
+         * 1 for a group of repositories, 1 more for every level of nested groups
+         */
+        private int depth;
+        /**
+         * The repositories which are not groups the group looks up
+         */
+        private final Set<String> flattened = new LinkedHashSet<>();
+        private final Set<String> duplicates = new TreeSet<>();
+        private List<String> cycle;
+    }
+}
@@ -0,0 +1,524 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+import com.weareadaptive.nexus.casc.plugin.internal.config.ConfigConnectionPool;
+import com.weareadaptive.nexus.casc.plugin.internal.config.ConfigCore;
+import com.weareadaptive.nexus.casc.plugin.internal.config.ConfigHttpProxy;
+import com.weareadaptive.nexus.casc.plugin.internal.config.ConfigS3Transfer;
+import org.sonatype.goodies.common.ComponentSupport;
+import org.sonatype.goodies.common.Time;
+import org.sonatype.nexus.common.app.ApplicationDirectories;
+import org.sonatype.nexus.crypto.secrets.SecretsService;
+import org.sonatype.nexus.httpclient.HttpClientManager;
+import org.sonatype.nexus.httpclient.config.AuthenticationConfiguration;
+import org.sonatype.nexus.httpclient.config.ConnectionConfiguration;
+import org.sonatype.nexus.httpclient.config.HttpClientConfiguration;
+import org.sonatype.nexus.httpclient.config.NtlmAuthenticationConfiguration;
+import org.sonatype.nexus.httpclient.config.ProxyConfiguration;
+import org.sonatype.nexus.httpclient.config.ProxyServerConfiguration;
+import org.sonatype.nexus.httpclient.config.UsernameAuthenticationConfiguration;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Reconciles the HTTP settings of the core section against the current configuration of the outbound HTTP client.
+ * <p>
+ * Every update of the configuration persists it and rebuilds the HTTP client shared by all proxy repositories, so the
+ * settings which differ from the current configuration are applied with a single
+ * {@link HttpClientManager#setConfiguration(HttpClientConfiguration)}, and nothing is applied on a boot with an
+ * unchanged configuration. Proxy passwords are stored as secrets which are not compared, so a salted digest of the
+ * applied proxy settings is kept in {@code <data-dir>/casc/http-client.properties} to detect changed passwords.
+ * <p>
+ * The connection pool is shared by all repositories and only configured on startup, from {@code nexus.*} properties.
+ * {@link #applyConnectionPool(ConfigConnectionPool)} writes them to {@code <data-dir>/etc/nexus.properties}, they are
+ * used by the HTTP client built on the next start. The same goes for the S3 transfer settings of
+ * {@link #applyS3Transfer(ConfigS3Transfer)}, used by the S3 blob stores started on the next start.
+ */
+@Named
+@Singleton
+public class HttpClientReconciler extends ComponentSupport {
+    static final String FILE_NAME = "http-client.properties";
+
+    private static final String HTTP = "http";
+    private static final String HTTPS = "https";
+
+    private static final String PROXY_PASSWORD_PURPOSE = "casc-http-proxy";
+
+    private static final String DIGEST_ALGORITHM = "pbkdf2-sha256";
+    private static final int DIGEST_ITERATIONS = 100_000;
+    private static final int DIGEST_SALT_LENGTH = 16;
+    private static final int DIGEST_LENGTH = 256;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    static final String NEXUS_PROPERTIES = "nexus.properties";
+
+    static final String POOL_SIZE = "nexus.httpclient.connectionpool.size";
+    static final String POOL_MAX_PER_ROUTE = "nexus.httpclient.connectionpool.maxPerRoute";
+    static final String POOL_IDLE_TIME = "nexus.httpclient.connectionpool.idleTime";
+    static final String POOL_KEEP_ALIVE_DURATION = "nexus.httpclient.connectionpool.keepAliveDuration";
+
+    static final String S3_PARALLEL_REQUESTS = "nexus.s3.parallelRequests";
+    static final String S3_MULTIPART_UPLOAD_CHUNK_SIZE = "nexus.s3.multipartupload.chunksize";
+    static final String S3_MULTIPART_COPY_CHUNK_SIZE = "nexus.s3.multipartcopy.chunksize";
+
+    /**
+     * The min size of the parts of an S3 multipart upload, but the last one
+     */
+    static final int S3_MIN_CHUNK_SIZE = 5 * 1024 * 1024;
+
+    /**
+     * The {@code httpclient.connection} attributes of a repository and the validated ranges of the numeric ones, the
+     * ranges of the Nexus UI
+     */
+    private static final Map<String, int[]> REPOSITORY_CONNECTION_RANGES = new LinkedHashMap<>();
+    private static final Set<String> REPOSITORY_CONNECTION_FLAGS = Set.of(
+            "useTrustStore", "enableCircularRedirects", "enableCookies");
+
+    static {
+        REPOSITORY_CONNECTION_RANGES.put("timeout", new int[]{1, 3600});
+        REPOSITORY_CONNECTION_RANGES.put("retries", new int[]{0, 10});
+    }
+
+    private final HttpClientManager httpClientManager;
+    private final SecretsService secretsService;
+    private final ApplicationDirectories applicationDirectories;
+
+    @Inject
+    public HttpClientReconciler(
+            final HttpClientManager httpClientManager,
+            final SecretsService secretsService,
+            final ApplicationDirectories applicationDirectories
+    ) {
+        this.httpClientManager = httpClientManager;
+        this.secretsService = secretsService;
+        this.applicationDirectories = applicationDirectories;
+    }
+
+    /**
+     * Apply the HTTP settings of the core section which differ from the current configuration, with a single update of
+     * the configuration
+     *
+     * @return the number of settings applied
+     */
+    public int apply(ConfigCore core) {
+        HttpClientConfiguration desired = httpClientManager.getConfiguration().copy();
+        ConnectionConfiguration connection = desired.getConnection() != null ? desired.getConnection() : new ConnectionConfiguration();
+        ProxyConfiguration proxy = desired.getProxy() != null ? desired.getProxy() : new ProxyConfiguration();
+        Properties digests = loadDigests();
+        List<String> changed = new ArrayList<>();
+
+        if (core.getUserAgentCustomization() != null
+                && !core.getUserAgentCustomization().equals(connection.getUserAgentSuffix())) {
+            connection.setUserAgentSuffix(core.getUserAgentCustomization());
+            changed.add("userAgentSuffix " + core.getUserAgentCustomization());
+        }
+
+        Time timeout = connection.getTimeout();
+        if (core.getConnectionTimeout() > 0 && (timeout == null || timeout.toSeconds() != core.getConnectionTimeout())) {
+            connection.setTimeout(Time.seconds(core.getConnectionTimeout()));
+            changed.add("connection timeout " + core.getConnectionTimeout() + "s");
+        }
+
+        if (core.getConnectionRetryAttempts() > 0
+                && !Integer.valueOf(core.getConnectionRetryAttempts()).equals(connection.getMaximumRetries())) {
+            connection.setMaximumRetries(core.getConnectionRetryAttempts());
+            changed.add("connection retry attempts " + core.getConnectionRetryAttempts());
+        }
+
+        int settingsChanged = changed.size();
+        ProxyServerConfiguration http = proxyServer(core.getHttpProxy(), proxy.getHttp(), HTTP, digests, changed);
+        ProxyServerConfiguration https = proxyServer(core.getHttpsProxy(), proxy.getHttps(), HTTPS, digests, changed);
+        boolean proxiesChanged = changed.size() > settingsChanged;
+        proxy.setHttp(http);
+        proxy.setHttps(https);
+
+        if (core.getNonProxyHosts() != null && core.getNonProxyHosts().size() > 0) {
+            String[] noProxyHosts = core.getNonProxyHosts().stream()
+                    .map(String::trim)
+                    .filter(host -> !host.isEmpty())
+                    .toArray(String[]::new);
+            if (!Arrays.equals(noProxyHosts, proxy.getNonProxyHosts())) {
+                proxy.setNonProxyHosts(noProxyHosts);
+                changed.add("nonProxyHosts " + String.join(",", noProxyHosts));
+            }
+        }
+
+        if (changed.isEmpty()) {
+            log.debug("HTTP client configuration is up to date");
+            return 0;
+        }
+        desired.setConnection(connection);
+        desired.setProxy(proxy);
+        httpClientManager.setConfiguration(desired);
+        log.info("HTTP client configuration updated: {}", changed);
+        if (proxiesChanged) {
+            saveDigests(digests);
+        }
+        return changed.size();
+    }
+
+    /**
+     * @param current The current proxy server of the protocol, null if there is none
+     * @param changed The changed settings, to which the proxy server is added if it changed
+     * @return the desired proxy server of the protocol, null if there is none
+     */
+    private ProxyServerConfiguration proxyServer(ConfigHttpProxy httpProxy, ProxyServerConfiguration current,
+                                                 String key, Properties digests, List<String> changed) {
+        String protocol = HTTPS.equals(key) ? "HTTPs" : "HTTP";
+        if (httpProxy == null) {
+            if (describe(current) == null) {
+                return current;
+            }
+            digests.remove(key);
+            changed.add("no " + protocol + " proxy");
+            return null;
+        }
+        if (httpProxy.getHost() == null) {
+            log.error("Missing {} proxy host name", protocol);
+            return current;
+        }
+
+        int portNumber = httpProxy.getPort() > 0 ? httpProxy.getPort() : 80;
+        String desired = describe(httpProxy, portNumber);
+        String password = Objects.toString(httpProxy.getPassword(), "");
+        if (desired.equals(describe(current))
+                && (httpProxy.getUsername() == null || matches(digests.getProperty(key), desired, password))) {
+            log.debug("{} proxy is up to date", protocol);
+            return current;
+        }
+
+        ProxyServerConfiguration server = new ProxyServerConfiguration();
+        server.setEnabled(true);
+        server.setHost(httpProxy.getHost());
+        server.setPort(portNumber);
+        if (httpProxy.getUsername() != null && httpProxy.getNtlmHost() != null) {
+            NtlmAuthenticationConfiguration ntlm = new NtlmAuthenticationConfiguration();
+            ntlm.setUsername(httpProxy.getUsername());
+            ntlm.setPassword(secretsService.encrypt(PROXY_PASSWORD_PURPOSE, password.toCharArray(), null));
+            ntlm.setHost(httpProxy.getNtlmHost());
+            ntlm.setDomain(httpProxy.getNtlmDomain());
+            server.setAuthentication(ntlm);
+        } else if (httpProxy.getUsername() != null) {
+            UsernameAuthenticationConfiguration basic = new UsernameAuthenticationConfiguration();
+            basic.setUsername(httpProxy.getUsername());
+            basic.setPassword(secretsService.encrypt(PROXY_PASSWORD_PURPOSE, password.toCharArray(), null));
+            server.setAuthentication(basic);
+        }
+        digests.setProperty(key, digest(desired, password));
+        changed.add(protocol + " proxy " + desired);
+        return server;
+    }
+
+    /**
+     * @return a salted PBKDF2 digest of the settings and password, e.g. of a proxy, in the format
+     * {@code pbkdf2-sha256:<iterations>:<salt>:<hash>}
+     */
+    static String digest(String settings, String password) {
+        byte[] salt = new byte[DIGEST_SALT_LENGTH];
+        RANDOM.nextBytes(salt);
+        Base64.Encoder base64 = Base64.getEncoder();
+        return DIGEST_ALGORITHM + ":" + DIGEST_ITERATIONS + ":" + base64.encodeToString(salt) + ":"
+                + base64.encodeToString(pbkdf2(settings, password, salt, DIGEST_ITERATIONS));
+    }
+
+    /**
+     * @param digest A digest of {@link #digest(String, String)}, null if there is none
+     * @return true if the digest is the one of the settings and password
+     */
+    static boolean matches(String digest, String settings, String password) {
+        String[] parts = digest == null ? new String[0] : digest.split(":");
+        if (parts.length != 4 || !DIGEST_ALGORITHM.equals(parts[0])) {
+            // Digests of older versions, the proxy is applied again once
+            return false;
+        }
+        try {
+            Base64.Decoder base64 = Base64.getDecoder();
+            byte[] expected = base64.decode(parts[3]);
+            byte[] actual = pbkdf2(settings, password, base64.decode(parts[2]), Integer.parseInt(parts[1]));
+            return MessageDigest.isEqual(expected, actual);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static byte[] pbkdf2(String settings, String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec((settings + '\0' + password).toCharArray(), salt, iterations, DIGEST_LENGTH);
+        try {
+            return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("PBKDF2WithHmacSHA256 is not available", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    /**
+     * @return the proxy settings except for the password
+     */
+    private static String describe(ConfigHttpProxy httpProxy, int port) {
+        if (httpProxy.getUsername() != null && httpProxy.getNtlmHost() != null) {
+            return httpProxy.getHost() + ":" + port + " ntlm " + httpProxy.getUsername() + " " + httpProxy.getNtlmHost()
+                    + " " + httpProxy.getNtlmDomain();
+        } else if (httpProxy.getUsername() != null) {
+            return httpProxy.getHost() + ":" + port + " basic " + httpProxy.getUsername();
+        }
+        return httpProxy.getHost() + ":" + port;
+    }
+
+    /**
+     * @return the proxy settings except for the password in the format of {@link #describe(ConfigHttpProxy, int)}, null
+     * if there is no enabled proxy
+     */
+    private static String describe(ProxyServerConfiguration server) {
+        if (server == null || !server.isEnabled()) {
+            return null;
+        }
+        AuthenticationConfiguration authentication = server.getAuthentication();
+        if (authentication instanceof NtlmAuthenticationConfiguration) {
+            NtlmAuthenticationConfiguration ntlm = (NtlmAuthenticationConfiguration) authentication;
+            return server.getHost() + ":" + server.getPort() + " ntlm " + ntlm.getUsername() + " " + ntlm.getHost()
+                    + " " + ntlm.getDomain();
+        } else if (authentication instanceof UsernameAuthenticationConfiguration) {
+            return server.getHost() + ":" + server.getPort() + " basic "
+                    + ((UsernameAuthenticationConfiguration) authentication).getUsername();
+        }
+        return server.getHost() + ":" + server.getPort();
+    }
+
+    /**
+     * Write the connection pool settings which differ from the ones in {@code etc/nexus.properties}, leaving the other
+     * lines of the file as they are
+     *
+     * @return true if the file was written, the settings are used once Nexus is restarted
+     */
+    public boolean applyConnectionPool(ConfigConnectionPool pool) {
+        String error = checkConnectionPool(pool);
+        if (error != null) {
+            log.error("Invalid core.connectionPool, not applying it: {}", error);
+            return false;
+        }
+
+        Map<String, String> desired = new LinkedHashMap<>();
+        if (pool.getSize() != null) {
+            desired.put(POOL_SIZE, Integer.toString(pool.getSize()));
+        }
+        if (pool.getMaxPerRoute() != null) {
+            desired.put(POOL_MAX_PER_ROUTE, Integer.toString(pool.getMaxPerRoute()));
+        }
+        if (pool.getIdleTime() != null) {
+            desired.put(POOL_IDLE_TIME, pool.getIdleTime() + "s");
+        }
+        if (pool.getKeepAliveDuration() != null) {
+            desired.put(POOL_KEEP_ALIVE_DURATION, pool.getKeepAliveDuration() + "s");
+        }
+        return writeNexusProperties(desired, "HTTP connection pool");
+    }
+
+    /**
+     * Write the S3 transfer settings shared by all S3 blob stores which differ from the ones in
+     * {@code etc/nexus.properties}, leaving the other lines of the file as they are
+     *
+     * @return true if the file was written, the settings are used once Nexus is restarted
+     */
+    public boolean applyS3Transfer(ConfigS3Transfer transfer) {
+        String error = checkS3Transfer(transfer);
+        if (error != null) {
+            log.error("Invalid core.s3Transfer, not applying it: {}", error);
+            return false;
+        }
+
+        Map<String, String> desired = new LinkedHashMap<>();
+        if (transfer.getParallelRequests() != null) {
+            desired.put(S3_PARALLEL_REQUESTS, Integer.toString(transfer.getParallelRequests()));
+        }
+        if (transfer.getMultipartUploadChunkSize() != null) {
+            desired.put(S3_MULTIPART_UPLOAD_CHUNK_SIZE, Integer.toString(transfer.getMultipartUploadChunkSize()));
+        }
+        if (transfer.getMultipartCopyChunkSize() != null) {
+            desired.put(S3_MULTIPART_COPY_CHUNK_SIZE, Integer.toString(transfer.getMultipartCopyChunkSize()));
+        }
+        return writeNexusProperties(desired, "S3 transfer");
+    }
+
+    /**
+     * Write the settings which differ from the ones in {@code etc/nexus.properties}, leaving the other lines of the file
+     * as they are
+     *
+     * @param settings The name of the settings, for the logs
+     * @return true if the file was written, the settings are used once Nexus is restarted
+     */
+    boolean writeNexusProperties(Map<String, String> desired, String settings) {
+        Path file = applicationDirectories.getWorkDirectory("etc").toPath().resolve(NEXUS_PROPERTIES);
+        try {
+            List<String> lines = Files.exists(file) ? Files.readAllLines(file, StandardCharsets.UTF_8) : new ArrayList<>();
+            Properties current = new Properties();
+            current.load(new StringReader(String.join("\n", lines)));
+            Map<String, String> changed = new LinkedHashMap<>();
+            desired.forEach((key, value) -> {
+                if (!value.equals(current.getProperty(key))) {
+                    changed.put(key, value);
+                }
+            });
+            if (changed.isEmpty()) {
+                log.debug("{} settings are up to date", settings);
+                return false;
+            }
+
+            List<String> updated = new ArrayList<>();
+            for (String line : lines) {
+                String key = line.contains("=") ? line.substring(0, line.indexOf('=')).trim() : null;
+                if (key != null && changed.containsKey(key)) {
+                    // Comments out duplicates too, the last one of a key wins when Nexus reads the file
+                    updated.add("# " + line);
+                } else {
+                    updated.add(line);
+                }
+            }
+            changed.forEach((key, value) -> updated.add(key + "=" + value));
+
+            Path tmp = file.resolveSibling(NEXUS_PROPERTIES + ".tmp");
+            Files.write(tmp, updated, StandardCharsets.UTF_8);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.warn("{} settings {} written to {}, restart Nexus to apply them", settings, changed, file);
+            return true;
+        } catch (IOException e) {
+            log.error("Failed to write the {} settings to {}", settings, file, e);
+            return false;
+        }
+    }
+
+    /**
+     * @return the reason the S3 transfer settings are invalid, null if they are valid
+     */
+    static String checkS3Transfer(ConfigS3Transfer transfer) {
+        if (transfer.getParallelRequests() != null && transfer.getParallelRequests() < 0) {
+            return "parallelRequests must not be negative: " + transfer.getParallelRequests();
+        }
+        if (transfer.getMultipartUploadChunkSize() != null && transfer.getMultipartUploadChunkSize() < S3_MIN_CHUNK_SIZE) {
+            return "multipartUploadChunkSize must be at least " + S3_MIN_CHUNK_SIZE + " bytes: "
+                    + transfer.getMultipartUploadChunkSize();
+        }
+        if (transfer.getMultipartCopyChunkSize() != null && transfer.getMultipartCopyChunkSize() < S3_MIN_CHUNK_SIZE) {
+            return "multipartCopyChunkSize must be at least " + S3_MIN_CHUNK_SIZE + " bytes: "
+                    + transfer.getMultipartCopyChunkSize();
+        }
+        return null;
+    }
+
+    /**
+     * @return the reason the connection pool settings are invalid, null if they are valid
+     */
+    static String checkConnectionPool(ConfigConnectionPool pool) {
+        if (pool.getSize() != null && pool.getSize() < 1) {
+            return "size must be positive: " + pool.getSize();
+        }
+        if (pool.getMaxPerRoute() != null && pool.getMaxPerRoute() < 1) {
+            return "maxPerRoute must be positive: " + pool.getMaxPerRoute();
+        }
+        if (pool.getSize() != null && pool.getMaxPerRoute() != null && pool.getMaxPerRoute() > pool.getSize()) {
+            return "maxPerRoute " + pool.getMaxPerRoute() + " exceeds size " + pool.getSize();
+        }
+        if (pool.getIdleTime() != null && pool.getIdleTime() < 1) {
+            return "idleTime must be positive: " + pool.getIdleTime();
+        }
+        if (pool.getKeepAliveDuration() != null && pool.getKeepAliveDuration() < 1) {
+            return "keepAliveDuration must be positive: " + pool.getKeepAliveDuration();
+        }
+        return null;
+    }
+
+    /**
+     * Validate the {@code httpclient.connection} attributes of a repository, so invalid ones fail the repository
+     * before it is updated. Unknown attributes are ignored by Nexus, they are only logged.
+     *
+     * @return the reason the attributes are invalid, null if they are valid
+     */
+    public String checkRepositoryConnection(String repository, Map<String, Map<String, Object>> attributes) {
+        Map<String, Object> httpclient = ConfigValidator.facet(attributes, "httpclient");
+        Object connection = httpclient == null ? null : httpclient.get("connection");
+        if (connection == null) {
+            return null;
+        }
+        if (!(connection instanceof Map)) {
+            return "httpclient.connection must be a map";
+        }
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) connection).entrySet()) {
+            String key = String.valueOf(entry.getKey());
+            Object value = entry.getValue();
+            int[] range = REPOSITORY_CONNECTION_RANGES.get(key);
+            if (value == null) {
+                continue;
+            }
+            if (range != null) {
+                if (!(value instanceof Number) || ((Number) value).doubleValue() != ((Number) value).intValue()) {
+                    return "httpclient.connection." + key + " must be a whole number: " + value;
+                }
+                int number = ((Number) value).intValue();
+                if (number < range[0] || number > range[1]) {
+                    return "httpclient.connection." + key + " must be between " + range[0] + " and " + range[1] + ": " + value;
+                }
+            } else if (REPOSITORY_CONNECTION_FLAGS.contains(key)) {
+                if (!(value instanceof Boolean)) {
+                    return "httpclient.connection." + key + " must be true or false: " + value;
+                }
+            } else if ("userAgentSuffix".equals(key)) {
+                if (!(value instanceof String)) {
+                    return "httpclient.connection.userAgentSuffix must be a string: " + value;
+                }
+            } else {
+                log.warn("Ignoring unknown attribute httpclient.connection.{} of repository {}, connection pool settings "
+                        + "are shared by all repositories and set with core.connectionPool", key, repository);
+            }
+        }
+        return null;
+    }
+
+    private Path file() {
+        return applicationDirectories.getWorkDirectory("casc").toPath().resolve(FILE_NAME);
+    }
+
+    private Properties loadDigests() {
+        Properties digests = new Properties();
+        Path file = file();
+        if (Files.exists(file)) {
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                digests.load(reader);
+            } catch (IOException e) {
+                log.warn("Could not read {}, proxies with authentication are applied again", file, e);
+            }
+        }
+        return digests;
+    }
+
+    private void saveDigests(Properties digests) {
+        Path file = file();
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            digests.store(writer, "Digests of the HTTP proxy settings applied by casc");
+        } catch (IOException e) {
+            log.warn("Could not write {}", file, e);
+        }
+    }
+}
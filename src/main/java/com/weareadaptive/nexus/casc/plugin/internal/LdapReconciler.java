@@ -0,0 +1,86 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+import com.weareadaptive.nexus.casc.plugin.internal.config.ConfigLdapCache;
+import com.weareadaptive.nexus.casc.plugin.internal.config.ConfigLdapServer;
+import org.eclipse.sisu.inject.BeanLocator;
+import org.sonatype.goodies.common.ComponentSupport;
+import org.sonatype.nexus.common.app.ApplicationDirectories;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Looks up the LDAP servers of Nexus, reconciled by {@link LdapServers}.
+ * <p>
+ * The LDAP plugin is an optional import of the bundle, so its classes are only referred to by {@link LdapServers},
+ * loaded once LDAP servers are configured: without the LDAP plugin the other sections are still applied.
+ * <p>
+ * The authentication and authorization caches of all realms, LDAP included, expire after
+ * {@value #CACHE_TIME_TO_LIVE}, which {@link #cacheProperties(ConfigLdapCache)} returns to be written to
+ * {@code etc/nexus.properties}.
+ */
+@Named
+@Singleton
+public class LdapReconciler extends ComponentSupport {
+    static final String LDAP = "ldap";
+    static final String LDAPS = "ldaps";
+    static final int LDAP_PORT = 389;
+    static final int LDAPS_PORT = 636;
+
+    static final String AUTH_NONE = "none";
+    static final List<String> AUTH_SCHEMES = Arrays.asList(AUTH_NONE, "simple", "DIGEST-MD5", "CRAM-MD5");
+
+    static final String CACHE_TIME_TO_LIVE = "nexus.shiro.cache.defaultTimeToLive";
+
+    private final Supplier<LdapServers> lookup;
+
+    @Inject
+    public LdapReconciler(final BeanLocator beanLocator, final ApplicationDirectories applicationDirectories) {
+        this(() -> LdapServers.lookup(beanLocator,
+                applicationDirectories.getWorkDirectory("casc").toPath().resolve(LdapServers.FILE_NAME)));
+    }
+
+    LdapReconciler(Supplier<LdapServers> lookup) {
+        this.lookup = lookup;
+    }
+
+    /**
+     * @return the LDAP servers of Nexus, null if the LDAP plugin is not installed
+     */
+    LdapServers servers() {
+        try {
+            LdapServers servers = lookup.get();
+            if (servers == null) {
+                log.error("The LDAP plugin is not running, ldap.servers are not applied");
+            }
+            return servers;
+        } catch (LinkageError e) {
+            log.error("The LDAP plugin is not installed, ldap.servers are not applied: {}", e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * @return the {@code nexus.properties} settings of the cache
+     */
+    static Map<String, String> cacheProperties(ConfigLdapCache cache) {
+        Map<String, String> properties = new LinkedHashMap<>();
+        if (cache.getTimeToLive() != null) {
+            properties.put(CACHE_TIME_TO_LIVE, cache.getTimeToLive() + "s");
+        }
+        return properties;
+    }
+
+    static int port(ConfigLdapServer serverConfig) {
+        if (serverConfig.getPort() != null) {
+            return serverConfig.getPort();
+        }
+        return LDAPS.equals(serverConfig.getProtocol()) ? LDAPS_PORT : LDAP_PORT;
+    }
+}
@@ -0,0 +1,263 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+import com.google.inject.Key;
+import com.weareadaptive.nexus.casc.plugin.internal.config.ConfigLdapMapping;
+import com.weareadaptive.nexus.casc.plugin.internal.config.ConfigLdapServer;
+import org.eclipse.sisu.inject.BeanEntry;
+import org.eclipse.sisu.inject.BeanLocator;
+import org.sonatype.goodies.common.ComponentSupport;
+import org.sonatype.nexus.ldap.internal.persist.LdapConfigurationManager;
+import org.sonatype.nexus.ldap.internal.persist.entity.Connection;
+import org.sonatype.nexus.ldap.internal.persist.entity.LdapConfiguration;
+import org.sonatype.nexus.ldap.internal.persist.entity.Mapping;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * The LDAP servers of Nexus during a run, by name in lookup order, reconciled against the configured servers.
+ * <p>
+ * Every server update drops the connections and the cached users of the server, so a server is only updated if one of
+ * its connection or mapping settings differ, and the order of the servers, in which users are looked up, is only set
+ * if it changed. Nexus may return the system password masked or encrypted, so it is not compared: a salted digest of
+ * the system password applied to each server is kept in {@code <data-dir>/casc/ldap-servers.properties}
+ * instead, like the one of the proxy passwords of {@link HttpClientReconciler}. A server without a digest, e.g. one
+ * created before, is updated once.
+ * <p>
+ * This is the only class referring to the LDAP plugin, it is loaded by {@link LdapReconciler} once LDAP servers are
+ * configured.
+ */
+final class LdapServers extends ComponentSupport {
+    static final String FILE_NAME = "ldap-servers.properties";
+
+    private static final String SYSTEM_PASSWORD = "systemPassword";
+
+    private final LdapConfigurationManager ldapConfigurationManager;
+    private final Path digestsFile;
+    private final Map<String, LdapConfiguration> servers = new LinkedHashMap<>();
+    private final Properties digests = new Properties();
+
+    /**
+     * @param digestsFile The file of the digests of the applied servers
+     */
+    LdapServers(LdapConfigurationManager ldapConfigurationManager, Path digestsFile) {
+        this.ldapConfigurationManager = ldapConfigurationManager;
+        this.digestsFile = digestsFile;
+        ldapConfigurationManager.listLdapServerConfigurations().stream()
+                .sorted(Comparator.comparingInt(LdapConfiguration::getOrder))
+                .forEach(server -> servers.putIfAbsent(server.getName(), server));
+        loadDigests();
+    }
+
+    /**
+     * @return the servers of the LDAP configuration manager of Nexus, null if there is none
+     */
+    static LdapServers lookup(BeanLocator beanLocator, Path digestsFile) {
+        for (BeanEntry<?, LdapConfigurationManager> entry : beanLocator.locate(Key.get(LdapConfigurationManager.class))) {
+            return new LdapServers(entry.getValue(), digestsFile);
+        }
+        return null;
+    }
+
+    /**
+     * @return the names of the servers in lookup order
+     */
+    List<String> names() {
+        return new ArrayList<>(servers.keySet());
+    }
+
+    /**
+     * @return true if the server was created or updated, false if it is up to date
+     */
+    boolean apply(ConfigLdapServer serverConfig) {
+        Connection connection = connection(serverConfig);
+        Mapping mapping = mapping(serverConfig.getMapping());
+        Map<String, Object> desired = settings(connection, mapping);
+        String password = Objects.toString(connection.getSystemPassword(), "");
+
+        LdapConfiguration existing = servers.get(serverConfig.getName());
+        if (existing != null) {
+            Map<String, Object> current = settings(existing.getConnection(), existing.getMapping());
+            List<String> changed = desired.keySet().stream()
+                    .filter(key -> !Objects.equals(desired.get(key), current.get(key)))
+                    .collect(toList());
+            if (!HttpClientReconciler.matches(digests.getProperty(serverConfig.getName()), serverConfig.getName(), password)) {
+                changed.add(SYSTEM_PASSWORD);
+            }
+            if (changed.isEmpty()) {
+                log.debug("LDAP server {} is up to date", serverConfig.getName());
+                return false;
+            }
+            log.info("Updating {} of LDAP server {}", changed, serverConfig.getName());
+            existing.setConnection(connection);
+            existing.setMapping(mapping);
+            ldapConfigurationManager.updateLdapServerConfiguration(existing);
+            saveDigest(serverConfig.getName(), HttpClientReconciler.digest(serverConfig.getName(), password));
+            return true;
+        }
+
+        LdapConfiguration server = ldapConfigurationManager.newConfiguration();
+        server.setName(serverConfig.getName());
+        server.setConnection(connection);
+        server.setMapping(mapping);
+        String id = ldapConfigurationManager.addLdapServerConfiguration(server);
+        if (id != null) {
+            server.setId(id);
+        }
+        servers.put(serverConfig.getName(), server);
+        saveDigest(serverConfig.getName(), HttpClientReconciler.digest(serverConfig.getName(), password));
+        log.info("Created LDAP server {}", serverConfig.getName());
+        return true;
+    }
+
+    /**
+     * Look up users in the configured servers first, in order, then in the other existing servers
+     *
+     * @param names The configured servers in order
+     * @return the names of the servers in the order set, null if the order is up to date
+     */
+    List<String> applyOrder(List<String> names) {
+        List<String> desired = new ArrayList<>();
+        names.stream().filter(servers::containsKey).forEach(desired::add);
+        servers.keySet().stream().filter(name -> !desired.contains(name)).forEach(desired::add);
+        if (desired.equals(names())) {
+            return null;
+        }
+        ldapConfigurationManager.setServerOrder(desired.stream().map(name -> servers.get(name).getId()).collect(toList()));
+        Map<String, LdapConfiguration> ordered = new LinkedHashMap<>();
+        desired.forEach(name -> ordered.put(name, servers.get(name)));
+        servers.clear();
+        servers.putAll(ordered);
+        return desired;
+    }
+
+    void delete(String name) {
+        LdapConfiguration server = servers.get(name);
+        if (server != null) {
+            ldapConfigurationManager.deleteLdapServerConfiguration(server.getId());
+            servers.remove(name);
+            saveDigest(name, null);
+        }
+    }
+
+    private static Connection connection(ConfigLdapServer serverConfig) {
+        Connection connection = new Connection();
+        connection.setHost(new Connection.Host(Connection.Protocol.valueOf(serverConfig.getProtocol()),
+                serverConfig.getHost(), LdapReconciler.port(serverConfig)));
+        connection.setSearchBase(serverConfig.getSearchBase());
+        connection.setAuthScheme(serverConfig.getAuthScheme());
+        connection.setSaslRealm(serverConfig.getSaslRealm());
+        if (!LdapReconciler.AUTH_NONE.equals(serverConfig.getAuthScheme())) {
+            connection.setSystemUsername(serverConfig.getSystemUsername());
+            connection.setSystemPassword(serverConfig.getSystemPassword());
+        }
+        connection.setUseTrustStore(serverConfig.getUseTrustStore());
+        connection.setConnectionTimeout(serverConfig.getConnectionTimeout());
+        connection.setConnectionRetryDelay(serverConfig.getConnectionRetryDelay());
+        connection.setMaxIncidentsCount(serverConfig.getMaxIncidentsCount());
+        return connection;
+    }
+
+    private static Mapping mapping(ConfigLdapMapping mappingConfig) {
+        ConfigLdapMapping config = mappingConfig != null ? mappingConfig : new ConfigLdapMapping();
+        Mapping mapping = new Mapping();
+        mapping.setUserBaseDn(config.getUserBaseDn());
+        mapping.setUserSubtree(Boolean.TRUE.equals(config.getUserSubtree()));
+        mapping.setUserObjectClass(config.getUserObjectClass());
+        mapping.setLdapFilter(config.getLdapFilter());
+        mapping.setUserIdAttribute(config.getUserIdAttribute());
+        mapping.setUserRealNameAttribute(config.getUserRealNameAttribute());
+        mapping.setEmailAddressAttribute(config.getEmailAddressAttribute());
+        mapping.setUserPasswordAttribute(config.getUserPasswordAttribute());
+        mapping.setLdapGroupsAsRoles(Boolean.TRUE.equals(config.getLdapGroupsAsRoles()));
+        if (mapping.isLdapGroupsAsRoles()) {
+            mapping.setGroupBaseDn(config.getGroupBaseDn());
+            mapping.setGroupSubtree(Boolean.TRUE.equals(config.getGroupSubtree()));
+            mapping.setGroupObjectClass(config.getGroupObjectClass());
+            mapping.setGroupIdAttribute(config.getGroupIdAttribute());
+            mapping.setGroupMemberAttribute(config.getGroupMemberAttribute());
+            mapping.setGroupMemberFormat(config.getGroupMemberFormat());
+            mapping.setUserMemberOfAttribute(config.getUserMemberOfAttribute());
+        }
+        return mapping;
+    }
+
+    /**
+     * @return the settings of a server by name except for the system password, to tell which ones changed
+     */
+    private static Map<String, Object> settings(Connection connection, Mapping mapping) {
+        Map<String, Object> settings = new LinkedHashMap<>();
+        if (connection != null) {
+            Connection.Host host = connection.getHost();
+            settings.put("protocol", host == null ? null : host.getProtocol());
+            settings.put("host", host == null ? null : host.getHostName());
+            settings.put("port", host == null ? null : host.getPort());
+            settings.put("searchBase", connection.getSearchBase());
+            settings.put("authScheme", connection.getAuthScheme());
+            settings.put("saslRealm", connection.getSaslRealm());
+            settings.put("systemUsername", connection.getSystemUsername());
+            settings.put("useTrustStore", connection.getUseTrustStore());
+            settings.put("connectionTimeout", connection.getConnectionTimeout());
+            settings.put("connectionRetryDelay", connection.getConnectionRetryDelay());
+            settings.put("maxIncidentsCount", connection.getMaxIncidentsCount());
+        }
+        if (mapping != null) {
+            settings.put("mapping.userBaseDn", mapping.getUserBaseDn());
+            settings.put("mapping.userSubtree", mapping.isUserSubtree());
+            settings.put("mapping.userObjectClass", mapping.getUserObjectClass());
+            settings.put("mapping.ldapFilter", mapping.getLdapFilter());
+            settings.put("mapping.userIdAttribute", mapping.getUserIdAttribute());
+            settings.put("mapping.userRealNameAttribute", mapping.getUserRealNameAttribute());
+            settings.put("mapping.emailAddressAttribute", mapping.getEmailAddressAttribute());
+            settings.put("mapping.userPasswordAttribute", mapping.getUserPasswordAttribute());
+            settings.put("mapping.ldapGroupsAsRoles", mapping.isLdapGroupsAsRoles());
+            settings.put("mapping.groupBaseDn", mapping.getGroupBaseDn());
+            settings.put("mapping.groupSubtree", mapping.isGroupSubtree());
+            settings.put("mapping.groupObjectClass", mapping.getGroupObjectClass());
+            settings.put("mapping.groupIdAttribute", mapping.getGroupIdAttribute());
+            settings.put("mapping.groupMemberAttribute", mapping.getGroupMemberAttribute());
+            settings.put("mapping.groupMemberFormat", mapping.getGroupMemberFormat());
+            settings.put("mapping.userMemberOfAttribute", mapping.getUserMemberOfAttribute());
+        }
+        return settings;
+    }
+
+    private void loadDigests() {
+        if (Files.exists(digestsFile)) {
+            try (Reader reader = Files.newBufferedReader(digestsFile, StandardCharsets.UTF_8)) {
+                digests.load(reader);
+            } catch (IOException e) {
+                log.warn("Could not read {}, LDAP servers are updated again", digestsFile, e);
+            }
+        }
+    }
+
+    /**
+     * @param digest The digest of the server, null to remove it
+     */
+    private void saveDigest(String name, String digest) {
+        if (digest == null) {
+            digests.remove(name);
+        } else {
+            digests.setProperty(name, digest);
+        }
+        try (Writer writer = Files.newBufferedWriter(digestsFile, StandardCharsets.UTF_8)) {
+            digests.store(writer, "Digests of the LDAP server settings applied by casc");
+        } catch (IOException e) {
+            log.warn("Could not write {}", digestsFile, e);
+        }
+    }
+}
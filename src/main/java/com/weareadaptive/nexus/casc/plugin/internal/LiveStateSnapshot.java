@@ -0,0 +1,316 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+import org.sonatype.goodies.common.ComponentSupport;
+import org.sonatype.nexus.blobstore.api.BlobStore;
+import org.sonatype.nexus.blobstore.api.BlobStoreManager;
+import org.sonatype.nexus.capability.CapabilityIdentity;
+import org.sonatype.nexus.capability.CapabilityReference;
+import org.sonatype.nexus.capability.CapabilityRegistry;
+import org.sonatype.nexus.cleanup.storage.CleanupPolicy;
+import org.sonatype.nexus.cleanup.storage.CleanupPolicyStorage;
+import org.sonatype.nexus.repository.Repository;
+import org.sonatype.nexus.repository.manager.RepositoryManager;
+import org.sonatype.nexus.repository.routing.RoutingRule;
+import org.sonatype.nexus.repository.routing.RoutingRuleStore;
+import org.sonatype.nexus.security.SecuritySystem;
+import org.sonatype.nexus.security.authz.AuthorizationManager;
+import org.sonatype.nexus.security.authz.NoSuchAuthorizationManagerException;
+import org.sonatype.nexus.security.privilege.Privilege;
+import org.sonatype.nexus.security.role.Role;
+import org.sonatype.nexus.security.user.User;
+import org.sonatype.nexus.security.user.UserManager;
+import org.sonatype.nexus.security.user.UserSearchCriteria;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * The existing state of Nexus as seen by one casc run.
+ * <p>
+ * Every kind of entity is loaded at most once per run, with one listing call instead of a lookup per configured
+ * entity. {@link #load(Set, Set)} starts loading the kinds a run is going to need in parallel; a kind which was not
+ * loaded upfront is loaded on first access. The returned maps are live: the reconcile phases update them as they
+ * create, update and delete entities, so later phases see the state after the writes of earlier ones.
+ * <p>
+ * Loading happens in the background, but the maps must only be accessed by the thread applying the configuration.
+ */
+public class LiveStateSnapshot extends ComponentSupport {
+    public enum Kind {
+        REPOSITORIES, BLOB_STORES, CLEANUP_POLICIES, ROUTING_RULES, PRIVILEGES, ROLES, USERS, CAPABILITIES
+    }
+
+    /**
+     * Max number of kinds loaded concurrently
+     */
+    static final int PARALLELISM = 4;
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private final RepositoryManager repositoryManager;
+    private final BlobStoreManager blobStoreManager;
+    private final CleanupPolicyStorage cleanupPolicyStorage;
+    private final RoutingRuleStore routingRuleStore;
+    private final SecuritySystem securitySystem;
+    private final CapabilityRegistry capabilityRegistry;
+    private final Set<String> repositoryNames;
+
+    private final Map<String, CompletableFuture<Object>> loads = new ConcurrentHashMap<>();
+    private final Map<String, AuthorizationManager> authorizationManagers = new HashMap<>();
+
+    /**
+     * @param repositoryNames The only repositories to load, e.g. when applying a few repositories selected by name.
+     *                        Null to load all repositories.
+     */
+    public LiveStateSnapshot(
+            final RepositoryManager repositoryManager,
+            final BlobStoreManager blobStoreManager,
+            final CleanupPolicyStorage cleanupPolicyStorage,
+            final RoutingRuleStore routingRuleStore,
+            final SecuritySystem securitySystem,
+            final CapabilityRegistry capabilityRegistry,
+            final Set<String> repositoryNames
+    ) {
+        this.repositoryManager = repositoryManager;
+        this.blobStoreManager = blobStoreManager;
+        this.cleanupPolicyStorage = cleanupPolicyStorage;
+        this.routingRuleStore = routingRuleStore;
+        this.securitySystem = securitySystem;
+        this.capabilityRegistry = capabilityRegistry;
+        this.repositoryNames = repositoryNames;
+    }
+
+    /**
+     * Start loading the given kinds in parallel, without waiting for them to be loaded
+     *
+     * @param roleSources The sources to load roles of if {@link Kind#ROLES} is given
+     */
+    public void load(Set<Kind> kinds, Set<String> roleSources) {
+        Map<String, Callable<Object>> loaders = new LinkedHashMap<>();
+        for (Kind kind : kinds) {
+            switch (kind) {
+                case REPOSITORIES:
+                    loaders.put(kind.name(), this::loadRepositories);
+                    break;
+                case BLOB_STORES:
+                    loaders.put(kind.name(), this::loadBlobStores);
+                    break;
+                case CLEANUP_POLICIES:
+                    loaders.put(kind.name(), this::loadCleanupPolicies);
+                    break;
+                case ROUTING_RULES:
+                    loaders.put(kind.name(), this::loadRoutingRules);
+                    break;
+                case PRIVILEGES:
+                    loaders.put(kind.name(), () -> loadPrivileges(authorizationManager(UserManager.DEFAULT_SOURCE)));
+                    break;
+                case ROLES:
+                    for (String source : roleSources) {
+                        loaders.put(rolesKey(source), () -> loadRoles(authorizationManager(source)));
+                    }
+                    break;
+                case USERS:
+                    loaders.put(kind.name(), this::loadUsers);
+                    break;
+                case CAPABILITIES:
+                    loaders.put(kind.name(), this::loadCapabilities);
+                    break;
+            }
+        }
+        if (loaders.isEmpty()) {
+            return;
+        }
+
+        log.debug("Loading {}", loaders.keySet());
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(PARALLELISM, loaders.size()), runnable -> {
+            Thread thread = new Thread(runnable, "casc-snapshot-" + THREAD_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            loaders.forEach((key, loader) -> loads.computeIfAbsent(key,
+                    k -> CompletableFuture.supplyAsync(() -> call(loader), executor)));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Drop the given kinds, so they are loaded again on next access, e.g. by the background reconciliation after the
+     * critical phase wrote to them from another thread
+     */
+    public void invalidate(Set<Kind> kinds) {
+        loads.keySet().removeIf(key -> kinds.contains(Kind.valueOf(key.split(":", 2)[0])));
+    }
+
+    /**
+     * @return the existing repositories by name
+     */
+    public Map<String, Repository> repositories() {
+        return get(Kind.REPOSITORIES.name(), this::loadRepositories);
+    }
+
+    /**
+     * @return true if {@link #repositories()} holds all existing repositories, not only some selected by name
+     */
+    public boolean hasAllRepositories() {
+        return repositoryNames == null;
+    }
+
+    /**
+     * @return the existing blob stores by name
+     */
+    public Map<String, BlobStore> blobStores() {
+        return get(Kind.BLOB_STORES.name(), this::loadBlobStores);
+    }
+
+    /**
+     * @return the existing cleanup policies by name
+     */
+    public Map<String, CleanupPolicy> cleanupPolicies() {
+        return get(Kind.CLEANUP_POLICIES.name(), this::loadCleanupPolicies);
+    }
+
+    /**
+     * @return the existing routing rules by name
+     */
+    public Map<String, RoutingRule> routingRules() {
+        return get(Kind.ROUTING_RULES.name(), this::loadRoutingRules);
+    }
+
+    /**
+     * @return the authorization manager of the source, looked up once per run
+     */
+    public synchronized AuthorizationManager authorizationManager(String source) throws NoSuchAuthorizationManagerException {
+        AuthorizationManager authManager = authorizationManagers.get(source);
+        if (authManager == null) {
+            authManager = securitySystem.getAuthorizationManager(source);
+            authorizationManagers.put(source, authManager);
+        }
+        return authManager;
+    }
+
+    /**
+     * @return the existing privileges of the given authorization manager by id
+     */
+    public Map<String, Privilege> privileges(AuthorizationManager authManager) {
+        return get(Kind.PRIVILEGES.name(), () -> loadPrivileges(authManager));
+    }
+
+    /**
+     * @return the existing roles of the given authorization manager by id
+     */
+    public Map<String, Role> roles(AuthorizationManager authManager) {
+        return get(rolesKey(authManager.getSource()), () -> loadRoles(authManager));
+    }
+
+    /**
+     * @return the existing users of the {@code default} source by id. Users of other sources, e.g. LDAP, are not
+     * loaded as there may be a lot of them.
+     */
+    public Map<String, User> users() {
+        return get(Kind.USERS.name(), this::loadUsers);
+    }
+
+    /**
+     * @return the existing capabilities by id
+     */
+    public Map<CapabilityIdentity, CapabilityReference> capabilities() {
+        return get(Kind.CAPABILITIES.name(), this::loadCapabilities);
+    }
+
+    private Map<String, Repository> loadRepositories() {
+        if (repositoryNames == null) {
+            return byKey(repositoryManager.browse(), Repository::getName);
+        }
+        Map<String, Repository> repositories = new LinkedHashMap<>();
+        repositoryNames.stream()
+                .map(repositoryManager::get)
+                .filter(Objects::nonNull)
+                .forEach(repository -> repositories.put(repository.getName(), repository));
+        return repositories;
+    }
+
+    private Map<String, BlobStore> loadBlobStores() {
+        return byKey(blobStoreManager.browse(), blobStore -> blobStore.getBlobStoreConfiguration().getName());
+    }
+
+    private Map<String, CleanupPolicy> loadCleanupPolicies() {
+        return byKey(cleanupPolicyStorage.getAll(), CleanupPolicy::getName);
+    }
+
+    private Map<String, RoutingRule> loadRoutingRules() {
+        return byKey(routingRuleStore.list(), RoutingRule::name);
+    }
+
+    private static Map<String, Privilege> loadPrivileges(AuthorizationManager authManager) {
+        return byKey(authManager.listPrivileges(), Privilege::getId);
+    }
+
+    private static Map<String, Role> loadRoles(AuthorizationManager authManager) {
+        return byKey(authManager.listRoles(), Role::getRoleId);
+    }
+
+    private Map<String, User> loadUsers() {
+        UserSearchCriteria criteria = new UserSearchCriteria();
+        criteria.setSource(UserManager.DEFAULT_SOURCE);
+        return byKey(securitySystem.searchUsers(criteria), User::getUserId);
+    }
+
+    private Map<CapabilityIdentity, CapabilityReference> loadCapabilities() {
+        Map<CapabilityIdentity, CapabilityReference> capabilities = new LinkedHashMap<>();
+        capabilityRegistry.getAll().forEach(reference -> capabilities.put(reference.context().id(), reference));
+        return capabilities;
+    }
+
+    private static String rolesKey(String source) {
+        return Kind.ROLES.name() + ":" + source;
+    }
+
+    private static <K, V> Map<K, V> byKey(Iterable<? extends V> values, Function<V, K> key) {
+        Map<K, V> map = new LinkedHashMap<>();
+        for (V value : values) {
+            map.putIfAbsent(key.apply(value), value);
+        }
+        return map;
+    }
+
+    /**
+     * Wait for a kind loaded in the background, or load it now if it was not. A failed background load is retried, so
+     * the error surfaces in the phase which needs the entities.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T get(String key, Callable<T> loader) {
+        CompletableFuture<Object> load = loads.get(key);
+        if (load != null) {
+            try {
+                return (T) load.join();
+            } catch (CompletionException e) {
+                log.debug("Loading {} in the background failed, retrying", key, e.getCause());
+            }
+        }
+        T value = call(loader);
+        loads.put(key, CompletableFuture.completedFuture(value));
+        return value;
+    }
+
+    private static <T> T call(Callable<T> loader) {
+        try {
+            return loader.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -20,17 +20,17 @@ import org.sonatype.nexus.repository.Repository;
 import org.sonatype.nexus.repository.routing.*;
 import org.sonatype.nexus.repository.config.Configuration;
 import org.sonatype.nexus.repository.manager.RepositoryManager;
+import org.sonatype.nexus.scheduling.TaskInfo;
 import org.sonatype.nexus.security.SecurityApi;
 import org.sonatype.nexus.security.SecuritySystem;
 import org.sonatype.nexus.security.authz.AuthorizationManager;
 import org.sonatype.nexus.security.authz.NoSuchAuthorizationManagerException;
-import org.sonatype.nexus.security.privilege.NoSuchPrivilegeException;
 import org.sonatype.nexus.security.privilege.Privilege;
 import org.sonatype.nexus.security.realm.RealmManager;
-import org.sonatype.nexus.security.role.NoSuchRoleException;
 import org.sonatype.nexus.security.role.Role;
 import org.sonatype.nexus.security.role.RoleIdentifier;
 import org.sonatype.nexus.security.subject.FakeAlmightySubject;
+import org.sonatype.nexus.selector.SelectorConfiguration;
 import org.sonatype.nexus.security.user.*;
 import org.yaml.snakeyaml.LoaderOptions;
 import org.yaml.snakeyaml.Yaml;
@@ -44,6 +44,10 @@ import java.lang.reflect.InvocationTargetException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import static java.util.stream.Collectors.*;
@@ -54,6 +58,10 @@ import static java.util.stream.Collectors.*;
 @ManagedLifecycle(phase = ManagedLifecycle.Phase.TASKS)
 @Singleton
 public class NexusCascPlugin extends StateGuardLifecycleSupport {
+    public static final String ENV_ASYNC = "NEXUS_CASC_ASYNC";
+
+    private static final String ADMIN_ROLE = "nx-admin";
+
     private final BaseUrlManager baseUrlManager;
     private final CoreApi coreApi;
     private final SecurityApi securityApi;
@@ -65,6 +73,30 @@ public class NexusCascPlugin extends StateGuardLifecycleSupport {
     private final RealmManager realmManager;
     private final CapabilityRegistry capabilityRegistry;
     private final RoutingRuleStore routingRuleStore;
+    private final ApplyJournal journal;
+    private final ReconcileStatus status;
+    private final ReconcileLeaderElection leaderElection;
+    private final RoutingRuleMatchers routingRuleMatchers;
+    private final StagedDeletions stagedDeletions;
+    private final DeletionQueue deletionQueue;
+    private final TaskReconciler taskReconciler;
+    private final ProxyWarmup proxyWarmup;
+    private final ContentSelectorReconciler contentSelectorReconciler;
+    private final LdapReconciler ldapReconciler;
+    private final HttpClientReconciler httpClientReconciler;
+    private final RecipeSchemas recipeSchemas;
+
+    private ExecutorService executor;
+
+    /**
+     * Existing state of Nexus for the run in progress
+     */
+    private LiveStateSnapshot snapshot;
+
+    /**
+     * Prune thresholds of the run in progress
+     */
+    private PrunePlanner prunePlanner;
 
     @Inject
     public NexusCascPlugin(
@@ -78,7 +110,19 @@ public class NexusCascPlugin extends StateGuardLifecycleSupport {
             final BlobStoreManager blobStoreManager,
             final RealmManager realmManager,
             final CapabilityRegistry capabilityRegistry,
-            final RoutingRuleStore routingRuleStore
+            final RoutingRuleStore routingRuleStore,
+            final ApplyJournal journal,
+            final ReconcileStatus status,
+            final ReconcileLeaderElection leaderElection,
+            final RoutingRuleMatchers routingRuleMatchers,
+            final StagedDeletions stagedDeletions,
+            final HttpClientReconciler httpClientReconciler,
+            final RecipeSchemas recipeSchemas,
+            final DeletionQueue deletionQueue,
+            final TaskReconciler taskReconciler,
+            final ProxyWarmup proxyWarmup,
+            final ContentSelectorReconciler contentSelectorReconciler,
+            final LdapReconciler ldapReconciler
         ) throws IllegalAccessException, NoSuchMethodException, InvocationTargetException {
         this.baseUrlManager = baseUrlManager;
         this.coreApi = coreApi;
@@ -91,6 +135,18 @@ public class NexusCascPlugin extends StateGuardLifecycleSupport {
         this.realmManager = realmManager;
         this.capabilityRegistry = capabilityRegistry;
         this.routingRuleStore = routingRuleStore;
+        this.journal = journal;
+        this.status = status;
+        this.leaderElection = leaderElection;
+        this.routingRuleMatchers = routingRuleMatchers;
+        this.stagedDeletions = stagedDeletions;
+        this.httpClientReconciler = httpClientReconciler;
+        this.recipeSchemas = recipeSchemas;
+        this.deletionQueue = deletionQueue;
+        this.taskReconciler = taskReconciler;
+        this.proxyWarmup = proxyWarmup;
+        this.contentSelectorReconciler = contentSelectorReconciler;
+        this.ldapReconciler = ldapReconciler;
     }
 
     @Override
@@ -102,130 +158,639 @@ public class NexusCascPlugin extends StateGuardLifecycleSupport {
         }
 
         Config config;
+        String yml;
         Yaml yaml = new Yaml(new Constructor(Config.class, new LoaderOptions()));
         try {
-            String yml = interpolator.interpolate(new String(Files.readAllBytes(Paths.get(configFile))));
+            yml = interpolator.interpolate(new String(Files.readAllBytes(Paths.get(configFile))));
             config = yaml.load(yml);
         } catch (IOException e) {
             log.error("Failed to load config file from {}", configFile, e);
             return;
         }
 
-        ConfigCore core = config.getCore();
-        if (core != null) {
-            applyBaseUrlConfig(core);
-            applyHTTPConfig(core);
+        ApplySelection selection;
+        try {
+            selection = ApplySelection.from(config.getApply(), System::getenv);
+        } catch (IllegalArgumentException e) {
+            log.error("Invalid apply selection: {}", e.getMessage());
+            return;
         }
 
-        baseUrlManager.detectAndHoldUrl();
+        if (!selection.isEverything()) {
+            log.info("Applying a partial configuration: {}", selection);
+        }
 
+        String asyncEnv = System.getenv(ENV_ASYNC);
+        boolean async = asyncEnv != null && !asyncEnv.trim().isEmpty()
+                ? Boolean.parseBoolean(asyncEnv.trim())
+                : config.getAsync() != null && config.getAsync();
+
+        // etc/nexus.properties is read by each node on startup, followers need the settings as much as the leader
+        applyNodeSettings(config, selection);
+
+        String digest = ApplyJournal.digest(yml, selection.toString());
+        ReconcileLeaderElection.Lease lease = leaderElection.tryAcquire(digest);
+        if (lease == ReconcileLeaderElection.Lease.APPLIED_ELSEWHERE) {
+            status.skipped();
+            return;
+        }
+        if (lease == ReconcileLeaderElection.Lease.HELD_ELSEWHERE) {
+            if (async) {
+                // Waiting for the leader may take up to the lock wait, which must not delay the startup of Nexus
+                log.info("Waiting in the background for the casc leader to finish");
+                executor = newReconcileExecutor();
+                executor.submit(() -> {
+                    try {
+                        if (!leaderElection.acquire(digest)) {
+                            status.skipped();
+                        } else if (prepare(config, selection, digest, true)) {
+                            applyCriticalPhase(config, selection);
+                            applyBulkPhase(config, selection, digest);
+                        }
+                    } catch (InterruptedException e) {
+                        log.info("Stopped waiting for the casc leader");
+                        Thread.currentThread().interrupt();
+                    } catch (RuntimeException e) {
+                        log.error("Background casc reconciliation failed", e);
+                    }
+                });
+                executor.shutdown();
+                return;
+            }
+            if (!leaderElection.acquire(digest)) {
+                status.skipped();
+                return;
+            }
+        }
+
+        if (!prepare(config, selection, digest, async)) {
+            return;
+        }
+
+        if (!async) {
+            boolean completed = false;
+            try {
+                apply(config, selection);
+                journal.complete();
+                countStagedDeletionRun(config, selection);
+                status.completed();
+                completed = true;
+                startWarmup(config, selection);
+            } catch (Exception e) {
+                status.failed(e);
+                throw e;
+            } finally {
+                journal.close();
+                snapshot = null;
+                leaderElection.release(completed ? digest : null);
+            }
+            return;
+        }
+
+        applyCriticalPhase(config, selection);
+        log.info("Critical configuration applied, reconciling the remaining configuration in the background");
+        executor = newReconcileExecutor();
+        executor.submit(() -> applyBulkPhase(config, selection, digest));
+        executor.shutdown();
+    }
+
+    /**
+     * Start the run of the configuration with the given digest, once this node is the leader: load the snapshot and
+     * validate the configuration against it
+     *
+     * @return false if the configuration is invalid, in which case nothing is applied and the run is over
+     */
+    private boolean prepare(Config config, ApplySelection selection, String digest, boolean async) {
+        try {
+            return startRun(config, selection, digest, async);
+        } catch (RuntimeException e) {
+            log.error("Could not start the casc run", e);
+            endFailedRun(e);
+            throw e;
+        }
+    }
+
+    private boolean startRun(Config config, ApplySelection selection, String digest, boolean async) {
+        journal.begin(digest);
+        status.started(async);
+        routingRuleMatchers.clear();
+        snapshot = loadSnapshot(config, selection);
+
+        // Nothing is applied unless the whole configuration is valid. Only the checks against the existing state wait
+        // for the snapshot to be loaded.
+        ConfigValidator validator = new ConfigValidator(routingRuleMatchers, httpClientReconciler, recipeSchemas,
+                contentSelectorReconciler);
+        List<String> errors = new ArrayList<>(validator.validate(config));
+        errors.addAll(validator.validateExisting(config, selection, snapshot));
         ConfigRepository repository = config.getRepository();
-        if (repository != null) {
-            applyRepositoryConfig(repository);
+        if (repository != null && repository.getRepositories() != null
+                && selection.includesSection(ApplySelection.REPOSITORY, "repositories")) {
+            GroupGraph groupGraph = GroupGraph.build(repository, snapshot.repositories());
+            errors.addAll(groupGraph.check(repository.getGroupLimits()));
+            status.groups(groupGraph.report());
+        }
+        if (!errors.isEmpty()) {
+            log.error("Invalid configuration, nothing is applied:\n  {}", String.join("\n  ", errors));
+            endFailedRun(new IllegalArgumentException(errors.size() + " configuration errors: " + String.join("; ", errors)));
+            return false;
+        }
+
+        prunePlanner = new PrunePlanner(config.getPrune());
+        stagedDeletions.load();
+        deletionQueue.load();
+        if (prunePlanner.isDeleteInBackground() || deletionQueue.size() > 0) {
+            deletionQueue.start(prunePlanner.getDeletionsPerMinute());
+        }
+        return true;
+    }
+
+    /**
+     * Apply the critical configuration of async mode, ending the run if it fails
+     */
+    private void applyCriticalPhase(Config config, ApplySelection selection) {
+        try {
+            applyCritical(config, selection);
+        } catch (RuntimeException e) {
+            endFailedRun(e);
+            throw e;
+        }
+        // Nexus may change the security entities while the remaining configuration waits for the executor
+        snapshot.invalidate(EnumSet.of(LiveStateSnapshot.Kind.PRIVILEGES, LiveStateSnapshot.Kind.ROLES,
+                LiveStateSnapshot.Kind.USERS));
+    }
+
+    /**
+     * End a run which failed before it was completed, releasing the lease so another node can take over
+     */
+    private void endFailedRun(Exception e) {
+        journal.close();
+        snapshot = null;
+        leaderElection.release(null);
+        status.failed(e);
+    }
+
+    /**
+     * Count the completed run for the staged repository deletions, only if it applied the configured repositories
+     * without failures, so a broken configuration can not bring the deletions closer
+     */
+    private void countStagedDeletionRun(Config config, ApplySelection selection) {
+        if (config.getRepository() == null || !selection.includesSection(ApplySelection.REPOSITORY, "repositories")) {
+            log.debug("Not counting the run for staged deletions, it did not apply the repositories");
+        } else if (status.hasFailed("repository")) {
+            log.info("Not counting the run for staged deletions, some repositories failed");
+        } else {
+            stagedDeletions.runCompleted();
+        }
+    }
+
+    /**
+     * Apply the remaining configuration of async mode and end the run, on the background executor
+     */
+    private void applyBulkPhase(Config config, ApplySelection selection, String digest) {
+        boolean completed = false;
+        try {
+            applyBulk(config, selection);
+            journal.complete();
+            countStagedDeletionRun(config, selection);
+            status.completed();
+            completed = true;
+            startWarmup(config, selection);
+        } catch (Exception e) {
+            log.error("Background casc reconciliation failed", e);
+            status.failed(e);
+        } finally {
+            journal.close();
+            snapshot = null;
+            leaderElection.release(completed ? digest : null);
+        }
+    }
+
+    private static ExecutorService newReconcileExecutor() {
+        return Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "casc-reconcile");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        deletionQueue.stop();
+        proxyWarmup.stop();
+        if (executor != null) {
+            executor.shutdownNow();
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                log.warn("Background casc reconciliation did not stop in time, it will resume on next start");
+            }
+            executor = null;
+        }
+    }
+
+    /**
+     * Start prefetching the warm-up paths of the configured proxy repositories, once the run completed
+     */
+    private void startWarmup(Config config, ApplySelection selection) {
+        if (config.getRepository() != null && selection.includesSection(ApplySelection.REPOSITORY, "repositories")) {
+            proxyWarmup.start(config.getRepository());
+        }
+    }
+
+    /**
+     * Start loading the existing entities the configuration is going to be reconciled against
+     */
+    private LiveStateSnapshot loadSnapshot(Config config, ApplySelection selection) {
+        Set<LiveStateSnapshot.Kind> kinds = EnumSet.noneOf(LiveStateSnapshot.Kind.class);
+        Set<String> roleSources = new HashSet<>();
+        boolean allRepositories = true;
+
+        ConfigRepository repository = config.getRepository();
+        if (repository != null && selection.includesSection(ApplySelection.REPOSITORY)) {
+            if (repository.getBlobStores() != null && selection.includesSection(ApplySelection.REPOSITORY, "blobStores")) {
+                kinds.add(LiveStateSnapshot.Kind.BLOB_STORES);
+            }
+            if (repository.getCleanupPolicies() != null && selection.includesSection(ApplySelection.REPOSITORY, "cleanupPolicies")) {
+                kinds.add(LiveStateSnapshot.Kind.CLEANUP_POLICIES);
+            }
+            boolean applyRoutingRules = repository.getRoutingRules() != null && !repository.getRoutingRules().isEmpty()
+                    && selection.includesSection(ApplySelection.REPOSITORY, "routingRules");
+            if (applyRoutingRules) {
+                // Pruning routing rules needs the rules used by all repositories
+                kinds.add(LiveStateSnapshot.Kind.ROUTING_RULES);
+                kinds.add(LiveStateSnapshot.Kind.REPOSITORIES);
+            }
+            if (repository.getRepositories() != null && selection.includesSection(ApplySelection.REPOSITORY, "repositories")) {
+                kinds.add(LiveStateSnapshot.Kind.REPOSITORIES);
+                allRepositories = applyRoutingRules || !selection.literalRepositoryNames().isPresent();
+                if (repository.getRepositories().stream().anyMatch(repoConfig -> repoConfig.getRoutingRuleName() != null)) {
+                    kinds.add(LiveStateSnapshot.Kind.ROUTING_RULES);
+                }
+            }
         }
 
         ConfigSecurity security = config.getSecurity();
-        if (security != null) {
-            applySecurityConfig(security);
+        if (security != null && selection.includesSection(ApplySelection.SECURITY)) {
+            if (security.getPrivileges() != null && selection.includesSection(ApplySelection.SECURITY, "privileges")) {
+                kinds.add(LiveStateSnapshot.Kind.PRIVILEGES);
+            }
+            if (security.getRoles() != null && selection.includesSection(ApplySelection.SECURITY, "roles")) {
+                kinds.add(LiveStateSnapshot.Kind.ROLES);
+                security.getRoles().stream()
+                        .map(ConfigSecurityRole::getSource)
+                        .filter(selection::includesUserSource)
+                        .forEach(roleSources::add);
+            }
+            if (security.getUsers() != null && selection.includesSection(ApplySelection.SECURITY, "users")
+                    && selection.includesUserSource(UserManager.DEFAULT_SOURCE)) {
+                kinds.add(LiveStateSnapshot.Kind.USERS);
+            }
         }
 
-        List<ConfigCapability> capabilities = config.getCapabilities();
-        Boolean pruneCapabilitiesByType = config.getPruneCapabilitiesByType();
-        if (capabilities != null) {
-            applyCapabilitiesConfig(capabilities, pruneCapabilitiesByType == null || pruneCapabilitiesByType);
+        if (config.getCapabilities() != null && selection.includesSection(ApplySelection.CAPABILITIES)) {
+            kinds.add(LiveStateSnapshot.Kind.CAPABILITIES);
         }
+
+        LiveStateSnapshot snapshot = new LiveStateSnapshot(repositoryManager, blobStoreManager, cleanupPolicyStorage,
+                routingRuleStore, securitySystem, capabilityRegistry,
+                allRepositories ? null : selection.literalRepositoryNames().get());
+        snapshot.load(kinds, roleSources);
+        return snapshot;
     }
 
-    private void applyBaseUrlConfig(ConfigCore core) {
-        if (core.getBaseUrl() != null) {
-            String baseUrl = core.getBaseUrl().trim();
-            log.info("Setting baseUrl to {}", baseUrl);
-            coreApi.baseUrl(baseUrl);
+    /**
+     * Apply the whole configuration in order
+     */
+    private void apply(Config config, ApplySelection selection) throws Exception {
+        applyCoreSection(config, selection);
+        applyLdapSection(config, selection);
+        applyRepositorySection(config, selection);
+
+        ConfigSecurity security = config.getSecurity();
+        if (security != null && selection.includesSection(ApplySelection.SECURITY)) {
+            status.phase("security");
+            applySecurityConfig(security, selection);
         }
+
+        applyCapabilitiesSection(config, selection);
+        applyTasksSection(config, selection);
     }
-    private void applyHTTPConfig(ConfigCore core) {
-        if (core.getUserAgentCustomization() != null){
-            coreApi.userAgentCustomization(core.getUserAgentCustomization());
-            log.info("UserAgent string set with "+core.getUserAgentCustomization());
+
+    /**
+     * Apply what is needed for Nexus to be reachable and administrable: core settings, realms, anonymous access and
+     * admin users, with the LDAP servers they may be looked up in. In async mode this is all that is applied before Nexus becomes ready.
+     */
+    private void applyCritical(Config config, ApplySelection selection) {
+        applyCoreSection(config, selection);
+        applyLdapSection(config, selection);
+
+        ConfigSecurity security = config.getSecurity();
+        if (security != null && selection.includesSection(ApplySelection.SECURITY)) {
+            status.phase("security.access");
+            applySecurityAccessConfig(security, selection);
+            if (security.getUsers() != null && selection.includesSection(ApplySelection.SECURITY, "users")) {
+                List<ConfigSecurityUser> adminUsers = security.getUsers().stream()
+                        .filter(this::isAdminUser)
+                        .collect(toList());
+                // The admin users may hold configured roles, which need to exist before the users can be created
+                Set<ConfigSecurityRole> adminRoles = rolesHeldBy(security, adminUsers);
+                Set<String> adminPrivileges = adminRoles.stream()
+                        .filter(role -> role.getPrivileges() != null)
+                        .flatMap(role -> role.getPrivileges().stream())
+                        .collect(toSet());
+                applyPrivilegesConfig(security, selection, privilege -> adminPrivileges.contains(privilege.getId()));
+                applyRolesConfig(security, selection, adminRoles::contains, false);
+                adminUsers.forEach(userConfig -> applyUserConfig(userConfig, selection));
+            }
         }
+    }
 
-        if (core.getConnectionTimeout() > 0) {
-            coreApi.connectionTimeout(core.getConnectionTimeout());
-            log.info("HTTP connection timeout set to "+core.getConnectionTimeout()+" seconds");
+    /**
+     * @return the enabled configured roles the users hold, directly or through other roles
+     */
+    private static Set<ConfigSecurityRole> rolesHeldBy(ConfigSecurity security, List<ConfigSecurityUser> users) {
+        Set<ConfigSecurityRole> held = new HashSet<>();
+        if (security.getRoles() == null) {
+            return held;
+        }
+        Deque<ConfigSecurityUserRole> pending = new ArrayDeque<>();
+        users.stream().filter(user -> user.getRoles() != null).forEach(user -> pending.addAll(user.getRoles()));
+        while (!pending.isEmpty()) {
+            ConfigSecurityUserRole userRole = pending.pop();
+            String source = userRole.getSource() == null || userRole.getSource().isEmpty()
+                    ? UserManager.DEFAULT_SOURCE : userRole.getSource();
+            security.getRoles().stream()
+                    .filter(role -> role.isEnabled() && source.equals(role.getSource())
+                            && role.getId().equals(userRole.getRole()))
+                    .filter(held::add)
+                    .filter(role -> role.getRoles() != null)
+                    .forEach(role -> role.getRoles().forEach(id -> {
+                        ConfigSecurityUserRole nested = new ConfigSecurityUserRole();
+                        nested.setSource(role.getSource());
+                        nested.setRole(id);
+                        pending.push(nested);
+                    }));
         }
+        return held;
+    }
 
-        if (core.getConnectionRetryAttempts() > 0) {
-            coreApi.connectionRetryAttempts(core.getConnectionRetryAttempts());
-            log.info("HTTP connection retry attempts set to "+core.getConnectionRetryAttempts()+" times");
+    /**
+     * Apply everything {@link #applyCritical(Config, ApplySelection)} does not
+     */
+    private void applyBulk(Config config, ApplySelection selection) throws Exception {
+        applyRepositorySection(config, selection);
+
+        ConfigSecurity security = config.getSecurity();
+        if (security != null && selection.includesSection(ApplySelection.SECURITY)) {
+            status.phase("security");
+            applyPrivilegesConfig(security, selection, privilege -> true);
+            applyRolesConfig(security, selection, role -> true, true);
+            applyUsersConfig(security, selection, userConfig -> !isAdminUser(userConfig));
         }
 
-        applyHttpProxyConfig(core.getHttpProxy(), false);
-        applyHttpProxyConfig(core.getHttpsProxy(), true);
+        applyCapabilitiesSection(config, selection);
+        applyTasksSection(config, selection);
+    }
 
-        if (core.getNonProxyHosts() != null && core.getNonProxyHosts().size() > 0) {
-            String[] noProxyHosts = core.getNonProxyHosts().stream()
-                    .map(String::trim)
-                    .filter(host -> !host.isEmpty())
-                    .toArray(String[]::new);
+    private boolean isAdminUser(ConfigSecurityUser userConfig) {
+        return userConfig.getRoles() != null
+                && userConfig.getRoles().stream().anyMatch(role -> ADMIN_ROLE.equals(role.getRole()));
+    }
 
-            log.info("Setting nonProxyHosts to {}", String.join(",", noProxyHosts));
-            coreApi.nonProxyHosts(noProxyHosts);
+    private void applyCoreSection(Config config, ApplySelection selection) {
+        ConfigCore core = config.getCore();
+        if (core != null && selection.includesSection(ApplySelection.CORE)) {
+            status.phase("core");
+            applyBaseUrlConfig(core);
+            httpClientReconciler.apply(core);
         }
+
+        baseUrlManager.detectAndHoldUrl();
     }
 
-    private void applyHttpProxyConfig(ConfigHttpProxy httpProxy, Boolean isHTTPs) {
-        String removeMessage = "No proxy defined, removing any existing "+(isHTTPs ? "HTTPs": "HTTP")+" proxy";
-        if (httpProxy != null){
-            if (httpProxy.getHost() != null){
-                int portNumber = httpProxy.getPort() > 0 ? httpProxy.getPort() : 80;
-                String protocol = isHTTPs ? "HTTPs" : "HTTP";
-                String message = protocol + " proxy "+ httpProxy.getHost()+":"+ portNumber+ " is set";
-                if (httpProxy.getUsername() != null && httpProxy.getNtlmHost() != null){
-                    if (isHTTPs)
-                        coreApi.httpsProxyWithNTLMAuth(httpProxy.getHost(), portNumber, httpProxy.getUsername(), httpProxy.getPassword(), httpProxy.getNtlmHost(), httpProxy.getNtlmDomain());
-                    else
-                        coreApi.httpProxyWithNTLMAuth(httpProxy.getHost(), portNumber, httpProxy.getUsername(), httpProxy.getPassword(), httpProxy.getNtlmHost(), httpProxy.getNtlmDomain());
-                    message += " with NTLM authentication";
-                } else if (httpProxy.getUsername() != null) {
-                    if (isHTTPs)
-                        coreApi.httpsProxyWithBasicAuth(httpProxy.getHost(), portNumber, httpProxy.getUsername(), httpProxy.getPassword());
-                    else
-                        coreApi.httpProxyWithBasicAuth(httpProxy.getHost(), portNumber, httpProxy.getUsername(), httpProxy.getPassword());
-                    message += " with basic authentication";
-                } else {
-                    if (isHTTPs)
-                        coreApi.httpsProxy(httpProxy.getHost(), portNumber);
-                    else
-                        coreApi.httpProxy(httpProxy.getHost(), portNumber);
+    /**
+     * Write the settings of the node to {@code etc/nexus.properties}, on every node whether or not it is the leader:
+     * the connection pool, the S3 transfer and the LDAP cache settings
+     */
+    private void applyNodeSettings(Config config, ApplySelection selection) {
+        ConfigCore core = config.getCore();
+        if (core != null && selection.includesSection(ApplySelection.CORE)) {
+            if (core.getConnectionPool() != null) {
+                httpClientReconciler.applyConnectionPool(core.getConnectionPool());
+            }
+            if (core.getS3Transfer() != null) {
+                httpClientReconciler.applyS3Transfer(core.getS3Transfer());
+            }
+        }
+        ConfigLdap ldap = config.getLdap();
+        if (ldap != null && ldap.getCache() != null && selection.includesSection(ApplySelection.LDAP)) {
+            httpClientReconciler.writeNexusProperties(LdapReconciler.cacheProperties(ldap.getCache()), "LDAP cache");
+        }
+    }
+
+    private void applyLdapSection(Config config, ApplySelection selection) {
+        ConfigLdap ldap = config.getLdap();
+        if (ldap == null || !selection.includesSection(ApplySelection.LDAP)) {
+            return;
+        }
+        if (ldap.getServers() == null) {
+            if (ldap.getPruneServers() != null && ldap.getPruneServers()) {
+                log.warn("ldap.pruneServers has no effect when no servers are configured!");
+            }
+            return;
+        }
+        status.phase("ldap", ldap.getServers().size());
+
+        LdapServers servers = ldapReconciler.servers();
+        if (servers == null) {
+            return;
+        }
+        for (ConfigLdapServer serverConfig : ldap.getServers()) {
+            String operation = "ldapServer:" + serverConfig.getName();
+            if (alreadyApplied(operation)) {
+                continue;
+            }
+            try {
+                servers.apply(serverConfig);
+                done(operation);
+            } catch (Exception e) {
+                log.error("Could not apply LDAP server {}", serverConfig.getName(), e);
+                status.failed(operation, e);
+            }
+        }
+
+        List<String> configured = ldap.getServers().stream().map(ConfigLdapServer::getName).collect(toList());
+        if (ldap.getPruneServers() != null && ldap.getPruneServers()) {
+            List<String> existing = servers.names();
+            List<String> toPrune = existing.stream().filter(name -> !configured.contains(name)).collect(toList());
+            if (prunePlanner.approve("LDAP servers", toPrune, existing.size())) {
+                toPrune.forEach(name -> {
+                    log.info("Pruning LDAP server {}", name);
+                    try {
+                        servers.delete(name);
+                    } catch (Exception e) {
+                        log.error("Could not prune LDAP server {}", name, e);
+                    }
+                });
+            }
+        }
+
+        try {
+            List<String> order = servers.applyOrder(configured);
+            if (order != null) {
+                log.info("LDAP servers ordered as {}", order);
+            }
+        } catch (Exception e) {
+            log.error("Could not order the LDAP servers", e);
+        }
+    }
+
+    private void applyRepositorySection(Config config, ApplySelection selection) {
+        ConfigRepository repository = config.getRepository();
+        if (repository != null && selection.includesSection(ApplySelection.REPOSITORY)) {
+            status.phase("repository");
+            applyRepositoryConfig(repository, selection);
+        }
+    }
+
+    private void applyCapabilitiesSection(Config config, ApplySelection selection) throws Exception {
+        List<ConfigCapability> capabilities = config.getCapabilities();
+        Boolean pruneCapabilitiesByType = config.getPruneCapabilitiesByType();
+        if (capabilities != null && selection.includesSection(ApplySelection.CAPABILITIES)) {
+            status.phase("capabilities");
+            applyCapabilitiesConfig(capabilities, pruneCapabilitiesByType == null || pruneCapabilitiesByType, selection);
+        }
+    }
+
+    private void applyTasksSection(Config config, ApplySelection selection) {
+        List<ConfigTask> tasks = config.getTasks();
+        if (tasks == null || !selection.includesSection(ApplySelection.TASKS)) {
+            return;
+        }
+        status.phase("tasks", tasks.size());
+
+        Map<String, String> blobStoreByRepository = new HashMap<>();
+        if (config.getRepository() != null && config.getRepository().getRepositories() != null) {
+            config.getRepository().getRepositories().forEach(repoConfig -> {
+                Map<String, Object> storage = repoConfig.getAttributes() == null ? null : repoConfig.getAttributes().get("storage");
+                if (storage != null && storage.get("blobStoreName") instanceof String) {
+                    blobStoreByRepository.put(repoConfig.getName(), (String) storage.get("blobStoreName"));
                 }
-                log.info(message);
-            } else {
-                log.error("Missing proxy host name");
+            });
+        }
+        Map<String, String> schedule = new TaskStagger(config.getTaskStagger())
+                .plan(tasks, taskConfig -> TaskReconciler.blobStoreOf(taskConfig, blobStoreByRepository));
+        status.taskSchedules(schedule);
+
+        Map<String, TaskInfo> existingTasks = taskReconciler.existingTasks();
+        tasks.forEach(taskConfig -> {
+            String operation = "task:" + taskConfig.getName();
+            if (alreadyApplied(operation)) {
+                return;
             }
-        } else if (isHTTPs) {
-            coreApi.removeHTTPSProxy();
-            log.info(removeMessage);
-        } else {
-            coreApi.removeHTTPProxy();
-            log.info(removeMessage);
+            try {
+                String cron = schedule.get(taskConfig.getName());
+                if (taskReconciler.apply(taskConfig, cron, existingTasks.get(taskConfig.getName()))) {
+                    log.info("Scheduled task {} at {}", taskConfig.getName(), cron);
+                }
+                done(operation);
+            } catch (Exception e) {
+                log.error("Failed to schedule task {}", taskConfig.getName(), e);
+                status.failed(operation, e);
+            }
+        });
+    }
+
+    private void applyContentSelectors(ConfigRepository repository) {
+        status.phase("repository.contentSelectors", repository.getContentSelectors().size());
+        Map<String, SelectorConfiguration> existingSelectors = contentSelectorReconciler.existingSelectors();
+        for (ConfigContentSelector selectorConfig : repository.getContentSelectors()) {
+            String operation = "contentSelector:" + selectorConfig.getName();
+            if (alreadyApplied(operation)) {
+                continue;
+            }
+            try {
+                SelectorConfiguration applied = contentSelectorReconciler.apply(selectorConfig,
+                        existingSelectors.get(selectorConfig.getName()));
+                if (applied != null) {
+                    log.info("Content selector {} set to {}", selectorConfig.getName(), selectorConfig.getExpression());
+                    existingSelectors.put(selectorConfig.getName(), applied);
+                }
+                done(operation);
+            } catch (Exception e) {
+                log.error("Could not apply content selector {}", selectorConfig.getName(), e);
+                status.failed(operation, e);
+            }
+        }
+
+        if (repository.getPruneContentSelectors() != null && repository.getPruneContentSelectors()) {
+            Set<String> configured = repository.getContentSelectors().stream().map(ConfigContentSelector::getName).collect(toSet());
+            List<SelectorConfiguration> toPrune = existingSelectors.values().stream()
+                    .filter(selector -> !configured.contains(selector.getName()))
+                    .collect(toList());
+            if (prunePlanner.approve("content selectors", toPrune.stream().map(SelectorConfiguration::getName).collect(toList()),
+                    existingSelectors.size())) {
+                toPrune.forEach(selector -> {
+                    log.info("Pruning content selector {}", selector.getName());
+                    try {
+                        contentSelectorReconciler.delete(selector);
+                    } catch (Exception e) {
+                        // Nexus refuses to delete a selector which is still used by a privilege
+                        log.error("Could not prune content selector {}", selector.getName(), e);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Check whether an interrupted run of the same configuration already applied the operation.
+     */
+    private boolean alreadyApplied(String operation) {
+        if (journal.isDone(operation)) {
+            log.debug("Skipping {}, already applied by the interrupted run", operation);
+            status.processed(operation);
+            return true;
         }
+        return false;
     }
 
-    private void applyCapabilitiesConfig(List<ConfigCapability> capabilities, boolean pruneByType) throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
+    /**
+     * Record the operation as completed in the journal and the status.
+     */
+    private void done(String operation) {
+        journal.done(operation);
+        status.processed(operation);
+    }
+
+    private void applyBaseUrlConfig(ConfigCore core) {
+        if (core.getBaseUrl() != null) {
+            String baseUrl = core.getBaseUrl().trim();
+            log.info("Setting baseUrl to {}", baseUrl);
+            coreApi.baseUrl(baseUrl);
+        }
+    }
+
+    private void applyCapabilitiesConfig(List<ConfigCapability> capabilities, boolean pruneByType, ApplySelection selection) throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
 
         Map<CapabilityType, List<ConfigCapability>> byType = capabilities.stream()
+                .filter(cc -> selection.includesCapabilityType(cc.getType()))
                 .collect(groupingBy(
                         cc -> CapabilityType.capabilityType(cc.getType()),
                         toList()
                 ));
 
-        Map<CapabilityType, List<CapabilityContext>> existingByType = capabilityRegistry.getAll().stream()
+        Map<CapabilityIdentity, CapabilityReference> existingCapabilities = snapshot.capabilities();
+        Map<CapabilityType, List<CapabilityContext>> existingByType = existingCapabilities.values().stream()
                 .map(CapabilityReference::context)
+                .filter(context -> byType.containsKey(context.type()))
                 .collect(groupingBy(CapabilityContext::type, toCollection(ArrayList::new)));
 
+        int existingOfTypes = existingByType.values().stream().mapToInt(List::size).sum();
+        List<CapabilityContext> toRemove = new ArrayList<>();
+
+        status.phase("capabilities", byType.values().stream().mapToInt(List::size).sum());
         for (Map.Entry<CapabilityType, List<ConfigCapability>> ent : byType.entrySet()) {
             CapabilityType type = ent.getKey();
-            log.info("type={}", type);
+            log.debug("type={}", type);
             List<CapabilityContext> existingWithType = existingByType.get(type);
 
             for (ConfigCapability capabilityConfig : ent.getValue()) {
@@ -267,49 +832,81 @@ public class NexusCascPlugin extends StateGuardLifecycleSupport {
                     boolean enabled = capabilityConfig.getEnabled() == null ? existing.isEnabled() : capabilityConfig.getEnabled();
                     CapabilityIdentity id = existing.id();
 
-                    log.info("Updating capability of type {} and id {}", capabilityConfig.getType(), id);
+                    log.debug("Updating capability of type {} and id {}", capabilityConfig.getType(), id);
 
-                    capabilityRegistry.update(
+                    existingCapabilities.put(id, capabilityRegistry.update(
                             id,
                             enabled,
                             capabilityConfig.getNotes(),
                             capabilityConfig.getAttributes()
-                    );
+                    ));
+                    status.processed("capability:" + id);
                 } else {
-                    log.info("Creating capability of type {}", capabilityConfig.getType());
+                    log.debug("Creating capability of type {}", capabilityConfig.getType());
 
                     boolean enabled = capabilityConfig.getEnabled() == null || capabilityConfig.getEnabled();
-                    capabilityRegistry.add(
+                    CapabilityReference added = capabilityRegistry.add(
                             type,
                             enabled,
                             capabilityConfig.getNotes(),
                             capabilityConfig.getAttributes()
                     );
+                    existingCapabilities.put(added.context().id(), added);
+                    status.processed("capability:" + type);
                 }
 
             }
 
             if (pruneByType && existingWithType != null) {
-                for (CapabilityContext remaining : existingWithType) {
-                    log.info("Removing capability of type {} and id {}", remaining.type(), remaining.id());
-                    capabilityRegistry.remove(remaining.id());
-                }
+                toRemove.addAll(existingWithType);
+            }
+        }
+
+        Map<String, CapabilityIdentity> removals = toRemove.stream()
+                .collect(toMap(context -> context.type() + ":" + context.id(), CapabilityContext::id, (a, b) -> a, LinkedHashMap::new));
+        if (prunePlanner.approve("capabilities", removals.keySet(), existingOfTypes)) {
+            for (Map.Entry<String, CapabilityIdentity> removal : removals.entrySet()) {
+                log.info("Removing capability {}", removal.getKey());
+                capabilityRegistry.remove(removal.getValue());
+                existingCapabilities.remove(removal.getValue());
             }
         }
     }
 
-    private void applyRepositoryConfig(ConfigRepository repository) {
-        if (repository.getBlobStores() != null) {
-            repository.getBlobStores().forEach(configBlobStore -> {
+    private void applyRepositoryConfig(ConfigRepository repository, ApplySelection selection) {
+        boolean applyBlobStores = selection.includesSection(ApplySelection.REPOSITORY, "blobStores");
+        boolean applyCleanupPolicies = selection.includesSection(ApplySelection.REPOSITORY, "cleanupPolicies");
+        boolean applyContentSelectors = selection.includesSection(ApplySelection.REPOSITORY, "contentSelectors");
+        boolean applyRoutingRules = selection.includesSection(ApplySelection.REPOSITORY, "routingRules");
+        boolean applyRepositories = selection.includesSection(ApplySelection.REPOSITORY, "repositories");
+
+        if (!applyBlobStores) {
+            log.debug("Skipping repository.blobStores, not selected");
+        } else if (repository.getBlobStores() != null) {
+            status.phase("repository.blobStores", repository.getBlobStores().size());
+            // Members of groups first
+            BlobStoreGroups.inCreationOrder(repository.getBlobStores()).forEach(configBlobStore -> {
+                String operation = "blobStore:" + configBlobStore.getName();
+                if (alreadyApplied(operation)) {
+                    return;
+                }
+
                 if (configBlobStore.getType().equals(FileBlobStore.TYPE) &&
                         (configBlobStore.getAttributes().get("file") == null
                         || configBlobStore.getAttributes().get("file").get("path") == null
                         || !(configBlobStore.getAttributes().get("file").get("path") instanceof String))) {
                     log.error(".attributes.file.path of blob store {} must be a string!", configBlobStore.getName());
+                    status.failed(operation, ".attributes.file.path must be a string");
+                    return;
+                }
+
+                if (!deletionQueue.cancel(DeletionQueue.BLOB_STORE, configBlobStore.getName())) {
+                    log.error("Blob store {} is being deleted, it is created again by the next run", configBlobStore.getName());
+                    status.failed(operation, "Blob store is being deleted");
                     return;
                 }
 
-                BlobStore existingBlobStore = blobStoreManager.get(configBlobStore.getName());
+                BlobStore existingBlobStore = snapshot.blobStores().get(configBlobStore.getName());
 
                 if (existingBlobStore != null) {
                     BlobStoreConfiguration existingBlobStoreConfig = existingBlobStore.getBlobStoreConfiguration();
@@ -320,6 +917,7 @@ public class NexusCascPlugin extends StateGuardLifecycleSupport {
                             log.error("Can not update .attributes.file.path for blob stores. Blob store {}, current path: {}, new path {}",
                                     configBlobStore.getName(), existingBlobStoreConfig.getAttributes().get("file").get("path"),
                                     configBlobStore.getAttributes().get("file").get("path"));
+                            status.failed(operation, "Can not update .attributes.file.path");
                             return;
                         }
                     }
@@ -328,25 +926,30 @@ public class NexusCascPlugin extends StateGuardLifecycleSupport {
                         log.error("Can not update type of blob stores. Blob store {}, current type: {}, new type {}",
                                 configBlobStore.getName(), existingBlobStoreConfig.getType(),
                                 configBlobStore.getType());
+                        status.failed(operation, "Can not update type");
                         return;
                     }
 
-                    existingBlobStoreConfig.setAttributes(configBlobStore.getAttributes());
+                    existingBlobStoreConfig.setAttributes(S3BlobStoreAttributes.attributes(configBlobStore));
 
                     try {
-                        blobStoreManager.update(existingBlobStoreConfig);
+                        snapshot.blobStores().put(configBlobStore.getName(), blobStoreManager.update(existingBlobStoreConfig));
+                        done(operation);
                     } catch (Exception e) {
                         log.error("Could not update blob store {}", configBlobStore.getName(), e);
+                        status.failed(operation, e);
                     }
                 } else {
                     BlobStoreConfiguration config = blobStoreManager.newConfiguration();
                     config.setName(configBlobStore.getName());
-                    config.setAttributes(configBlobStore.getAttributes());
+                    config.setAttributes(S3BlobStoreAttributes.attributes(configBlobStore));
                     config.setType(configBlobStore.getType());
                     try {
-                        blobStoreManager.create(config);
+                        snapshot.blobStores().put(configBlobStore.getName(), blobStoreManager.create(config));
+                        done(operation);
                     } catch (Exception e) {
                         log.error("Could not create blob store {}", configBlobStore.getName(), e);
+                        status.failed(operation, e);
                     }
                 }
             });
@@ -354,16 +957,24 @@ public class NexusCascPlugin extends StateGuardLifecycleSupport {
             log.warn("repository.pruneBlobStores has no effect when no blob stores are configured!");
         }
 
-        if (repository.getCleanupPolicies() != null) {
+        if (!applyCleanupPolicies) {
+            log.debug("Skipping repository.cleanupPolicies, not selected");
+        } else if (repository.getCleanupPolicies() != null) {
+            status.phase("repository.cleanupPolicies", repository.getCleanupPolicies().size());
             repository.getCleanupPolicies().forEach(cp -> {
-                CleanupPolicy existingCp = cleanupPolicyStorage.get(cp.getName());
+                String operation = "cleanupPolicy:" + cp.getName();
+                if (alreadyApplied(operation)) {
+                    return;
+                }
+
+                CleanupPolicy existingCp = snapshot.cleanupPolicies().get(cp.getName());
 
                 if (existingCp != null) {
                     existingCp.setCriteria(cp.getCriteria());
                     existingCp.setFormat(cp.getFormat());
                     existingCp.setNotes(cp.getNotes());
                     existingCp.setMode(cp.getMode());
-                    cleanupPolicyStorage.update(existingCp);
+                    snapshot.cleanupPolicies().put(cp.getName(), cleanupPolicyStorage.update(existingCp));
                 } else {
                     CleanupPolicy newCp = cleanupPolicyStorage.newCleanupPolicy();
                     newCp.setName(cp.getName());
@@ -371,61 +982,117 @@ public class NexusCascPlugin extends StateGuardLifecycleSupport {
                     newCp.setFormat(cp.getFormat());
                     newCp.setMode(cp.getMode());
                     newCp.setCriteria(cp.getCriteria());
-                    cleanupPolicyStorage.add(newCp);
+                    snapshot.cleanupPolicies().put(cp.getName(), cleanupPolicyStorage.add(newCp));
                 }
+                done(operation);
             });
 
             if (repository.getPruneCleanupPolicies() != null && repository.getPruneCleanupPolicies()) {
-                cleanupPolicyStorage.getAll().forEach(existingCp -> {
-                    if (repository.getCleanupPolicies().stream().noneMatch(cp -> existingCp.getName().equals(cp.getName()))) {
+                Set<String> configured = repository.getCleanupPolicies().stream().map(ConfigCleanupPolicy::getName).collect(toSet());
+                List<CleanupPolicy> toPrune = snapshot.cleanupPolicies().values().stream()
+                        .filter(existingCp -> !configured.contains(existingCp.getName()))
+                        .collect(toList());
+                if (prunePlanner.approve("cleanup policies", toPrune.stream().map(CleanupPolicy::getName).collect(toList()),
+                        snapshot.cleanupPolicies().size())) {
+                    toPrune.forEach(existingCp -> {
                         log.info("Pruning cleanup policy {}", existingCp.getName());
                         cleanupPolicyStorage.remove(existingCp);
-                    }
-                });
+                        snapshot.cleanupPolicies().remove(existingCp.getName());
+                    });
+                }
             }
         } else if (repository.getPruneCleanupPolicies() != null && repository.getPruneCleanupPolicies()) {
             log.warn("repository.pruneCleanupPolicies has no effect when no cleanup policies are configured!");
         }
 
-        if (repository.getRoutingRules() != null && !repository.getRoutingRules().isEmpty()) {
-            repository.getRoutingRules().forEach(this::applyRoutingRuleConfig);
+        if (!applyContentSelectors) {
+            log.debug("Skipping repository.contentSelectors, not selected");
+        } else if (repository.getContentSelectors() != null) {
+            applyContentSelectors(repository);
+        } else if (repository.getPruneContentSelectors() != null && repository.getPruneContentSelectors()) {
+            log.warn("repository.pruneContentSelectors has no effect when no content selectors are configured!");
         }
 
-        if (repository.getRepositories() != null) {
-            repository.getRepositories().forEach(repoConfig -> {
-                Repository existingRepo = repositoryManager.get(repoConfig.getName());
+        boolean routingRulesApplied = false;
+        if (applyRoutingRules && repository.getRoutingRules() != null && !repository.getRoutingRules().isEmpty()) {
+            status.phase("repository.routingRules", repository.getRoutingRules().size());
+            for (ConfigRoutingRule routingRuleConfig : repository.getRoutingRules()) {
+                applyRoutingRuleConfig(routingRuleConfig, snapshot.routingRules());
+            }
+            routingRulesApplied = true;
+        }
+
+        if (!applyRepositories) {
+            log.debug("Skipping repository.repositories, not selected");
+        } else if (repository.getRepositories() != null) {
+            List<ConfigRepositoryEntry> selectedRepositories = repository.getRepositories().stream()
+                    .filter(repoConfig -> selection.includesRepository(repoConfig.getName()))
+                    .collect(toList());
+            Map<String, EntityId> routingRuleIds = routingRuleIds(selectedRepositories);
+            Map<String, Repository> existingRepositories = snapshot.repositories();
+
+            if (selection.hasRepositorySelector()) {
+                log.info("Applying {} of {} configured repositories", selectedRepositories.size(), repository.getRepositories().size());
+            }
+
+            status.phase("repository.repositories", selectedRepositories.size());
+            selectedRepositories.forEach(repoConfig -> {
+                String operation = "repository:" + repoConfig.getName();
+                if (alreadyApplied(operation)) {
+                    return;
+                }
+
+                String invalidConnection = httpClientReconciler.checkRepositoryConnection(repoConfig.getName(), repoConfig.getAttributes());
+                if (invalidConnection != null) {
+                    log.error("Invalid attributes of repo {}: {}", repoConfig.getName(), invalidConnection);
+                    status.failed(operation, invalidConnection);
+                    return;
+                }
+
+                boolean queuedForDeletion = deletionQueue.isQueued(DeletionQueue.REPOSITORY, repoConfig.getName());
+                if (!deletionQueue.cancel(DeletionQueue.REPOSITORY, repoConfig.getName())) {
+                    log.error("Repo {} is being deleted, it is created again by the next run", repoConfig.getName());
+                    status.failed(operation, "Repository is being deleted");
+                    return;
+                }
+
+                Repository existingRepo = existingRepositories.get(repoConfig.getName());
 
                 if (existingRepo != null) {
                     if (!existingRepo.getConfiguration().getRecipeName().equals(repoConfig.getRecipeName())) {
                         log.error("Can not change recipeName of repo {}", repoConfig.getName());
+                        status.failed(operation, "Can not change recipeName");
                         return;
                     }
 
                     Configuration configuration = existingRepo.getConfiguration();
-                    log.info("repo config: {}", configuration);
+                    log.debug("repo config: {}", configuration);
+                    List<Object> current = settingsOf(configuration);
 
                     configuration.setAttributes(repoConfig.getAttributes());
-
-                    if ( repoConfig.getRoutingRuleName() != null) {
-                        String ruleName = repoConfig.getRoutingRuleName();
-                        RoutingRule rule = routingRuleStore.getByName(ruleName);
-                        if (rule != null) {
-                            configuration.setRoutingRuleId(rule.id());
-                        } else {
-                            log.error("Routing rule {} does not exist", ruleName);
-                        }
-                    }
+                    applyRoutingRuleName(repoConfig, configuration, routingRuleIds);
 
                     patchRepoAttributes(repoConfig.getAttributes());
 
                     if (repoConfig.getOnline() != null) {
                         configuration.setOnline(repoConfig.getOnline());
+                    } else if (stagedDeletions.isStaged(repoConfig.getName()) || queuedForDeletion) {
+                        // Taken offline when it was pruned, it is part of the configuration again
+                        configuration.setOnline(true);
                     }
 
+                    if (settingsOf(configuration).equals(current)) {
+                        log.debug("Repo {} is up to date", repoConfig.getName());
+                        done(operation);
+                        return;
+                    }
                     try {
-                        repositoryManager.update(configuration);
+                        existingRepositories.put(repoConfig.getName(), repositoryManager.update(configuration));
+                        stagedDeletions.unstage(repoConfig.getName());
+                        done(operation);
                     } catch (Exception e) {
                         log.error("Failed to update repo {}", repoConfig.getName(), e);
+                        status.failed(operation, e);
                     }
                 } else {
                     Configuration configuration = repositoryManager.newConfiguration();
@@ -433,65 +1100,198 @@ public class NexusCascPlugin extends StateGuardLifecycleSupport {
                     configuration.setRecipeName(repoConfig.getRecipeName());
                     configuration.setAttributes(repoConfig.getAttributes());
                     configuration.setOnline(repoConfig.getOnline() != null ? repoConfig.getOnline() : true);
+                    applyRoutingRuleName(repoConfig, configuration, routingRuleIds);
 
                     patchRepoAttributes(repoConfig.getAttributes());
 
                     try {
-                        repositoryManager.create(configuration);
+                        existingRepositories.put(repoConfig.getName(), repositoryManager.create(configuration));
+                        stagedDeletions.unstage(repoConfig.getName());
+                        done(operation);
                     } catch (Exception e) {
                         log.error("Failed to create repo {}", repoConfig.getName(), e);
+                        status.failed(operation, e);
                     }
                 }
             });
 
             if (repository.getPruneRepositories() != null && repository.getPruneRepositories()) {
-                repositoryManager.browse().forEach(existingRepo -> {
-                    if (repository.getRepositories().stream().noneMatch(repo -> existingRepo.getName().equals(repo.getName()))) {
-                        log.info("Pruning repository {}", existingRepo.getName());
-                        log.info(existingRepo.getConfiguration().toString());
-                        try {
-                            repositoryManager.delete(existingRepo.getName());
-                        } catch (Exception e) {
-                            log.error("Failed to delete repo {}", existingRepo.getName(), e);
-                        }
-                    }
-                });
+                // Only the selected repositories are candidates for pruning
+                Set<String> configured = repository.getRepositories().stream().map(ConfigRepositoryEntry::getName).collect(toSet());
+                List<String> selectedExisting = existingRepositories.keySet().stream()
+                        .filter(selection::includesRepository)
+                        .collect(toList());
+                List<String> toPrune = selectedExisting.stream().filter(name -> !configured.contains(name)).collect(toList());
+                if (prunePlanner.approve("repositories", toPrune, selectedExisting.size())) {
+                    toPrune.forEach(name -> pruneRepository(existingRepositories, name));
+                }
             }
         } else if (repository.getPruneRepositories() != null && repository.getPruneRepositories()) {
             log.warn("repository.pruneRepositories has no effect when no repositories are configured!");
         }
 
         // Prune routing rules that are not in use
-        if (repository.getRoutingRules() != null && !repository.getRoutingRules().isEmpty()) {
-            List<EntityId> existingRoutingRuleIdsInUse = new ArrayList<>();
-            repositoryManager.browse().forEach(existingRepo -> {
-                existingRoutingRuleIdsInUse.add(existingRepo.getConfiguration().getRoutingRuleId());
-            });
-            routingRuleStore.list().forEach(existingRule -> {
+        if (routingRulesApplied) {
+            Set<EntityId> existingRoutingRuleIdsInUse = snapshot.repositories().values().stream()
+                    .map(existingRepo -> existingRepo.getConfiguration().getRoutingRuleId())
+                    .filter(Objects::nonNull)
+                    .collect(toSet());
+            List<RoutingRule> toPrune = new ArrayList<>();
+            snapshot.routingRules().values().forEach(existingRule -> {
                 if (repository.getRoutingRules().stream().noneMatch(rr -> existingRule.name().equals(rr.getName()))) {
-                    if (existingRoutingRuleIdsInUse.stream().noneMatch(id -> id.equals(existingRule.id()))) {
-                        log.info("Pruning routing rule {}", existingRule.name());
-                        routingRuleStore.delete(existingRule);
+                    if (!existingRoutingRuleIdsInUse.contains(existingRule.id())) {
+                        toPrune.add(existingRule);
                     } else {
                         log.error("Routing rule {} is still in use", existingRule.name());
                     }
                 }
             });
+            if (prunePlanner.approve("routing rules", toPrune.stream().map(RoutingRule::name).collect(toList()),
+                    snapshot.routingRules().size())) {
+                toPrune.forEach(existingRule -> {
+                    log.info("Pruning routing rule {}", existingRule.name());
+                    routingRuleStore.delete(existingRule);
+                    snapshot.routingRules().remove(existingRule.name());
+                });
+            }
         }
 
         // we prune blob stores here as pruned repos might rely on them
-        if (repository.getBlobStores() != null && repository.getPruneBlobStores() != null && repository.getPruneBlobStores()) {
-            blobStoreManager.browse().forEach(existingBlobStore -> {
-                String name = existingBlobStore.getBlobStoreConfiguration().getName();
-                if (repository.getBlobStores().stream().noneMatch(blobStore -> blobStore.getName().equals(name))) {
+        if (applyBlobStores && repository.getBlobStores() != null && repository.getPruneBlobStores() != null && repository.getPruneBlobStores()) {
+            Set<String> configured = repository.getBlobStores().stream().map(ConfigBlobStore::getName).collect(toSet());
+            Set<String> usedByPendingDeletions = blobStoresOfPendingRepositoryDeletions();
+            // Groups first, their members can not be deleted before
+            List<String> toPrune = BlobStoreGroups.inPruneOrder(snapshot.blobStores().keySet().stream()
+                    .filter(name -> !configured.contains(name))
+                    .filter(name -> {
+                        if (usedByPendingDeletions.contains(name)) {
+                            log.info("Not pruning blob store {} until the repositories pending deletion using it are deleted", name);
+                            return false;
+                        }
+                        return true;
+                    })
+                    .collect(toList()),
+                    name -> BlobStoreGroups.TYPE.equals(snapshot.blobStores().get(name).getBlobStoreConfiguration().getType()));
+            if (prunePlanner.approve("blob stores", toPrune, snapshot.blobStores().size())) {
+                toPrune.forEach(name -> {
+                    if (prunePlanner.isDeleteInBackground()) {
+                        log.info("Queueing pruned blob store {} for deletion", name);
+                        deletionQueue.enqueue(DeletionQueue.BLOB_STORE, name);
+                        snapshot.blobStores().remove(name);
+                        return;
+                    }
                     log.info("pruning blob store {}", name);
                     try {
                         blobStoreManager.delete(name);
+                        snapshot.blobStores().remove(name);
                     } catch (Exception e) {
                         log.error("Failed to prune blob store {}", name, e);
                     }
+                });
+            }
+        }
+    }
+
+    /**
+     * @return the blob stores used by the repositories taken offline or queued for deletion, and the members of the
+     * groups among them, which must not be pruned before these repositories are deleted
+     */
+    private Set<String> blobStoresOfPendingRepositoryDeletions() {
+        Set<String> repositories = new HashSet<>(stagedDeletions.stagedRepositories());
+        repositories.addAll(deletionQueue.queued(DeletionQueue.REPOSITORY));
+        Set<String> blobStores = new HashSet<>();
+        for (String name : repositories) {
+            Repository existingRepo = snapshot.repositories().get(name);
+            if (existingRepo == null && !snapshot.hasAllRepositories()) {
+                existingRepo = repositoryManager.get(name);
+            }
+            Map<String, Object> storage = existingRepo == null || existingRepo.getConfiguration().getAttributes() == null
+                    ? null : existingRepo.getConfiguration().getAttributes().get("storage");
+            if (storage != null && storage.get("blobStoreName") != null) {
+                blobStores.add(storage.get("blobStoreName").toString());
+            }
+        }
+        new ArrayList<>(blobStores).stream()
+                .map(snapshot.blobStores()::get)
+                .filter(Objects::nonNull)
+                .map(BlobStore::getBlobStoreConfiguration)
+                .filter(blobStore -> BlobStoreGroups.TYPE.equals(blobStore.getType()))
+                .forEach(group -> blobStores.addAll(BlobStoreGroups.members(group.getAttributes())));
+        return blobStores;
+    }
+
+    /**
+     * Delete a pruned repository, or only take it offline if deletions are staged and it has not been staged for long
+     * enough yet. With background deletion it is taken offline and queued for deletion instead.
+     */
+    private void pruneRepository(Map<String, Repository> existingRepositories, String name) {
+        Repository existingRepo = existingRepositories.get(name);
+        int afterRuns = prunePlanner.getDeleteRepositoriesAfterRuns();
+        if (afterRuns > 0 && !stagedDeletions.isStaged(name)) {
+            log.info("Taking pruned repository {} offline, it is deleted after {} completed runs", name, afterRuns);
+            Configuration configuration = existingRepo.getConfiguration();
+            configuration.setOnline(false);
+            try {
+                existingRepositories.put(name, repositoryManager.update(configuration));
+                stagedDeletions.stage(name);
+            } catch (Exception e) {
+                log.error("Failed to take repo {} offline", name, e);
+            }
+            return;
+        }
+        if (afterRuns > 0 && stagedDeletions.completedRuns(name) < afterRuns) {
+            log.info("Pruned repository {} is offline, it is deleted after {} more completed runs", name,
+                    afterRuns - stagedDeletions.completedRuns(name));
+            return;
+        }
+
+        if (prunePlanner.isDeleteInBackground()) {
+            log.info("Queueing pruned repository {} for deletion", name);
+            Configuration configuration = existingRepo.getConfiguration();
+            try {
+                if (configuration.isOnline()) {
+                    configuration.setOnline(false);
+                    existingRepositories.put(name, repositoryManager.update(configuration));
                 }
-            });
+                // Stays in the snapshot until deleted, e.g. its routing rule is still in use
+                deletionQueue.enqueue(DeletionQueue.REPOSITORY, name);
+                stagedDeletions.unstage(name);
+            } catch (Exception e) {
+                log.error("Failed to take repo {} offline", name, e);
+            }
+            return;
+        }
+
+        log.info("Pruning repository {}", name);
+        log.debug(existingRepo.getConfiguration().toString());
+        try {
+            repositoryManager.delete(name);
+            existingRepositories.remove(name);
+            stagedDeletions.unstage(name);
+        } catch (Exception e) {
+            log.error("Failed to delete repo {}", name, e);
+        }
+    }
+
+    /**
+     * Resolve routing rule names to ids, only loading the routing rules if a repository references one
+     */
+    private Map<String, EntityId> routingRuleIds(List<ConfigRepositoryEntry> repositories) {
+        if (repositories.stream().noneMatch(repoConfig -> repoConfig.getRoutingRuleName() != null)) {
+            return Collections.emptyMap();
+        }
+        return snapshot.routingRules().values().stream().collect(toMap(RoutingRule::name, RoutingRule::id, (a, b) -> a));
+    }
+
+    private void applyRoutingRuleName(ConfigRepositoryEntry repoConfig, Configuration configuration, Map<String, EntityId> routingRuleIds) {
+        if (repoConfig.getRoutingRuleName() != null) {
+            String ruleName = repoConfig.getRoutingRuleName();
+            EntityId ruleId = routingRuleIds.get(ruleName);
+            if (ruleId != null) {
+                configuration.setRoutingRuleId(ruleId);
+            } else {
+                log.error("Routing rule {} does not exist", ruleName);
+            }
         }
     }
 
@@ -514,67 +1314,138 @@ public class NexusCascPlugin extends StateGuardLifecycleSupport {
         }
     }
 
-    private void applyRoutingRuleConfig(ConfigRoutingRule routingRuleConfig) {
-        RoutingRule existingRule = routingRuleStore.getByName(routingRuleConfig.getName());
+    /**
+     * Create or update a routing rule, unless it is up to date or has invalid matchers
+     *
+     * @param existingRules The existing routing rules by name, updated with the created rule
+     */
+    private void applyRoutingRuleConfig(ConfigRoutingRule routingRuleConfig, Map<String, RoutingRule> existingRules) {
+        String operation = "routingRule:" + routingRuleConfig.getName();
+        if (alreadyApplied(operation)) {
+            return;
+        }
+
+        List<String> errors = routingRuleMatchers.validate(routingRuleConfig.getMatchers());
+        if (!errors.isEmpty()) {
+            log.error("Invalid matchers of routing rule {}: {}", routingRuleConfig.getName(), String.join("; ", errors));
+            status.failed(operation, String.join("; ", errors));
+            return;
+        }
+
+        RoutingMode mode = RoutingMode.valueOf(routingRuleConfig.getMode());
+        RoutingRule existingRule = existingRules.get(routingRuleConfig.getName());
         if (existingRule != null) {
-            existingRule.matchers(routingRuleConfig.getMatchers());
-            existingRule.description(routingRuleConfig.getDescription());
-            existingRule.mode(RoutingMode.valueOf(routingRuleConfig.getMode()));
-            routingRuleStore.update(existingRule);
+            if (Objects.equals(emptyIfNull(existingRule.description()), emptyIfNull(routingRuleConfig.getDescription()))
+                    && existingRule.mode() == mode
+                    && Objects.equals(existingRule.matchers(), routingRuleConfig.getMatchers())) {
+                log.debug("Routing rule {} is up to date", routingRuleConfig.getName());
+            } else {
+                existingRule.matchers(routingRuleConfig.getMatchers());
+                existingRule.description(routingRuleConfig.getDescription());
+                existingRule.mode(mode);
+                routingRuleStore.update(existingRule);
+            }
         } else {
             RoutingRule rule = routingRuleStore.newRoutingRule()
                 .name(routingRuleConfig.getName())
                 .description(routingRuleConfig.getDescription())
-                .mode(RoutingMode.valueOf(routingRuleConfig.getMode()))
+                .mode(mode)
                 .matchers(routingRuleConfig.getMatchers());
-            routingRuleStore.create(rule);
+            existingRules.put(routingRuleConfig.getName(), routingRuleStore.create(rule));
         }
+        done(operation);
+    }
+
+    private static String emptyIfNull(String value) {
+        return value == null ? "" : value;
     }
     /**
      * Apply all configs related to security
      *
      * @param security The security config
      */
-    private void applySecurityConfig(ConfigSecurity security) {
-        if (security.getAnonymousAccess() != null) {
+    private void applySecurityConfig(ConfigSecurity security, ApplySelection selection) {
+        applySecurityAccessConfig(security, selection);
+        applyPrivilegesConfig(security, selection, privilege -> true);
+        applyRolesConfig(security, selection, role -> true, true);
+        applyUsersConfig(security, selection, userConfig -> true);
+    }
+
+    /**
+     * Apply anonymous access and realms, i.e. what decides whether anyone can access Nexus at all
+     */
+    private void applySecurityAccessConfig(ConfigSecurity security, ApplySelection selection) {
+        if (security.getAnonymousAccess() != null && selection.includesSection(ApplySelection.SECURITY, "anonymousAccess")) {
             securityApi.setAnonymousAccess(security.getAnonymousAccess());
         }
 
-        if (security.getRealms() != null) {
-            security.getRealms().forEach(realm -> {
-                if (realm.getEnabled() != null) {
-                    if (realm.getEnabled()) {
-                        log.info("Enabling realm {}", realm.getName());
-                        realmManager.enableRealm(realm.getName(), true);
-                    } else {
-                        log.info("Disabling realm {}", realm.getName());
-                        realmManager.disableRealm(realm.getName());
-                    }
-                } else {
-                    log.warn("Passing a realm with enabled: null doesn't make sense...");
-                }
-            });
+        if (security.getRealms() != null && selection.includesSection(ApplySelection.SECURITY, "realms")) {
+            List<String> current = realmManager.getConfiguredRealmIds();
+            List<String> desired = desiredRealms(current, security.getRealms());
+            if (desired.equals(current)) {
+                log.debug("Realms are up to date: {}", current);
+            } else {
+                log.info("Setting realms to {}, were {}", desired, current);
+                realmManager.setConfiguredRealmIds(desired);
+            }
+        }
+    }
+
+    /**
+     * Compute the ordered list of active realms: the active realms not mentioned by the configuration keep their
+     * order and come first, followed by the realms the configuration enables in configuration order.
+     */
+    private List<String> desiredRealms(List<String> current, List<ConfigSecurityRealm> realms) {
+        Set<String> configured = new HashSet<>();
+        List<String> enabled = new ArrayList<>();
+        for (ConfigSecurityRealm realm : realms) {
+            if (realm.getEnabled() == null) {
+                log.warn("Passing a realm with enabled: null doesn't make sense...");
+                continue;
+            }
+            configured.add(realm.getName());
+            if (realm.getEnabled() && !enabled.contains(realm.getName())) {
+                enabled.add(realm.getName());
+            }
         }
 
-        if (security.getPrivileges() != null) {
-            List<ConfigSecurityPrivilege> privileges = security.getPrivileges();
+        List<String> desired = current.stream().filter(id -> !configured.contains(id)).collect(toCollection(ArrayList::new));
+        desired.addAll(enabled);
+        return desired;
+    }
+
+    /**
+     * Apply the privileges matching the filter
+     */
+    private void applyPrivilegesConfig(ConfigSecurity security, ApplySelection selection, Predicate<ConfigSecurityPrivilege> filter) {
+        if (security.getPrivileges() != null && selection.includesSection(ApplySelection.SECURITY, "privileges")) {
+            List<ConfigSecurityPrivilege> privileges = security.getPrivileges().stream().filter(filter).collect(toList());
+            if (privileges.isEmpty()) {
+                return;
+            }
+            status.phase("security.privileges", privileges.size());
 
             try {
-                AuthorizationManager authManager = securitySystem.getAuthorizationManager("default");
+                AuthorizationManager authManager = snapshot.authorizationManager(UserManager.DEFAULT_SOURCE);
+                Map<String, Privilege> existingPrivileges = snapshot.privileges(authManager);
 
                 for (ConfigSecurityPrivilege p : privileges) {
+                    String operation = "privilege:" + p.getId();
+                    if (alreadyApplied(operation)) {
+                        continue;
+                    }
+
                     if (p.isEnabled()) {
-                        Privilege tmpPrivilege;
-                        Boolean update = false;
-                        try {
-                            tmpPrivilege = authManager.getPrivilege(p.getId());
-                            update = true;
+                        Privilege tmpPrivilege = existingPrivileges.get(p.getId());
+                        boolean update = tmpPrivilege != null;
+                        List<Object> current = update ? settingsOf(tmpPrivilege) : null;
+                        if (update) {
                             tmpPrivilege.setName(p.getName());
                             tmpPrivilege.setDescription(p.getDescription());
                             tmpPrivilege.setType(p.getType());
                             tmpPrivilege.setProperties(p.getProperties());
                             tmpPrivilege.setReadOnly(p.getReadOnly());
-                        } catch (NoSuchPrivilegeException e) {
+                        } else {
                             tmpPrivilege = new Privilege(
                                     p.getId(),
                                     p.getName(),
@@ -585,43 +1456,66 @@ public class NexusCascPlugin extends StateGuardLifecycleSupport {
                             );
                         }
 
+                        if (update && settingsOf(tmpPrivilege).equals(current)) {
+                            log.debug("Privilege {} is up to date", p.getId());
+                            done(operation);
+                            continue;
+                        }
                         try {
                             if (update) {
-                                log.info("Updating privilege {}", tmpPrivilege.getId());
+                                log.debug("Updating privilege {}", tmpPrivilege.getId());
                                 tmpPrivilege = authManager.updatePrivilege(tmpPrivilege);
                             } else {
-                                log.info("Creating privilege {}", tmpPrivilege.getId());
+                                log.debug("Creating privilege {}", tmpPrivilege.getId());
                                 tmpPrivilege = authManager.addPrivilege(tmpPrivilege);
                             }
+                            existingPrivileges.put(tmpPrivilege.getId(), tmpPrivilege);
+                            done(operation);
                         } catch (RuntimeException e) {
                             log.error("Failed to create/update permission {}", p.getId(), e);
+                            status.failed(operation, e);
                         }
                     } else {
                         log.info("Deleting privilege {}", p.getId());
                         authManager.deletePrivilege(p.getId());
+                        existingPrivileges.remove(p.getId());
+                        done(operation);
                     }
                 }
             } catch (NoSuchAuthorizationManagerException e) {
                 log.error("AuthorizationManager {} does not exist.", "default", e);
             }
         }
+    }
 
-        if (security.getRoles() != null) {
-            boolean pruneRolesBySource = security.getPruneRolesBySource() == null || security.getPruneRolesBySource();
+    /**
+     * Apply the roles matching the filter and, if prune is set, prune the roles of their sources which are not part of
+     * the configuration
+     */
+    private void applyRolesConfig(ConfigSecurity security, ApplySelection selection, Predicate<ConfigSecurityRole> filter, boolean prune) {
+        if (security.getRoles() != null && selection.includesSection(ApplySelection.SECURITY, "roles")) {
+            boolean pruneRolesBySource = prune && (security.getPruneRolesBySource() == null || security.getPruneRolesBySource());
             Map<String, List<ConfigSecurityRole>> rolesBySource = security.getRoles().stream()
+                    .filter(role -> selection.includesUserSource(role.getSource()))
+                    .filter(filter)
                     .collect(groupingBy(ConfigSecurityRole::getSource, toList()));
+            if (rolesBySource.isEmpty()) {
+                return;
+            }
+            status.phase("security.roles", rolesBySource.values().stream().mapToInt(List::size).sum());
             for (Map.Entry<String, List<ConfigSecurityRole>> ent : rolesBySource.entrySet()) {
                 String source = ent.getKey();
                 List<ConfigSecurityRole> roles = ent.getValue();
                 try {
-                    AuthorizationManager authManager = securitySystem.getAuthorizationManager(source);
+                    AuthorizationManager authManager = snapshot.authorizationManager(source);
                     if (!authManager.supportsWrite())
                         throw new NotWritableException("AuthorizationManager: " + source);
+                    Map<String, Role> existingRoles = snapshot.roles(authManager);
 
                     // Remove roles first, so we fail fast if an enabled role references a removed one
                     Map<String, Boolean> idsToRemove = new HashMap<>();
                     if(pruneRolesBySource) {
-                        authManager.listRoles().stream().map(Role::getRoleId).forEach(id -> idsToRemove.put(id, false));
+                        existingRoles.keySet().forEach(id -> idsToRemove.put(id, false));
                     }
                     for (ConfigSecurityRole role : roles) {
                         if (role.isEnabled()) {
@@ -630,10 +1524,18 @@ public class NexusCascPlugin extends StateGuardLifecycleSupport {
                             idsToRemove.put(role.getId(), true);
                         }
                     }
+                    List<String> pruned = idsToRemove.entrySet().stream()
+                            .filter(toRemove -> !toRemove.getValue())
+                            .map(Map.Entry::getKey)
+                            .collect(toList());
+                    if (!prunePlanner.approve("roles of source " + source, pruned, existingRoles.size())) {
+                        pruned.forEach(idsToRemove::remove);
+                    }
                     for (Map.Entry<String, Boolean> toRemove : idsToRemove.entrySet()) {
                         log.info("Deleting role {}", toRemove.getKey());
                         try {
                             authManager.deleteRole(toRemove.getKey());
+                            existingRoles.remove(toRemove.getKey());
                         } catch(Exception e) {
                             if (toRemove.getValue()) {
                                 throw e;
@@ -644,13 +1546,15 @@ public class NexusCascPlugin extends StateGuardLifecycleSupport {
                     }
 
                     for (ConfigSecurityRole r : roles) {
-                        if (r.isEnabled()) {
-                            Role tmpRole;
-                            boolean update = false;
-                            try {
-                                tmpRole = authManager.getRole(r.getId());
-                                update = true;
-                            } catch (NoSuchRoleException e) {
+                        String operation = "role:" + source + ":" + r.getId();
+                        if (!r.isEnabled()) {
+                            // Already deleted above
+                            status.processed(operation);
+                        } else if (!alreadyApplied(operation)) {
+                            Role tmpRole = existingRoles.get(r.getId());
+                            boolean update = tmpRole != null;
+                            List<Object> current = update ? settingsOf(tmpRole) : null;
+                            if (!update) {
                                 tmpRole = new Role();
                                 tmpRole.setRoleId(r.getId());
                                 tmpRole.setSource(r.getSource());
@@ -661,16 +1565,24 @@ public class NexusCascPlugin extends StateGuardLifecycleSupport {
                             tmpRole.setRoles(r.getRoles() == null ? null : new HashSet<>(r.getRoles()));
                             tmpRole.setPrivileges(r.getPrivileges() == null ? null : new HashSet<>(r.getPrivileges()));
 
+                            if (update && settingsOf(tmpRole).equals(current)) {
+                                log.debug("Role {} is up to date", r.getId());
+                                done(operation);
+                                continue;
+                            }
                             try {
                                 if (update) {
-                                    log.info("Updating role {}", r.getId());
-                                    authManager.updateRole(tmpRole);
+                                    log.debug("Updating role {}", r.getId());
+                                    tmpRole = authManager.updateRole(tmpRole);
                                 } else {
-                                    log.info("Creating role {}", r.getId());
-                                    authManager.addRole(tmpRole);
+                                    log.debug("Creating role {}", r.getId());
+                                    tmpRole = authManager.addRole(tmpRole);
                                 }
+                                existingRoles.put(r.getId(), tmpRole);
+                                done(operation);
                             } catch (RuntimeException e) {
                                 log.error("Failed to create/update role {}", r.getId(), e);
+                                status.failed(operation, e);
                             }
                         }
                     }
@@ -681,85 +1593,189 @@ public class NexusCascPlugin extends StateGuardLifecycleSupport {
                 }
             }
         }
+    }
 
-        if (security.getUsers() != null) {
-            security.getUsers().forEach(userConfig -> {
-                User existingUser = null;
-                try {
-                    existingUser = securitySystem.getUser(userConfig.getUsername());
-                } catch (UserNotFoundException e) {
-                    // ignore
+    /**
+     * Apply the users matching the filter and prune the ones not part of the configuration
+     */
+    private void applyUsersConfig(ConfigSecurity security, ApplySelection selection, Predicate<ConfigSecurityUser> filter) {
+        if (!selection.includesSection(ApplySelection.SECURITY, "users")) {
+            log.debug("Skipping security.users, not selected");
+        } else if (security.getUsers() != null) {
+            List<ConfigSecurityUser> users = security.getUsers().stream().filter(filter).collect(toList());
+            status.phase("security.users", users.size());
+            users.forEach(userConfig -> applyUserConfig(userConfig, selection));
+
+            if (security.getPruneUsers() != null && security.getPruneUsers()) {
+                pruneUsers(security, selection);
+            }
+        } else if (security.getPruneUsers() != null && security.getPruneUsers()) {
+            log.error("security.pruneUsers has no effect when not specifying any users!");
+        }
+    }
+
+    /**
+     * Delete the users of the prunable sources which are not part of the configuration, page by page
+     */
+    private void pruneUsers(ConfigSecurity security, ApplySelection selection) {
+        List<String> sources = security.getPruneUserSources() != null
+                ? security.getPruneUserSources()
+                : Collections.singletonList(UserManager.DEFAULT_SOURCE);
+        int pageSize = security.getPruneUsersPageSize() != null ? security.getPruneUsersPageSize() : UserPruner.DEFAULT_PAGE_SIZE;
+        int perSecond = security.getPruneUsersPerSecond() != null ? security.getPruneUsersPerSecond() : UserPruner.DEFAULT_PER_SECOND;
+        if (pageSize <= 0) {
+            log.error("security.pruneUsersPageSize must be positive, not pruning users");
+            return;
+        }
+        Set<String> configuredUserIds = security.getUsers().stream().map(ConfigSecurityUser::getUsername).collect(toSet());
+        UserPruner pruner = new UserPruner(securitySystem, pageSize, perSecond);
+
+        for (String source : sources) {
+            if (!selection.includesUserSource(source)) {
+                log.debug("Skipping pruning users of source {}, not selected", source);
+                continue;
+            }
+            // The snapshot holds all the users of the default source, other sources are searched page by page
+            UserPruner.Plan plan = UserManager.DEFAULT_SOURCE.equals(source)
+                    ? UserPruner.plan(snapshot.users().keySet(), configuredUserIds)
+                    : pruner.plan(source, configuredUserIds);
+            if (!prunePlanner.approve("users of source " + source, plan.getDeletions(), plan.getExisting())) {
+                continue;
+            }
+            try {
+                int pruned = pruner.delete(source, plan.getDeletions());
+                if (UserManager.DEFAULT_SOURCE.equals(source)) {
+                    snapshot.users().keySet().removeAll(plan.getDeletions());
+                }
+                if (pruned > 0) {
+                    log.info("Pruned {} users of source {}", pruned, source);
                 }
+            } catch (InterruptedException e) {
+                log.warn("Interrupted while pruning users of source {}", source);
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
 
-                if (existingUser != null) {
-                    log.info("User {} already exists. Patching it...", userConfig.getUsername());
-                    existingUser.setFirstName(userConfig.getFirstName());
-                    existingUser.setLastName(userConfig.getLastName());
-                    existingUser.setEmailAddress(userConfig.getEmail());
-
-                    if (userConfig.getActive() != null) {
-                        if (userConfig.getActive()) {
-                            if (existingUser.getStatus() == UserStatus.disabled) {
-                                log.info("Reactivating user {}", existingUser.getUserId());
-                                existingUser.setStatus(UserStatus.active);
-                            } else if (existingUser.getStatus() != UserStatus.active) {
-                                log.error("Can not activate user {} ({}) with state {}", existingUser.getUserId(), existingUser.getSource(), existingUser.getStatus());
-                            }
-                        } else {
-                            if (existingUser.getStatus() != UserStatus.disabled) {
-                                log.info("Disabling user {} ({}) with state {}", existingUser.getUserId(), existingUser.getSource(), existingUser.getStatus());
-                                existingUser.setStatus(UserStatus.disabled);
-                            }
-                        }
-                    }
+    /**
+     * The settings of the entities below, to skip updating the ones which did not change. Updates are written to the
+     * database and, for repositories, restart the repository.
+     */
+    private static List<Object> settingsOf(Configuration configuration) {
+        return Arrays.asList(configuration.getAttributes(), configuration.getRoutingRuleId(), configuration.isOnline());
+    }
 
-                    if (userConfig.getUpdateExistingPassword() != null && userConfig.getUpdateExistingPassword()) {
-                        try {
-                            ThreadContext.bind(FakeAlmightySubject.forUserId("nexus:*"));
-                            securitySystem.changePassword(existingUser.getUserId(), userConfig.getPassword());
-                        } catch (UserNotFoundException e) {
-                            log.error("Failed to update password of user {}", existingUser.getUserId(), e);
-                        } finally {
-                            ThreadContext.remove();
-                        }
-                    }
+    private static List<Object> settingsOf(Privilege privilege) {
+        return Arrays.asList(privilege.getName(), privilege.getDescription(), privilege.getType(),
+                privilege.getProperties() == null ? null : new HashMap<>(privilege.getProperties()), privilege.isReadOnly());
+    }
 
-                    existingUser.setRoles(userConfig.getRoles().stream().map(r -> new RoleIdentifier(r.getSource(), r.getRole())).collect(Collectors.toSet()));
-                    try {
-                        securitySystem.updateUser(existingUser);
-                    } catch (UserNotFoundException | NoSuchUserManagerException e) {
-                        log.error("Could not update user {}", userConfig.getUsername(), e);
+    private static List<Object> settingsOf(Role role) {
+        return Arrays.asList(role.getName(), role.getDescription(), role.isReadOnly(),
+                role.getRoles() == null ? null : new HashSet<>(role.getRoles()),
+                role.getPrivileges() == null ? null : new HashSet<>(role.getPrivileges()));
+    }
+
+    private static List<Object> settingsOf(User user) {
+        return Arrays.asList(user.getFirstName(), user.getLastName(), user.getEmailAddress(), user.getStatus(),
+                user.getRoles() == null ? null : new HashSet<>(user.getRoles()));
+    }
+
+    private void applyUserConfig(ConfigSecurityUser userConfig, ApplySelection selection) {
+        String operation = "user:" + userConfig.getUsername();
+        if (alreadyApplied(operation)) {
+            return;
+        }
+
+        User existingUser = findUser(userConfig.getUsername(), selection);
+
+        if (existingUser != null && !selection.includesUserSource(existingUser.getSource())) {
+            log.debug("Skipping user {} of source {}, not selected", existingUser.getUserId(), existingUser.getSource());
+            status.processed(operation);
+        } else if (existingUser == null && !selection.includesUserSource(UserManager.DEFAULT_SOURCE)) {
+            log.debug("Skipping creation of user {}, source {} not selected", userConfig.getUsername(), UserManager.DEFAULT_SOURCE);
+            status.processed(operation);
+        } else if (existingUser != null) {
+            log.debug("User {} already exists. Patching it...", userConfig.getUsername());
+            List<Object> current = settingsOf(existingUser);
+            existingUser.setFirstName(userConfig.getFirstName());
+            existingUser.setLastName(userConfig.getLastName());
+            existingUser.setEmailAddress(userConfig.getEmail());
+
+            if (userConfig.getActive() != null) {
+                if (userConfig.getActive()) {
+                    if (existingUser.getStatus() == UserStatus.disabled) {
+                        log.info("Reactivating user {}", existingUser.getUserId());
+                        existingUser.setStatus(UserStatus.active);
+                    } else if (existingUser.getStatus() != UserStatus.active) {
+                        log.error("Can not activate user {} ({}) with state {}", existingUser.getUserId(), existingUser.getSource(), existingUser.getStatus());
                     }
                 } else {
-                    log.info("User {} does not yet exist. Creating it...", userConfig.getUsername());
-                    securityApi.addUser(
-                            userConfig.getUsername(),
-                            userConfig.getFirstName(),
-                            userConfig.getLastName(),
-                            userConfig.getEmail(),
-                            userConfig.getActive() != null ? userConfig.getActive() : true,
-                            userConfig.getPassword(),
-                            userConfig.getRoles().stream().map(ConfigSecurityUserRole::getRole).collect(toList())
-                    );
+                    if (existingUser.getStatus() != UserStatus.disabled) {
+                        log.info("Disabling user {} ({}) with state {}", existingUser.getUserId(), existingUser.getSource(), existingUser.getStatus());
+                        existingUser.setStatus(UserStatus.disabled);
+                    }
                 }
-            });
+            }
 
-            if (security.getPruneUsers() != null && security.getPruneUsers()) {
-                Set<User> existingUsers = securitySystem.searchUsers(new UserSearchCriteria());
+            if (userConfig.getUpdateExistingPassword() != null && userConfig.getUpdateExistingPassword()) {
+                try {
+                    ThreadContext.bind(FakeAlmightySubject.forUserId("nexus:*"));
+                    securitySystem.changePassword(existingUser.getUserId(), userConfig.getPassword());
+                } catch (UserNotFoundException e) {
+                    log.error("Failed to update password of user {}", existingUser.getUserId(), e);
+                } finally {
+                    ThreadContext.remove();
+                }
+            }
 
-                existingUsers.forEach(existingUser -> {
-                    if (security.getUsers().stream().noneMatch(u -> existingUser.getUserId().equals(u.getUsername()))) {
-                        log.info("Pruning user {} ...", existingUser.getUserId());
-                        try {
-                            securitySystem.deleteUser(existingUser.getUserId(), existingUser.getSource());
-                        } catch (NoSuchUserManagerException | UserNotFoundException e) {
-                            log.error("Failed to prune user {} ({})", existingUser.getUserId(), existingUser.getSource(), e);
-                        }
-                    }
-                });
+            existingUser.setRoles(userConfig.getRoles().stream().map(r -> new RoleIdentifier(r.getSource(), r.getRole())).collect(Collectors.toSet()));
+            if (settingsOf(existingUser).equals(current)) {
+                log.debug("User {} is up to date", userConfig.getUsername());
+                done(operation);
+                return;
             }
-        } else if (security.getPruneUsers() != null && security.getPruneUsers()) {
-            log.error("security.pruneUsers has no effect when not specifying any users!");
+            try {
+                existingUser = securitySystem.updateUser(existingUser);
+                if (UserManager.DEFAULT_SOURCE.equals(existingUser.getSource())) {
+                    snapshot.users().put(existingUser.getUserId(), existingUser);
+                }
+                done(operation);
+            } catch (UserNotFoundException | NoSuchUserManagerException e) {
+                log.error("Could not update user {}", userConfig.getUsername(), e);
+                status.failed(operation, e);
+            }
+        } else {
+            log.debug("User {} does not yet exist. Creating it...", userConfig.getUsername());
+            User user = securityApi.addUser(
+                    userConfig.getUsername(),
+                    userConfig.getFirstName(),
+                    userConfig.getLastName(),
+                    userConfig.getEmail(),
+                    userConfig.getActive() != null ? userConfig.getActive() : true,
+                    userConfig.getPassword(),
+                    userConfig.getRoles().stream().map(ConfigSecurityUserRole::getRole).collect(toList())
+            );
+            snapshot.users().put(user.getUserId(), user);
+            done(operation);
+        }
+    }
+
+    /**
+     * Find an existing user in the snapshot of local users, falling back to looking it up in all user sources
+     */
+    private User findUser(String userId, ApplySelection selection) {
+        if (selection.includesUserSource(UserManager.DEFAULT_SOURCE)) {
+            User user = snapshot.users().get(userId);
+            if (user != null) {
+                return user;
+            }
+        }
+        try {
+            return securitySystem.getUser(userId);
+        } catch (UserNotFoundException e) {
+            return null;
         }
     }
 }
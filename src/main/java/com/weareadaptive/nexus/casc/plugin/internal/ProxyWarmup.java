@@ -0,0 +1,236 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+import com.weareadaptive.nexus.casc.plugin.internal.config.ConfigRepository;
+import com.weareadaptive.nexus.casc.plugin.internal.config.ConfigRepositoryEntry;
+import com.weareadaptive.nexus.casc.plugin.internal.config.ConfigWarmup;
+import org.sonatype.goodies.common.ComponentSupport;
+import org.sonatype.nexus.repository.Repository;
+import org.sonatype.nexus.repository.manager.RepositoryManager;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Prefetches the {@code warmup} paths of the configured proxy repositories once a run completed, so the first builds
+ * against a fresh node do not wait on the upstream for every artifact.
+ * <p>
+ * The paths are fetched by {@code repository.warmup.threads} threads, at most {@code repository.warmup.requestsPerSecond}
+ * requests per second over all of them. Paths are fetched on every start: a path which is cached already is served
+ * from the cache, without an upstream request unless it is stale. Offline repositories and repositories which are not
+ * proxies are skipped.
+ */
+@Named
+@Singleton
+public class ProxyWarmup extends ComponentSupport {
+    static final int DEFAULT_THREADS = 4;
+    static final int DEFAULT_REQUESTS_PER_SECOND = 10;
+
+    private static final String PROXY = "proxy";
+
+    private final RepositoryManager repositoryManager;
+    private final WarmupFetcher fetcher;
+
+    private final Queue<Fetch> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicLong fetched = new AtomicLong();
+    private final AtomicLong missing = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicInteger workers = new AtomicInteger();
+    private long nanosPerFetch;
+    private long nextFetch;
+    private volatile long startedAt;
+
+    private ExecutorService pool;
+
+    private static class Fetch {
+        private final Repository repository;
+        private final String path;
+
+        Fetch(Repository repository, String path) {
+            this.repository = repository;
+            this.path = path;
+        }
+    }
+
+    @Inject
+    public ProxyWarmup(final RepositoryManager repositoryManager, final WarmupFetcher fetcher) {
+        this.repositoryManager = repositoryManager;
+        this.fetcher = fetcher;
+    }
+
+    /**
+     * Start prefetching the warm-up paths of the configured repositories, unless a warm-up is running already
+     *
+     * @return the number of paths to fetch
+     */
+    public synchronized int start(ConfigRepository repository) {
+        if (pool != null && !pool.isTerminated()) {
+            log.info("Proxy warm-up is running already, not starting another one");
+            return 0;
+        }
+        if (repository == null || repository.getRepositories() == null) {
+            return 0;
+        }
+
+        pending.clear();
+        int repositories = 0;
+        for (ConfigRepositoryEntry repoConfig : repository.getRepositories()) {
+            List<String> paths = paths(repoConfig.getWarmup());
+            if (paths.isEmpty()) {
+                continue;
+            }
+            Repository existing = repositoryManager.get(repoConfig.getName());
+            if (existing == null || !PROXY.equals(existing.getType().getValue())) {
+                log.warn("Not warming up repository {}, it is not a proxy repository", repoConfig.getName());
+                continue;
+            }
+            if (!existing.getConfiguration().isOnline()) {
+                log.info("Not warming up repository {}, it is offline", repoConfig.getName());
+                continue;
+            }
+            paths.forEach(path -> pending.add(new Fetch(existing, path)));
+            ++repositories;
+        }
+        if (pending.isEmpty()) {
+            return 0;
+        }
+
+        ConfigWarmup warmup = repository.getWarmup();
+        int threads = warmup == null || warmup.getThreads() == null ? DEFAULT_THREADS : Math.max(1, warmup.getThreads());
+        int perSecond = warmup == null || warmup.getRequestsPerSecond() == null
+                ? DEFAULT_REQUESTS_PER_SECOND : warmup.getRequestsPerSecond();
+        nanosPerFetch = perSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / perSecond : 0;
+        nextFetch = 0;
+        fetched.set(0);
+        missing.set(0);
+        failed.set(0);
+        startedAt = System.currentTimeMillis();
+        workers.set(threads);
+        int size = pending.size();
+        log.info("Warming up {} paths of {} proxy repositories with {} threads", size, repositories, threads);
+
+        pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "casc-warmup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < threads; ++i) {
+            pool.submit(this::fetchPending);
+        }
+        pool.shutdown();
+        return size;
+    }
+
+    public void stop() throws InterruptedException {
+        ExecutorService stopping;
+        synchronized (this) {
+            stopping = pool;
+            pool = null;
+        }
+        if (stopping != null) {
+            stopping.shutdownNow();
+            if (!stopping.awaitTermination(30, TimeUnit.SECONDS)) {
+                log.warn("Proxy warm-up did not stop in time");
+            }
+        }
+    }
+
+    /**
+     * @return true if the warm-up is done, false if it is still running after the timeout
+     */
+    boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+        ExecutorService running;
+        synchronized (this) {
+            running = pool;
+        }
+        return running == null || running.awaitTermination(timeout, unit);
+    }
+
+    private void fetchPending() {
+        Fetch fetch;
+        while (!Thread.currentThread().isInterrupted() && (fetch = pending.poll()) != null) {
+            try {
+                throttle();
+                if (fetcher.fetch(fetch.repository, fetch.path)) {
+                    fetched.incrementAndGet();
+                } else {
+                    log.debug("Warm-up path {} of repository {} not found", fetch.path, fetch.repository.getName());
+                    missing.incrementAndGet();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.warn("Failed to warm up path {} of repository {}: {}", fetch.path, fetch.repository.getName(),
+                        e.toString());
+                failed.incrementAndGet();
+            }
+        }
+        if (workers.decrementAndGet() == 0 && !Thread.currentThread().isInterrupted()) {
+            log.info("Proxy warm-up completed in {} ms: {} paths fetched, {} not found, {} failed",
+                    System.currentTimeMillis() - startedAt, fetched.get(), missing.get(), failed.get());
+        }
+    }
+
+    /**
+     * Waits for the next request slot, the slots are shared by all threads
+     */
+    private void throttle() throws InterruptedException {
+        long wait;
+        synchronized (this) {
+            if (nanosPerFetch == 0) {
+                return;
+            }
+            long now = System.nanoTime();
+            long slot = Math.max(now, nextFetch);
+            nextFetch = slot + nanosPerFetch;
+            wait = slot - now;
+        }
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    public ReconcileStatusXO.WarmupProgress progress() {
+        ReconcileStatusXO.WarmupProgress progress = new ReconcileStatusXO.WarmupProgress();
+        progress.setPending(pending.size());
+        progress.setFetched(fetched.get());
+        progress.setMissing(missing.get());
+        progress.setFailed(failed.get());
+        return progress;
+    }
+
+    /**
+     * @param warmup The {@code warmup} of a repository, a list of paths or a string of one path per line where blank
+     *               lines and lines starting with {@code #} are ignored
+     * @return the paths, starting with {@code /}
+     */
+    static List<String> paths(Object warmup) {
+        Collection<?> entries;
+        if (warmup instanceof Collection) {
+            entries = (Collection<?>) warmup;
+        } else if (warmup instanceof String) {
+            entries = List.of(((String) warmup).split("\r\n|\r|\n"));
+        } else {
+            return Collections.emptyList();
+        }
+        List<String> paths = new ArrayList<>();
+        for (Object entry : entries) {
+            String path = entry == null ? "" : entry.toString().trim();
+            if (!path.isEmpty() && !path.startsWith("#")) {
+                paths.add("/" + path.replaceFirst("^/+", ""));
+            }
+        }
+        return paths;
+    }
+}
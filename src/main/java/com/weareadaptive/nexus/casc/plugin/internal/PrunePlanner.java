@@ -0,0 +1,99 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+import com.weareadaptive.nexus.casc.plugin.internal.config.ConfigPrune;
+import org.sonatype.goodies.common.ComponentSupport;
+
+import java.util.Collection;
+import java.util.stream.Collectors;
+
+/**
+ * Guards the prune passes against deleting far more than intended, e.g. because a configuration template rendered an
+ * empty list of repositories.
+ * <p>
+ * Every prune pass computes its whole set of deletions upfront and asks the planner for approval. A set larger than
+ * {@code prune.maxDeletions} entities or {@code prune.maxDeletionPercent} percent of the existing entities of its kind
+ * is refused and nothing of that kind is deleted. Without thresholds everything is approved.
+ */
+public class PrunePlanner extends ComponentSupport {
+    /**
+     * Max number of names listed when refusing a deletion set
+     */
+    static final int MAX_LOGGED_NAMES = 10;
+
+    static final int DEFAULT_DELETIONS_PER_MINUTE = 6;
+
+    private final Integer maxDeletions;
+    private final Integer maxDeletionPercent;
+    private final int deleteRepositoriesAfterRuns;
+    private final boolean deleteInBackground;
+    private final int deletionsPerMinute;
+
+    public PrunePlanner(ConfigPrune prune) {
+        this.maxDeletions = prune == null ? null : prune.getMaxDeletions();
+        this.maxDeletionPercent = prune == null ? null : prune.getMaxDeletionPercent();
+        this.deleteRepositoriesAfterRuns = prune == null || prune.getDeleteRepositoriesAfterRuns() == null
+                ? 0 : prune.getDeleteRepositoriesAfterRuns();
+        this.deleteInBackground = prune != null && prune.getDeleteInBackground() != null && prune.getDeleteInBackground();
+        this.deletionsPerMinute = prune == null || prune.getDeletionsPerMinute() == null
+                ? DEFAULT_DELETIONS_PER_MINUTE : prune.getDeletionsPerMinute();
+    }
+
+    /**
+     * @param kind      The kind of entities, used for logging
+     * @param deletions The names of the entities to delete
+     * @param existing  The number of existing entities of the kind the deletions were picked from
+     * @return the reason to refuse the deletions, null if they may proceed
+     */
+    public String check(String kind, Collection<String> deletions, int existing) {
+        if (deletions.isEmpty()) {
+            return null;
+        }
+        if (maxDeletions != null && deletions.size() > maxDeletions) {
+            return deletions.size() + " " + kind + " to delete exceeds prune.maxDeletions " + maxDeletions;
+        }
+        if (maxDeletionPercent != null && (long) deletions.size() * 100 > (long) maxDeletionPercent * existing) {
+            return deletions.size() + " of " + existing + " " + kind + " to delete exceeds prune.maxDeletionPercent "
+                    + maxDeletionPercent;
+        }
+        return null;
+    }
+
+    /**
+     * Check the deletions, logging an error if they are refused
+     *
+     * @return true if the deletions may proceed
+     */
+    public boolean approve(String kind, Collection<String> deletions, int existing) {
+        String refusal = check(kind, deletions, existing);
+        if (refusal == null) {
+            return true;
+        }
+        log.error("Not pruning {}: {}. Would have deleted {}", kind, refusal, deletions.stream()
+                .limit(MAX_LOGGED_NAMES)
+                .collect(Collectors.joining(", ", "", deletions.size() > MAX_LOGGED_NAMES ? ", ..." : "")));
+        return false;
+    }
+
+    /**
+     * @return the number of completed runs a pruned repository stays offline before it is deleted, 0 to delete it
+     * right away
+     */
+    public int getDeleteRepositoriesAfterRuns() {
+        return deleteRepositoriesAfterRuns;
+    }
+
+    /**
+     * @return true to only take pruned repositories offline and leave their deletion, and the one of pruned blob stores,
+     * to the {@link DeletionQueue}
+     */
+    public boolean isDeleteInBackground() {
+        return deleteInBackground;
+    }
+
+    /**
+     * @return the max number of entities the {@link DeletionQueue} deletes per minute, 0 for no limit
+     */
+    public int getDeletionsPerMinute() {
+        return deletionsPerMinute;
+    }
+}
@@ -0,0 +1,320 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+import com.weareadaptive.nexus.casc.plugin.internal.config.ConfigRepositoryEntry;
+import org.sonatype.goodies.common.ComponentSupport;
+import org.sonatype.nexus.repository.Recipe;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * The repository attributes expected by the installed recipes, so repository configurations can be validated in memory
+ * instead of by Nexus starting and rolling back the facets of a repository with invalid attributes.
+ * <p>
+ * A schema is built once per recipe name from the format and type of the installed {@link Recipe} and the attributes
+ * of the facets it uses. Attributes of facets which are not known here, e.g. of formats added by other plugins, are
+ * only logged.
+ */
+@Named
+@Singleton
+public class RecipeSchemas extends ComponentSupport {
+    private static final String HOSTED = "hosted";
+    private static final String PROXY = "proxy";
+    private static final String GROUP = "group";
+
+    /**
+     * The known facets by attribute key
+     */
+    private static final Map<String, FacetSchema> FACETS = new LinkedHashMap<>();
+
+    static {
+        facet("storage")
+                .required("blobStoreName", Value.STRING)
+                .optional("strictContentTypeValidation", Value.BOOLEAN)
+                .optional("writePolicy", Value.oneOf("ALLOW", "ALLOW_ONCE", "DENY"))
+                .optional("dataStoreName", Value.STRING);
+        facet("cleanup").optional("policyName", Value.STRING_OR_LIST);
+        facet("component").optional("proprietaryComponents", Value.BOOLEAN);
+        facet("routingRules").optional("routingRuleId", Value.ANY);
+        facet("proxy").types(PROXY)
+                .required("remoteUrl", Value.URL)
+                .optional("contentMaxAge", Value.NUMBER)
+                .optional("metadataMaxAge", Value.NUMBER);
+        facet("negativeCache").types(PROXY)
+                .optional("enabled", Value.BOOLEAN)
+                .optional("timeToLive", Value.NUMBER);
+        facet("httpclient").types(PROXY)
+                .optional("blocked", Value.BOOLEAN)
+                .optional("autoBlock", Value.BOOLEAN)
+                .optional("connection", Value.MAP)
+                .optional("authentication", Value.MAP);
+        facet("group").types(GROUP)
+                .required("memberNames", Value.LIST)
+                .optional("writableMember", Value.STRING);
+        facet("maven").formats("maven2")
+                .optional("versionPolicy", Value.oneOf("RELEASE", "SNAPSHOT", "MIXED"))
+                .optional("layoutPolicy", Value.oneOf("STRICT", "PERMISSIVE"))
+                .optional("contentDisposition", Value.oneOf("INLINE", "ATTACHMENT"));
+        facet("docker").formats("docker")
+                .optional("v1Enabled", Value.BOOLEAN)
+                .optional("forceBasicAuth", Value.BOOLEAN)
+                .optional("httpPort", Value.NUMBER)
+                .optional("httpsPort", Value.NUMBER)
+                .optional("subdomain", Value.STRING);
+        facet("dockerProxy").formats("docker").types(PROXY)
+                .optional("indexType", Value.oneOf("REGISTRY", "HUB", "CUSTOM"))
+                .optional("indexUrl", Value.URL)
+                .optional("cacheForeignLayers", Value.BOOLEAN)
+                .optional("foreignLayerUrlWhitelist", Value.LIST);
+        facet("raw").formats("raw").optional("contentDisposition", Value.oneOf("INLINE", "ATTACHMENT"));
+        facet("apt").formats("apt").types(HOSTED, PROXY)
+                .required("distribution", Value.STRING)
+                .optional("flat", Value.BOOLEAN);
+        facet("aptSigning").formats("apt").types(HOSTED, PROXY)
+                .optional("keypair", Value.STRING)
+                .optional("passphrase", Value.STRING);
+        facet("yum").formats("yum")
+                .optional("repodataDepth", Value.NUMBER)
+                .optional("deployPolicy", Value.oneOf("PERMISSIVE", "STRICT"));
+        facet("yumSigning").formats("yum")
+                .optional("keypair", Value.STRING)
+                .optional("passphrase", Value.STRING);
+        facet("npm").formats("npm")
+                .optional("removeNonCataloged", Value.BOOLEAN)
+                .optional("removeQuarantined", Value.BOOLEAN);
+        facet("nugetProxy").formats("nuget").types(PROXY)
+                .optional("queryCacheItemMaxAge", Value.NUMBER)
+                .optional("nugetVersion", Value.oneOf("V2", "V3"));
+        facet("pypi").formats("pypi").optional("removeQuarantined", Value.BOOLEAN);
+        facet("golang").formats("go");
+        facet("bower").formats("bower").types(PROXY).optional("rewritePackageUrls", Value.BOOLEAN);
+    }
+
+    private final Map<String, Recipe> recipes;
+    private final Map<String, Schema> schemas = new ConcurrentHashMap<>();
+
+    @Inject
+    public RecipeSchemas(final Map<String, Recipe> recipes) {
+        this.recipes = recipes;
+    }
+
+    /**
+     * @return the attribute schema of the recipe, null if no such recipe is installed
+     */
+    public Schema schema(String recipeName) {
+        Recipe recipe = recipes.get(recipeName);
+        if (recipe == null) {
+            return null;
+        }
+        return schemas.computeIfAbsent(recipeName,
+                name -> new Schema(name, recipe.getFormat().getValue(), recipe.getType().getValue()));
+    }
+
+    /**
+     * @return an error for every attribute of the repository the recipe does not accept, empty if they are valid
+     */
+    public List<String> validate(ConfigRepositoryEntry repoConfig) {
+        Schema schema = schema(repoConfig.getRecipeName());
+        if (schema == null) {
+            return Collections.singletonList("recipeName " + repoConfig.getRecipeName() + " is not installed, installed are "
+                    + new TreeSet<>(recipes.keySet()));
+        }
+        return schema.validate(repoConfig.getName(), repoConfig.getAttributes());
+    }
+
+    private static FacetSchema facet(String name) {
+        FacetSchema facet = new FacetSchema(name);
+        FACETS.put(name, facet);
+        return facet;
+    }
+
+    /**
+     * The attributes a recipe accepts
+     */
+    public class Schema {
+        private final String recipeName;
+        private final String format;
+        private final String type;
+        private final Map<String, FacetSchema> facets = new LinkedHashMap<>();
+
+        Schema(String recipeName, String format, String type) {
+            this.recipeName = recipeName;
+            this.format = format;
+            this.type = type;
+            FACETS.values().stream()
+                    .filter(facet -> facet.appliesTo(format, type))
+                    .forEach(facet -> facets.put(facet.name, facet));
+        }
+
+        public String getFormat() {
+            return format;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * @return the keys of the facets the recipe accepts attributes of
+         */
+        public Set<String> getFacets() {
+            return facets.keySet();
+        }
+
+        List<String> validate(String repository, Map<String, ? extends Map<String, Object>> attributes) {
+            List<String> errors = new ArrayList<>();
+            Map<?, ?> values = attributes == null ? Collections.emptyMap() : attributes;
+
+            for (FacetSchema facet : facets.values()) {
+                Object facetValue = values.get(facet.name);
+                if (facetValue == null) {
+                    facet.attributes.entrySet().stream()
+                            .filter(attribute -> attribute.getValue().required)
+                            .forEach(attribute -> errors.add("attributes." + facet.name + "." + attribute.getKey()
+                                    + " is required by " + recipeName));
+                } else if (!(facetValue instanceof Map)) {
+                    errors.add("attributes." + facet.name + " must be a map");
+                } else {
+                    facet.validate((Map<?, ?>) facetValue, errors).forEach(unknown -> log.warn(
+                            "Repository {} has attributes.{}.{} which is unknown, it is passed on to Nexus as is",
+                            repository, facet.name, unknown));
+                }
+            }
+
+            for (Object key : values.keySet()) {
+                String name = String.valueOf(key);
+                if (facets.containsKey(name)) {
+                    continue;
+                }
+                if (FACETS.containsKey(name)) {
+                    errors.add("attributes." + name + " is not supported by " + recipeName);
+                } else {
+                    log.warn("Repository {} has attributes.{} which is unknown, it is passed on to Nexus as is", repository, name);
+                }
+            }
+            return errors;
+        }
+    }
+
+    private static class FacetSchema {
+        private final String name;
+        private final Map<String, Attribute> attributes = new LinkedHashMap<>();
+        private Set<String> formats;
+        private Set<String> types;
+
+        FacetSchema(String name) {
+            this.name = name;
+        }
+
+        FacetSchema formats(String... formats) {
+            this.formats = new LinkedHashSet<>(Arrays.asList(formats));
+            return this;
+        }
+
+        FacetSchema types(String... types) {
+            this.types = new LinkedHashSet<>(Arrays.asList(types));
+            return this;
+        }
+
+        FacetSchema required(String attribute, Value value) {
+            attributes.put(attribute, new Attribute(value, true));
+            return this;
+        }
+
+        FacetSchema optional(String attribute, Value value) {
+            attributes.put(attribute, new Attribute(value, false));
+            return this;
+        }
+
+        boolean appliesTo(String format, String type) {
+            return (formats == null || formats.contains(format)) && (types == null || types.contains(type));
+        }
+
+        /**
+         * @return the keys of the attributes which are not part of the schema
+         */
+        List<String> validate(Map<?, ?> values, List<String> errors) {
+            attributes.forEach((attribute, schema) -> {
+                Object value = values.get(attribute);
+                String path = "attributes." + name + "." + attribute;
+                if (value == null) {
+                    if (schema.required) {
+                        errors.add(path + " is required");
+                    }
+                    return;
+                }
+                String problem = schema.value.check(value);
+                if (problem != null) {
+                    errors.add(path + " " + problem + ": " + value);
+                }
+            });
+            return values.keySet().stream()
+                    .map(String::valueOf)
+                    .filter(attribute -> !attributes.containsKey(attribute))
+                    .collect(toList());
+        }
+    }
+
+    private static class Attribute {
+        private final Value value;
+        private final boolean required;
+
+        Attribute(Value value, boolean required) {
+            this.value = value;
+            this.required = required;
+        }
+    }
+
+    /**
+     * The values an attribute accepts
+     */
+    private interface Value {
+        Value ANY = value -> null;
+        Value STRING = value -> value instanceof String ? null : "must be a string";
+        Value BOOLEAN = value -> value instanceof Boolean ? null : "must be true or false";
+        Value NUMBER = value -> value instanceof Number ? null : "must be a number";
+        Value LIST = value -> value instanceof Collection ? null : "must be a list";
+        Value MAP = value -> value instanceof Map ? null : "must be a map";
+        Value STRING_OR_LIST = value -> value instanceof String || value instanceof Collection ? null : "must be a string or a list";
+        Value URL = value -> {
+            if (!(value instanceof String)) {
+                return "must be a string";
+            }
+            try {
+                URI uri = new URI((String) value);
+                if (uri.getHost() != null && ("http".equals(uri.getScheme()) || "https".equals(uri.getScheme()))) {
+                    return null;
+                }
+            } catch (URISyntaxException e) {
+                // Reported below
+            }
+            return "must be an absolute http or https URL";
+        };
+
+        /**
+         * @return the problem of the value, null if it is accepted
+         */
+        String check(Object value);
+
+        static Value oneOf(String... values) {
+            List<String> accepted = Arrays.asList(values);
+            return value -> accepted.contains(value) ? null : "must be one of " + accepted;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+import org.slf4j.LoggerFactory;
+import org.sonatype.goodies.common.ComponentSupport;
+import org.sonatype.nexus.common.node.NodeAccess;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.nio.file.Paths;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Makes sure only one node of a Nexus cluster applies a given configuration at a time.
+ * <p>
+ * Enabled by pointing the env var {@code NEXUS_CASC_LOCK_DIR} to a directory shared by all nodes. The node acquiring
+ * the lease applies the configuration and renews the lease until it is done. The other nodes wait for the lease to be
+ * released: if the leader completed the same configuration in the meantime (or shortly before) they skip applying it,
+ * otherwise one of them takes over.
+ */
+@Named
+@Singleton
+public class ReconcileLeaderElection extends ComponentSupport {
+    /**
+     * The outcome of {@link #tryAcquire(String)}
+     */
+    public enum Lease {
+        /**
+         * This node is the leader and must apply the configuration
+         */
+        ACQUIRED,
+        /**
+         * Another node applied the configuration
+         */
+        APPLIED_ELSEWHERE,
+        /**
+         * Another node is applying a configuration
+         */
+        HELD_ELSEWHERE
+    }
+
+    public static final String ENV_LOCK_DIR = "NEXUS_CASC_LOCK_DIR";
+
+    public static final String ENV_LOCK_WAIT = "NEXUS_CASC_LOCK_WAIT";
+
+    static final long LEASE_TTL_MS = TimeUnit.MINUTES.toMillis(1);
+
+    static final long POLL_INTERVAL_MS = TimeUnit.SECONDS.toMillis(5);
+
+    static final long DEFAULT_WAIT_MS = TimeUnit.MINUTES.toMillis(30);
+
+    // Completions within this window are considered part of the same rollout
+    static final long COMPLETION_GRACE_MS = TimeUnit.MINUTES.toMillis(10);
+
+    private final String nodeId;
+    private final ReconcileLockStore store;
+    private final long leaseTtlMs;
+    private final long pollIntervalMs;
+    private final long waitMs;
+
+    private ScheduledExecutorService renewal;
+
+    @Inject
+    public ReconcileLeaderElection(final NodeAccess nodeAccess) {
+        this(nodeAccess.getId(), lockStoreFromEnv(), LEASE_TTL_MS, POLL_INTERVAL_MS, waitFromEnv());
+    }
+
+    ReconcileLeaderElection(String nodeId, ReconcileLockStore store, long leaseTtlMs, long pollIntervalMs, long waitMs) {
+        this.nodeId = nodeId;
+        this.store = store;
+        this.leaseTtlMs = leaseTtlMs;
+        this.pollIntervalMs = pollIntervalMs;
+        this.waitMs = waitMs;
+    }
+
+    private static ReconcileLockStore lockStoreFromEnv() {
+        String dir = System.getenv(ENV_LOCK_DIR);
+        return dir == null || dir.trim().isEmpty() ? null : new FileReconcileLockStore(Paths.get(dir.trim()));
+    }
+
+    private static long waitFromEnv() {
+        return parseWait(System.getenv(ENV_LOCK_WAIT));
+    }
+
+    /**
+     * @param wait The max number of seconds to wait for another node
+     * @return the wait in ms, the default if not set or invalid
+     */
+    static long parseWait(String wait) {
+        if (wait == null || wait.trim().isEmpty()) {
+            return DEFAULT_WAIT_MS;
+        }
+        long seconds;
+        try {
+            seconds = Long.parseLong(wait.trim());
+        } catch (NumberFormatException e) {
+            seconds = -1;
+        }
+        if (seconds >= 0) {
+            return TimeUnit.SECONDS.toMillis(seconds);
+        }
+        LoggerFactory.getLogger(ReconcileLeaderElection.class).warn(
+                "Invalid {} '{}', expected a number of seconds, waiting up to {} seconds",
+                ENV_LOCK_WAIT, wait, TimeUnit.MILLISECONDS.toSeconds(DEFAULT_WAIT_MS));
+        return DEFAULT_WAIT_MS;
+    }
+
+    public boolean isEnabled() {
+        return store != null;
+    }
+
+    /**
+     * Wait until this node may apply the configuration with the given digest.
+     *
+     * @return true if this node is the leader and must apply the configuration, false if another node applied it
+     */
+    public boolean acquire(String digest) throws InterruptedException {
+        if (store == null) {
+            return true;
+        }
+
+        long waitingSince = System.currentTimeMillis();
+        boolean waiting = false;
+        while (true) {
+            Lease lease = tryAcquire(digest, waitingSince);
+            if (lease != Lease.HELD_ELSEWHERE) {
+                return lease == Lease.ACQUIRED;
+            }
+
+            if (!waiting) {
+                log.info("Node {} is applying the casc configuration, waiting for it to finish", store.getHolder());
+                waiting = true;
+            }
+            if (System.currentTimeMillis() - waitingSince > waitMs) {
+                log.warn("Gave up waiting for node {} to apply the casc configuration, skipping", store.getHolder());
+                return false;
+            }
+            Thread.sleep(pollIntervalMs);
+        }
+    }
+
+    /**
+     * Try once to become the leader for the configuration with the given digest, without waiting. If another node
+     * holds the lease, {@link #acquire(String)} waits for it.
+     */
+    public Lease tryAcquire(String digest) {
+        if (store == null) {
+            return Lease.ACQUIRED;
+        }
+        return tryAcquire(digest, System.currentTimeMillis());
+    }
+
+    private Lease tryAcquire(String digest, long waitingSince) {
+        if (!store.tryAcquire(nodeId, digest, leaseTtlMs)) {
+            return Lease.HELD_ELSEWHERE;
+        }
+
+        // Checked once holding the lease, the leader may have completed it since this node last checked
+        ReconcileLockStore.Completion completion = store.getLastCompletion();
+        if (completion != null && completion.getDigest().equals(digest)
+                && completion.getCompletedAt() >= waitingSince - COMPLETION_GRACE_MS) {
+            log.info("Configuration already applied by node {}, skipping", completion.getNodeId());
+            store.release(nodeId, null);
+            return Lease.APPLIED_ELSEWHERE;
+        }
+
+        log.info("Node {} acquired the casc lease", nodeId);
+        startRenewal();
+        return Lease.ACQUIRED;
+    }
+
+    /**
+     * Release the lease acquired by {@link #acquire(String)}
+     *
+     * @param completedDigest The digest of the applied configuration, null if applying it failed
+     */
+    public void release(String completedDigest) {
+        if (store == null) {
+            return;
+        }
+        stopRenewal();
+        store.release(nodeId, completedDigest);
+    }
+
+    private synchronized void startRenewal() {
+        stopRenewal();
+        renewal = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "casc-lease-renewal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, leaseTtlMs / 3);
+        renewal.scheduleAtFixedRate(() -> {
+            try {
+                if (!store.renew(nodeId, leaseTtlMs)) {
+                    log.error("Node {} lost the casc lease, another node may apply the configuration concurrently", nodeId);
+                }
+            } catch (RuntimeException e) {
+                log.warn("Could not renew the casc lease", e);
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void stopRenewal() {
+        if (renewal != null) {
+            renewal.shutdownNow();
+            renewal = null;
+        }
+    }
+}
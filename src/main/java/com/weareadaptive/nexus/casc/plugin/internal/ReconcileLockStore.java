@@ -0,0 +1,65 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+/**
+ * Storage of the lease deciding which node of a cluster applies the casc configuration. Implementations must be
+ * shared by all nodes and make every method atomic.
+ */
+public interface ReconcileLockStore {
+    /**
+     * Acquire the lease unless another node holds a lease which has not yet expired
+     *
+     * @param nodeId The id of the node acquiring the lease
+     * @param digest The digest of the configuration the node is going to apply
+     * @param ttlMs  How long the lease is valid unless renewed
+     * @return true if the node holds the lease
+     */
+    boolean tryAcquire(String nodeId, String digest, long ttlMs);
+
+    /**
+     * Extend the lease held by the node
+     *
+     * @return false if the node does not hold the lease anymore
+     */
+    boolean renew(String nodeId, long ttlMs);
+
+    /**
+     * Release the lease held by the node
+     *
+     * @param completedDigest The digest of the configuration the node applied successfully, null if it failed
+     */
+    void release(String nodeId, String completedDigest);
+
+    /**
+     * @return the node holding a valid lease, null if there is none
+     */
+    String getHolder();
+
+    /**
+     * @return the last successfully applied configuration, null if there is none
+     */
+    Completion getLastCompletion();
+
+    class Completion {
+        private final String digest;
+        private final String nodeId;
+        private final long completedAt;
+
+        public Completion(String digest, String nodeId, long completedAt) {
+            this.digest = digest;
+            this.nodeId = nodeId;
+            this.completedAt = completedAt;
+        }
+
+        public String getDigest() {
+            return digest;
+        }
+
+        public String getNodeId() {
+            return nodeId;
+        }
+
+        public long getCompletedAt() {
+            return completedAt;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+import org.sonatype.goodies.common.ComponentSupport;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tracks the state and progress of the current (or last) casc run. In async mode this is the only way to tell
+ * whether the background reconciliation has finished.
+ * <p>
+ * Instead of logging every entity, progress is aggregated and logged at most every
+ * {@value #PROGRESS_LOG_INTERVAL_MS} ms per phase. The status is exposed by {@link CascStatusResource}.
+ */
+@Named
+@Singleton
+public class ReconcileStatus extends ComponentSupport {
+    public enum State {
+        IDLE, RUNNING, COMPLETED, FAILED, SKIPPED
+    }
+
+    static final long PROGRESS_LOG_INTERVAL_MS = 10000;
+
+    static final int MAX_ERRORS = 100;
+
+    private State state = State.IDLE;
+    private String phase;
+    private boolean async;
+    private long startedAt;
+    private long finishedAt;
+    private String failure;
+
+    private int phaseTotal;
+    private int phaseProcessed;
+    private long phaseStartedAt;
+    private long lastProgressLogAt;
+
+    private long processed;
+    private long failed;
+    private final Map<String, String> errors = new LinkedHashMap<>();
+    private final Set<String> failedKinds = new HashSet<>();
+
+    private ReconcileStatusXO.RunSummary lastRun;
+    private Map<String, ReconcileStatusXO.GroupReport> groups;
+    private Map<String, String> taskSchedules;
+
+    public synchronized void started(boolean async) {
+        this.state = State.RUNNING;
+        this.async = async;
+        this.phase = null;
+        this.startedAt = System.currentTimeMillis();
+        this.finishedAt = 0;
+        this.failure = null;
+        this.phaseTotal = 0;
+        this.phaseProcessed = 0;
+        this.processed = 0;
+        this.failed = 0;
+        this.errors.clear();
+        this.failedKinds.clear();
+        this.groups = null;
+        this.taskSchedules = null;
+    }
+
+    public synchronized void phase(String phase) {
+        phase(phase, 0);
+    }
+
+    /**
+     * Enter a new phase
+     *
+     * @param phase The name of the phase
+     * @param total The number of entities the phase is going to process, 0 if unknown
+     */
+    public synchronized void phase(String phase, int total) {
+        logPhaseDone();
+        this.phase = phase;
+        this.phaseTotal = total;
+        this.phaseProcessed = 0;
+        this.phaseStartedAt = System.currentTimeMillis();
+        this.lastProgressLogAt = phaseStartedAt;
+        log.debug("Entering phase {} with {} entities", phase, total);
+    }
+
+    /**
+     * Record an entity of the current phase as processed successfully (or skipped as up to date)
+     */
+    public synchronized void processed(String entity) {
+        ++processed;
+        ++phaseProcessed;
+        logProgressIfDue();
+    }
+
+    /**
+     * Record an entity of the current phase as failed
+     */
+    public synchronized void failed(String entity, Throwable cause) {
+        failed(entity, cause.toString());
+    }
+
+    public synchronized void failed(String entity, String message) {
+        ++failed;
+        ++phaseProcessed;
+        int colon = entity.indexOf(':');
+        failedKinds.add(colon < 0 ? entity : entity.substring(0, colon));
+        errors.remove(entity);
+        errors.put(entity, message);
+        if (errors.size() > MAX_ERRORS) {
+            Iterator<String> oldest = errors.keySet().iterator();
+            oldest.next();
+            oldest.remove();
+        }
+        logProgressIfDue();
+    }
+
+    /**
+     * Unlike the errors, which are capped, every failure of the run is taken into account
+     *
+     * @param kind the part of the failed entities before the first colon, e.g. {@code repository} for
+     *             {@code repository:maven-central}
+     * @return true if an entity of the kind failed in the current run
+     */
+    public synchronized boolean hasFailed(String kind) {
+        return failedKinds.contains(kind);
+    }
+
+    /**
+     * Record the fan-out of the configured group repositories
+     */
+    public synchronized void groups(Map<String, ReconcileStatusXO.GroupReport> groups) {
+        this.groups = groups;
+    }
+
+    /**
+     * Record the computed cron expressions of the configured tasks
+     */
+    public synchronized void taskSchedules(Map<String, String> taskSchedules) {
+        this.taskSchedules = taskSchedules;
+    }
+
+    public synchronized void completed() {
+        logPhaseDone();
+        this.state = State.COMPLETED;
+        this.phase = null;
+        this.finishedAt = System.currentTimeMillis();
+        this.lastRun = summary();
+        log.info("casc run completed in {} ms: {} entities processed, {} failed", finishedAt - startedAt, processed, failed);
+    }
+
+    /**
+     * Record that another node of the cluster applied the configuration
+     */
+    public synchronized void skipped() {
+        this.state = State.SKIPPED;
+        this.phase = null;
+        this.startedAt = System.currentTimeMillis();
+        this.finishedAt = startedAt;
+        this.failure = null;
+    }
+
+    public synchronized void failed(Throwable cause) {
+        this.state = State.FAILED;
+        this.finishedAt = System.currentTimeMillis();
+        this.failure = cause.toString();
+        this.lastRun = summary();
+    }
+
+    private void logProgressIfDue() {
+        long now = System.currentTimeMillis();
+        if (now - lastProgressLogAt >= PROGRESS_LOG_INTERVAL_MS) {
+            lastProgressLogAt = now;
+            log.info("casc phase {}: {}{} entities processed ({} per second)", phase, phaseProcessed,
+                    phaseTotal > 0 ? "/" + phaseTotal : "", perSecond(phaseProcessed, now - phaseStartedAt));
+        }
+    }
+
+    private void logPhaseDone() {
+        if (phase != null && phaseProcessed > 0) {
+            log.info("casc phase {}: {} entities processed in {} ms", phase, phaseProcessed,
+                    System.currentTimeMillis() - phaseStartedAt);
+        }
+    }
+
+    private static double perSecond(long count, long elapsedMs) {
+        return elapsedMs <= 0 ? count : Math.round(count * 10000.0 / elapsedMs) / 10.0;
+    }
+
+    private ReconcileStatusXO.RunSummary summary() {
+        ReconcileStatusXO.RunSummary summary = new ReconcileStatusXO.RunSummary();
+        summary.setState(state.name());
+        summary.setAsync(async);
+        summary.setStartedAt(startedAt);
+        summary.setFinishedAt(finishedAt);
+        summary.setDurationMs(finishedAt - startedAt);
+        summary.setProcessed(processed);
+        summary.setFailed(failed);
+        summary.setFailure(failure);
+        return summary;
+    }
+
+    public synchronized ReconcileStatusXO snapshot() {
+        long now = System.currentTimeMillis();
+        ReconcileStatusXO xo = new ReconcileStatusXO();
+        xo.setState(state.name());
+        xo.setAsync(async);
+        xo.setPhase(phase);
+        xo.setPhaseTotal(phaseTotal);
+        xo.setPhaseProcessed(phaseProcessed);
+        xo.setPhaseRemaining(Math.max(0, phaseTotal - phaseProcessed));
+        xo.setProcessed(processed);
+        xo.setFailed(failed);
+        xo.setThroughputPerSecond(perSecond(processed, (finishedAt > 0 ? finishedAt : now) - startedAt));
+        xo.setStartedAt(startedAt);
+        xo.setFinishedAt(finishedAt);
+        xo.setFailure(failure);
+        xo.setErrors(new LinkedHashMap<>(errors));
+        xo.setLastRun(lastRun);
+        xo.setGroups(groups);
+        xo.setTaskSchedules(taskSchedules);
+        return xo;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized String getPhase() {
+        return phase;
+    }
+
+    public synchronized boolean isAsync() {
+        return async;
+    }
+
+    public synchronized long getStartedAt() {
+        return startedAt;
+    }
+
+    public synchronized long getFinishedAt() {
+        return finishedAt;
+    }
+
+    public synchronized String getFailure() {
+        return failure;
+    }
+}
@@ -0,0 +1,391 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * REST representation of {@link ReconcileStatus}
+ */
+public class ReconcileStatusXO {
+    private String state;
+    private boolean async;
+    private String phase;
+    private int phaseTotal;
+    private int phaseProcessed;
+    private int phaseRemaining;
+    private long processed;
+    private long failed;
+    private double throughputPerSecond;
+    private long startedAt;
+    private long finishedAt;
+    private String failure;
+    private Map<String, String> errors;
+    private RunSummary lastRun;
+    private Map<String, GroupReport> groups;
+    private DeletionProgress deletions;
+    private WarmupProgress warmup;
+    private Map<String, String> taskSchedules;
+
+    public String getState() {
+        return state;
+    }
+
+    public void setState(String state) {
+        this.state = state;
+    }
+
+    public boolean isAsync() {
+        return async;
+    }
+
+    public void setAsync(boolean async) {
+        this.async = async;
+    }
+
+    public String getPhase() {
+        return phase;
+    }
+
+    public void setPhase(String phase) {
+        this.phase = phase;
+    }
+
+    public int getPhaseTotal() {
+        return phaseTotal;
+    }
+
+    public void setPhaseTotal(int phaseTotal) {
+        this.phaseTotal = phaseTotal;
+    }
+
+    public int getPhaseProcessed() {
+        return phaseProcessed;
+    }
+
+    public void setPhaseProcessed(int phaseProcessed) {
+        this.phaseProcessed = phaseProcessed;
+    }
+
+    public int getPhaseRemaining() {
+        return phaseRemaining;
+    }
+
+    public void setPhaseRemaining(int phaseRemaining) {
+        this.phaseRemaining = phaseRemaining;
+    }
+
+    public long getProcessed() {
+        return processed;
+    }
+
+    public void setProcessed(long processed) {
+        this.processed = processed;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public void setFailed(long failed) {
+        this.failed = failed;
+    }
+
+    public double getThroughputPerSecond() {
+        return throughputPerSecond;
+    }
+
+    public void setThroughputPerSecond(double throughputPerSecond) {
+        this.throughputPerSecond = throughputPerSecond;
+    }
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(long startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public long getFinishedAt() {
+        return finishedAt;
+    }
+
+    public void setFinishedAt(long finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+
+    public String getFailure() {
+        return failure;
+    }
+
+    public void setFailure(String failure) {
+        this.failure = failure;
+    }
+
+    public Map<String, String> getErrors() {
+        return errors;
+    }
+
+    public void setErrors(Map<String, String> errors) {
+        this.errors = errors;
+    }
+
+    public RunSummary getLastRun() {
+        return lastRun;
+    }
+
+    public void setLastRun(RunSummary lastRun) {
+        this.lastRun = lastRun;
+    }
+
+    public Map<String, GroupReport> getGroups() {
+        return groups;
+    }
+
+    public void setGroups(Map<String, GroupReport> groups) {
+        this.groups = groups;
+    }
+
+    public DeletionProgress getDeletions() {
+        return deletions;
+    }
+
+    public void setDeletions(DeletionProgress deletions) {
+        this.deletions = deletions;
+    }
+
+    public WarmupProgress getWarmup() {
+        return warmup;
+    }
+
+    public void setWarmup(WarmupProgress warmup) {
+        this.warmup = warmup;
+    }
+
+    public Map<String, String> getTaskSchedules() {
+        return taskSchedules;
+    }
+
+    public void setTaskSchedules(Map<String, String> taskSchedules) {
+        this.taskSchedules = taskSchedules;
+    }
+
+    public static class RunSummary {
+        private String state;
+        private boolean async;
+        private long startedAt;
+        private long finishedAt;
+        private long durationMs;
+        private long processed;
+        private long failed;
+        private String failure;
+
+        public String getState() {
+            return state;
+        }
+
+        public void setState(String state) {
+            this.state = state;
+        }
+
+        public boolean isAsync() {
+            return async;
+        }
+
+        public void setAsync(boolean async) {
+            this.async = async;
+        }
+
+        public long getStartedAt() {
+            return startedAt;
+        }
+
+        public void setStartedAt(long startedAt) {
+            this.startedAt = startedAt;
+        }
+
+        public long getFinishedAt() {
+            return finishedAt;
+        }
+
+        public void setFinishedAt(long finishedAt) {
+            this.finishedAt = finishedAt;
+        }
+
+        public long getDurationMs() {
+            return durationMs;
+        }
+
+        public void setDurationMs(long durationMs) {
+            this.durationMs = durationMs;
+        }
+
+        public long getProcessed() {
+            return processed;
+        }
+
+        public void setProcessed(long processed) {
+            this.processed = processed;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        public void setFailed(long failed) {
+            this.failed = failed;
+        }
+
+        public String getFailure() {
+            return failure;
+        }
+
+        public void setFailure(String failure) {
+            this.failure = failure;
+        }
+    }
+
+    /**
+     * The fan-out of a group repository, see {@link GroupGraph}
+     */
+    public static class GroupReport {
+        private int directMembers;
+        private int members;
+        private int depth;
+        private List<String> duplicates;
+        private List<String> cycle;
+
+        public int getDirectMembers() {
+            return directMembers;
+        }
+
+        public void setDirectMembers(int directMembers) {
+            this.directMembers = directMembers;
+        }
+
+        public int getMembers() {
+            return members;
+        }
+
+        public void setMembers(int members) {
+            this.members = members;
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+
+        public void setDepth(int depth) {
+            this.depth = depth;
+        }
+
+        public List<String> getDuplicates() {
+            return duplicates;
+        }
+
+        public void setDuplicates(List<String> duplicates) {
+            this.duplicates = duplicates;
+        }
+
+        public List<String> getCycle() {
+            return cycle;
+        }
+
+        public void setCycle(List<String> cycle) {
+            this.cycle = cycle;
+        }
+    }
+
+    /**
+     * The progress of the background deletion of pruned entities, see {@link DeletionQueue}
+     */
+    public static class DeletionProgress {
+        private int queued;
+        private String deleting;
+        private long deleted;
+        private long failed;
+        private List<String> pending;
+
+        public int getQueued() {
+            return queued;
+        }
+
+        public void setQueued(int queued) {
+            this.queued = queued;
+        }
+
+        public String getDeleting() {
+            return deleting;
+        }
+
+        public void setDeleting(String deleting) {
+            this.deleting = deleting;
+        }
+
+        public long getDeleted() {
+            return deleted;
+        }
+
+        public void setDeleted(long deleted) {
+            this.deleted = deleted;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        public void setFailed(long failed) {
+            this.failed = failed;
+        }
+
+        public List<String> getPending() {
+            return pending;
+        }
+
+        public void setPending(List<String> pending) {
+            this.pending = pending;
+        }
+    }
+
+    /**
+     * The progress of the prefetching of the warm-up paths of proxy repositories, see {@link ProxyWarmup}
+     */
+    public static class WarmupProgress {
+        private int pending;
+        private long fetched;
+        private long missing;
+        private long failed;
+
+        public int getPending() {
+            return pending;
+        }
+
+        public void setPending(int pending) {
+            this.pending = pending;
+        }
+
+        public long getFetched() {
+            return fetched;
+        }
+
+        public void setFetched(long fetched) {
+            this.fetched = fetched;
+        }
+
+        public long getMissing() {
+            return missing;
+        }
+
+        public void setMissing(long missing) {
+            this.missing = missing;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        public void setFailed(long failed) {
+            this.failed = failed;
+        }
+    }
+}
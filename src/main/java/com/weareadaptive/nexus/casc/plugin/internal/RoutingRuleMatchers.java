@@ -0,0 +1,65 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+import org.sonatype.goodies.common.ComponentSupport;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Compiles and caches the regular expressions of routing rule matchers, so invalid matchers are reported when the
+ * configuration is applied instead of when Nexus evaluates the rule.
+ * <p>
+ * Matching follows Nexus: a matcher must match the whole request path, which starts with {@code /}.
+ * <p>
+ * The cache only holds the matchers of the current run, {@link #clear()} drops it when a run starts.
+ */
+@Named
+@Singleton
+public class RoutingRuleMatchers extends ComponentSupport {
+    private final Map<String, Pattern> patterns = new ConcurrentHashMap<>();
+
+    /**
+     * Drop the matchers compiled by previous runs
+     */
+    public void clear() {
+        patterns.clear();
+    }
+
+    /**
+     * @return the compiled matcher
+     * @throws PatternSyntaxException if the matcher is not a valid regular expression
+     */
+    public Pattern compile(String matcher) {
+        return patterns.computeIfAbsent(matcher, Pattern::compile);
+    }
+
+    /**
+     * @return a description of every invalid matcher including the position of the error, empty if all are valid
+     */
+    public List<String> validate(List<String> matchers) {
+        List<String> errors = new ArrayList<>();
+        if (matchers == null || matchers.isEmpty()) {
+            errors.add("at least one matcher is required");
+            return errors;
+        }
+        for (int i = 0; i < matchers.size(); ++i) {
+            String matcher = matchers.get(i);
+            if (matcher == null) {
+                errors.add("matchers[" + i + "] is null");
+                continue;
+            }
+            try {
+                compile(matcher);
+            } catch (PatternSyntaxException e) {
+                errors.add("matchers[" + i + "] '" + matcher + "': " + e.getDescription() + " at index " + e.getIndex());
+            }
+        }
+        return errors;
+    }
+}
@@ -0,0 +1,218 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+import com.weareadaptive.nexus.casc.plugin.internal.config.ConfigBlobStore;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The {@code s3} attributes of blob stores of type {@value #TYPE}.
+ * <p>
+ * Nexus reads these attributes as strings and ignores the ones it does not know, so a typo or a value of the wrong type
+ * only shows once the S3 client misbehaves. {@link #check(String, Map)} rejects values which do not parse,
+ * {@link #warnings(String, Map)} reports unknown attributes, which are passed on to Nexus as is, and {@link #attributes(ConfigBlobStore)} converts the values to the strings the Nexus UI would store, so
+ * {@code expiration: 3} and {@code forcepathstyle: true} work as well as their quoted forms.
+ * <p>
+ * {@code max_connection_pool_size} is the only throughput setting of a single S3 blob store, the multipart settings are
+ * shared by all S3 blob stores, see {@code core.s3Transfer}.
+ */
+final class S3BlobStoreAttributes {
+    static final String TYPE = "S3";
+    static final String CONFIG_KEY = "s3";
+
+    static final String BUCKET = "bucket";
+    static final String EXPIRATION = "expiration";
+    static final String FORCE_PATH_STYLE = "forcepathstyle";
+    static final String MAX_CONNECTION_POOL_SIZE = "max_connection_pool_size";
+
+    static final List<String> SIGNER_TYPES = Arrays.asList("none", "S3SignerType", "AWSS3V4SignerType");
+    static final List<String> ENCRYPTION_TYPES = Arrays.asList("DEFAULT", "s3ManagedEncryption", "kmsManagedEncryption");
+
+    private enum Kind {STRING, URL, INTEGER, BOOLEAN, SIGNER_TYPE, ENCRYPTION_TYPE}
+
+    /**
+     * The attributes Nexus reads, by name
+     */
+    private static final Map<String, Kind> ATTRIBUTES = new LinkedHashMap<>();
+
+    static {
+        ATTRIBUTES.put(BUCKET, Kind.STRING);
+        ATTRIBUTES.put("prefix", Kind.STRING);
+        ATTRIBUTES.put("accessKeyId", Kind.STRING);
+        ATTRIBUTES.put("secretAccessKey", Kind.STRING);
+        ATTRIBUTES.put("sessionToken", Kind.STRING);
+        ATTRIBUTES.put("assumeRole", Kind.STRING);
+        ATTRIBUTES.put("region", Kind.STRING);
+        ATTRIBUTES.put("endpoint", Kind.URL);
+        ATTRIBUTES.put(EXPIRATION, Kind.INTEGER);
+        ATTRIBUTES.put("signertype", Kind.SIGNER_TYPE);
+        ATTRIBUTES.put(FORCE_PATH_STYLE, Kind.BOOLEAN);
+        ATTRIBUTES.put("encryption_type", Kind.ENCRYPTION_TYPE);
+        ATTRIBUTES.put("encryption_key", Kind.STRING);
+        ATTRIBUTES.put(MAX_CONNECTION_POOL_SIZE, Kind.INTEGER);
+    }
+
+    private S3BlobStoreAttributes() {
+    }
+
+    static boolean isS3(ConfigBlobStore blobStore) {
+        return TYPE.equals(blobStore.getType());
+    }
+
+    /**
+     * @param path The path of the blob store in the configuration, prefixing the errors
+     * @return every error of the {@code s3} attributes, empty if there is none
+     */
+    static List<String> check(String path, Map<String, Map<String, Object>> attributes) {
+        List<String> errors = new ArrayList<>();
+        Map<String, Object> s3 = ConfigValidator.facet(attributes, CONFIG_KEY);
+        if (s3 == null || s3.get(BUCKET) == null) {
+            errors.add(path + ": attributes.s3.bucket is required");
+            return errors;
+        }
+
+        s3.forEach((name, value) -> {
+            Kind kind = ATTRIBUTES.get(name);
+            if (kind != null && value != null) {
+                String error = checkValue(name, kind, value);
+                if (error != null) {
+                    errors.add(path + ": attributes.s3." + name + " " + error);
+                }
+            }
+        });
+
+        String bucket = String.valueOf(s3.get(BUCKET));
+        if (!bucket.matches("[a-z0-9][a-z0-9.-]{1,61}[a-z0-9]")) {
+            errors.add(path + ": attributes.s3.bucket is not a valid bucket name: " + bucket);
+        }
+        if ((s3.get("accessKeyId") == null) != (s3.get("secretAccessKey") == null)) {
+            errors.add(path + ": attributes.s3.accessKeyId and attributes.s3.secretAccessKey must be set together");
+        }
+        if (s3.get("sessionToken") != null && s3.get("accessKeyId") == null) {
+            errors.add(path + ": attributes.s3.sessionToken requires attributes.s3.accessKeyId");
+        }
+        if (s3.get("encryption_key") != null && !"kmsManagedEncryption".equals(s3.get("encryption_type"))) {
+            errors.add(path + ": attributes.s3.encryption_key requires attributes.s3.encryption_type kmsManagedEncryption");
+        }
+        return errors;
+    }
+
+    /**
+     * @param path The path of the blob store in the configuration, prefixing the warnings
+     * @return a warning per unknown {@code s3} attribute, with the known attribute it is likely a typo of
+     */
+    static List<String> warnings(String path, Map<String, Map<String, Object>> attributes) {
+        List<String> warnings = new ArrayList<>();
+        Map<String, Object> s3 = ConfigValidator.facet(attributes, CONFIG_KEY);
+        if (s3 == null) {
+            return warnings;
+        }
+        for (String name : s3.keySet()) {
+            if (!ATTRIBUTES.containsKey(name)) {
+                String suggestion = suggest(name);
+                warnings.add(path + ": unknown attribute attributes.s3." + name + " is passed on to Nexus as is"
+                        + (suggestion != null ? ", did you mean " + suggestion + "?" : ""));
+            }
+        }
+        return warnings;
+    }
+
+    /**
+     * @return the reason the value is invalid, null if it is valid
+     */
+    private static String checkValue(String name, Kind kind, Object value) {
+        if (value instanceof Map || value instanceof Collection) {
+            return "must be a single value";
+        }
+        String string = String.valueOf(value);
+        switch (kind) {
+            case URL:
+                try {
+                    URI uri = new URI(string);
+                    if (uri.getHost() == null || !("http".equals(uri.getScheme()) || "https".equals(uri.getScheme()))) {
+                        return "must be an http(s) URL: " + string;
+                    }
+                } catch (URISyntaxException e) {
+                    return "must be an http(s) URL: " + string;
+                }
+                return null;
+            case INTEGER:
+                int min = EXPIRATION.equals(name) ? -1 : 1;
+                try {
+                    if (Integer.parseInt(string) < min) {
+                        return "must be at least " + min + ": " + string;
+                    }
+                } catch (NumberFormatException e) {
+                    return "must be an integer: " + string;
+                }
+                return null;
+            case BOOLEAN:
+                return "true".equals(string) || "false".equals(string) ? null : "must be true or false: " + string;
+            case SIGNER_TYPE:
+                return SIGNER_TYPES.contains(string) ? null : "must be one of " + SIGNER_TYPES + ": " + string;
+            case ENCRYPTION_TYPE:
+                return ENCRYPTION_TYPES.contains(string) ? null : "must be one of " + ENCRYPTION_TYPES + ": " + string;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return the known attribute the unknown one is a typo of, null if there is none close enough
+     */
+    static String suggest(String name) {
+        String suggestion = null;
+        int best = 3;
+        for (String known : ATTRIBUTES.keySet()) {
+            int distance = distance(name.toLowerCase(Locale.ROOT).replace("_", ""),
+                    known.toLowerCase(Locale.ROOT).replace("_", ""));
+            if (distance < best) {
+                best = distance;
+                suggestion = known;
+            }
+        }
+        return suggestion;
+    }
+
+    private static int distance(String a, String b) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); ++j) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); ++i) {
+            current[0] = i;
+            for (int j = 1; j <= b.length(); ++j) {
+                int substitution = previous[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+
+    /**
+     * @return the attributes of the blob store to store, with the values of the {@code s3} attributes as strings
+     */
+    static Map<String, Map<String, Object>> attributes(ConfigBlobStore blobStore) {
+        Map<String, Map<String, Object>> attributes = blobStore.getAttributes();
+        if (!isS3(blobStore) || attributes == null || attributes.get(CONFIG_KEY) == null) {
+            return attributes;
+        }
+        Map<String, Object> s3 = new LinkedHashMap<>();
+        attributes.get(CONFIG_KEY).forEach((name, value) ->
+                s3.put(name, value == null || value instanceof String ? value : String.valueOf(value)));
+        Map<String, Map<String, Object>> normalized = new LinkedHashMap<>(attributes);
+        normalized.put(CONFIG_KEY, s3);
+        return normalized;
+    }
+}
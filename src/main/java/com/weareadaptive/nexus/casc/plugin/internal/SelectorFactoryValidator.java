@@ -0,0 +1,34 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+import org.sonatype.nexus.selector.CselSelector;
+import org.sonatype.nexus.selector.InvalidExpressionException;
+import org.sonatype.nexus.selector.SelectorFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+/**
+ * {@link SelectorValidator} of the {@link SelectorFactory} of Nexus, which the selector manager validates new and
+ * updated selectors with
+ */
+@Named
+@Singleton
+public class SelectorFactoryValidator implements SelectorValidator {
+    private final SelectorFactory selectorFactory;
+
+    @Inject
+    public SelectorFactoryValidator(final SelectorFactory selectorFactory) {
+        this.selectorFactory = selectorFactory;
+    }
+
+    @Override
+    public String check(String expression) {
+        try {
+            selectorFactory.validateSelector(CselSelector.TYPE, expression);
+            return null;
+        } catch (InvalidExpressionException e) {
+            return e.getMessage();
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+/**
+ * Validates the expressions of content selectors for {@link ConfigValidator} the way Nexus validates them when a
+ * selector is created, so an invalid selector fails the validation of the whole configuration instead of its update.
+ */
+public interface SelectorValidator {
+    /**
+     * @param expression A CSEL expression
+     * @return the reason the expression is invalid, null if it is valid
+     */
+    String check(String expression);
+}
@@ -0,0 +1,117 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+import org.sonatype.goodies.common.ComponentSupport;
+import org.sonatype.nexus.common.app.ApplicationDirectories;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Repositories which were pruned from the configuration but are only taken offline for now, together with the number
+ * of completed casc runs since.
+ * <p>
+ * Persisted in {@code <data-dir>/casc/staged-deletions.properties}, so a repository removed by a broken configuration
+ * survives until the configuration has been applied successfully a few times, and comes back online as soon as it is
+ * configured again.
+ */
+@Named
+@Singleton
+public class StagedDeletions extends ComponentSupport {
+    static final String FILE_NAME = "staged-deletions.properties";
+
+    private final ApplicationDirectories applicationDirectories;
+
+    private final Properties runsByRepository = new Properties();
+
+    @Inject
+    public StagedDeletions(final ApplicationDirectories applicationDirectories) {
+        this.applicationDirectories = applicationDirectories;
+    }
+
+    /**
+     * Load the staged deletions at the start of a run
+     */
+    public synchronized void load() {
+        runsByRepository.clear();
+        Path file = file();
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            runsByRepository.load(reader);
+        } catch (IOException e) {
+            log.warn("Could not read staged deletions {}, starting over", file, e);
+            runsByRepository.clear();
+        }
+    }
+
+    /**
+     * @return the repositories staged for deletion
+     */
+    public synchronized Set<String> stagedRepositories() {
+        return new TreeSet<>(runsByRepository.stringPropertyNames());
+    }
+
+    public synchronized boolean isStaged(String repository) {
+        return runsByRepository.containsKey(repository);
+    }
+
+    /**
+     * @return the number of completed runs since the repository was staged for deletion
+     */
+    public synchronized int completedRuns(String repository) {
+        return Integer.parseInt(runsByRepository.getProperty(repository, "0"));
+    }
+
+    public synchronized void stage(String repository) {
+        runsByRepository.setProperty(repository, "0");
+        save();
+    }
+
+    public synchronized void unstage(String repository) {
+        if (runsByRepository.remove(repository) != null) {
+            save();
+        }
+    }
+
+    /**
+     * Count a completed run for every staged repository
+     */
+    public synchronized void runCompleted() {
+        if (runsByRepository.isEmpty()) {
+            return;
+        }
+        for (String repository : runsByRepository.stringPropertyNames()) {
+            runsByRepository.setProperty(repository, Integer.toString(completedRuns(repository) + 1));
+        }
+        save();
+    }
+
+    private Path file() {
+        return applicationDirectories.getWorkDirectory("casc").toPath().resolve(FILE_NAME);
+    }
+
+    private void save() {
+        Path file = file();
+        try {
+            Path tmp = file.resolveSibling(FILE_NAME + ".tmp");
+            try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                runsByRepository.store(writer, "Repositories staged for deletion by casc, with the number of completed runs since");
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Could not write staged deletions {}", file, e);
+        }
+    }
+}
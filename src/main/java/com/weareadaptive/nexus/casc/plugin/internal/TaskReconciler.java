@@ -0,0 +1,106 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+import com.weareadaptive.nexus.casc.plugin.internal.config.ConfigTask;
+import org.sonatype.goodies.common.ComponentSupport;
+import org.sonatype.nexus.scheduling.TaskConfiguration;
+import org.sonatype.nexus.scheduling.TaskInfo;
+import org.sonatype.nexus.scheduling.TaskScheduler;
+import org.sonatype.nexus.scheduling.schedule.Cron;
+import org.sonatype.nexus.scheduling.schedule.Schedule;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Reconciles the configured tasks against the scheduled tasks of Nexus, matched by name.
+ * <p>
+ * A task is only scheduled again if its type, enabled state, properties or cron expression differ, as scheduling a task
+ * reschedules its next run. Properties of an existing task which are not configured are left as they are.
+ */
+@Named
+@Singleton
+public class TaskReconciler extends ComponentSupport {
+    /**
+     * The task property naming the blob store of blob store tasks, e.g. {@code blobstore.compact}
+     */
+    static final String BLOB_STORE_PROPERTY = "blobstoreName";
+
+    /**
+     * The task property naming the repository of repository tasks, e.g. {@code repository.rebuild-index}
+     */
+    static final String REPOSITORY_PROPERTY = "repositoryName";
+
+    private final TaskScheduler taskScheduler;
+
+    @Inject
+    public TaskReconciler(final TaskScheduler taskScheduler) {
+        this.taskScheduler = taskScheduler;
+    }
+
+    /**
+     * @return the scheduled tasks by name
+     */
+    public Map<String, TaskInfo> existingTasks() {
+        Map<String, TaskInfo> tasks = new LinkedHashMap<>();
+        taskScheduler.listsTasks().forEach(task -> tasks.putIfAbsent(task.getName(), task));
+        return tasks;
+    }
+
+    /**
+     * @param existing The scheduled task of the same name, null if there is none
+     * @return true if the task was scheduled, false if it is up to date
+     */
+    public boolean apply(ConfigTask taskConfig, String cron, TaskInfo existing) {
+        if (existing != null && !existing.getTypeId().equals(taskConfig.getType())) {
+            throw new IllegalArgumentException("Can not change type " + existing.getTypeId() + " to " + taskConfig.getType());
+        }
+        boolean enabled = taskConfig.getEnabled() == null || taskConfig.getEnabled();
+        TaskConfiguration configuration = existing == null
+                ? taskScheduler.createTaskConfigurationInstance(taskConfig.getType())
+                : existing.getConfiguration();
+
+        boolean changed = existing == null || configuration.isEnabled() != enabled || !isCron(existing.getSchedule(), cron);
+        if (taskConfig.getProperties() != null) {
+            for (Map.Entry<String, String> property : taskConfig.getProperties().entrySet()) {
+                if (!Objects.equals(configuration.getString(property.getKey()), property.getValue())) {
+                    configuration.setString(property.getKey(), property.getValue());
+                    changed = true;
+                }
+            }
+        }
+        if (!changed) {
+            log.debug("Task {} is up to date", taskConfig.getName());
+            return false;
+        }
+
+        configuration.setName(taskConfig.getName());
+        configuration.setEnabled(enabled);
+        taskScheduler.scheduleTask(configuration, taskScheduler.getScheduleFactory().cron(new Date(), cron));
+        return true;
+    }
+
+    private static boolean isCron(Schedule schedule, String cron) {
+        return schedule instanceof Cron && cron.equals(((Cron) schedule).getCronExpression());
+    }
+
+    /**
+     * @param blobStoreByRepository The blob store of the configured repositories
+     * @return the blob store a task works on, null if none or unknown
+     */
+    static String blobStoreOf(ConfigTask taskConfig, Map<String, String> blobStoreByRepository) {
+        Map<String, String> properties = taskConfig.getProperties();
+        if (properties == null) {
+            return null;
+        }
+        if (properties.get(BLOB_STORE_PROPERTY) != null) {
+            return properties.get(BLOB_STORE_PROPERTY);
+        }
+        String repository = properties.get(REPOSITORY_PROPERTY);
+        return repository == null ? null : blobStoreByRepository.get(repository);
+    }
+}
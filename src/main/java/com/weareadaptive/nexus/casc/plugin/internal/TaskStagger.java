@@ -0,0 +1,122 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+import com.weareadaptive.nexus.casc.plugin.internal.config.ConfigTask;
+import com.weareadaptive.nexus.casc.plugin.internal.config.ConfigTaskStagger;
+import org.sonatype.goodies.common.ComponentSupport;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Computes the cron expressions of the configured tasks, spreading tasks which would otherwise fire at the same minute.
+ * <p>
+ * Tasks of the same type and cron expression are spread over {@code taskStagger.windowMinutes} minutes after the time of
+ * their cron expression, on slots of {@code taskStagger.slotMinutes} (by default the window divided by the number of
+ * tasks). At most {@code taskStagger.maxPerBlobStore} tasks of a blob store start on the same slot, also across task
+ * types. Only the minute and hour fields of a cron expression are changed, so expressions with ranges, lists or
+ * wildcards in these fields are not staggered.
+ */
+public class TaskStagger extends ComponentSupport {
+    static final int DEFAULT_WINDOW_MINUTES = 60;
+
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    private final int windowMinutes;
+    private final Integer slotMinutes;
+    private final Integer maxPerBlobStore;
+
+    public TaskStagger(ConfigTaskStagger stagger) {
+        this.windowMinutes = stagger == null || stagger.getWindowMinutes() == null
+                ? DEFAULT_WINDOW_MINUTES : stagger.getWindowMinutes();
+        this.slotMinutes = stagger == null ? null : stagger.getSlotMinutes();
+        this.maxPerBlobStore = stagger == null ? null : stagger.getMaxPerBlobStore();
+    }
+
+    /**
+     * @param tasks       The configured tasks
+     * @param blobStoreOf The blob store a task works on, null if none or unknown
+     * @return the cron expression of every task by name
+     */
+    public Map<String, String> plan(List<ConfigTask> tasks, Function<ConfigTask, String> blobStoreOf) {
+        Map<String, String> schedule = new LinkedHashMap<>();
+        Map<String, List<ConfigTask>> groups = new LinkedHashMap<>();
+        for (ConfigTask task : tasks) {
+            schedule.put(task.getName(), task.getCron());
+            if (task.getStagger() != null && !task.getStagger()) {
+                continue;
+            }
+            if (parse(task.getCron()) == null) {
+                log.debug("Not staggering task {}, the minute and hour of {} are not fixed", task.getName(), task.getCron());
+                continue;
+            }
+            groups.computeIfAbsent(task.getType() + " " + task.getCron(), key -> new ArrayList<>()).add(task);
+        }
+
+        // The number of tasks starting at a cron expression, in total and by blob store
+        Map<String, Map<String, Integer>> startedByBlobStore = new HashMap<>();
+        Map<String, Integer> started = new HashMap<>();
+        for (List<ConfigTask> group : groups.values()) {
+            group.sort(Comparator.comparing(ConfigTask::getName));
+            String[] fields = parse(group.get(0).getCron());
+            int minuteOfDay = Integer.parseInt(fields[2]) * 60 + Integer.parseInt(fields[1]);
+            int slot = slotMinutes != null && slotMinutes > 0 ? slotMinutes : Math.max(1, windowMinutes / group.size());
+            int slots = Math.max(1, windowMinutes / slot);
+
+            for (ConfigTask task : group) {
+                String blobStore = blobStoreOf.apply(task);
+                String chosen = null;
+                for (int i = 0; i < slots; ++i) {
+                    String cron = withMinuteOfDay(fields, (minuteOfDay + i * slot) % MINUTES_PER_DAY);
+                    if (maxPerBlobStore != null && blobStore != null
+                            && startedByBlobStore.getOrDefault(cron, new HashMap<>()).getOrDefault(blobStore, 0) >= maxPerBlobStore) {
+                        continue;
+                    }
+                    if (chosen == null || started.getOrDefault(cron, 0) < started.getOrDefault(chosen, 0)) {
+                        chosen = cron;
+                    }
+                }
+                if (chosen == null) {
+                    log.warn("Every slot of task {} has taskStagger.maxPerBlobStore {} tasks of blob store {} already, "
+                            + "widen taskStagger.windowMinutes", task.getName(), maxPerBlobStore, blobStore);
+                    chosen = withMinuteOfDay(fields, (minuteOfDay + group.indexOf(task) % slots * slot) % MINUTES_PER_DAY);
+                }
+                started.merge(chosen, 1, Integer::sum);
+                if (blobStore != null) {
+                    startedByBlobStore.computeIfAbsent(chosen, key -> new HashMap<>()).merge(blobStore, 1, Integer::sum);
+                }
+                schedule.put(task.getName(), chosen);
+            }
+        }
+        return schedule;
+    }
+
+    /**
+     * @return the fields of a cron expression with a fixed minute and hour, null otherwise
+     */
+    static String[] parse(String cron) {
+        if (cron == null) {
+            return null;
+        }
+        String[] fields = cron.trim().split("\\s+");
+        if (fields.length < 6 || !fields[1].matches("\\d{1,2}") || !fields[2].matches("\\d{1,2}")) {
+            return null;
+        }
+        return fields;
+    }
+
+    /**
+     * @return the cron expression with the minute and hour of the minute of the day. The other fields stay the same,
+     * also if a window reaching past midnight moves a task to the next day.
+     */
+    private static String withMinuteOfDay(String[] fields, int minuteOfDay) {
+        String[] staggered = fields.clone();
+        staggered[1] = Integer.toString(minuteOfDay % 60);
+        staggered[2] = Integer.toString(minuteOfDay / 60);
+        return String.join(" ", staggered);
+    }
+}
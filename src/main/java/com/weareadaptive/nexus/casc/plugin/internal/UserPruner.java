@@ -0,0 +1,226 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+import org.sonatype.goodies.common.ComponentSupport;
+import org.sonatype.nexus.security.SecuritySystem;
+import org.sonatype.nexus.security.user.NoSuchUserManagerException;
+import org.sonatype.nexus.security.user.User;
+import org.sonatype.nexus.security.user.UserNotFoundException;
+import org.sonatype.nexus.security.user.UserSearchCriteria;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deletes the users of a source which are not part of the configuration, without loading all of them at once.
+ * <p>
+ * {@link #plan(String, Set)} computes the ids of the users to delete first, so the deletions can be checked by the
+ * {@link PrunePlanner} before {@link #delete(String, List)} deletes them.
+ * <p>
+ * {@link SecuritySystem#searchUsers(UserSearchCriteria)} has no offset, so users are paged by user id prefix: a search
+ * returning more than a page of users is split into one search per possible next character of the user id, plus a
+ * lookup of the user whose id is the prefix itself. The possible next characters are {@link #ALPHABET} and the other
+ * ones the first page contains. Only one page of users and the ids of the users to delete are held in memory at a
+ * time. Deletions are rate limited.
+ * <p>
+ * The users of a source which are already loaded, e.g. the {@code default} users of the {@link LiveStateSnapshot}, are
+ * planned with {@link #plan(Collection, Set)} instead, without searching them again.
+ */
+public class UserPruner extends ComponentSupport {
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+    public static final int DEFAULT_PER_SECOND = 50;
+
+    /**
+     * Characters user ids are split on when a prefix matches more than a page of users. Nexus matches the prefix
+     * case-insensitively, so lower case letters cover upper case ones too.
+     */
+    static final String ALPHABET = "abcdefghijklmnopqrstuvwxyz0123456789-_.@";
+
+    /**
+     * Prefixes are not split beyond this length, a longer prefix matching more than a page of users is pruned partially
+     */
+    static final int MAX_PREFIX_LENGTH = 32;
+
+    private final SecuritySystem securitySystem;
+    private final int pageSize;
+    private final long nanosPerDeletion;
+
+    private long nextDeletion;
+
+    /**
+     * The users to delete of a source
+     */
+    public static class Plan {
+        private final List<String> deletions = new ArrayList<>();
+        private int existing;
+
+        public List<String> getDeletions() {
+            return deletions;
+        }
+
+        /**
+         * @return the number of users of the source
+         */
+        public int getExisting() {
+            return existing;
+        }
+    }
+
+    /**
+     * @param pageSize   Max number of users loaded per search
+     * @param perSecond Max number of users deleted per second, 0 for no limit
+     */
+    public UserPruner(SecuritySystem securitySystem, int pageSize, int perSecond) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize must be positive: " + pageSize);
+        }
+        this.securitySystem = securitySystem;
+        this.pageSize = pageSize;
+        this.nanosPerDeletion = perSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / perSecond : 0;
+    }
+
+    /**
+     * Find the users of the source whose id is not in the given set, without deleting them
+     */
+    public Plan plan(String source, Set<String> configuredUserIds) {
+        Plan plan = new Plan();
+        int searches = 0;
+        Deque<String> prefixes = new ArrayDeque<>();
+        prefixes.push("");
+        while (!prefixes.isEmpty()) {
+            String prefix = prefixes.pop();
+            UserSearchCriteria criteria = new UserSearchCriteria();
+            criteria.setSource(source);
+            criteria.setUserId(prefix.isEmpty() ? null : prefix);
+            criteria.setLimit(pageSize + 1);
+            Set<User> page = securitySystem.searchUsers(criteria);
+            ++searches;
+
+            boolean split = page.size() > pageSize && prefix.length() < MAX_PREFIX_LENGTH;
+            String characters = ALPHABET;
+            if (split) {
+                String others = otherCharacters(page, prefix);
+                if (!others.isEmpty()) {
+                    log.warn("User ids of source {} starting with {} continue with characters outside of {}: {}, "
+                            + "users continuing with other such characters beyond the first {} may not be pruned",
+                            source, prefix, ALPHABET, others, pageSize);
+                    characters += others;
+                }
+                for (int i = characters.length() - 1; i >= 0; --i) {
+                    prefixes.push(prefix + characters.charAt(i));
+                }
+            } else if (page.size() > pageSize) {
+                log.warn("More than {} users of source {} start with {}, only some of them are pruned", pageSize, source, prefix);
+            }
+
+            boolean prefixFound = false;
+            for (User user : page) {
+                if (split && coveredByLongerPrefix(user.getUserId(), prefix, characters)) {
+                    continue;
+                }
+                prefixFound |= user.getUserId().length() == prefix.length();
+                count(plan, user.getUserId(), configuredUserIds);
+            }
+            if (split && !prefixFound && !prefix.isEmpty()) {
+                // The user whose id is the prefix is not found by the longer prefixes, and may be beyond the page
+                ++searches;
+                User user = findUser(source, prefix);
+                if (user != null) {
+                    count(plan, user.getUserId(), configuredUserIds);
+                }
+            }
+        }
+        log.debug("Found {} of {} users of source {} to prune with {} searches", plan.deletions.size(), plan.existing, source, searches);
+        return plan;
+    }
+
+    /**
+     * Find the users whose id is not in the given set among the already loaded users of a source
+     */
+    public static Plan plan(Collection<String> existingUserIds, Set<String> configuredUserIds) {
+        Plan plan = new Plan();
+        plan.existing = existingUserIds.size();
+        existingUserIds.stream().filter(userId -> !configuredUserIds.contains(userId)).forEach(plan.deletions::add);
+        return plan;
+    }
+
+    /**
+     * Delete the given users of the source
+     *
+     * @return the number of deleted users
+     */
+    public int delete(String source, List<String> userIds) throws InterruptedException {
+        int deleted = 0;
+        for (String userId : userIds) {
+            throttle();
+            log.info("Pruning user {} ({})", userId, source);
+            try {
+                securitySystem.deleteUser(userId, source);
+                ++deleted;
+            } catch (NoSuchUserManagerException | UserNotFoundException e) {
+                log.error("Failed to prune user {} ({})", userId, source, e);
+            }
+        }
+        return deleted;
+    }
+
+    private static void count(Plan plan, String userId, Set<String> configuredUserIds) {
+        ++plan.existing;
+        if (!configuredUserIds.contains(userId)) {
+            plan.deletions.add(userId);
+        }
+    }
+
+    /**
+     * @return the characters the user ids of a page continue with after the prefix which are not part of
+     * {@link #ALPHABET}, in lower case
+     */
+    private static String otherCharacters(Set<User> page, String prefix) {
+        StringBuilder others = new StringBuilder();
+        for (User user : page) {
+            if (user.getUserId().length() > prefix.length()) {
+                char next = Character.toLowerCase(user.getUserId().charAt(prefix.length()));
+                if (ALPHABET.indexOf(next) < 0 && others.indexOf(String.valueOf(next)) < 0) {
+                    others.append(next);
+                }
+            }
+        }
+        return others.toString();
+    }
+
+    /**
+     * @return true if the user is found by one of the searches a prefix is split into
+     */
+    private static boolean coveredByLongerPrefix(String userId, String prefix, String characters) {
+        return userId.length() > prefix.length()
+                && characters.indexOf(Character.toLowerCase(userId.charAt(prefix.length()))) >= 0;
+    }
+
+    /**
+     * @return the user of the source with the given id, null if there is none
+     */
+    private User findUser(String source, String userId) {
+        try {
+            return securitySystem.getUser(userId, source);
+        } catch (NoSuchUserManagerException | UserNotFoundException e) {
+            log.debug("No user {} ({})", userId, source);
+            return null;
+        }
+    }
+
+    private void throttle() throws InterruptedException {
+        if (nanosPerDeletion == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (nextDeletion > now) {
+            TimeUnit.NANOSECONDS.sleep(nextDeletion - now);
+            now = nextDeletion;
+        }
+        nextDeletion = now + nanosPerDeletion;
+    }
+}
@@ -0,0 +1,44 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+import org.apache.shiro.util.ThreadContext;
+import org.sonatype.nexus.repository.Repository;
+import org.sonatype.nexus.repository.http.HttpMethods;
+import org.sonatype.nexus.repository.view.Payload;
+import org.sonatype.nexus.repository.view.Request;
+import org.sonatype.nexus.repository.view.Response;
+import org.sonatype.nexus.repository.view.ViewFacet;
+import org.sonatype.nexus.security.subject.FakeAlmightySubject;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+/**
+ * {@link WarmupFetcher} dispatching a GET request to the view of the repository, like a client request would be
+ * dispatched, so the format of the repository resolves the path, fetches it upstream and caches it. The request is
+ * dispatched as the task subject, there is no user on the warm-up threads.
+ */
+@Named
+@Singleton
+public class ViewWarmupFetcher implements WarmupFetcher {
+    @Override
+    public boolean fetch(Repository repository, String path) throws Exception {
+        ThreadContext.bind(FakeAlmightySubject.TASK_SUBJECT);
+        try {
+            Response response = repository.facet(ViewFacet.class)
+                    .dispatch(new Request.Builder().action(HttpMethods.GET).path(path).build());
+            Payload payload = response.getPayload();
+            if (payload != null) {
+                payload.close();
+            }
+            if (response.getStatus().getCode() == 404) {
+                return false;
+            }
+            if (!response.getStatus().isSuccessful()) {
+                throw new IllegalStateException("HTTP " + response.getStatus().getCode());
+            }
+            return true;
+        } finally {
+            ThreadContext.remove();
+        }
+    }
+}
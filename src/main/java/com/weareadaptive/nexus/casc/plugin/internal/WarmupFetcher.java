@@ -0,0 +1,16 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+import org.sonatype.nexus.repository.Repository;
+
+/**
+ * Fetches paths through a proxy repository for {@link ProxyWarmup}, so the proxy caches them. Implementations are
+ * called by several threads at once.
+ */
+public interface WarmupFetcher {
+    /**
+     * @param path The path in the repository, starting with {@code /}
+     * @return true if the path was found, false if neither the cache nor the upstream has it
+     * @throws Exception if the path could not be fetched
+     */
+    boolean fetch(Repository repository, String path) throws Exception;
+}
@@ -6,8 +6,14 @@ public class Config {
     private ConfigCore core;
     private ConfigRepository repository;
     private ConfigSecurity security;
+    private ConfigLdap ldap;
     private Boolean pruneCapabilitiesByType;
     private List<ConfigCapability> capabilities;
+    private ConfigTaskStagger taskStagger;
+    private List<ConfigTask> tasks;
+    private ConfigApply apply;
+    private Boolean async;
+    private ConfigPrune prune;
 
     public ConfigCore getCore() {
         return core;
@@ -33,6 +39,14 @@ public class Config {
         this.security = security;
     }
 
+    public ConfigLdap getLdap() {
+        return ldap;
+    }
+
+    public void setLdap(ConfigLdap ldap) {
+        this.ldap = ldap;
+    }
+
     public Boolean getPruneCapabilitiesByType() {
         return pruneCapabilitiesByType;
     }
@@ -48,4 +62,44 @@ public class Config {
     public void setCapabilities(List<ConfigCapability> capabilities) {
         this.capabilities = capabilities;
     }
+
+    public ConfigTaskStagger getTaskStagger() {
+        return taskStagger;
+    }
+
+    public void setTaskStagger(ConfigTaskStagger taskStagger) {
+        this.taskStagger = taskStagger;
+    }
+
+    public List<ConfigTask> getTasks() {
+        return tasks;
+    }
+
+    public void setTasks(List<ConfigTask> tasks) {
+        this.tasks = tasks;
+    }
+
+    public ConfigApply getApply() {
+        return apply;
+    }
+
+    public void setApply(ConfigApply apply) {
+        this.apply = apply;
+    }
+
+    public Boolean getAsync() {
+        return async;
+    }
+
+    public void setAsync(Boolean async) {
+        this.async = async;
+    }
+
+    public ConfigPrune getPrune() {
+        return prune;
+    }
+
+    public void setPrune(ConfigPrune prune) {
+        this.prune = prune;
+    }
 }
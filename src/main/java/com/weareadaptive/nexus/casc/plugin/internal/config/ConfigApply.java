@@ -0,0 +1,42 @@
+package com.weareadaptive.nexus.casc.plugin.internal.config;
+
+import java.util.List;
+
+public class ConfigApply {
+    private List<String> sections;
+    private List<String> repositories;
+    private List<String> userSources;
+    private List<String> capabilityTypes;
+
+    public List<String> getSections() {
+        return sections;
+    }
+
+    public void setSections(List<String> sections) {
+        this.sections = sections;
+    }
+
+    public List<String> getRepositories() {
+        return repositories;
+    }
+
+    public void setRepositories(List<String> repositories) {
+        this.repositories = repositories;
+    }
+
+    public List<String> getUserSources() {
+        return userSources;
+    }
+
+    public void setUserSources(List<String> userSources) {
+        this.userSources = userSources;
+    }
+
+    public List<String> getCapabilityTypes() {
+        return capabilityTypes;
+    }
+
+    public void setCapabilityTypes(List<String> capabilityTypes) {
+        this.capabilityTypes = capabilityTypes;
+    }
+}
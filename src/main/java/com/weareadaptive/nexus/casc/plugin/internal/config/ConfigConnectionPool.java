@@ -0,0 +1,40 @@
+package com.weareadaptive.nexus.casc.plugin.internal.config;
+
+public class ConfigConnectionPool {
+    private Integer size;
+    private Integer maxPerRoute;
+    private Integer idleTime;
+    private Integer keepAliveDuration;
+
+    public Integer getSize() {
+        return size;
+    }
+
+    public void setSize(Integer size) {
+        this.size = size;
+    }
+
+    public Integer getMaxPerRoute() {
+        return maxPerRoute;
+    }
+
+    public void setMaxPerRoute(Integer maxPerRoute) {
+        this.maxPerRoute = maxPerRoute;
+    }
+
+    public Integer getIdleTime() {
+        return idleTime;
+    }
+
+    public void setIdleTime(Integer idleTime) {
+        this.idleTime = idleTime;
+    }
+
+    public Integer getKeepAliveDuration() {
+        return keepAliveDuration;
+    }
+
+    public void setKeepAliveDuration(Integer keepAliveDuration) {
+        this.keepAliveDuration = keepAliveDuration;
+    }
+}
@@ -0,0 +1,31 @@
+package com.weareadaptive.nexus.casc.plugin.internal.config;
+
+public class ConfigContentSelector {
+    private String name;
+    private String description = "";
+    private String expression;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public void setDescription(String description) {
+        this.description = description;
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+
+    public void setExpression(String expression) {
+        this.expression = expression;
+    }
+}
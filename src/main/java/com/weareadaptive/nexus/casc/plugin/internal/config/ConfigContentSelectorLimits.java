@@ -0,0 +1,22 @@
+package com.weareadaptive.nexus.casc.plugin.internal.config;
+
+public class ConfigContentSelectorLimits {
+    private Integer maxAlternatives;
+    private Boolean reject;
+
+    public Integer getMaxAlternatives() {
+        return maxAlternatives;
+    }
+
+    public void setMaxAlternatives(Integer maxAlternatives) {
+        this.maxAlternatives = maxAlternatives;
+    }
+
+    public Boolean getReject() {
+        return reject;
+    }
+
+    public void setReject(Boolean reject) {
+        this.reject = reject;
+    }
+}
@@ -10,6 +10,8 @@ public class ConfigCore {
     private ConfigHttpProxy httpProxy;
     private ConfigHttpProxy httpsProxy;
     private List<String> nonProxyHosts;
+    private ConfigConnectionPool connectionPool;
+    private ConfigS3Transfer s3Transfer;
 
     public String getBaseUrl() {
         return baseUrl;
@@ -66,4 +68,20 @@ public class ConfigCore {
     public void setNonProxyHosts(List<String> nonProxyHosts) {
         this.nonProxyHosts = nonProxyHosts;
     }
+
+    public ConfigConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+
+    public void setConnectionPool(ConfigConnectionPool connectionPool) {
+        this.connectionPool = connectionPool;
+    }
+
+    public ConfigS3Transfer getS3Transfer() {
+        return s3Transfer;
+    }
+
+    public void setS3Transfer(ConfigS3Transfer s3Transfer) {
+        this.s3Transfer = s3Transfer;
+    }
 }
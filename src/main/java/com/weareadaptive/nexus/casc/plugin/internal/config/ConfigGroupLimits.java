@@ -0,0 +1,31 @@
+package com.weareadaptive.nexus.casc.plugin.internal.config;
+
+public class ConfigGroupLimits {
+    private Integer maxDepth;
+    private Integer maxMembers;
+    private Boolean reject;
+
+    public Integer getMaxDepth() {
+        return maxDepth;
+    }
+
+    public void setMaxDepth(Integer maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    public Integer getMaxMembers() {
+        return maxMembers;
+    }
+
+    public void setMaxMembers(Integer maxMembers) {
+        this.maxMembers = maxMembers;
+    }
+
+    public Boolean getReject() {
+        return reject;
+    }
+
+    public void setReject(Boolean reject) {
+        this.reject = reject;
+    }
+}
@@ -0,0 +1,33 @@
+package com.weareadaptive.nexus.casc.plugin.internal.config;
+
+import java.util.List;
+
+public class ConfigLdap {
+    private Boolean pruneServers;
+    private List<ConfigLdapServer> servers;
+    private ConfigLdapCache cache;
+
+    public Boolean getPruneServers() {
+        return pruneServers;
+    }
+
+    public void setPruneServers(Boolean pruneServers) {
+        this.pruneServers = pruneServers;
+    }
+
+    public List<ConfigLdapServer> getServers() {
+        return servers;
+    }
+
+    public void setServers(List<ConfigLdapServer> servers) {
+        this.servers = servers;
+    }
+
+    public ConfigLdapCache getCache() {
+        return cache;
+    }
+
+    public void setCache(ConfigLdapCache cache) {
+        this.cache = cache;
+    }
+}
@@ -0,0 +1,13 @@
+package com.weareadaptive.nexus.casc.plugin.internal.config;
+
+public class ConfigLdapCache {
+    private Integer timeToLive;
+
+    public Integer getTimeToLive() {
+        return timeToLive;
+    }
+
+    public void setTimeToLive(Integer timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+}
@@ -0,0 +1,148 @@
+package com.weareadaptive.nexus.casc.plugin.internal.config;
+
+public class ConfigLdapMapping {
+    private String userBaseDn;
+    private Boolean userSubtree = false;
+    private String userObjectClass = "inetOrgPerson";
+    private String ldapFilter;
+    private String userIdAttribute = "uid";
+    private String userRealNameAttribute = "cn";
+    private String emailAddressAttribute = "mail";
+    private String userPasswordAttribute;
+    private Boolean ldapGroupsAsRoles = false;
+    private String groupBaseDn;
+    private Boolean groupSubtree = false;
+    private String groupObjectClass;
+    private String groupIdAttribute;
+    private String groupMemberAttribute;
+    private String groupMemberFormat;
+    private String userMemberOfAttribute;
+
+    public String getUserBaseDn() {
+        return userBaseDn;
+    }
+
+    public void setUserBaseDn(String userBaseDn) {
+        this.userBaseDn = userBaseDn;
+    }
+
+    public Boolean getUserSubtree() {
+        return userSubtree;
+    }
+
+    public void setUserSubtree(Boolean userSubtree) {
+        this.userSubtree = userSubtree;
+    }
+
+    public String getUserObjectClass() {
+        return userObjectClass;
+    }
+
+    public void setUserObjectClass(String userObjectClass) {
+        this.userObjectClass = userObjectClass;
+    }
+
+    public String getLdapFilter() {
+        return ldapFilter;
+    }
+
+    public void setLdapFilter(String ldapFilter) {
+        this.ldapFilter = ldapFilter;
+    }
+
+    public String getUserIdAttribute() {
+        return userIdAttribute;
+    }
+
+    public void setUserIdAttribute(String userIdAttribute) {
+        this.userIdAttribute = userIdAttribute;
+    }
+
+    public String getUserRealNameAttribute() {
+        return userRealNameAttribute;
+    }
+
+    public void setUserRealNameAttribute(String userRealNameAttribute) {
+        this.userRealNameAttribute = userRealNameAttribute;
+    }
+
+    public String getEmailAddressAttribute() {
+        return emailAddressAttribute;
+    }
+
+    public void setEmailAddressAttribute(String emailAddressAttribute) {
+        this.emailAddressAttribute = emailAddressAttribute;
+    }
+
+    public String getUserPasswordAttribute() {
+        return userPasswordAttribute;
+    }
+
+    public void setUserPasswordAttribute(String userPasswordAttribute) {
+        this.userPasswordAttribute = userPasswordAttribute;
+    }
+
+    public Boolean getLdapGroupsAsRoles() {
+        return ldapGroupsAsRoles;
+    }
+
+    public void setLdapGroupsAsRoles(Boolean ldapGroupsAsRoles) {
+        this.ldapGroupsAsRoles = ldapGroupsAsRoles;
+    }
+
+    public String getGroupBaseDn() {
+        return groupBaseDn;
+    }
+
+    public void setGroupBaseDn(String groupBaseDn) {
+        this.groupBaseDn = groupBaseDn;
+    }
+
+    public Boolean getGroupSubtree() {
+        return groupSubtree;
+    }
+
+    public void setGroupSubtree(Boolean groupSubtree) {
+        this.groupSubtree = groupSubtree;
+    }
+
+    public String getGroupObjectClass() {
+        return groupObjectClass;
+    }
+
+    public void setGroupObjectClass(String groupObjectClass) {
+        this.groupObjectClass = groupObjectClass;
+    }
+
+    public String getGroupIdAttribute() {
+        return groupIdAttribute;
+    }
+
+    public void setGroupIdAttribute(String groupIdAttribute) {
+        this.groupIdAttribute = groupIdAttribute;
+    }
+
+    public String getGroupMemberAttribute() {
+        return groupMemberAttribute;
+    }
+
+    public void setGroupMemberAttribute(String groupMemberAttribute) {
+        this.groupMemberAttribute = groupMemberAttribute;
+    }
+
+    public String getGroupMemberFormat() {
+        return groupMemberFormat;
+    }
+
+    public void setGroupMemberFormat(String groupMemberFormat) {
+        this.groupMemberFormat = groupMemberFormat;
+    }
+
+    public String getUserMemberOfAttribute() {
+        return userMemberOfAttribute;
+    }
+
+    public void setUserMemberOfAttribute(String userMemberOfAttribute) {
+        this.userMemberOfAttribute = userMemberOfAttribute;
+    }
+}
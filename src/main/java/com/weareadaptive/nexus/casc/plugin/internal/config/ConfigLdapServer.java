@@ -0,0 +1,130 @@
+package com.weareadaptive.nexus.casc.plugin.internal.config;
+
+public class ConfigLdapServer {
+    private String name;
+    private String protocol = "ldap";
+    private String host;
+    private Integer port;
+    private String searchBase;
+    private String authScheme = "simple";
+    private String saslRealm;
+    private String systemUsername;
+    private String systemPassword;
+    private Boolean useTrustStore = false;
+    private Integer connectionTimeout = 30;
+    private Integer connectionRetryDelay = 300;
+    private Integer maxIncidentsCount = 3;
+    private ConfigLdapMapping mapping;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getProtocol() {
+        return protocol;
+    }
+
+    public void setProtocol(String protocol) {
+        this.protocol = protocol;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public void setHost(String host) {
+        this.host = host;
+    }
+
+    public Integer getPort() {
+        return port;
+    }
+
+    public void setPort(Integer port) {
+        this.port = port;
+    }
+
+    public String getSearchBase() {
+        return searchBase;
+    }
+
+    public void setSearchBase(String searchBase) {
+        this.searchBase = searchBase;
+    }
+
+    public String getAuthScheme() {
+        return authScheme;
+    }
+
+    public void setAuthScheme(String authScheme) {
+        this.authScheme = authScheme;
+    }
+
+    public String getSaslRealm() {
+        return saslRealm;
+    }
+
+    public void setSaslRealm(String saslRealm) {
+        this.saslRealm = saslRealm;
+    }
+
+    public String getSystemUsername() {
+        return systemUsername;
+    }
+
+    public void setSystemUsername(String systemUsername) {
+        this.systemUsername = systemUsername;
+    }
+
+    public String getSystemPassword() {
+        return systemPassword;
+    }
+
+    public void setSystemPassword(String systemPassword) {
+        this.systemPassword = systemPassword;
+    }
+
+    public Boolean getUseTrustStore() {
+        return useTrustStore;
+    }
+
+    public void setUseTrustStore(Boolean useTrustStore) {
+        this.useTrustStore = useTrustStore;
+    }
+
+    public Integer getConnectionTimeout() {
+        return connectionTimeout;
+    }
+
+    public void setConnectionTimeout(Integer connectionTimeout) {
+        this.connectionTimeout = connectionTimeout;
+    }
+
+    public Integer getConnectionRetryDelay() {
+        return connectionRetryDelay;
+    }
+
+    public void setConnectionRetryDelay(Integer connectionRetryDelay) {
+        this.connectionRetryDelay = connectionRetryDelay;
+    }
+
+    public Integer getMaxIncidentsCount() {
+        return maxIncidentsCount;
+    }
+
+    public void setMaxIncidentsCount(Integer maxIncidentsCount) {
+        this.maxIncidentsCount = maxIncidentsCount;
+    }
+
+    public ConfigLdapMapping getMapping() {
+        return mapping;
+    }
+
+    public void setMapping(ConfigLdapMapping mapping) {
+        this.mapping = mapping;
+    }
+}
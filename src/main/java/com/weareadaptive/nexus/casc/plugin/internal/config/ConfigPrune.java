@@ -0,0 +1,49 @@
+package com.weareadaptive.nexus.casc.plugin.internal.config;
+
+public class ConfigPrune {
+    private Integer maxDeletions;
+    private Integer maxDeletionPercent;
+    private Integer deleteRepositoriesAfterRuns;
+    private Boolean deleteInBackground;
+    private Integer deletionsPerMinute;
+
+    public Integer getMaxDeletions() {
+        return maxDeletions;
+    }
+
+    public void setMaxDeletions(Integer maxDeletions) {
+        this.maxDeletions = maxDeletions;
+    }
+
+    public Integer getMaxDeletionPercent() {
+        return maxDeletionPercent;
+    }
+
+    public void setMaxDeletionPercent(Integer maxDeletionPercent) {
+        this.maxDeletionPercent = maxDeletionPercent;
+    }
+
+    public Integer getDeleteRepositoriesAfterRuns() {
+        return deleteRepositoriesAfterRuns;
+    }
+
+    public void setDeleteRepositoriesAfterRuns(Integer deleteRepositoriesAfterRuns) {
+        this.deleteRepositoriesAfterRuns = deleteRepositoriesAfterRuns;
+    }
+
+    public Boolean getDeleteInBackground() {
+        return deleteInBackground;
+    }
+
+    public void setDeleteInBackground(Boolean deleteInBackground) {
+        this.deleteInBackground = deleteInBackground;
+    }
+
+    public Integer getDeletionsPerMinute() {
+        return deletionsPerMinute;
+    }
+
+    public void setDeletionsPerMinute(Integer deletionsPerMinute) {
+        this.deletionsPerMinute = deletionsPerMinute;
+    }
+}
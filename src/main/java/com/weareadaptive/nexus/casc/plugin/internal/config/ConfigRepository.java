@@ -7,11 +7,18 @@ public class ConfigRepository {
     private List<ConfigBlobStore> blobStores;
     private Boolean pruneCleanupPolicies;
     private List<ConfigCleanupPolicy> cleanupPolicies;
+    private Boolean pruneContentSelectors;
+    private List<ConfigContentSelector> contentSelectors;
+    private ConfigContentSelectorLimits contentSelectorLimits;
     private Boolean pruneRepositories;
     private List<ConfigRepositoryEntry> repositories;
 
     private List<ConfigRoutingRule> routingRules;
 
+    private ConfigGroupLimits groupLimits;
+
+    private ConfigWarmup warmup;
+
     public Boolean getPruneBlobStores() {
         return pruneBlobStores;
     }
@@ -44,6 +51,30 @@ public class ConfigRepository {
         this.cleanupPolicies = cleanupPolicies;
     }
 
+    public Boolean getPruneContentSelectors() {
+        return pruneContentSelectors;
+    }
+
+    public void setPruneContentSelectors(Boolean pruneContentSelectors) {
+        this.pruneContentSelectors = pruneContentSelectors;
+    }
+
+    public List<ConfigContentSelector> getContentSelectors() {
+        return contentSelectors;
+    }
+
+    public void setContentSelectors(List<ConfigContentSelector> contentSelectors) {
+        this.contentSelectors = contentSelectors;
+    }
+
+    public ConfigContentSelectorLimits getContentSelectorLimits() {
+        return contentSelectorLimits;
+    }
+
+    public void setContentSelectorLimits(ConfigContentSelectorLimits contentSelectorLimits) {
+        this.contentSelectorLimits = contentSelectorLimits;
+    }
+
     public Boolean getPruneRepositories() {
         return pruneRepositories;
     }
@@ -68,4 +99,20 @@ public class ConfigRepository {
         this.routingRules = routingRules;
     }
 
+    public ConfigGroupLimits getGroupLimits() {
+        return groupLimits;
+    }
+
+    public void setGroupLimits(ConfigGroupLimits groupLimits) {
+        this.groupLimits = groupLimits;
+    }
+
+    public ConfigWarmup getWarmup() {
+        return warmup;
+    }
+
+    public void setWarmup(ConfigWarmup warmup) {
+        this.warmup = warmup;
+    }
+
 }
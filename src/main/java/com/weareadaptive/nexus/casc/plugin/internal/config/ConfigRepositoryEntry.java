@@ -13,6 +13,11 @@ public class ConfigRepositoryEntry {
 
     private String routingRuleName;
 
+    /**
+     * Paths to prefetch, a list or a string of one path per line
+     */
+    private Object warmup;
+
     public String getName() {
         return name;
     }
@@ -52,4 +57,12 @@ public class ConfigRepositoryEntry {
         this.routingRuleName = routingRuleName;
     }
 
+    public Object getWarmup() {
+        return warmup;
+    }
+
+    public void setWarmup(Object warmup) {
+        this.warmup = warmup;
+    }
+
 }
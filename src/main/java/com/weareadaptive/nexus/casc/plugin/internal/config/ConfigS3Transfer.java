@@ -0,0 +1,31 @@
+package com.weareadaptive.nexus.casc.plugin.internal.config;
+
+public class ConfigS3Transfer {
+    private Integer parallelRequests;
+    private Integer multipartUploadChunkSize;
+    private Integer multipartCopyChunkSize;
+
+    public Integer getParallelRequests() {
+        return parallelRequests;
+    }
+
+    public void setParallelRequests(Integer parallelRequests) {
+        this.parallelRequests = parallelRequests;
+    }
+
+    public Integer getMultipartUploadChunkSize() {
+        return multipartUploadChunkSize;
+    }
+
+    public void setMultipartUploadChunkSize(Integer multipartUploadChunkSize) {
+        this.multipartUploadChunkSize = multipartUploadChunkSize;
+    }
+
+    public Integer getMultipartCopyChunkSize() {
+        return multipartCopyChunkSize;
+    }
+
+    public void setMultipartCopyChunkSize(Integer multipartCopyChunkSize) {
+        this.multipartCopyChunkSize = multipartCopyChunkSize;
+    }
+}
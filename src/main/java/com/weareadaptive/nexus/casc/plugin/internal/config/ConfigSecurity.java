@@ -5,6 +5,9 @@ import java.util.List;
 public class ConfigSecurity {
     private Boolean anonymousAccess;
     private Boolean pruneUsers;
+    private List<String> pruneUserSources;
+    private Integer pruneUsersPageSize;
+    private Integer pruneUsersPerSecond;
     private Boolean pruneRolesBySource;
     private List<ConfigSecurityPrivilege> privileges;
     private List<ConfigSecurityRole> roles;
@@ -27,6 +30,30 @@ public class ConfigSecurity {
         this.pruneUsers = pruneUsers;
     }
 
+    public List<String> getPruneUserSources() {
+        return pruneUserSources;
+    }
+
+    public void setPruneUserSources(List<String> pruneUserSources) {
+        this.pruneUserSources = pruneUserSources;
+    }
+
+    public Integer getPruneUsersPageSize() {
+        return pruneUsersPageSize;
+    }
+
+    public void setPruneUsersPageSize(Integer pruneUsersPageSize) {
+        this.pruneUsersPageSize = pruneUsersPageSize;
+    }
+
+    public Integer getPruneUsersPerSecond() {
+        return pruneUsersPerSecond;
+    }
+
+    public void setPruneUsersPerSecond(Integer pruneUsersPerSecond) {
+        this.pruneUsersPerSecond = pruneUsersPerSecond;
+    }
+
     public Boolean getPruneRolesBySource() {
         return pruneRolesBySource;
     }
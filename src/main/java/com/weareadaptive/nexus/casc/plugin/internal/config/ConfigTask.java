@@ -0,0 +1,60 @@
+package com.weareadaptive.nexus.casc.plugin.internal.config;
+
+import java.util.Map;
+
+public class ConfigTask {
+    private String name;
+    private String type;
+    private Boolean enabled;
+    private String cron;
+    private Boolean stagger;
+    private Map<String, String> properties;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public Boolean getEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(Boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getCron() {
+        return cron;
+    }
+
+    public void setCron(String cron) {
+        this.cron = cron;
+    }
+
+    public Boolean getStagger() {
+        return stagger;
+    }
+
+    public void setStagger(Boolean stagger) {
+        this.stagger = stagger;
+    }
+
+    public Map<String, String> getProperties() {
+        return properties;
+    }
+
+    public void setProperties(Map<String, String> properties) {
+        this.properties = properties;
+    }
+}
@@ -0,0 +1,31 @@
+package com.weareadaptive.nexus.casc.plugin.internal.config;
+
+public class ConfigTaskStagger {
+    private Integer windowMinutes;
+    private Integer slotMinutes;
+    private Integer maxPerBlobStore;
+
+    public Integer getWindowMinutes() {
+        return windowMinutes;
+    }
+
+    public void setWindowMinutes(Integer windowMinutes) {
+        this.windowMinutes = windowMinutes;
+    }
+
+    public Integer getSlotMinutes() {
+        return slotMinutes;
+    }
+
+    public void setSlotMinutes(Integer slotMinutes) {
+        this.slotMinutes = slotMinutes;
+    }
+
+    public Integer getMaxPerBlobStore() {
+        return maxPerBlobStore;
+    }
+
+    public void setMaxPerBlobStore(Integer maxPerBlobStore) {
+        this.maxPerBlobStore = maxPerBlobStore;
+    }
+}
@@ -0,0 +1,22 @@
+package com.weareadaptive.nexus.casc.plugin.internal.config;
+
+public class ConfigWarmup {
+    private Integer threads;
+    private Integer requestsPerSecond;
+
+    public Integer getThreads() {
+        return threads;
+    }
+
+    public void setThreads(Integer threads) {
+        this.threads = threads;
+    }
+
+    public Integer getRequestsPerSecond() {
+        return requestsPerSecond;
+    }
+
+    public void setRequestsPerSecond(Integer requestsPerSecond) {
+        this.requestsPerSecond = requestsPerSecond;
+    }
+}
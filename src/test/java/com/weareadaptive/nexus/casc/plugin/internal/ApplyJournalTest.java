@@ -0,0 +1,84 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sonatype.nexus.common.app.ApplicationDirectories;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ApplyJournalTest {
+    @TempDir
+    Path workDir;
+
+    private ApplyJournal newJournal() {
+        ApplicationDirectories directories = (ApplicationDirectories) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[]{ApplicationDirectories.class},
+                (proxy, method, args) -> {
+                    File dir = args == null ? workDir.toFile() : workDir.resolve((String) args[0]).toFile();
+                    dir.mkdirs();
+                    return dir;
+                });
+        return new ApplyJournal(directories);
+    }
+
+    @Test
+    void resumeInterruptedRunWithSameDigest() {
+        ApplyJournal journal = newJournal();
+        assertFalse(journal.begin("digest-1"));
+        journal.done("repository:maven-central");
+        journal.done("repository:npm-proxy");
+        // Nexus gets killed, the run is never completed
+        journal.close();
+
+        ApplyJournal afterRestart = newJournal();
+        assertTrue(afterRestart.begin("digest-1"));
+        assertTrue(afterRestart.isDone("repository:maven-central"));
+        assertTrue(afterRestart.isDone("repository:npm-proxy"));
+        assertFalse(afterRestart.isDone("repository:docker-proxy"));
+        afterRestart.done("repository:docker-proxy");
+        afterRestart.close();
+
+        ApplyJournal afterSecondRestart = newJournal();
+        assertTrue(afterSecondRestart.begin("digest-1"));
+        assertTrue(afterSecondRestart.isDone("repository:docker-proxy"));
+    }
+
+    @Test
+    void startFromScratchAfterCompletedRun() {
+        ApplyJournal journal = newJournal();
+        journal.begin("digest-1");
+        journal.done("repository:maven-central");
+        journal.complete();
+
+        ApplyJournal afterRestart = newJournal();
+        assertFalse(afterRestart.begin("digest-1"));
+        assertFalse(afterRestart.isDone("repository:maven-central"));
+    }
+
+    @Test
+    void startFromScratchWhenConfigurationChanged() {
+        ApplyJournal journal = newJournal();
+        journal.begin("digest-1");
+        journal.done("repository:maven-central");
+        journal.close();
+
+        ApplyJournal afterRestart = newJournal();
+        assertFalse(afterRestart.begin("digest-2"));
+        assertFalse(afterRestart.isDone("repository:maven-central"));
+        afterRestart.close();
+
+        // The journal of digest-1 has been replaced
+        assertFalse(newJournal().begin("digest-1"));
+    }
+
+    @Test
+    void digestDependsOnAllParts() {
+        assertEquals(ApplyJournal.digest("a", "b"), ApplyJournal.digest("a", "b"));
+        assertNotEquals(ApplyJournal.digest("a", "b"), ApplyJournal.digest("ab", ""));
+    }
+}
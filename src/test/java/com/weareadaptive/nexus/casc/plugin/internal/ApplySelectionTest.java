@@ -0,0 +1,93 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+import com.weareadaptive.nexus.casc.plugin.internal.config.ConfigApply;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ApplySelectionTest {
+
+    @Test
+    void emptySelectionAppliesEverything() {
+        ApplySelection selection = ApplySelection.from(null, name -> null);
+
+        assertTrue(selection.isEverything());
+        assertTrue(selection.includesSection(ApplySelection.CORE));
+        assertTrue(selection.includesSection(ApplySelection.REPOSITORY, "blobStores"));
+        assertTrue(selection.includesRepository("anything"));
+        assertTrue(selection.includesUserSource("LDAP"));
+        assertTrue(selection.includesCapabilityType("analytics-configuration"));
+        assertEquals(Optional.empty(), selection.literalRepositoryNames());
+    }
+
+    @Test
+    void selectSectionParts() {
+        ConfigApply apply = new ConfigApply();
+        apply.setSections(Arrays.asList("repository.repositories", "capabilities"));
+        ApplySelection selection = ApplySelection.from(apply, name -> null);
+
+        assertFalse(selection.includesSection(ApplySelection.CORE));
+        assertFalse(selection.includesSection(ApplySelection.SECURITY));
+        assertTrue(selection.includesSection(ApplySelection.REPOSITORY));
+        assertTrue(selection.includesSection(ApplySelection.REPOSITORY, "repositories"));
+        assertFalse(selection.includesSection(ApplySelection.REPOSITORY, "blobStores"));
+        assertTrue(selection.includesSection(ApplySelection.CAPABILITIES));
+    }
+
+    @Test
+    void rejectUnknownSections() {
+        ConfigApply apply = new ConfigApply();
+        apply.setSections(Collections.singletonList("repository.unknown"));
+
+        assertThrows(IllegalArgumentException.class, () -> ApplySelection.from(apply, name -> null));
+    }
+
+    @Test
+    void matchRepositoryGlobs() {
+        ConfigApply apply = new ConfigApply();
+        apply.setRepositories(Arrays.asList("maven-*", "npm-?roxy", "docker.hosted"));
+        ApplySelection selection = ApplySelection.from(apply, name -> null);
+
+        assertTrue(selection.includesRepository("maven-central"));
+        assertTrue(selection.includesRepository("npm-proxy"));
+        assertTrue(selection.includesRepository("docker.hosted"));
+        assertFalse(selection.includesRepository("dockerXhosted"));
+        assertFalse(selection.includesRepository("npm-hosted"));
+        assertEquals(Optional.empty(), selection.literalRepositoryNames());
+    }
+
+    @Test
+    void literalRepositoryNames() {
+        ConfigApply apply = new ConfigApply();
+        apply.setRepositories(Arrays.asList("maven-central", "npm-proxy"));
+        ApplySelection selection = ApplySelection.from(apply, name -> null);
+
+        assertEquals(Optional.of(new LinkedHashSet<>(Arrays.asList("maven-central", "npm-proxy"))),
+                selection.literalRepositoryNames());
+    }
+
+    @Test
+    void envVarsOverrideYaml() {
+        ConfigApply apply = new ConfigApply();
+        apply.setSections(Collections.singletonList("core"));
+        apply.setUserSources(Collections.singletonList("LDAP"));
+
+        Map<String, String> env = new HashMap<>();
+        env.put(ApplySelection.ENV_SECTIONS, "security.users, security.roles");
+        env.put(ApplySelection.ENV_CAPABILITY_TYPES, "");
+        ApplySelection selection = ApplySelection.from(apply, env::get);
+
+        assertFalse(selection.includesSection(ApplySelection.CORE));
+        assertTrue(selection.includesSection(ApplySelection.SECURITY, "roles"));
+        assertFalse(selection.includesUserSource("default"));
+        assertTrue(selection.includesUserSource("LDAP"));
+        assertTrue(selection.includesCapabilityType("analytics-configuration"));
+    }
+}
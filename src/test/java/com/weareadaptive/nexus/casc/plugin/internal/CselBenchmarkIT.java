@@ -0,0 +1,180 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.weareadaptive.nexus.casc.plugin.internal.ProxyThroughputIT.env;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Measures the time Nexus takes to evaluate sample content selectors against sample maven paths, to compare the
+ * patterns {@link Csel#costs(int)} reports with their cheaper forms.
+ * <p>
+ * Every request of a user whose only privilege is a content selector one is authorized by
+ * {@code SelectorManager.evaluate}, so the time per request of such a user, minus the one of an admin user which
+ * skips the evaluation, is the evaluation time of the selector. The paths do not exist, a request is answered with
+ * 404 if the selector matches its path and 403 otherwise.
+ * <p>
+ * Only runs if {@code CSEL_BENCHMARK_REPOSITORY} names a maven hosted repository, e.g. {@code maven-releases} of
+ * {@code default-nexus.yml}.
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@EnabledIfEnvironmentVariable(named = "CSEL_BENCHMARK_REPOSITORY", matches = ".+")
+public class CselBenchmarkIT {
+    private final Logger logger = LoggerFactory.getLogger(CselBenchmarkIT.class);
+
+    private static final String ADMIN = "johndoe";
+    private static final String ADMIN_PASSWORD = "admin123";
+    private static final String USER_PASSWORD = "csel-benchmark123";
+
+    private CloseableHttpClient client;
+    private String nexusUrl;
+    private String repository;
+
+    private static List<String> paths(int count) {
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            String group = "/org/example" + (i % 50) + "/team" + (i % 7) + (i % 5 == 0 ? "/internal" : "");
+            String version = "1." + (i % 20) + (i % 3 == 0 ? "-SNAPSHOT" : "");
+            String artifact = "lib" + i;
+            paths.add(group + "/" + artifact + "/" + version + "/" + artifact + "-" + version + (i % 2 == 0 ? ".jar" : ".pom"));
+        }
+        return paths;
+    }
+
+    private static String json(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    @BeforeAll
+    void createClient() {
+        nexusUrl = System.getenv("NEXUS_URL");
+        repository = System.getenv("CSEL_BENCHMARK_REPOSITORY");
+        client = HttpClients.custom()
+                .setDefaultRequestConfig(RequestConfig.copy(RequestConfig.DEFAULT)
+                        .setSocketTimeout(60000)
+                        .setConnectTimeout(5000)
+                        .build())
+                .build();
+    }
+
+    @AfterAll
+    void closeClient() throws IOException {
+        if (client != null) {
+            client.close();
+        }
+    }
+
+    private int execute(HttpUriRequest request, String username, String password) throws IOException {
+        request.setHeader(HttpHeaders.AUTHORIZATION, "Basic " + Base64.getEncoder()
+                .encodeToString((username + ":" + password).getBytes(StandardCharsets.UTF_8)));
+        try (CloseableHttpResponse response = client.execute(request)) {
+            EntityUtils.consume(response.getEntity());
+            return response.getStatusLine().getStatusCode();
+        }
+    }
+
+    private void post(String path, String body) throws IOException {
+        HttpEntityEnclosingRequestBase post = new HttpPost(new URL(nexusUrl) + "/service/rest/v1/" + path);
+        post.setEntity(new StringEntity(body, ContentType.APPLICATION_JSON));
+        int status = execute(post, ADMIN, ADMIN_PASSWORD);
+        assertTrue(status < 300, "POST " + path + " returned " + status);
+    }
+
+    private void delete(String path) throws IOException {
+        execute(new HttpDelete(new URL(nexusUrl) + "/service/rest/v1/" + path), ADMIN, ADMIN_PASSWORD);
+    }
+
+    /**
+     * @return the nanoseconds per request of the user, and the number of paths the user may read
+     */
+    private long[] fetch(List<String> paths, String username, String password) throws IOException {
+        String base = new URL(nexusUrl) + "/repository/" + repository;
+        // The first round warms up Nexus
+        long selected = 0;
+        for (String path : paths) {
+            selected += execute(new HttpGet(base + path), username, password) == 404 ? 1 : 0;
+        }
+        long start = System.nanoTime();
+        for (String path : paths) {
+            execute(new HttpGet(base + path), username, password);
+        }
+        return new long[]{(System.nanoTime() - start) / paths.size(), selected};
+    }
+
+    @Test
+    void evaluateSampleSelectors() throws Exception {
+        String alternation = IntStream.range(0, 40).mapToObj(i -> "example" + i).collect(Collectors.joining("|"));
+        Map<String, String> selectors = new LinkedHashMap<>();
+        selectors.put("prefix", "format == 'maven2' and path =^ '/org/example2/'");
+        selectors.put("anchored regex", "format == 'maven2' and path =~ '/org/example2/.*\\.jar'");
+        selectors.put("leading wildcard", "format == 'maven2' and path =~ '.*/internal/.*'");
+        selectors.put("regex alternation", "path =~ '/org/(" + alternation + ")/.*'");
+        selectors.put("or alternation", IntStream.range(0, 40)
+                .mapToObj(i -> "path =^ '/org/example" + i + "/'").collect(Collectors.joining(" or ")));
+
+        List<String> paths = paths(env("CSEL_BENCHMARK_PATHS", 2000));
+        long[] baseline = fetch(paths, ADMIN, ADMIN_PASSWORD);
+        assertEquals(paths.size(), baseline[1], "the paths must not exist in " + repository);
+        logger.info("baseline: {} ns per request", baseline[0]);
+
+        int i = 0;
+        for (Map.Entry<String, String> selector : selectors.entrySet()) {
+            String name = "csel-benchmark-" + i++;
+            try {
+                post("security/content-selectors", "{\"name\": " + json(name) + ", \"description\": "
+                        + json(selector.getKey()) + ", \"expression\": " + json(selector.getValue()) + "}");
+                post("security/privileges/repository-content-selector", "{\"name\": " + json(name)
+                        + ", \"description\": " + json(selector.getKey()) + ", \"actions\": [\"READ\", \"BROWSE\"], "
+                        + "\"format\": \"maven2\", \"repository\": " + json(repository) + ", \"contentSelector\": "
+                        + json(name) + "}");
+                post("security/roles", "{\"id\": " + json(name) + ", \"name\": " + json(name) + ", \"description\": "
+                        + json(selector.getKey()) + ", \"privileges\": [" + json(name) + "], \"roles\": []}");
+                post("security/users", "{\"userId\": " + json(name) + ", \"firstName\": \"Csel\", \"lastName\": "
+                        + "\"Benchmark\", \"emailAddress\": \"" + name + "@example.org\", \"password\": "
+                        + json(USER_PASSWORD) + ", \"status\": \"active\", \"roles\": [" + json(name) + "]}");
+
+                long[] result = fetch(paths, name, USER_PASSWORD);
+                logger.info("{}: {} ns per request, about {} ns per evaluation, {} of {} paths selected, costs {}",
+                        selector.getKey(), result[0], result[0] - baseline[0], result[1], paths.size(),
+                        Csel.parse(selector.getValue()).costs(Csel.DEFAULT_MAX_ALTERNATIVES));
+                assertTrue(result[1] > 0, selector.getKey() + " selects no path");
+            } finally {
+                delete("security/users/" + name);
+                delete("security/roles/" + name);
+                delete("security/privileges/" + name);
+                delete("security/content-selectors/" + name);
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CselTest {
+    private static String error(String expression) {
+        return assertThrows(IllegalArgumentException.class, () -> Csel.parse(expression)).getMessage();
+    }
+
+    @Test
+    void evaluateExpressions() {
+        Csel csel = Csel.parse("format == \"maven2\" and (path =^ '/org/example/' || path =~ \"/com/example/.*\\.jar\")"
+                + " && not path =~ '.*-SNAPSHOT.*'");
+
+        assertTrue(csel.matches("maven2", "/org/example/lib/1.0/lib-1.0.pom"));
+        assertTrue(csel.matches("maven2", "/com/example/lib/1.0/lib-1.0.jar"));
+        assertFalse(csel.matches("maven2", "/com/example/lib/1.0/lib-1.0.pom"));
+        assertFalse(csel.matches("maven2", "/org/example/lib/1.0-SNAPSHOT/lib-1.0-SNAPSHOT.pom"));
+        assertFalse(csel.matches("npm", "/org/example/lib"));
+        assertTrue(Csel.parse("format != 'npm'").matches("maven2", "/"));
+    }
+
+    @Test
+    void rejectInvalidExpressions() {
+        assertEquals("expression is empty", error(" "));
+        assertEquals("expected one of [format, path] but found repository at position 0", error("repository == 'a'"));
+        assertEquals("expected one of [==, !=, =~, =^] but found =$ at position 5", error("path =$ '.jar'"));
+        assertEquals("expected one of [==, !=, =~, =^] but found = at position 5", error("path = '/a'"));
+        assertEquals("unexpected character ; at position 13", error("path == '/a' ; path == '/b'"));
+        assertEquals("expected a string literal but found format at position 8", error("path == format"));
+        assertEquals("unterminated string literal at position 8", error("path == '/a"));
+        assertEquals("expected ) at position 29", error("(path =^ '/a' or path =^ '/b'"));
+        assertEquals("unexpected ) at position 12", error("path =^ '/a')"));
+        assertTrue(error("path =~ '[a-'").startsWith("invalid regular expression \"[a-\": "));
+    }
+
+    @Test
+    void reportExpensiveExpressions() {
+        assertEquals(Collections.emptyList(), Csel.parse("format == 'maven2' and path =~ '/org/(a|b)/.*'").costs(10));
+        assertEquals(Arrays.asList(
+                "3 alternatives combined with or exceed 2",
+                "regular expression \".*/internal/.*\" starts with a wildcard, every value is scanned in full, use =^ for a prefix",
+                "regular expression \"/(a|b|c)/.*\" has 3 alternatives, more than 2",
+                "regular expression \"/(\\w+)*\\.jar\" nests quantifiers, it backtracks exponentially"
+        ), Csel.parse("path =~ '.*/internal/.*' or path =~ '/(a|b|c)/.*' or path =~ '/(\\w+)*\\.jar'").costs(2));
+    }
+}
@@ -0,0 +1,1095 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+import org.sonatype.nexus.CoreApi;
+import org.sonatype.nexus.blobstore.api.BlobStore;
+import org.sonatype.nexus.blobstore.api.BlobStoreConfiguration;
+import org.sonatype.nexus.blobstore.api.BlobStoreManager;
+import org.sonatype.nexus.capability.CapabilityContext;
+import org.sonatype.nexus.capability.CapabilityIdentity;
+import org.sonatype.nexus.capability.CapabilityReference;
+import org.sonatype.nexus.capability.CapabilityRegistry;
+import org.sonatype.nexus.capability.CapabilityType;
+import org.sonatype.nexus.cleanup.storage.CleanupPolicy;
+import org.sonatype.nexus.cleanup.storage.CleanupPolicyStorage;
+import org.sonatype.nexus.common.app.ApplicationDirectories;
+import org.sonatype.nexus.common.app.BaseUrlManager;
+import org.sonatype.nexus.common.entity.DetachedEntityId;
+import org.sonatype.nexus.crypto.secrets.Secret;
+import org.sonatype.nexus.crypto.secrets.SecretsService;
+import org.sonatype.nexus.httpclient.HttpClientManager;
+import org.sonatype.nexus.httpclient.config.ConnectionConfiguration;
+import org.sonatype.nexus.httpclient.config.HttpClientConfiguration;
+import org.sonatype.nexus.httpclient.config.ProxyConfiguration;
+import org.sonatype.nexus.ldap.internal.persist.LdapConfigurationManager;
+import org.sonatype.nexus.ldap.internal.persist.entity.Connection;
+import org.sonatype.nexus.ldap.internal.persist.entity.LdapConfiguration;
+import org.sonatype.nexus.repository.Format;
+import org.sonatype.nexus.repository.Recipe;
+import org.sonatype.nexus.repository.Repository;
+import org.sonatype.nexus.repository.Type;
+import org.sonatype.nexus.repository.config.Configuration;
+import org.sonatype.nexus.repository.manager.RepositoryManager;
+import org.sonatype.nexus.repository.routing.RoutingRule;
+import org.sonatype.nexus.repository.routing.RoutingRuleStore;
+import org.sonatype.nexus.scheduling.TaskConfiguration;
+import org.sonatype.nexus.scheduling.TaskInfo;
+import org.sonatype.nexus.scheduling.TaskScheduler;
+import org.sonatype.nexus.scheduling.schedule.Cron;
+import org.sonatype.nexus.scheduling.schedule.ScheduleFactory;
+import org.sonatype.nexus.security.SecurityApi;
+import org.sonatype.nexus.security.SecuritySystem;
+import org.sonatype.nexus.security.authz.AuthorizationManager;
+import org.sonatype.nexus.security.authz.NoSuchAuthorizationManagerException;
+import org.sonatype.nexus.security.privilege.NoSuchPrivilegeException;
+import org.sonatype.nexus.security.privilege.Privilege;
+import org.sonatype.nexus.security.realm.RealmManager;
+import org.sonatype.nexus.security.role.NoSuchRoleException;
+import org.sonatype.nexus.security.role.Role;
+import org.sonatype.nexus.security.role.RoleIdentifier;
+import org.sonatype.nexus.security.user.User;
+import org.sonatype.nexus.security.user.UserManager;
+import org.sonatype.nexus.security.user.UserNotFoundException;
+import org.sonatype.nexus.security.user.UserSearchCriteria;
+import org.sonatype.nexus.security.user.UserStatus;
+import org.sonatype.nexus.selector.SelectorConfiguration;
+import org.sonatype.nexus.selector.SelectorManager;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static com.github.stefanbirkner.systemlambda.SystemLambda.withEnvironmentVariable;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+
+/**
+ * In-memory implementation of the Nexus APIs used by {@link NexusCascPlugin}, counting the calls per method.
+ * <p>
+ * Services are dynamic proxies dispatching on the method name. Methods the plugin is not expected to call throw an
+ * {@link UnsupportedOperationException}, so a test fails as soon as the plugin starts using a new API.
+ */
+class FakeNexus {
+    /**
+     * Methods changing the state of Nexus
+     */
+    static final Set<String> WRITE_METHODS = new HashSet<>(Arrays.asList(
+            "create", "update", "delete", "add", "remove",
+            "addRole", "updateRole", "deleteRole", "addPrivilege", "updatePrivilege", "deletePrivilege",
+            "addUser", "updateUser", "deleteUser", "changePassword", "setAnonymousAccess",
+            "enableRealm", "disableRealm", "setConfiguredRealmIds",
+            "baseUrl", "userAgentCustomization", "connectionTimeout", "connectionRetryAttempts", "nonProxyHosts",
+            "httpProxy", "httpProxyWithBasicAuth", "httpProxyWithNTLMAuth", "removeHTTPProxy",
+            "httpsProxy", "httpsProxyWithBasicAuth", "httpsProxyWithNTLMAuth", "removeHTTPSProxy",
+            "scheduleTask", "addLdapServerConfiguration", "updateLdapServerConfiguration",
+            "deleteLdapServerConfiguration", "setServerOrder"
+    ));
+
+    /**
+     * Roles which exist in any Nexus, without being listed
+     */
+    private static final Set<String> BUILT_IN_ROLES = new HashSet<>(Arrays.asList("nx-admin", "nx-anonymous"));
+
+    private final Path workDir;
+
+    private final Map<String, Integer> calls = new TreeMap<>();
+    private long bytesWritten;
+
+    final Map<String, Configuration> repositories = new LinkedHashMap<>();
+    final Map<String, BlobStoreConfiguration> blobStores = new LinkedHashMap<>();
+    final ReconcileStatus status = new ReconcileStatus();
+    final DeletionQueue deletionQueue;
+    final ProxyWarmup proxyWarmup;
+    /**
+     * Fetches the warm-up paths of {@link #proxyWarmup}, finds every path by default
+     */
+    WarmupFetcher warmupFetcher = (repository, path) -> true;
+    final Map<String, CleanupPolicy> cleanupPolicies = new LinkedHashMap<>();
+    final Map<String, RoutingRule> routingRules = new LinkedHashMap<>();
+    final Map<String, Map<String, Role>> roles = new HashMap<>();
+    final Map<String, Privilege> privileges = new LinkedHashMap<>();
+    final Map<String, User> users = new LinkedHashMap<>();
+    final List<String> realms = new ArrayList<>();
+    final Map<CapabilityIdentity, FakeCapability> capabilities = new LinkedHashMap<>();
+    final Map<String, Object> core = new HashMap<>();
+    final Map<String, TaskConfiguration> tasks = new LinkedHashMap<>();
+    final Map<String, SelectorConfiguration> contentSelectors = new LinkedHashMap<>();
+    /**
+     * LDAP servers by id, in the order of {@code setServerOrder}
+     */
+    final Map<String, LdapConfiguration> ldapServers = new LinkedHashMap<>();
+    final Map<String, Cron> taskSchedules = new HashMap<>();
+    ConnectionConfiguration connection = new ConnectionConfiguration();
+    ProxyConfiguration proxy;
+    /**
+     * Leader election of the node, disabled by default
+     */
+    ReconcileLeaderElection leaderElection = new ReconcileLeaderElection("node-0", null, 0, 0, 0);
+    Boolean anonymousAccess;
+    /**
+     * False to run without the LDAP plugin
+     */
+    boolean ldapInstalled = true;
+    /**
+     * Thrown by {@code RepositoryManager.browse} if set, like a store error of Nexus
+     */
+    RuntimeException browseFailure;
+    /**
+     * Thrown by {@code RepositoryManager.create} if set
+     */
+    RuntimeException createFailure;
+
+    private int nextId;
+    private int nextSecretId;
+
+    FakeNexus(Path workDir) {
+        this.workDir = workDir;
+        roles.put(UserManager.DEFAULT_SOURCE, new LinkedHashMap<>());
+        realms.add("NexusAuthenticatingRealm");
+        deletionQueue = new DeletionQueue(applicationDirectories(), repositoryManager(), blobStoreManager());
+        proxyWarmup = new ProxyWarmup(repositoryManager(), (repository, path) -> warmupFetcher.fetch(repository, path));
+    }
+
+    NexusCascPlugin newPlugin() throws Exception {
+        CoreApi coreApi = coreApi();
+        return new NexusCascPlugin(
+                proxy(BaseUrlManager.class, (method, args) -> null),
+                coreApi,
+                securityApi(),
+                securitySystem(),
+                cleanupPolicyStorage(),
+                new Interpolator(),
+                repositoryManager(),
+                blobStoreManager(),
+                realmManager(),
+                capabilityRegistry(),
+                routingRuleStore(),
+                new ApplyJournal(applicationDirectories()),
+                status,
+                leaderElection,
+                new RoutingRuleMatchers(),
+                new StagedDeletions(applicationDirectories()),
+                new HttpClientReconciler(httpClientManager(), secretsService(), applicationDirectories()),
+                new RecipeSchemas(recipes()),
+                deletionQueue,
+                new TaskReconciler(taskScheduler()),
+                proxyWarmup,
+                new ContentSelectorReconciler(selectorManager(), FakeNexus::checkSelector),
+                new LdapReconciler(() -> {
+                    if (!ldapInstalled) {
+                        throw new NoClassDefFoundError("org/sonatype/nexus/ldap/internal/persist/LdapConfigurationManager");
+                    }
+                    return new LdapServers(ldapConfigurationManager(),
+                            applicationDirectories().getWorkDirectory("casc").toPath().resolve(LdapServers.FILE_NAME));
+                })
+        );
+    }
+
+    /**
+     * Apply the configuration like Nexus does on startup
+     */
+    void apply(String yaml) throws Exception {
+        Path configFile = Files.createTempFile(workDir, "nexus", ".yml");
+        Files.write(configFile, yaml.getBytes(StandardCharsets.UTF_8));
+        NexusCascPlugin plugin = newPlugin();
+        withEnvironmentVariable("NEXUS_CASC_CONFIG", configFile.toString())
+                .execute(plugin::doStart);
+    }
+
+    /**
+     * Apply the configuration in async mode and wait for the background reconciliation to finish
+     */
+    void applyAsync(String yaml) throws Exception {
+        startAsync(yaml);
+        awaitBackground();
+    }
+
+    /**
+     * Start applying the configuration in async mode, without waiting for the background reconciliation
+     */
+    void startAsync(String yaml) throws Exception {
+        Path configFile = Files.createTempFile(workDir, "nexus", ".yml");
+        Files.write(configFile, yaml.getBytes(StandardCharsets.UTF_8));
+        NexusCascPlugin plugin = newPlugin();
+        withEnvironmentVariable("NEXUS_CASC_CONFIG", configFile.toString())
+                .and("NEXUS_CASC_ASYNC", "true")
+                .execute(plugin::doStart);
+    }
+
+    /**
+     * Wait for the background reconciliation to finish
+     */
+    void awaitBackground() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while ((status.getState() == ReconcileStatus.State.IDLE || status.getState() == ReconcileStatus.State.RUNNING)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    int calls(String method) {
+        return calls.getOrDefault(method, 0);
+    }
+
+    int writes() {
+        return calls.entrySet().stream()
+                .filter(e -> WRITE_METHODS.contains(e.getKey().substring(e.getKey().indexOf('.') + 1)))
+                .mapToInt(Map.Entry::getValue)
+                .sum();
+    }
+
+    /**
+     * @return the estimated size of the data passed to write methods
+     */
+    long bytesWritten() {
+        return bytesWritten;
+    }
+
+    Map<String, Integer> getCalls() {
+        return new TreeMap<>(calls);
+    }
+
+    void resetCalls() {
+        calls.clear();
+        bytesWritten = 0;
+    }
+
+    // -- Entities
+
+    FakeNexus withRepository(String name, String recipeName) {
+        Configuration configuration = bean(Configuration.class);
+        configuration.setRepositoryName(name);
+        configuration.setRecipeName(recipeName);
+        configuration.setOnline(true);
+        configuration.setAttributes(new HashMap<>());
+        repositories.put(name, configuration);
+        return this;
+    }
+
+    FakeNexus withBlobStore(String name) {
+        BlobStoreConfiguration configuration = bean(BlobStoreConfiguration.class);
+        configuration.setName(name);
+        configuration.setType("File");
+        Map<String, Map<String, Object>> attributes = new HashMap<>();
+        attributes.put("file", new HashMap<>(Collections.singletonMap("path", name)));
+        configuration.setAttributes(attributes);
+        blobStores.put(name, configuration);
+        return this;
+    }
+
+    FakeNexus withUser(String userId, String source) {
+        User user = new User();
+        user.setUserId(userId);
+        user.setSource(source);
+        user.setStatus(UserStatus.active);
+        users.put(userId, user);
+        return this;
+    }
+
+    FakeNexus withCapability(String type, Map<String, String> properties) {
+        FakeCapability capability = new FakeCapability(
+                CapabilityIdentity.capabilityIdentity("capability-" + ++nextId),
+                CapabilityType.capabilityType(type), true, null, properties);
+        capabilities.put(capability.id, capability);
+        return this;
+    }
+
+    static class FakeCapability {
+        final CapabilityIdentity id;
+        final CapabilityType type;
+        boolean enabled;
+        String notes;
+        Map<String, String> properties;
+
+        FakeCapability(CapabilityIdentity id, CapabilityType type, boolean enabled, String notes, Map<String, String> properties) {
+            this.id = id;
+            this.type = type;
+            this.enabled = enabled;
+            this.notes = notes;
+            this.properties = properties == null ? new HashMap<>() : new HashMap<>(properties);
+        }
+
+        CapabilityReference reference() {
+            CapabilityContext context = entity(CapabilityContext.class, (method, args) -> {
+                switch (method) {
+                    case "id": return id;
+                    case "type": return type;
+                    case "isEnabled": return enabled;
+                    case "notes": return notes;
+                    case "properties": return new HashMap<>(properties);
+                    default: return null;
+                }
+            });
+            return entity(CapabilityReference.class, (method, args) -> "context".equals(method) ? context : null);
+        }
+    }
+
+    // -- Services
+
+    private RepositoryManager repositoryManager() {
+        return proxy(RepositoryManager.class, (method, args) -> {
+            switch (method) {
+                case "browse":
+                    if (browseFailure != null) {
+                        throw browseFailure;
+                    }
+                    return repositories.values().stream().map(FakeNexus::repository).collect(toList());
+                case "get":
+                    return repositories.containsKey(args[0]) ? repository(repositories.get(args[0])) : null;
+                case "newConfiguration":
+                    return bean(Configuration.class);
+                case "create": {
+                    if (createFailure != null) {
+                        throw createFailure;
+                    }
+                    Configuration configuration = (Configuration) args[0];
+                    if (repositories.containsKey(configuration.getRepositoryName())) {
+                        throw new IllegalStateException("Repository exists: " + configuration.getRepositoryName());
+                    }
+                    repositories.put(configuration.getRepositoryName(), configuration);
+                    return repository(configuration);
+                }
+                case "update": {
+                    Configuration configuration = (Configuration) args[0];
+                    if (!repositories.containsKey(configuration.getRepositoryName())) {
+                        throw new IllegalStateException("Missing repository: " + configuration.getRepositoryName());
+                    }
+                    repositories.put(configuration.getRepositoryName(), configuration);
+                    return repository(configuration);
+                }
+                case "delete":
+                    repositories.remove(args[0]);
+                    return null;
+                default:
+                    throw new UnsupportedOperationException("RepositoryManager." + method);
+            }
+        });
+    }
+
+    private static Repository repository(Configuration configuration) {
+        return entity(Repository.class, (method, args) -> {
+            switch (method) {
+                case "getName": return configuration.getRepositoryName();
+                case "getConfiguration": return configuration;
+                case "getType":
+                    String recipeName = configuration.getRecipeName();
+                    return new Type(recipeName.substring(recipeName.lastIndexOf('-') + 1));
+                default: return null;
+            }
+        });
+    }
+
+    private BlobStoreManager blobStoreManager() {
+        return proxy(BlobStoreManager.class, (method, args) -> {
+            switch (method) {
+                case "browse":
+                    return blobStores.values().stream().map(FakeNexus::blobStore).collect(toList());
+                case "get":
+                    return blobStores.containsKey(args[0]) ? blobStore(blobStores.get(args[0])) : null;
+                case "newConfiguration":
+                    return bean(BlobStoreConfiguration.class);
+                case "create":
+                case "update": {
+                    BlobStoreConfiguration configuration = (BlobStoreConfiguration) args[0];
+                    if ("create".equals(method) == blobStores.containsKey(configuration.getName())) {
+                        throw new IllegalStateException(method + " of blob store " + configuration.getName());
+                    }
+                    for (String member : BlobStoreGroups.members(configuration.getAttributes())) {
+                        if (!blobStores.containsKey(member)) {
+                            throw new IllegalStateException("Missing member " + member + " of blob store group " + configuration.getName());
+                        }
+                    }
+                    blobStores.put(configuration.getName(), configuration);
+                    return blobStore(configuration);
+                }
+                case "delete":
+                    if (blobStores.values().stream().anyMatch(group -> BlobStoreGroups.members(group.getAttributes()).contains(args[0]))) {
+                        throw new IllegalStateException("Blob store " + args[0] + " is a member of a group");
+                    }
+                    blobStores.remove(args[0]);
+                    return null;
+                default:
+                    throw new UnsupportedOperationException("BlobStoreManager." + method);
+            }
+        });
+    }
+
+    private static BlobStore blobStore(BlobStoreConfiguration configuration) {
+        return entity(BlobStore.class, (method, args) ->
+                "getBlobStoreConfiguration".equals(method) ? configuration : null);
+    }
+
+    private CleanupPolicyStorage cleanupPolicyStorage() {
+        return proxy(CleanupPolicyStorage.class, (method, args) -> {
+            switch (method) {
+                case "get":
+                    return cleanupPolicies.get(args[0]);
+                case "getAll":
+                    return new ArrayList<>(cleanupPolicies.values());
+                case "newCleanupPolicy":
+                    return bean(CleanupPolicy.class);
+                case "add":
+                case "update": {
+                    CleanupPolicy policy = (CleanupPolicy) args[0];
+                    cleanupPolicies.put(policy.getName(), policy);
+                    return policy;
+                }
+                case "remove":
+                    cleanupPolicies.remove(((CleanupPolicy) args[0]).getName());
+                    return null;
+                default:
+                    throw new UnsupportedOperationException("CleanupPolicyStorage." + method);
+            }
+        });
+    }
+
+    private RoutingRuleStore routingRuleStore() {
+        return proxy(RoutingRuleStore.class, (method, args) -> {
+            switch (method) {
+                case "newRoutingRule":
+                    return bean(RoutingRule.class);
+                case "create": {
+                    RoutingRule rule = (RoutingRule) args[0];
+                    beanProperties(rule).put("id", new DetachedEntityId("rule-" + ++nextId));
+                    routingRules.put(rule.name(), rule);
+                    return rule;
+                }
+                case "update": {
+                    RoutingRule rule = (RoutingRule) args[0];
+                    routingRules.put(rule.name(), rule);
+                    return null;
+                }
+                case "delete":
+                    routingRules.remove(((RoutingRule) args[0]).name());
+                    return null;
+                case "list":
+                    return new ArrayList<>(routingRules.values());
+                case "getByName":
+                    return routingRules.get(args[0]);
+                case "getById":
+                    return routingRules.values().stream()
+                            .filter(rule -> rule.id().getValue().equals(args[0]))
+                            .findFirst().orElse(null);
+                default:
+                    throw new UnsupportedOperationException("RoutingRuleStore." + method);
+            }
+        });
+    }
+
+    private SecuritySystem securitySystem() {
+        return proxy(SecuritySystem.class, (method, args) -> {
+            switch (method) {
+                case "getAuthorizationManager":
+                    if (!roles.containsKey(args[0])) {
+                        throw new NoSuchAuthorizationManagerException((String) args[0]);
+                    }
+                    return authorizationManager((String) args[0]);
+                case "getUser": {
+                    User user = users.get(args[0]);
+                    if (user == null || (args.length > 1 && !user.getSource().equals(args[1]))) {
+                        throw new UserNotFoundException((String) args[0]);
+                    }
+                    return user;
+                }
+                case "updateUser": {
+                    User user = (User) args[0];
+                    if (!users.containsKey(user.getUserId())) {
+                        throw new UserNotFoundException(user.getUserId());
+                    }
+                    users.put(user.getUserId(), user);
+                    return user;
+                }
+                case "deleteUser":
+                    if (users.remove(args[0]) == null) {
+                        throw new UserNotFoundException((String) args[0]);
+                    }
+                    return null;
+                case "searchUsers": {
+                    UserSearchCriteria criteria = (UserSearchCriteria) args[0];
+                    return users.values().stream()
+                            .filter(user -> criteria.getSource() == null || criteria.getSource().equals(user.getSource()))
+                            .filter(user -> criteria.getUserId() == null || user.getUserId().startsWith(criteria.getUserId()))
+                            .limit(criteria.getLimit() == null ? Long.MAX_VALUE : criteria.getLimit())
+                            .collect(toSet());
+                }
+                case "changePassword":
+                    if (!users.containsKey(args[0])) {
+                        throw new UserNotFoundException((String) args[0]);
+                    }
+                    return null;
+                default:
+                    throw new UnsupportedOperationException("SecuritySystem." + method);
+            }
+        });
+    }
+
+    private AuthorizationManager authorizationManager(String source) {
+        Map<String, Role> sourceRoles = roles.get(source);
+        return proxy(AuthorizationManager.class, (method, args) -> {
+            switch (method) {
+                case "getSource":
+                    return source;
+                case "supportsWrite":
+                    return UserManager.DEFAULT_SOURCE.equals(source);
+                case "listRoles":
+                    return new HashSet<>(sourceRoles.values());
+                case "getRole":
+                    if (!sourceRoles.containsKey(args[0])) {
+                        throw new NoSuchRoleException((String) args[0]);
+                    }
+                    return sourceRoles.get(args[0]);
+                case "addRole":
+                case "updateRole": {
+                    Role role = (Role) args[0];
+                    if ("addRole".equals(method) == sourceRoles.containsKey(role.getRoleId())) {
+                        throw new IllegalStateException(method + " of role " + role.getRoleId());
+                    }
+                    sourceRoles.put(role.getRoleId(), role);
+                    return role;
+                }
+                case "deleteRole":
+                    if (sourceRoles.remove(args[0]) == null) {
+                        throw new NoSuchRoleException((String) args[0]);
+                    }
+                    return null;
+                case "listPrivileges":
+                    return new HashSet<>(privileges.values());
+                case "getPrivilege":
+                    if (!privileges.containsKey(args[0])) {
+                        throw new NoSuchPrivilegeException((String) args[0]);
+                    }
+                    return privileges.get(args[0]);
+                case "addPrivilege":
+                case "updatePrivilege": {
+                    Privilege privilege = (Privilege) args[0];
+                    privileges.put(privilege.getId(), privilege);
+                    return privilege;
+                }
+                case "deletePrivilege":
+                    if (privileges.remove(args[0]) == null) {
+                        throw new NoSuchPrivilegeException((String) args[0]);
+                    }
+                    return null;
+                default:
+                    throw new UnsupportedOperationException("AuthorizationManager." + method);
+            }
+        });
+    }
+
+    private SecurityApi securityApi() {
+        return proxy(SecurityApi.class, (method, args) -> {
+            switch (method) {
+                case "setAnonymousAccess":
+                    anonymousAccess = (Boolean) args[0];
+                    return null;
+                case "addUser": {
+                    User user = new User();
+                    user.setUserId((String) args[0]);
+                    user.setSource(UserManager.DEFAULT_SOURCE);
+                    user.setFirstName((String) args[1]);
+                    user.setLastName((String) args[2]);
+                    user.setEmailAddress((String) args[3]);
+                    user.setStatus((Boolean) args[4] ? UserStatus.active : UserStatus.disabled);
+                    @SuppressWarnings("unchecked")
+                    List<String> roleIds = (List<String>) args[6];
+                    roleIds.stream()
+                            .filter(role -> !BUILT_IN_ROLES.contains(role) && !roles.get(UserManager.DEFAULT_SOURCE).containsKey(role))
+                            .findFirst()
+                            .ifPresent(role -> {
+                                throw new IllegalArgumentException("Role " + role + " does not exist");
+                            });
+                    user.setRoles(roleIds.stream()
+                            .map(role -> new RoleIdentifier(UserManager.DEFAULT_SOURCE, role))
+                            .collect(toSet()));
+                    users.put(user.getUserId(), user);
+                    return user;
+                }
+                default:
+                    throw new UnsupportedOperationException("SecurityApi." + method);
+            }
+        });
+    }
+
+    private RealmManager realmManager() {
+        return proxy(RealmManager.class, (method, args) -> {
+            switch (method) {
+                case "enableRealm":
+                    if ((Boolean) args[1] && !realms.contains(args[0])) {
+                        realms.add((String) args[0]);
+                    } else if (!(Boolean) args[1]) {
+                        realms.remove(args[0]);
+                    }
+                    return null;
+                case "disableRealm":
+                    realms.remove(args[0]);
+                    return null;
+                case "isRealmEnabled":
+                    return realms.contains(args[0]);
+                case "getConfiguredRealmIds":
+                    return new ArrayList<>(realms);
+                case "setConfiguredRealmIds": {
+                    @SuppressWarnings("unchecked")
+                    List<String> ids = (List<String>) args[0];
+                    realms.clear();
+                    realms.addAll(ids);
+                    return null;
+                }
+                default:
+                    throw new UnsupportedOperationException("RealmManager." + method);
+            }
+        });
+    }
+
+    private CapabilityRegistry capabilityRegistry() {
+        return proxy(CapabilityRegistry.class, (method, args) -> {
+            switch (method) {
+                case "getAll":
+                    return capabilities.values().stream().map(FakeCapability::reference).collect(toList());
+                case "get": {
+                    FakeCapability capability = capabilities.get(args[0]);
+                    return capability == null ? null : capability.reference();
+                }
+                case "add": {
+                    @SuppressWarnings("unchecked")
+                    FakeCapability capability = new FakeCapability(
+                            CapabilityIdentity.capabilityIdentity("capability-" + ++nextId),
+                            (CapabilityType) args[0], (Boolean) args[1], (String) args[2], (Map<String, String>) args[3]);
+                    capabilities.put(capability.id, capability);
+                    return capability.reference();
+                }
+                case "update": {
+                    FakeCapability capability = capabilities.get(args[0]);
+                    capability.enabled = (Boolean) args[1];
+                    capability.notes = (String) args[2];
+                    @SuppressWarnings("unchecked")
+                    Map<String, String> properties = (Map<String, String>) args[3];
+                    capability.properties = properties == null ? new HashMap<>() : new HashMap<>(properties);
+                    return capability.reference();
+                }
+                case "remove": {
+                    FakeCapability capability = capabilities.remove(args[0]);
+                    return capability == null ? null : capability.reference();
+                }
+                default:
+                    throw new UnsupportedOperationException("CapabilityRegistry." + method);
+            }
+        });
+    }
+
+    private CoreApi coreApi() {
+        return proxy(CoreApi.class, (method, args) -> {
+            core.put(method, args.length == 0 ? null : args.length == 1 ? args[0] : Arrays.asList(args));
+            return null;
+        });
+    }
+
+    private HttpClientManager httpClientManager() {
+        return proxy(HttpClientManager.class, (method, args) -> {
+            switch (method) {
+                case "getConfiguration":
+                    HttpClientConfiguration configuration = bean(HttpClientConfiguration.class);
+                    configuration.setConnection(connection.copy());
+                    configuration.setProxy(proxy == null ? null : proxy.copy());
+                    return configuration;
+                case "setConfiguration":
+                    HttpClientConfiguration updated = (HttpClientConfiguration) args[0];
+                    connection = updated.getConnection() == null ? new ConnectionConfiguration() : updated.getConnection().copy();
+                    proxy = updated.getProxy() == null ? null : updated.getProxy().copy();
+                    return null;
+                default:
+                    throw new UnsupportedOperationException("HttpClientManager." + method);
+            }
+        });
+    }
+
+    /**
+     * Secrets which decrypt to the encrypted value, named by a counter
+     */
+    private SecretsService secretsService() {
+        return proxy(SecretsService.class, (method, args) -> {
+            if ("encrypt".equals(method)) {
+                String id = "secret-" + (++nextSecretId);
+                char[] value = ((char[]) args[1]).clone();
+                return proxy(Secret.class, (secretMethod, secretArgs) -> {
+                    if ("getId".equals(secretMethod)) {
+                        return id;
+                    }
+                    if ("decrypt".equals(secretMethod)) {
+                        return value.clone();
+                    }
+                    throw new UnsupportedOperationException("Secret." + secretMethod);
+                });
+            }
+            throw new UnsupportedOperationException("SecretsService." + method);
+        });
+    }
+
+    private TaskScheduler taskScheduler() {
+        ScheduleFactory scheduleFactory = entity(ScheduleFactory.class, (method, args) -> new Cron((Date) args[0], (String) args[1]));
+        return proxy(TaskScheduler.class, (method, args) -> {
+            switch (method) {
+                case "getScheduleFactory":
+                    return scheduleFactory;
+                case "listsTasks":
+                    return tasks.values().stream().map(this::taskInfo).collect(toList());
+                case "createTaskConfigurationInstance": {
+                    TaskConfiguration configuration = new TaskConfiguration();
+                    configuration.setTypeId((String) args[0]);
+                    return configuration;
+                }
+                case "scheduleTask": {
+                    TaskConfiguration configuration = (TaskConfiguration) args[0];
+                    if (configuration.getId() == null) {
+                        configuration.setId("task-" + ++nextId);
+                    }
+                    tasks.values().removeIf(task -> task.getId().equals(configuration.getId()));
+                    tasks.put(configuration.getName(), configuration);
+                    taskSchedules.put(configuration.getName(), (Cron) args[1]);
+                    return taskInfo(configuration);
+                }
+                default:
+                    throw new UnsupportedOperationException("TaskScheduler." + method);
+            }
+        });
+    }
+
+    /**
+     * Validation of the selector factory of Nexus, which rejects the expressions CSEL does not accept
+     */
+    private static String checkSelector(String expression) {
+        try {
+            Csel.parse(expression);
+            return null;
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
+        }
+    }
+
+    private SelectorManager selectorManager() {
+        return proxy(SelectorManager.class, (method, args) -> {
+            switch (method) {
+                case "browse":
+                    return new ArrayList<>(contentSelectors.values());
+                case "newSelectorConfiguration":
+                    return bean(SelectorConfiguration.class);
+                case "create":
+                case "update": {
+                    SelectorConfiguration selector = (SelectorConfiguration) args[0];
+                    contentSelectors.put(selector.getName(), selector);
+                    return null;
+                }
+                case "delete": {
+                    SelectorConfiguration selector = (SelectorConfiguration) args[0];
+                    if (privileges.values().stream().anyMatch(privilege -> privilege.getProperties() != null
+                            && selector.getName().equals(privilege.getProperties().get("contentSelector")))) {
+                        throw new IllegalStateException("Content selector " + selector.getName() + " is in use");
+                    }
+                    contentSelectors.remove(selector.getName());
+                    return null;
+                }
+                default:
+                    throw new UnsupportedOperationException("SelectorManager." + method);
+            }
+        });
+    }
+
+    /**
+     * Stores copies of the servers, like Nexus persists them, so a server changes only once it is updated
+     */
+    private LdapConfigurationManager ldapConfigurationManager() {
+        return proxy(LdapConfigurationManager.class, (method, args) -> {
+            switch (method) {
+                case "listLdapServerConfigurations":
+                    return ldapServers.values().stream().map(FakeNexus::masked).collect(toList());
+                case "newConfiguration":
+                    return new LdapConfiguration();
+                case "addLdapServerConfiguration": {
+                    LdapConfiguration server = copy((LdapConfiguration) args[0]);
+                    if (ldapServers.values().stream().anyMatch(existing -> existing.getName().equals(server.getName()))) {
+                        throw new IllegalArgumentException("LDAP server " + server.getName() + " exists already");
+                    }
+                    server.setId("ldap-" + ++nextId);
+                    server.setOrder(ldapServers.size());
+                    ldapServers.put(server.getId(), server);
+                    return server.getId();
+                }
+                case "updateLdapServerConfiguration": {
+                    LdapConfiguration server = (LdapConfiguration) args[0];
+                    if (!ldapServers.containsKey(server.getId())) {
+                        throw new IllegalArgumentException("LDAP server " + server.getId() + " not found");
+                    }
+                    ldapServers.put(server.getId(), copy(server));
+                    return null;
+                }
+                case "deleteLdapServerConfiguration":
+                    if (ldapServers.remove((String) args[0]) == null) {
+                        throw new IllegalArgumentException("LDAP server " + args[0] + " not found");
+                    }
+                    return null;
+                case "setServerOrder": {
+                    @SuppressWarnings("unchecked")
+                    List<String> ids = (List<String>) args[0];
+                    if (!new HashSet<>(ids).equals(ldapServers.keySet()) || ids.size() != ldapServers.size()) {
+                        throw new IllegalArgumentException("Order " + ids + " does not list every LDAP server once");
+                    }
+                    Map<String, LdapConfiguration> ordered = new LinkedHashMap<>();
+                    ids.forEach(id -> {
+                        ldapServers.get(id).setOrder(ordered.size());
+                        ordered.put(id, ldapServers.get(id));
+                    });
+                    ldapServers.clear();
+                    ldapServers.putAll(ordered);
+                    return null;
+                }
+                default:
+                    throw new UnsupportedOperationException("LdapConfigurationManager." + method);
+            }
+        });
+    }
+
+    private static LdapConfiguration copy(LdapConfiguration server) {
+        LdapConfiguration copy = new LdapConfiguration();
+        copy.setId(server.getId());
+        copy.setName(server.getName());
+        copy.setOrder(server.getOrder());
+        copy.setConnection(server.getConnection());
+        copy.setMapping(server.getMapping());
+        return copy;
+    }
+
+    /**
+     * @return a copy of the server with the system password masked, as Nexus may return it
+     */
+    private static LdapConfiguration masked(LdapConfiguration server) {
+        LdapConfiguration copy = copy(server);
+        Connection connection = server.getConnection();
+        Connection masked = new Connection();
+        masked.setHost(connection.getHost());
+        masked.setSearchBase(connection.getSearchBase());
+        masked.setAuthScheme(connection.getAuthScheme());
+        masked.setSaslRealm(connection.getSaslRealm());
+        masked.setSystemUsername(connection.getSystemUsername());
+        masked.setSystemPassword(connection.getSystemPassword() == null ? null : "#~NXRM~PLACEHOLDER~PASSWORD~#");
+        masked.setUseTrustStore(connection.getUseTrustStore());
+        masked.setConnectionTimeout(connection.getConnectionTimeout());
+        masked.setConnectionRetryDelay(connection.getConnectionRetryDelay());
+        masked.setMaxIncidentsCount(connection.getMaxIncidentsCount());
+        copy.setConnection(masked);
+        return copy;
+    }
+
+    private TaskInfo taskInfo(TaskConfiguration configuration) {
+        return entity(TaskInfo.class, (method, args) -> {
+            switch (method) {
+                case "getId": return configuration.getId();
+                case "getName": return configuration.getName();
+                case "getTypeId": return configuration.getTypeId();
+                case "getConfiguration": return configuration;
+                case "getSchedule": return taskSchedules.get(configuration.getName());
+                default: return null;
+            }
+        });
+    }
+
+    private ApplicationDirectories applicationDirectories() {
+        return entity(ApplicationDirectories.class, (method, args) -> {
+            File dir = args == null || args.length == 0 ? workDir.toFile() : workDir.resolve((String) args[0]).toFile();
+            dir.mkdirs();
+            return dir;
+        });
+    }
+
+    /**
+     * The hosted, proxy and group recipes of the common formats
+     */
+    private static Map<String, Recipe> recipes() {
+        Map<String, Recipe> recipes = new LinkedHashMap<>();
+        for (String format : Arrays.asList("apt", "docker", "go", "maven2", "npm", "nuget", "pypi", "raw", "rubygems", "yum")) {
+            for (String type : Arrays.asList("hosted", "proxy", "group")) {
+                recipes.put(format + "-" + type, entity(Recipe.class, (method, args) ->
+                        "getFormat".equals(method) ? new Format(format) : new Type(type)));
+            }
+        }
+        return recipes;
+    }
+
+    // -- Proxies
+
+    interface Handler {
+        Object invoke(String method, Object[] args) throws Exception;
+    }
+
+    /**
+     * Proxy of a service, counting the calls per method
+     */
+    private <T> T proxy(Class<T> type, Handler handler) {
+        return type.cast(Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                return objectMethod(type, proxy, method.getName(), args);
+            }
+            // The plugin loads the existing state from several threads
+            synchronized (calls) {
+                calls.merge(type.getSimpleName() + "." + method.getName(), 1, Integer::sum);
+                if (WRITE_METHODS.contains(method.getName())) {
+                    bytesWritten += estimateBytes(args, Collections.newSetFromMap(new IdentityHashMap<>()));
+                }
+            }
+            return handler.invoke(method.getName(), args == null ? new Object[0] : args);
+        }));
+    }
+
+    /**
+     * Proxy of an entity, calls are not counted
+     */
+    private static <T> T entity(Class<T> type, Handler handler) {
+        return type.cast(Proxy.newProxyInstance(FakeNexus.class.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                return objectMethod(type, proxy, method.getName(), args);
+            }
+            Object result = handler.invoke(method.getName(), args);
+            return result == null ? defaultValue(method.getReturnType()) : result;
+        }));
+    }
+
+    /**
+     * Proxy of a bean, backed by a map of properties. Supports {@code getX}/{@code isX}/{@code setX} accessors as well
+     * as the fluent {@code x()}/{@code x(value)} accessors of e.g. {@link RoutingRule}.
+     */
+    static <T> T bean(Class<T> type) {
+        return bean(type, new HashMap<>());
+    }
+
+    private static <T> T bean(Class<T> type, Map<String, Object> properties) {
+        return type.cast(Proxy.newProxyInstance(FakeNexus.class.getClassLoader(), new Class<?>[]{type, BeanProperties.class}, (proxy, method, args) -> {
+            String name = method.getName();
+            int argCount = args == null ? 0 : args.length;
+            if (method.getDeclaringClass() == Object.class) {
+                return "toString".equals(name) ? type.getSimpleName() + properties : objectMethod(type, proxy, name, args);
+            }
+            if ("properties".equals(name) && method.getDeclaringClass() == BeanProperties.class) {
+                return properties;
+            }
+            if ("copy".equals(name) && argCount == 0) {
+                return bean(type, new HashMap<>(properties));
+            }
+            if (name.startsWith("get") && name.length() > 3 && argCount == 0) {
+                return valueOrDefault(properties.get(decapitalize(name.substring(3))), method.getReturnType());
+            }
+            if (name.startsWith("is") && name.length() > 2 && argCount == 0) {
+                return valueOrDefault(properties.get(decapitalize(name.substring(2))), method.getReturnType());
+            }
+            if (name.startsWith("set") && name.length() > 3 && argCount == 1) {
+                properties.put(decapitalize(name.substring(3)), args[0]);
+                return null;
+            }
+            if (argCount == 0) {
+                return valueOrDefault(properties.get(name), method.getReturnType());
+            }
+            if (argCount == 1) {
+                properties.put(name, args[0]);
+                return method.getReturnType().isInstance(proxy) ? proxy : null;
+            }
+            throw new UnsupportedOperationException(type.getSimpleName() + "." + name);
+        }));
+    }
+
+    interface BeanProperties {
+        Map<String, Object> properties();
+    }
+
+    static Map<String, Object> beanProperties(Object bean) {
+        return ((BeanProperties) bean).properties();
+    }
+
+    /**
+     * Estimate the size of a value as if it was serialized to the database
+     */
+    static long estimateBytes(Object value, Set<Object> seen) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof CharSequence || value instanceof Number || value instanceof Boolean || value instanceof Enum) {
+            return value.toString().getBytes(StandardCharsets.UTF_8).length;
+        }
+        if (!seen.add(value)) {
+            return 0;
+        }
+        long bytes = 0;
+        if (value instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                bytes += estimateBytes(entry.getKey(), seen) + estimateBytes(entry.getValue(), seen);
+            }
+        } else if (value instanceof Iterable) {
+            for (Object element : (Iterable<?>) value) {
+                bytes += estimateBytes(element, seen);
+            }
+        } else if (value instanceof Object[]) {
+            for (Object element : (Object[]) value) {
+                bytes += estimateBytes(element, seen);
+            }
+        } else if (value instanceof BeanProperties) {
+            bytes += estimateBytes(((BeanProperties) value).properties(), seen);
+        } else if (Proxy.isProxyClass(value.getClass()) || value.getClass().getName().startsWith("java.")) {
+            bytes += value.toString().getBytes(StandardCharsets.UTF_8).length;
+        } else {
+            for (Class<?> type = value.getClass(); type != Object.class; type = type.getSuperclass()) {
+                for (Field field : type.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers()) || field.isSynthetic()) {
+                        continue;
+                    }
+                    try {
+                        field.setAccessible(true);
+                        bytes += estimateBytes(field.get(value), seen);
+                    } catch (ReflectiveOperationException | RuntimeException e) {
+                        // Not accessible, ignore it
+                    }
+                }
+            }
+        }
+        return bytes;
+    }
+
+    private static Object objectMethod(Class<?> type, Object proxy, String name, Object[] args) {
+        switch (name) {
+            case "equals": return proxy == args[0];
+            case "hashCode": return System.identityHashCode(proxy);
+            default: return "Fake" + type.getSimpleName();
+        }
+    }
+
+    private static String decapitalize(String name) {
+        return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private static Object valueOrDefault(Object value, Class<?> type) {
+        return value == null ? defaultValue(type) : value;
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,100 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+import com.weareadaptive.nexus.casc.plugin.internal.config.ConfigGroupLimits;
+import com.weareadaptive.nexus.casc.plugin.internal.config.ConfigRepository;
+import com.weareadaptive.nexus.casc.plugin.internal.config.ConfigRepositoryEntry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GroupGraphTest {
+    private final List<ConfigRepositoryEntry> repositories = new ArrayList<>();
+
+    private void repository(String name, String... members) {
+        ConfigRepositoryEntry repoConfig = new ConfigRepositoryEntry();
+        repoConfig.setName(name);
+        Map<String, Map<String, Object>> attributes = new HashMap<>();
+        if (members.length > 0) {
+            repoConfig.setRecipeName("maven2-group");
+            attributes.put("group", new HashMap<>(Collections.singletonMap("memberNames", Arrays.asList(members))));
+        } else {
+            repoConfig.setRecipeName("maven2-hosted");
+        }
+        repoConfig.setAttributes(attributes);
+        repositories.add(repoConfig);
+    }
+
+    private GroupGraph graph() {
+        ConfigRepository repository = new ConfigRepository();
+        repository.setRepositories(repositories);
+        return GroupGraph.build(repository, Collections.emptyMap());
+    }
+
+    @Test
+    void reportDepthMembersAndDuplicates() {
+        repository("releases");
+        repository("snapshots");
+        repository("central");
+        repository("internal", "releases", "snapshots");
+        repository("public", "internal", "releases", "central");
+
+        Map<String, ReconcileStatusXO.GroupReport> report = graph().report();
+
+        assertEquals(Arrays.asList("internal", "public"), new ArrayList<>(report.keySet()));
+        ReconcileStatusXO.GroupReport internal = report.get("internal");
+        assertEquals(1, internal.getDepth());
+        assertEquals(2, internal.getMembers());
+        assertEquals(Collections.emptyList(), internal.getDuplicates());
+        ReconcileStatusXO.GroupReport publicGroup = report.get("public");
+        assertEquals(2, publicGroup.getDepth());
+        assertEquals(3, publicGroup.getDirectMembers());
+        assertEquals(3, publicGroup.getMembers());
+        assertEquals(Collections.singletonList("releases"), publicGroup.getDuplicates());
+        assertNull(publicGroup.getCycle());
+        assertEquals(Collections.emptyList(), graph().check(null));
+    }
+
+    @Test
+    void rejectCycles() {
+        repository("a", "b", "releases");
+        repository("b", "c");
+        repository("c", "a");
+        repository("releases");
+
+        GroupGraph graph = graph();
+
+        assertEquals(Arrays.asList(
+                "repository.repositories[a]: group cycle a -> b -> c -> a",
+                "repository.repositories[b]: group cycle a -> b -> c -> a",
+                "repository.repositories[c]: group cycle a -> b -> c -> a"
+        ), graph.check(null));
+        assertEquals(Arrays.asList("a", "b", "c", "a"), graph.report().get("a").getCycle());
+    }
+
+    @Test
+    void rejectGroupsAboveLimitsOnlyIfConfigured() {
+        repository("releases");
+        repository("snapshots");
+        repository("internal", "releases", "snapshots");
+        repository("public", "internal");
+        ConfigGroupLimits limits = new ConfigGroupLimits();
+        limits.setMaxDepth(1);
+        limits.setMaxMembers(1);
+
+        assertEquals(Collections.emptyList(), graph().check(limits));
+
+        limits.setReject(true);
+        assertEquals(Arrays.asList(
+                "repository.repositories[internal]: group 2 flattened members exceeds repository.groupLimits.maxMembers 1",
+                "repository.repositories[public]: group depth 2 exceeds repository.groupLimits.maxDepth 1",
+                "repository.repositories[public]: group 2 flattened members exceeds repository.groupLimits.maxMembers 1"
+        ), graph().check(limits));
+    }
+}
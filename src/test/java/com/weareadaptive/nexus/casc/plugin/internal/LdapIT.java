@@ -0,0 +1,89 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the LDAP server applied by casc against a real LDAP server: users are searched with the system password
+ * casc applied, and log in with their LDAP password.
+ * <p>
+ * Only runs if {@code LDAP_IT_SERVER} names the LDAP server, e.g. {@code openldap} of {@code default-nexus.yml}, stored
+ * in the OpenLDAP container of {@code docker-compose.yml} with the users of {@code ldap-example.ldif}.
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@EnabledIfEnvironmentVariable(named = "LDAP_IT_SERVER", matches = ".+")
+public class LdapIT {
+    private static final String ADMIN = "johndoe";
+    private static final String ADMIN_PASSWORD = "admin123";
+    private static final String LDAP_USER = "ldap-it";
+    private static final String LDAP_PASSWORD = "ldap-it123";
+
+    private CloseableHttpClient client;
+    private String nexusUrl;
+
+    @BeforeAll
+    void createClient() {
+        nexusUrl = System.getenv("NEXUS_URL");
+        client = HttpClients.custom()
+                .setDefaultRequestConfig(RequestConfig.copy(RequestConfig.DEFAULT)
+                        .setSocketTimeout(60000)
+                        .setConnectTimeout(5000)
+                        .build())
+                .build();
+    }
+
+    @AfterAll
+    void closeClient() throws IOException {
+        if (client != null) {
+            client.close();
+        }
+    }
+
+    /**
+     * @return the status code and the body of the response
+     */
+    private String[] get(String path, String username, String password) throws IOException {
+        HttpGet get = new HttpGet(new URL(nexusUrl) + "/service/rest/v1/" + path);
+        get.setHeader(HttpHeaders.AUTHORIZATION, "Basic " + Base64.getEncoder()
+                .encodeToString((username + ":" + password).getBytes(StandardCharsets.UTF_8)));
+        try (CloseableHttpResponse response = client.execute(get)) {
+            String body = response.getEntity() == null ? "" : EntityUtils.toString(response.getEntity());
+            return new String[]{String.valueOf(response.getStatusLine().getStatusCode()), body};
+        }
+    }
+
+    @Test
+    void searchUsersWithTheSystemPassword() throws Exception {
+        String[] server = get("security/ldap/" + System.getenv("LDAP_IT_SERVER"), ADMIN, ADMIN_PASSWORD);
+        assertEquals("200", server[0], server[1]);
+
+        String[] users = get("security/users?source=LDAP&userId=" + LDAP_USER, ADMIN, ADMIN_PASSWORD);
+        assertEquals("200", users[0], users[1]);
+        assertTrue(users[1].matches("(?s).*\"userId\"\\s*:\\s*\"" + LDAP_USER + "\".*"), users[1]);
+    }
+
+    @Test
+    void logInWithTheLdapPassword() throws Exception {
+        // The user has no privileges, so an authenticated request is forbidden
+        assertEquals("403", get("security/users", LDAP_USER, LDAP_PASSWORD)[0]);
+        assertEquals("401", get("security/users", LDAP_USER, "wrong")[0]);
+    }
+}
@@ -0,0 +1,710 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sonatype.nexus.capability.CapabilityType;
+import org.sonatype.nexus.httpclient.config.UsernameAuthenticationConfiguration;
+import org.sonatype.nexus.ldap.internal.persist.entity.LdapConfiguration;
+import org.sonatype.nexus.security.privilege.Privilege;
+import org.sonatype.nexus.security.role.RoleIdentifier;
+import org.sonatype.nexus.security.user.UserManager;
+import org.sonatype.nexus.security.user.UserStatus;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Reconciles configurations against {@link FakeNexus}
+ */
+class NexusCascPluginTest {
+    @TempDir
+    Path workDir;
+
+    private FakeNexus nexus;
+
+    @BeforeEach
+    void setUp() {
+        nexus = new FakeNexus(workDir)
+                .withUser("admin", UserManager.DEFAULT_SOURCE)
+                .withUser("stale", UserManager.DEFAULT_SOURCE)
+                .withRepository("maven-snapshots", "maven2-hosted")
+                .withCapability("analytics-configuration", Collections.emptyMap());
+    }
+
+    static String resource(String name) throws IOException, URISyntaxException {
+        return new String(Files.readAllBytes(Paths.get(NexusCascPluginTest.class.getClassLoader()
+                .getResource(name).toURI())), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void applyConfiguration() throws Exception {
+        nexus.apply(resource("reconcile/basic.yml"));
+
+        assertEquals("https://nexus.example.org", nexus.core.get("baseUrl"));
+        assertEquals(false, nexus.anonymousAccess);
+        assertTrue(nexus.realms.contains("DockerToken"));
+
+        assertEquals(Collections.singleton("maven"), nexus.blobStores.keySet());
+        assertEquals(Collections.singleton("cleanup-maven-proxy"), nexus.cleanupPolicies.keySet());
+        assertEquals(new HashSet<>(Arrays.asList("maven-central", "maven-releases")), nexus.repositories.keySet());
+        assertEquals(nexus.routingRules.get("block-snapshots").id(),
+                nexus.repositories.get("maven-central").getRoutingRuleId());
+
+        assertEquals("docker-proxy", nexus.privileges.get("docker-proxy-update").getProperties().get("repository"));
+        assertEquals(new HashSet<>(Arrays.asList("nx-repository-view-*-*-browse", "nx-repository-view-*-*-read")),
+                nexus.roles.get(UserManager.DEFAULT_SOURCE).get("repository-read-all").getPrivileges());
+
+        assertEquals(new HashSet<>(Arrays.asList("admin", "janedoe")), nexus.users.keySet());
+        assertEquals(UserStatus.active, nexus.users.get("janedoe").getStatus());
+        assertEquals(Collections.singleton(new RoleIdentifier(UserManager.DEFAULT_SOURCE, "nx-admin")),
+                nexus.users.get("admin").getRoles());
+
+        assertEquals(1, nexus.capabilities.size());
+        FakeNexus.FakeCapability capability = nexus.capabilities.values().iterator().next();
+        assertEquals(CapabilityType.capabilityType("analytics-configuration"), capability.type);
+        assertFalse(capability.enabled);
+    }
+
+    @Test
+    void reapplyIdenticalConfiguration() throws Exception {
+        nexus.apply(resource("reconcile/basic.yml"));
+        nexus.resetCalls();
+
+        nexus.apply(resource("reconcile/basic.yml"));
+
+        assertEquals(0, nexus.calls("RepositoryManager.create"));
+        assertEquals(0, nexus.calls("RepositoryManager.delete"));
+        assertEquals(0, nexus.calls("BlobStoreManager.create"));
+        assertEquals(0, nexus.calls("BlobStoreManager.delete"));
+        assertEquals(0, nexus.calls("CleanupPolicyStorage.add"));
+        assertEquals(0, nexus.calls("CleanupPolicyStorage.remove"));
+        assertEquals(0, nexus.calls("RoutingRuleStore.create"));
+        assertEquals(0, nexus.calls("RoutingRuleStore.delete"));
+        assertEquals(0, nexus.calls("AuthorizationManager.addRole"));
+        assertEquals(0, nexus.calls("AuthorizationManager.deleteRole"));
+        assertEquals(0, nexus.calls("SecurityApi.addUser"));
+        assertEquals(0, nexus.calls("SecuritySystem.deleteUser"));
+        assertEquals(0, nexus.calls("CapabilityRegistry.add"));
+        assertEquals(0, nexus.calls("CapabilityRegistry.remove"));
+    }
+
+    @Test
+    void pruneRemovedEntities() throws Exception {
+        nexus.apply(resource("reconcile/basic.yml"));
+
+        assertFalse(nexus.repositories.containsKey("maven-snapshots"));
+        assertFalse(nexus.users.containsKey("stale"));
+        assertEquals(1, nexus.calls("RepositoryManager.delete"));
+        assertEquals(1, nexus.calls("SecuritySystem.deleteUser"));
+    }
+
+    @Test
+    void createAdminUserWithCustomRoleBeforeBackgroundReconciliation() throws Exception {
+        nexus.applyAsync("security:\n"
+                + "  privileges:\n"
+                + "    - id: ops-update\n      enabled: true\n      name: ops-update\n      type: repository-admin\n"
+                + "      properties:\n        format: maven2\n        repository: '*'\n        actions: update\n"
+                + "  roles:\n"
+                + "    - id: ops\n      enabled: true\n      source: default\n      name: ops\n"
+                + "      roles:\n        - ops-update\n"
+                + "    - id: ops-update\n      enabled: true\n      source: default\n      name: ops-update\n"
+                + "      privileges:\n        - ops-update\n"
+                + "  users:\n"
+                + "    - username: ops-admin\n      firstName: Ops\n      lastName: Admin\n      password: changeme\n"
+                + "      email: ops@example.org\n      roles:\n"
+                + "        - source: ''\n          role: nx-admin\n"
+                + "        - source: default\n          role: ops\n");
+
+        assertEquals(ReconcileStatus.State.COMPLETED, nexus.status.getState());
+        assertEquals(new HashSet<>(Arrays.asList(new RoleIdentifier(UserManager.DEFAULT_SOURCE, "nx-admin"),
+                new RoleIdentifier(UserManager.DEFAULT_SOURCE, "ops"))), nexus.users.get("ops-admin").getRoles());
+        assertEquals(new HashSet<>(Arrays.asList("ops", "ops-update")), nexus.roles.get(UserManager.DEFAULT_SOURCE).keySet());
+        assertTrue(nexus.privileges.containsKey("ops-update"));
+        assertEquals(1, nexus.calls("AuthorizationManager.addPrivilege"));
+        assertEquals(2, nexus.calls("AuthorizationManager.addRole"));
+    }
+
+    @Test
+    void waitForTheLeaderInTheBackgroundInAsyncMode() throws Exception {
+        ReconcileLeaderElectionTest.InMemoryReconcileLockStore store = new ReconcileLeaderElectionTest.InMemoryReconcileLockStore();
+        assertTrue(store.tryAcquire("node-1", "digest-1", 60_000));
+        nexus.leaderElection = new ReconcileLeaderElection("node-0", store, 60_000, 10, 60_000);
+
+        nexus.startAsync(resource("reconcile/basic.yml"));
+        assertEquals(ReconcileStatus.State.IDLE, nexus.status.getState());
+        assertEquals(0, nexus.writes());
+
+        store.release("node-1", null);
+        nexus.awaitBackground();
+        assertEquals(ReconcileStatus.State.COMPLETED, nexus.status.getState());
+        assertEquals(new HashSet<>(Arrays.asList("admin", "janedoe")), nexus.users.keySet());
+    }
+
+    @Test
+    void releaseTheLeaseIfTheRunFailsToStart() throws Exception {
+        ReconcileLeaderElectionTest.InMemoryReconcileLockStore store = new ReconcileLeaderElectionTest.InMemoryReconcileLockStore();
+        nexus.leaderElection = new ReconcileLeaderElection("node-0", store, 60_000, 10, 50);
+        nexus.browseFailure = new IllegalStateException("store unavailable");
+
+        assertThrows(IllegalStateException.class, () -> nexus.apply(resource("reconcile/basic.yml")));
+        assertEquals(ReconcileStatus.State.FAILED, nexus.status.getState());
+        assertNull(store.getHolder());
+        assertNull(store.getLastCompletion());
+
+        nexus.browseFailure = null;
+        nexus.apply(resource("reconcile/basic.yml"));
+        assertEquals(ReconcileStatus.State.COMPLETED, nexus.status.getState());
+    }
+
+    @Test
+    void writeNodeSettingsOnFollowers() throws Exception {
+        ReconcileLeaderElectionTest.InMemoryReconcileLockStore store = new ReconcileLeaderElectionTest.InMemoryReconcileLockStore();
+        assertTrue(store.tryAcquire("node-1", "digest-1", 60_000));
+        nexus.leaderElection = new ReconcileLeaderElection("node-0", store, 60_000, 10, 50);
+
+        nexus.apply("core:\n  connectionPool:\n    size: 400\n  httpProxy:\n    host: proxy.example.org\n"
+                + "ldap:\n  cache:\n    timeToLive: 600\n");
+        assertEquals(ReconcileStatus.State.SKIPPED, nexus.status.getState());
+        assertEquals(0, nexus.calls("HttpClientManager.setConfiguration"));
+
+        Properties written = new Properties();
+        written.load(new StringReader(new String(Files.readAllBytes(
+                workDir.resolve("etc").resolve(HttpClientReconciler.NEXUS_PROPERTIES)), StandardCharsets.UTF_8)));
+        assertEquals("400", written.getProperty(HttpClientReconciler.POOL_SIZE));
+        assertEquals("600s", written.getProperty(LdapReconciler.CACHE_TIME_TO_LIVE));
+    }
+
+    @Test
+    void applyRealmsInOneWrite() throws Exception {
+        String realms = "security:\n  realms:\n"
+                + "    - name: DockerToken\n      enabled: %s\n"
+                + "    - name: LdapRealm\n      enabled: true\n";
+
+        nexus.apply(String.format(realms, true));
+        assertEquals(Arrays.asList("NexusAuthenticatingRealm", "DockerToken", "LdapRealm"), nexus.realms);
+        assertEquals(1, nexus.calls("RealmManager.setConfiguredRealmIds"));
+
+        nexus.apply(String.format(realms, true));
+        assertEquals(1, nexus.calls("RealmManager.setConfiguredRealmIds"));
+
+        nexus.apply(String.format(realms, false));
+        assertEquals(Arrays.asList("NexusAuthenticatingRealm", "LdapRealm"), nexus.realms);
+        assertEquals(2, nexus.calls("RealmManager.setConfiguredRealmIds"));
+    }
+
+    @Test
+    void applyHttpSettingsOnlyWhenChanged() throws Exception {
+        String proxy = "core:\n  connectionTimeout: 60\n  httpProxy:\n    host: proxy.example.org\n    port: 3128\n"
+                + "    username: casc\n    password: %s\n  nonProxyHosts:\n    - localhost\n";
+
+        nexus.apply(String.format(proxy, "secret"));
+        assertEquals(1, nexus.calls("HttpClientManager.setConfiguration"));
+        assertEquals(60, nexus.connection.getTimeout().toSeconds());
+        assertEquals("proxy.example.org", nexus.proxy.getHttp().getHost());
+        assertArrayEquals(new String[]{"localhost"}, nexus.proxy.getNonProxyHosts());
+        UsernameAuthenticationConfiguration authentication =
+                (UsernameAuthenticationConfiguration) nexus.proxy.getHttp().getAuthentication();
+        assertEquals("casc", authentication.getUsername());
+        assertEquals("secret", new String(authentication.getPassword().decrypt()));
+        String digests = new String(Files.readAllBytes(
+                workDir.resolve("casc").resolve(HttpClientReconciler.FILE_NAME)), StandardCharsets.UTF_8);
+        assertTrue(digests.contains("http=pbkdf2-sha256\\:"));
+
+        nexus.apply(String.format(proxy, "secret"));
+        assertEquals(1, nexus.calls("HttpClientManager.setConfiguration"));
+
+        nexus.apply(String.format(proxy, "rotated"));
+        assertEquals(2, nexus.calls("HttpClientManager.setConfiguration"));
+        assertEquals("rotated", new String(((UsernameAuthenticationConfiguration) nexus.proxy.getHttp()
+                .getAuthentication()).getPassword().decrypt()));
+        assertEquals(60, nexus.connection.getTimeout().toSeconds());
+        assertNull(nexus.proxy.getHttps());
+    }
+
+    @Test
+    void proxyDigestsAreSalted() {
+        String digest = HttpClientReconciler.digest("proxy.example.org:3128 basic casc", "secret");
+        assertNotEquals(digest, HttpClientReconciler.digest("proxy.example.org:3128 basic casc", "secret"));
+        assertTrue(HttpClientReconciler.matches(digest, "proxy.example.org:3128 basic casc", "secret"));
+        assertFalse(HttpClientReconciler.matches(digest, "proxy.example.org:3128 basic casc", "rotated"));
+        assertFalse(HttpClientReconciler.matches(digest, "proxy.example.org:3129 basic casc", "secret"));
+        assertFalse(HttpClientReconciler.matches(
+                ApplyJournal.digest("proxy.example.org:3128 basic casc", "secret"), "proxy.example.org:3128 basic casc", "secret"));
+        assertFalse(HttpClientReconciler.matches(null, "proxy.example.org:3128 basic casc", "secret"));
+    }
+
+    @Test
+    void writeConnectionPoolToNexusProperties() throws Exception {
+        Path properties = workDir.resolve("etc").resolve(HttpClientReconciler.NEXUS_PROPERTIES);
+        Files.createDirectories(properties.getParent());
+        Files.write(properties, Arrays.asList("# Jetty section", "application-port=8081",
+                HttpClientReconciler.POOL_SIZE + "=100"), StandardCharsets.UTF_8);
+        String yaml = "core:\n  connectionPool:\n    size: 400\n    maxPerRoute: 50\n    idleTime: 60\n";
+
+        nexus.apply(yaml);
+        List<String> lines = Files.readAllLines(properties, StandardCharsets.UTF_8);
+        Properties written = new Properties();
+        written.load(new StringReader(String.join("\n", lines)));
+        assertEquals("8081", written.getProperty("application-port"));
+        assertEquals("400", written.getProperty(HttpClientReconciler.POOL_SIZE));
+        assertEquals("50", written.getProperty(HttpClientReconciler.POOL_MAX_PER_ROUTE));
+        assertEquals("60s", written.getProperty(HttpClientReconciler.POOL_IDLE_TIME));
+
+        nexus.apply(yaml);
+        assertEquals(lines, Files.readAllLines(properties, StandardCharsets.UTF_8));
+
+        nexus.apply("core:\n  connectionPool:\n    size: 10\n    maxPerRoute: 50\n");
+        assertEquals(lines, Files.readAllLines(properties, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void writeS3TransferToNexusProperties() throws Exception {
+        Path properties = workDir.resolve("etc").resolve(HttpClientReconciler.NEXUS_PROPERTIES);
+        String yaml = "core:\n  s3Transfer:\n    parallelRequests: 8\n    multipartUploadChunkSize: 16777216\n";
+
+        nexus.apply(yaml);
+        Properties written = new Properties();
+        written.load(new StringReader(String.join("\n", Files.readAllLines(properties, StandardCharsets.UTF_8))));
+        assertEquals("8", written.getProperty(HttpClientReconciler.S3_PARALLEL_REQUESTS));
+        assertEquals("16777216", written.getProperty(HttpClientReconciler.S3_MULTIPART_UPLOAD_CHUNK_SIZE));
+        assertNull(written.getProperty(HttpClientReconciler.S3_MULTIPART_COPY_CHUNK_SIZE));
+
+        List<String> lines = Files.readAllLines(properties, StandardCharsets.UTF_8);
+        nexus.apply("core:\n  s3Transfer:\n    multipartUploadChunkSize: 1024\n");
+        assertEquals(lines, Files.readAllLines(properties, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void rejectInvalidRepositoryConnectionSettings() throws Exception {
+        nexus.apply(resource("reconcile/basic.yml").replace("      routingRuleName: block-snapshots\n",
+                "      routingRuleName: block-snapshots\n      attributes:\n        httpclient:\n"
+                        + "          connection:\n            retries: 11\n").replaceFirst("      attributes:\n        proxy:",
+                "        proxy:"));
+
+        assertTrue(nexus.blobStores.isEmpty());
+        assertEquals(0, nexus.calls("RepositoryManager.create"));
+        assertEquals("FAILED", nexus.status.getState().name());
+    }
+
+    @Test
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    void treatScalarFacetsAsAbsent() {
+        // The YAML of the configuration may only load maps as facets, the attributes of Nexus are not checked
+        Map attributes = new HashMap<>();
+        attributes.put("storage", "maven");
+        attributes.put("httpclient", true);
+        attributes.put("group", "members");
+
+        assertNull(ConfigValidator.facet(attributes, "storage"));
+        assertNull(new HttpClientReconciler(null, null, null).checkRepositoryConnection("maven-hosted", attributes));
+        assertEquals(Collections.emptyList(), BlobStoreGroups.members(attributes));
+    }
+
+    @Test
+    void refusePruningAboveThreshold() throws Exception {
+        for (int i = 0; i < 5; ++i) {
+            nexus.withRepository("raw-" + i, "raw-hosted");
+        }
+
+        nexus.apply("prune:\n  maxDeletions: 3\n" + resource("reconcile/basic.yml").replace("---\n", ""));
+
+        assertTrue(nexus.repositories.containsKey("maven-snapshots"));
+        assertEquals(0, nexus.calls("RepositoryManager.delete"));
+        assertFalse(nexus.users.containsKey("stale"));
+    }
+
+    @Test
+    void stageRepositoryDeletions() throws Exception {
+        nexus.withBlobStore("old");
+        nexus.repositories.get("maven-snapshots").getAttributes()
+                .put("storage", new HashMap<>(Collections.singletonMap("blobStoreName", "old")));
+        String yaml = "prune:\n  deleteRepositoriesAfterRuns: 1\n" + resource("reconcile/basic.yml").replace("---\n", "");
+
+        nexus.apply(yaml);
+        assertFalse(nexus.repositories.get("maven-snapshots").isOnline());
+        assertTrue(nexus.blobStores.containsKey("old"));
+
+        nexus.apply(yaml);
+        assertFalse(nexus.repositories.containsKey("maven-snapshots"));
+        assertFalse(nexus.blobStores.containsKey("old"));
+        assertEquals(1, nexus.calls("RepositoryManager.delete"));
+    }
+
+    @Test
+    void countOnlyRunsWhichAppliedTheRepositories() throws Exception {
+        String yaml = "prune:\n  deleteRepositoriesAfterRuns: 2\n" + resource("reconcile/basic.yml").replace("---\n", "");
+        nexus.apply(yaml);
+        assertFalse(nexus.repositories.get("maven-snapshots").isOnline());
+
+        nexus.apply("apply:\n  sections:\n    - core\n" + yaml);
+        assertTrue(nexus.repositories.containsKey("maven-snapshots"));
+
+        nexus.repositories.remove("maven-releases");
+        nexus.createFailure = new IllegalStateException("Store is read-only");
+        nexus.apply(yaml);
+        assertEquals(ReconcileStatus.State.COMPLETED, nexus.status.getState());
+        assertTrue(nexus.status.snapshot().getErrors().containsKey("repository:maven-releases"));
+        assertTrue(nexus.repositories.containsKey("maven-snapshots"));
+
+        nexus.createFailure = null;
+        nexus.apply(yaml);
+        assertTrue(nexus.repositories.containsKey("maven-snapshots"));
+        nexus.apply(yaml);
+        assertFalse(nexus.repositories.containsKey("maven-snapshots"));
+    }
+
+    @Test
+    void keepBlobStoresOfQueuedRepositories() throws Exception {
+        nexus.withBlobStore("old");
+        nexus.repositories.get("maven-snapshots").getAttributes()
+                .put("storage", new HashMap<>(Collections.singletonMap("blobStoreName", "old")));
+        String yaml = "prune:\n  deleteInBackground: true\n  deletionsPerMinute: 1\n"
+                + resource("reconcile/basic.yml").replace("---\n", "");
+
+        try {
+            nexus.apply(yaml);
+            assertEquals(Collections.singletonList("repository maven-snapshots"),
+                    Files.readAllLines(workDir.resolve("casc").resolve(DeletionQueue.FILE_NAME)));
+
+            assertTrue(nexus.deletionQueue.deleteNext());
+            nexus.apply(yaml);
+            assertEquals(Collections.singletonList("blobStore old"),
+                    Files.readAllLines(workDir.resolve("casc").resolve(DeletionQueue.FILE_NAME)));
+        } finally {
+            nexus.deletionQueue.stop();
+        }
+    }
+
+    @Test
+    void deletePrunedEntitiesInBackground() throws Exception {
+        nexus.withBlobStore("old");
+        String yaml = "prune:\n  deleteInBackground: true\n  deletionsPerMinute: 1\n"
+                + resource("reconcile/basic.yml").replace("---\n", "");
+
+        try {
+            nexus.apply(yaml);
+
+            assertFalse(nexus.repositories.get("maven-snapshots").isOnline());
+            assertTrue(nexus.blobStores.containsKey("old"));
+            assertEquals(0, nexus.calls("RepositoryManager.delete"));
+            assertEquals(Arrays.asList("repository maven-snapshots", "blobStore old"),
+                    Files.readAllLines(workDir.resolve("casc").resolve(DeletionQueue.FILE_NAME)));
+
+            // Resumed after a restart
+            DeletionQueue restarted = new FakeNexus(workDir).deletionQueue;
+            restarted.load();
+            assertEquals(2, restarted.size());
+
+            assertTrue(nexus.deletionQueue.deleteNext());
+            assertFalse(nexus.repositories.containsKey("maven-snapshots"));
+            assertTrue(nexus.deletionQueue.deleteNext());
+            assertFalse(nexus.blobStores.containsKey("old"));
+            assertFalse(nexus.deletionQueue.deleteNext());
+            assertEquals(2, nexus.deletionQueue.progress().getDeleted());
+            assertEquals(Collections.emptyList(), Files.readAllLines(workDir.resolve("casc").resolve(DeletionQueue.FILE_NAME)));
+        } finally {
+            nexus.deletionQueue.stop();
+        }
+    }
+
+    @Test
+    void scheduleTasksOnlyWhenChanged() throws Exception {
+        String yaml = "taskStagger:\n  windowMinutes: 60\n"
+                + "tasks:\n"
+                + "  - name: compact-default\n    type: blobstore.compact\n    cron: 0 0 1 * * ?\n"
+                + "    properties:\n      blobstoreName: default\n"
+                + "  - name: compact-npm\n    type: blobstore.compact\n    cron: 0 0 1 * * ?\n"
+                + "    properties:\n      blobstoreName: npm\n";
+
+        nexus.apply(yaml);
+
+        assertEquals("0 0 1 * * ?", nexus.taskSchedules.get("compact-default").getCronExpression());
+        assertEquals("0 30 1 * * ?", nexus.taskSchedules.get("compact-npm").getCronExpression());
+        assertEquals("npm", nexus.tasks.get("compact-npm").getString("blobstoreName"));
+        assertEquals("0 30 1 * * ?", nexus.status.snapshot().getTaskSchedules().get("compact-npm"));
+        assertEquals(2, nexus.calls("TaskScheduler.scheduleTask"));
+
+        nexus.resetCalls();
+        nexus.apply(yaml);
+        assertEquals(0, nexus.calls("TaskScheduler.scheduleTask"));
+
+        nexus.apply(yaml.replace("blobstoreName: npm", "blobstoreName: npm2"));
+        assertEquals(1, nexus.calls("TaskScheduler.scheduleTask"));
+        assertEquals(2, nexus.tasks.size());
+    }
+
+    @Test
+    void createBlobStoreGroupsAfterTheirMembersAndPruneThemFirst() throws Exception {
+        String yaml = "repository:\n  pruneBlobStores: true\n  blobStores:\n"
+                + "    - name: spread\n      type: Group\n      attributes:\n        group:\n"
+                + "          members: [disk-2, disk-1]\n          fillPolicy: writeToFirst\n"
+                + "    - name: disk-1\n      type: File\n      attributes:\n        file:\n          path: /disk-1\n"
+                + "    - name: disk-2\n      type: File\n      attributes:\n        file:\n          path: /disk-2\n";
+
+        nexus.apply(yaml);
+
+        assertEquals(Arrays.asList("disk-1", "disk-2", "spread"), new ArrayList<>(nexus.blobStores.keySet()));
+        assertEquals(Arrays.asList("disk-2", "disk-1"), BlobStoreGroups.members(nexus.blobStores.get("spread").getAttributes()));
+
+        nexus.apply("repository:\n  pruneBlobStores: true\n  blobStores:\n"
+                + "    - name: disk-3\n      type: File\n      attributes:\n        file:\n          path: /disk-3\n");
+
+        assertEquals(Collections.singletonList("disk-3"), new ArrayList<>(nexus.blobStores.keySet()));
+    }
+
+    @Test
+    void rejectInvalidBlobStoreGroups() throws Exception {
+        nexus.apply("repository:\n  blobStores:\n"
+                + "    - name: inner\n      type: Group\n      attributes:\n        group:\n"
+                + "          members: [disk-1]\n          fillPolicy: roundRobin\n"
+                + "    - name: outer\n      type: Group\n      attributes:\n        group:\n"
+                + "          members: [inner, disk-1, missing]\n          fillPolicy: fastest\n"
+                + "    - name: disk-1\n      type: File\n      attributes:\n        file:\n          path: /disk-1\n");
+
+        assertTrue(nexus.blobStores.isEmpty());
+        assertEquals(new HashSet<>(Arrays.asList(
+                "repository.blobStores[outer]: attributes.group.fillPolicy must be one of [roundRobin, writeToFirst]: fastest",
+                "repository.blobStores[outer]: member inner is a group, groups can not be nested",
+                "repository.blobStores[outer]: member disk-1 is a member of group inner already",
+                "repository.blobStores[outer]: member missing does not exist"
+        )), new HashSet<>(Arrays.asList(nexus.status.getFailure()
+                .replaceFirst("^[^:]*: \\d+ configuration errors: ", "").split("; "))));
+    }
+
+    @Test
+    void createS3BlobStoresWithStringAttributes() throws Exception {
+        String s3 = "repository:\n  blobStores:\n    - name: s3\n      type: S3\n      attributes:\n        s3:\n"
+                + "          bucket: nexus-blobs\n          endpoint: http://minio:9000\n          expiration: 3\n"
+                + "          forcepathstyle: %s\n          max_connection_pool_size: 50\n          uploadThreads: 8\n";
+
+        nexus.apply(String.format(s3, "maybe"));
+
+        assertTrue(nexus.blobStores.isEmpty());
+        assertTrue(nexus.status.getFailure().endsWith(
+                "repository.blobStores[s3]: attributes.s3.forcepathstyle must be true or false: maybe"));
+
+        // Unknown attributes are only warned about
+        nexus.apply(String.format(s3, true));
+
+        Map<String, Object> attributes = nexus.blobStores.get("s3").getAttributes().get(S3BlobStoreAttributes.CONFIG_KEY);
+        assertEquals("3", attributes.get(S3BlobStoreAttributes.EXPIRATION));
+        assertEquals("true", attributes.get(S3BlobStoreAttributes.FORCE_PATH_STYLE));
+        assertEquals("50", attributes.get(S3BlobStoreAttributes.MAX_CONNECTION_POOL_SIZE));
+        assertEquals("8", attributes.get("uploadThreads"));
+    }
+
+    @Test
+    void reconcileContentSelectorsOnlyWhenChanged() throws Exception {
+        String yaml = "repository:\n  pruneContentSelectors: true\n  contentSelectors:\n"
+                + "    - name: example-releases\n      expression: format == 'maven2' and path =^ '/org/example/'\n"
+                + "    - name: npm\n      description: npm packages\n      expression: format == \"npm\"\n";
+        nexus.apply(yaml);
+        assertEquals(2, nexus.calls("SelectorManager.create"));
+        assertEquals("csel", nexus.contentSelectors.get("npm").getType());
+
+        nexus.apply(yaml);
+        assertEquals(2, nexus.calls("SelectorManager.create"));
+        assertEquals(0, nexus.calls("SelectorManager.update"));
+
+        nexus.apply(yaml.replace("format == \"npm\"", "format == \"npm\" and path =^ '/@example/'"));
+        assertEquals(1, nexus.calls("SelectorManager.update"));
+        assertEquals("format == \"npm\" and path =^ '/@example/'",
+                nexus.contentSelectors.get("npm").getAttributes().get(ContentSelectorReconciler.EXPRESSION));
+
+        nexus.privileges.put("npm-read", new Privilege("npm-read", "npm-read", "", "repository-content-selector",
+                Collections.singletonMap("contentSelector", "npm"), false));
+        nexus.apply("repository:\n  pruneContentSelectors: true\n  contentSelectors: []\n");
+        assertEquals(Collections.singleton("npm"), nexus.contentSelectors.keySet());
+    }
+
+    @Test
+    void rejectInvalidContentSelectors() throws Exception {
+        nexus.apply("repository:\n  contentSelectorLimits:\n    reject: true\n  contentSelectors:\n"
+                + "    - name: typo\n      expression: path == '/a' or pth == '/b'\n"
+                + "    - name: slow\n      expression: path =~ '.*/internal/.*'\n");
+
+        assertTrue(nexus.contentSelectors.isEmpty());
+        assertEquals(new HashSet<>(Arrays.asList(
+                "repository.contentSelectors[typo]: invalid expression, expected one of [format, path] but found pth at position 16",
+                "repository.contentSelectors[slow]: expensive expression, regular expression \".*/internal/.*\" starts with a wildcard"
+                        + ", every value is scanned in full, use =^ for a prefix"
+        )), new HashSet<>(Arrays.asList(nexus.status.getFailure()
+                .replaceFirst("^[^:]*: \\d+ configuration errors: ", "").split("; "))));
+    }
+
+    private static String ldapServer(String name, String host, int connectionTimeout) {
+        return "    - name: " + name + "\n      protocol: ldaps\n      host: " + host + "\n"
+                + "      searchBase: dc=example,dc=org\n      systemUsername: cn=nexus,dc=example,dc=org\n"
+                + "      systemPassword: secret\n      connectionTimeout: " + connectionTimeout + "\n"
+                + "      mapping:\n        userBaseDn: ou=people\n        ldapGroupsAsRoles: true\n"
+                + "        userMemberOfAttribute: memberOf\n";
+    }
+
+    private List<String> ldapServerNames() {
+        return nexus.ldapServers.values().stream().map(LdapConfiguration::getName).collect(toList());
+    }
+
+    @Test
+    void reconcileLdapServersOnlyWhenChanged() throws Exception {
+        String yaml = "ldap:\n  cache:\n    timeToLive: 300\n  servers:\n"
+                + ldapServer("primary", "ldap-1.example.org", 30) + ldapServer("secondary", "ldap-2.example.org", 30);
+        nexus.apply(yaml);
+        assertEquals(2, nexus.calls("LdapConfigurationManager.addLdapServerConfiguration"));
+        assertEquals(Arrays.asList("primary", "secondary"), ldapServerNames());
+        LdapConfiguration primary = nexus.ldapServers.values().iterator().next();
+        assertEquals(636, primary.getConnection().getHost().getPort());
+        assertEquals("memberOf", primary.getMapping().getUserMemberOfAttribute());
+        Properties written = new Properties();
+        written.load(new StringReader(String.join("\n", Files.readAllLines(
+                workDir.resolve("etc").resolve(HttpClientReconciler.NEXUS_PROPERTIES), StandardCharsets.UTF_8))));
+        assertEquals("300s", written.getProperty(LdapReconciler.CACHE_TIME_TO_LIVE));
+
+        nexus.apply(yaml);
+        assertEquals(2, nexus.calls("LdapConfigurationManager.addLdapServerConfiguration"));
+        assertEquals(0, nexus.calls("LdapConfigurationManager.updateLdapServerConfiguration"));
+        assertEquals(0, nexus.calls("LdapConfigurationManager.setServerOrder"));
+
+        nexus.apply("ldap:\n  servers:\n"
+                + ldapServer("secondary", "ldap-2.example.org", 10) + ldapServer("primary", "ldap-1.example.org", 30));
+        assertEquals(1, nexus.calls("LdapConfigurationManager.updateLdapServerConfiguration"));
+        assertEquals(1, nexus.calls("LdapConfigurationManager.setServerOrder"));
+        assertEquals(Arrays.asList("secondary", "primary"), ldapServerNames());
+        assertEquals(10, nexus.ldapServers.values().iterator().next().getConnection().getConnectionTimeout());
+
+        nexus.apply("ldap:\n  pruneServers: true\n  servers:\n" + ldapServer("primary", "ldap-1.example.org", 30));
+        assertEquals(Collections.singletonList("primary"), ldapServerNames());
+        assertEquals(1, nexus.calls("LdapConfigurationManager.updateLdapServerConfiguration"));
+    }
+
+    @Test
+    void compareLdapPasswordsByDigest() throws Exception {
+        // The fake returns the system passwords masked
+        String yaml = "ldap:\n  servers:\n" + ldapServer("primary", "ldap-1.example.org", 30);
+        nexus.apply(yaml);
+        nexus.apply(yaml);
+        assertEquals(0, nexus.calls("LdapConfigurationManager.updateLdapServerConfiguration"));
+        assertTrue(Files.exists(workDir.resolve("casc").resolve(LdapServers.FILE_NAME)));
+
+        nexus.apply(yaml.replace("systemPassword: secret", "systemPassword: rotated"));
+        assertEquals(1, nexus.calls("LdapConfigurationManager.updateLdapServerConfiguration"));
+        assertEquals("rotated", nexus.ldapServers.values().iterator().next().getConnection().getSystemPassword());
+
+        Files.delete(workDir.resolve("casc").resolve(LdapServers.FILE_NAME));
+        nexus.apply(yaml);
+        nexus.apply(yaml);
+        assertEquals(2, nexus.calls("LdapConfigurationManager.updateLdapServerConfiguration"));
+        assertEquals("secret", nexus.ldapServers.values().iterator().next().getConnection().getSystemPassword());
+    }
+
+    @Test
+    void applyTheOtherSectionsWithoutTheLdapPlugin() throws Exception {
+        nexus.ldapInstalled = false;
+        nexus.apply("core:\n  baseUrl: https://nexus.example.org\nldap:\n  cache:\n    timeToLive: 300\n  servers:\n"
+                + ldapServer("primary", "ldap-1.example.org", 30));
+
+        assertEquals(ReconcileStatus.State.COMPLETED, nexus.status.getState());
+        assertEquals("https://nexus.example.org", nexus.core.get("baseUrl"));
+        assertTrue(nexus.ldapServers.isEmpty());
+        assertEquals(0, nexus.calls("LdapConfigurationManager.listLdapServerConfigurations"));
+    }
+
+    @Test
+    void rejectInvalidLdapServers() throws Exception {
+        nexus.apply("ldap:\n  servers:\n" + ldapServer("primary", "ldap-1.example.org", 0)
+                .replace("protocol: ldaps", "protocol: ldapi")
+                .replace("      systemPassword: secret\n", "")
+                .replace("        userMemberOfAttribute: memberOf\n", ""));
+
+        assertTrue(nexus.ldapServers.isEmpty());
+        assertEquals(new HashSet<>(Arrays.asList(
+                "ldap.servers[primary]: protocol must be ldap or ldaps: ldapi",
+                "ldap.servers[primary]: systemUsername and systemPassword are required with authScheme simple",
+                "ldap.servers[primary]: connectionTimeout must be between 1 and 3600 seconds: 0",
+                "ldap.servers[primary]: mapping.groupObjectClass is required",
+                "ldap.servers[primary]: mapping.groupIdAttribute is required",
+                "ldap.servers[primary]: mapping.groupMemberAttribute is required",
+                "ldap.servers[primary]: mapping.groupMemberFormat is required"
+        )), new HashSet<>(Arrays.asList(nexus.status.getFailure()
+                .replaceFirst("^[^:]*: \\d+ configuration errors: ", "").split("; "))));
+    }
+
+    @Test
+    void pruneUsersPageByPage() throws Exception {
+        for (int i = 0; i < 20; ++i) {
+            nexus.withUser("stale-" + i, UserManager.DEFAULT_SOURCE);
+        }
+        nexus.withUser("ldap-user", "LDAP");
+
+        nexus.apply(resource("reconcile/basic.yml")
+                .replace("pruneUsers: true\n", "pruneUsers: true\n  pruneUsersPageSize: 5\n  pruneUsersPerSecond: 0\n"));
+
+        assertEquals(new HashSet<>(Arrays.asList("admin", "janedoe", "ldap-user")), nexus.users.keySet());
+        assertEquals(21, nexus.calls("SecuritySystem.deleteUser"));
+    }
+
+    @Test
+    void rejectRoutingRulesWithInvalidMatchers() throws Exception {
+        nexus.apply(resource("reconcile/basic.yml").replace(".*-SNAPSHOT/.*", ".*-SNAPSHOT/(.*"));
+
+        assertFalse(nexus.routingRules.containsKey("block-snapshots"));
+        assertEquals(0, nexus.calls("RoutingRuleStore.create"));
+        assertFalse(nexus.repositories.containsKey("maven-central"));
+    }
+
+    @Test
+    void reportEveryErrorBeforeApplying() throws Exception {
+        nexus.withRepository("maven-releases", "maven2-hosted");
+        nexus.apply(resource("reconcile/basic.yml")
+                .replace("mode: BLOCK", "mode: DENY")
+                .replace("blobStoreName: maven\n          strictContentTypeValidation: true\n          writePolicy",
+                        "blobStoreName: npm\n          strictContentTypeValidation: true\n          writePolicy")
+                .replace("recipeName: maven2-hosted", "recipeName: maven2-proxy"));
+
+        String failure = nexus.status.getFailure();
+        assertTrue(failure.startsWith("java.lang.IllegalArgumentException: 4 configuration errors"), failure);
+        assertTrue(failure.contains("repository.routingRules[block-snapshots]: mode must be one of"), failure);
+        assertTrue(failure.contains("repository.repositories[maven-releases]: attributes.proxy.remoteUrl is required"), failure);
+        assertTrue(failure.contains("repository.repositories[maven-releases]: can not change recipeName"), failure);
+        assertTrue(failure.contains("repository.repositories[maven-releases]: blob store npm does not exist"), failure);
+        assertTrue(nexus.blobStores.isEmpty());
+        assertTrue(nexus.users.containsKey("stale"));
+    }
+
+    @Test
+    void applyOnlySelectedSections() throws Exception {
+        nexus.apply("apply:\n  sections:\n    - core\n" + resource("reconcile/basic.yml").replace("---\n", ""));
+
+        assertEquals("https://nexus.example.org", nexus.core.get("baseUrl"));
+        assertTrue(nexus.blobStores.isEmpty());
+        assertTrue(nexus.users.containsKey("stale"));
+        assertEquals(0, nexus.calls("RepositoryManager.browse"));
+        assertEquals(0, nexus.calls("SecuritySystem.searchUsers"));
+    }
+
+    @Test
+    void lookUpRepositoriesSelectedByName() throws Exception {
+        nexus.apply("apply:\n  sections:\n    - repository.repositories\n  repositories:\n    - maven-releases\n"
+                + resource("reconcile/basic.yml").replace("---\n", "").replace("routingRuleName: block-snapshots", ""));
+
+        assertEquals(new HashSet<>(Arrays.asList("maven-snapshots", "maven-releases")), nexus.repositories.keySet());
+        assertEquals(0, nexus.calls("RepositoryManager.browse"));
+        assertEquals(1, nexus.calls("RepositoryManager.get"));
+    }
+}
@@ -0,0 +1,154 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sonatype.nexus.security.user.UserManager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Regression gate on the number of Nexus API calls and the amount of data written by reference scenarios.
+ * <p>
+ * The budgets live in {@code reconcile/operation-budgets.properties} as {@code <scenario>.<Service>.<method>=<max>}
+ * and {@code <scenario>.bytesWritten=<max>}. A scenario fails if it calls a method more or less often than budgeted,
+ * so budgets are lowered as soon as an optimization lands, or calls a method without a budget at all. Run with
+ * {@code -Dcasc.budget.print=true} to print the actual values.
+ */
+class OperationBudgetTest {
+    static final String BUDGETS = "reconcile/operation-budgets.properties";
+
+    static final int SCALE = 10000;
+
+    @TempDir
+    Path workDir;
+
+    private final Properties budgets = loadBudgets();
+
+    private static Properties loadBudgets() {
+        Properties properties = new Properties();
+        try (InputStream in = OperationBudgetTest.class.getClassLoader().getResourceAsStream(BUDGETS)) {
+            properties.load(in);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not load " + BUDGETS, e);
+        }
+        return properties;
+    }
+
+    private void assertMatchesBudget(String scenario, FakeNexus nexus) {
+        List<String> mismatches = new ArrayList<>();
+        StringBuilder actual = new StringBuilder();
+        for (Map.Entry<String, Integer> call : nexus.getCalls().entrySet()) {
+            String key = scenario + "." + call.getKey();
+            actual.append(key).append('=').append(call.getValue()).append('\n');
+            String budget = budgets.getProperty(key);
+            if (budget == null) {
+                mismatches.add(call.getKey() + " has no budget, called " + call.getValue() + " times");
+            } else if (call.getValue() > Integer.parseInt(budget)) {
+                mismatches.add(call.getKey() + " called " + call.getValue() + " times, budget " + budget);
+            } else if (call.getValue() < Integer.parseInt(budget)) {
+                mismatches.add(call.getKey() + " called " + call.getValue() + " times, lower its budget " + budget);
+            }
+        }
+
+        budgets.stringPropertyNames().stream()
+                .filter(key -> key.startsWith(scenario + ".") && !key.endsWith(".bytesWritten"))
+                .map(key -> key.substring(scenario.length() + 1))
+                .filter(method -> !nexus.getCalls().containsKey(method))
+                .sorted()
+                .forEach(method -> mismatches.add(method + " not called, remove its budget"));
+
+        String bytesKey = scenario + ".bytesWritten";
+        actual.append(bytesKey).append('=').append(nexus.bytesWritten()).append('\n');
+        long bytesBudget = Long.parseLong(budgets.getProperty(bytesKey, "0"));
+        if (nexus.bytesWritten() > bytesBudget) {
+            mismatches.add(nexus.bytesWritten() + " bytes written, budget " + bytesBudget);
+        }
+
+        if (Boolean.getBoolean("casc.budget.print")) {
+            System.out.print(actual);
+        }
+        if (!mismatches.isEmpty()) {
+            fail("Scenario " + scenario + " does not match its budget:\n  " + String.join("\n  ", mismatches)
+                    + "\nActual values:\n" + actual);
+        }
+    }
+
+    @Test
+    void initialApply() throws Exception {
+        FakeNexus nexus = new FakeNexus(workDir).withUser("admin", UserManager.DEFAULT_SOURCE);
+        nexus.apply(NexusCascPluginTest.resource("reconcile/basic.yml"));
+
+        assertMatchesBudget("basic-initial", nexus);
+    }
+
+    @Test
+    void idempotentReapply() throws Exception {
+        FakeNexus nexus = new FakeNexus(workDir).withUser("admin", UserManager.DEFAULT_SOURCE);
+        String yaml = NexusCascPluginTest.resource("reconcile/basic.yml");
+        nexus.apply(yaml);
+        nexus.resetCalls();
+
+        nexus.apply(yaml);
+
+        assertMatchesBudget("basic-reapply", nexus);
+    }
+
+    @Test
+    void idempotentReapplyOfManyRepositories() throws Exception {
+        StringBuilder yaml = new StringBuilder("repository:\n  pruneRepositories: true\n  repositories:\n");
+        for (int i = 0; i < SCALE; ++i) {
+            yaml.append("    - name: raw-").append(i).append('\n')
+                    .append("      recipeName: raw-hosted\n")
+                    .append("      attributes:\n")
+                    .append("        storage:\n")
+                    .append("          blobStoreName: default\n")
+                    .append("          writePolicy: ALLOW\n");
+        }
+        FakeNexus nexus = new FakeNexus(workDir).withBlobStore("default");
+        nexus.apply(yaml.toString());
+        nexus.resetCalls();
+
+        nexus.apply(yaml.toString());
+
+        assertMatchesBudget("repositories-10k-reapply", nexus);
+    }
+
+    @Test
+    void idempotentReapplyOfManyUsersAndRoles() throws Exception {
+        StringBuilder yaml = new StringBuilder("security:\n  pruneUsers: true\n  roles:\n");
+        for (int i = 0; i < SCALE / 10; ++i) {
+            yaml.append("    - id: role-").append(i).append('\n')
+                    .append("      enabled: true\n")
+                    .append("      source: default\n")
+                    .append("      name: role-").append(i).append('\n')
+                    .append("      privileges:\n")
+                    .append("        - nx-repository-view-raw-raw-").append(i).append("-read\n");
+        }
+        yaml.append("  users:\n");
+        for (int i = 0; i < SCALE / 10; ++i) {
+            yaml.append("    - username: user-").append(i).append('\n')
+                    .append("      firstName: User\n")
+                    .append("      lastName: ").append(i).append('\n')
+                    .append("      email: user-").append(i).append("@example.org\n")
+                    .append("      password: changeme\n")
+                    .append("      roles:\n")
+                    .append("        - source: default\n")
+                    .append("          role: role-").append(i).append('\n');
+        }
+        FakeNexus nexus = new FakeNexus(workDir);
+        nexus.apply(yaml.toString());
+        nexus.resetCalls();
+
+        nexus.apply(yaml.toString());
+
+        assertMatchesBudget("security-1k-reapply", nexus);
+    }
+}
@@ -0,0 +1,154 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.HttpHost;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Measures the throughput of a proxy repository fetching from a local stub upstream, to compare connection pool
+ * settings ({@code core.connectionPool}).
+ * <p>
+ * Only runs if {@code PROXY_BENCHMARK_REPOSITORY} names a proxy repository of the stub upstream, e.g.
+ * {@code benchmark-proxy} of {@code default-nexus.yml}. Every request fetches a new path so it goes upstream.
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@EnabledIfEnvironmentVariable(named = "PROXY_BENCHMARK_REPOSITORY", matches = ".+")
+public class ProxyThroughputIT {
+    private final Logger logger = LoggerFactory.getLogger(ProxyThroughputIT.class);
+
+    private final AtomicInteger upstreamActive = new AtomicInteger();
+    private final AtomicInteger upstreamPeak = new AtomicInteger();
+    private final AtomicInteger upstreamRequests = new AtomicInteger();
+
+    private HttpServer upstream;
+    private CloseableHttpClient client;
+    private int concurrency;
+
+    static int env(String name, int defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.isEmpty() ? defaultValue : Integer.parseInt(value);
+    }
+
+    @BeforeAll
+    void startUpstream() throws IOException {
+        int port = env("STUB_UPSTREAM_PORT", 18092);
+        int latencyMs = env("STUB_UPSTREAM_LATENCY_MS", 50);
+        byte[] artifact = new byte[env("STUB_UPSTREAM_ARTIFACT_BYTES", 64 * 1024)];
+        concurrency = env("PROXY_BENCHMARK_CONCURRENCY", 50);
+
+        upstream = HttpServer.create(new InetSocketAddress(port), 0);
+        upstream.setExecutor(Executors.newCachedThreadPool());
+        upstream.createContext("/", exchange -> {
+            upstreamPeak.accumulateAndGet(upstreamActive.incrementAndGet(), Math::max);
+            upstreamRequests.incrementAndGet();
+            try {
+                TimeUnit.MILLISECONDS.sleep(latencyMs);
+                exchange.getResponseHeaders().add("Content-Type", "application/octet-stream");
+                exchange.sendResponseHeaders(200, artifact.length);
+                try (OutputStream body = exchange.getResponseBody()) {
+                    body.write(artifact);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                upstreamActive.decrementAndGet();
+                exchange.close();
+            }
+        });
+        upstream.start();
+        logger.info("Stub upstream listening on port {} with {} ms latency", port, latencyMs);
+
+        CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+        credentialsProvider.setCredentials(
+                new AuthScope(HttpHost.create(System.getenv("NEXUS_URL"))),
+                new UsernamePasswordCredentials("johndoe", "admin123")
+        );
+        client = HttpClients.custom()
+                .setDefaultCredentialsProvider(credentialsProvider)
+                .setDefaultRequestConfig(RequestConfig.copy(RequestConfig.DEFAULT)
+                        .setSocketTimeout(60000)
+                        .setConnectTimeout(5000)
+                        .build())
+                .setMaxConnTotal(concurrency)
+                .setMaxConnPerRoute(concurrency)
+                .build();
+    }
+
+    @AfterAll
+    void stopUpstream() throws IOException {
+        if (client != null) {
+            client.close();
+        }
+        if (upstream != null) {
+            upstream.stop(0);
+            ((ExecutorService) upstream.getExecutor()).shutdownNow();
+        }
+    }
+
+    @Test
+    void fetchThroughProxy() throws Exception {
+        int requests = env("PROXY_BENCHMARK_REQUESTS", 2000);
+        String base = new URL(System.getenv("NEXUS_URL")) + "/repository/" + System.getenv("PROXY_BENCHMARK_REPOSITORY")
+                + "/" + System.currentTimeMillis() + "/";
+
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        AtomicInteger failures = new AtomicInteger();
+        long start = System.nanoTime();
+        try {
+            List<Future<?>> fetches = new ArrayList<>();
+            for (int i = 0; i < requests; ++i) {
+                HttpGet get = new HttpGet(base + "artifact-" + i + ".bin");
+                fetches.add(executor.submit(() -> {
+                    try (CloseableHttpResponse response = client.execute(get)) {
+                        EntityUtils.consume(response.getEntity());
+                        if (response.getStatusLine().getStatusCode() != 200) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> fetch : fetches) {
+                fetch.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        logger.info("Fetched {} artifacts with {} clients in {} s: {} requests/s, {} upstream requests, at most {} concurrent",
+                requests, concurrency, String.format("%.1f", seconds), String.format("%.1f", requests / seconds),
+                upstreamRequests.get(), upstreamPeak.get());
+        assertEquals(0, failures.get());
+    }
+}
@@ -0,0 +1,153 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Warms up proxy repositories of {@link FakeNexus} against a local stub upstream, fetching {@code /<repository><path>}
+ * from it like the proxy would fetch {@code <path>} from its remote URL
+ */
+class ProxyWarmupTest {
+    @TempDir
+    Path workDir;
+
+    private FakeNexus nexus;
+    private HttpServer upstream;
+
+    private final Set<String> upstreamPaths = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger upstreamActive = new AtomicInteger();
+    private final AtomicInteger upstreamPeak = new AtomicInteger();
+
+    @BeforeEach
+    void startUpstream() throws IOException {
+        upstream = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        upstream.setExecutor(Executors.newCachedThreadPool());
+        upstream.createContext("/", exchange -> {
+            upstreamPeak.accumulateAndGet(upstreamActive.incrementAndGet(), Math::max);
+            String path = exchange.getRequestURI().getPath();
+            upstreamPaths.add(path);
+            try {
+                TimeUnit.MILLISECONDS.sleep(20);
+                byte[] body = path.getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(path.contains("missing") ? 404 : 200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                upstreamActive.decrementAndGet();
+                exchange.close();
+            }
+        });
+        upstream.start();
+
+        String base = "http://localhost:" + upstream.getAddress().getPort() + "/";
+        nexus = new FakeNexus(workDir).withBlobStore("default");
+        nexus.warmupFetcher = (repository, path) -> {
+            HttpURLConnection connection = (HttpURLConnection) new URL(base + repository.getName() + path).openConnection();
+            try {
+                int code = connection.getResponseCode();
+                if (code == 200) {
+                    try (InputStream in = connection.getInputStream()) {
+                        in.readAllBytes();
+                    }
+                }
+                return code == 200;
+            } finally {
+                connection.disconnect();
+            }
+        };
+    }
+
+    @AfterEach
+    void stopUpstream() throws InterruptedException {
+        nexus.proxyWarmup.stop();
+        upstream.stop(0);
+    }
+
+    private static String repository(String name, String recipeName, String warmup) {
+        return "    - name: " + name + "\n      online: true\n      recipeName: " + recipeName + "\n"
+                + "      attributes:\n"
+                + (recipeName.endsWith("-proxy") ? "        proxy:\n          remoteUrl: http://upstream/\n" : "")
+                + "        storage:\n          blobStoreName: default\n"
+                + (warmup != null ? "      warmup:" + warmup : "");
+    }
+
+    @Test
+    void warmUpConfiguredProxies() throws Exception {
+        nexus.apply("repository:\n  repositories:\n"
+                + repository("maven-central", "maven2-proxy",
+                "\n        - org/example/lib/1.0/lib-1.0.pom\n        - /org/example/lib/1.0/lib-1.0.jar\n"
+                        + "        - org/example/missing/1.0/missing-1.0.jar\n")
+                + repository("npm-proxy", "npm-proxy", " |\n        # Most used packages\n        react\n\n        lodash\n")
+                + repository("raw-hosted", "raw-hosted", null));
+
+        assertTrue(nexus.proxyWarmup.awaitCompletion(10, TimeUnit.SECONDS));
+        assertEquals(new HashSet<>(Arrays.asList(
+                "/maven-central/org/example/lib/1.0/lib-1.0.pom",
+                "/maven-central/org/example/lib/1.0/lib-1.0.jar",
+                "/maven-central/org/example/missing/1.0/missing-1.0.jar",
+                "/npm-proxy/react",
+                "/npm-proxy/lodash"
+        )), upstreamPaths);
+        ReconcileStatusXO.WarmupProgress progress = nexus.proxyWarmup.progress();
+        assertEquals(0, progress.getPending());
+        assertEquals(4, progress.getFetched());
+        assertEquals(1, progress.getMissing());
+        assertEquals(0, progress.getFailed());
+    }
+
+    @Test
+    void boundAndRateLimitFetches() throws Exception {
+        StringBuilder paths = new StringBuilder("\n");
+        for (int i = 0; i < 10; ++i) {
+            paths.append("        - artifact-").append(i).append(".bin\n");
+        }
+        nexus.withRepository("offline-proxy", "raw-proxy");
+        nexus.repositories.get("offline-proxy").setOnline(false);
+
+        long start = System.nanoTime();
+        nexus.apply("repository:\n  warmup:\n    threads: 2\n    requestsPerSecond: 20\n  repositories:\n"
+                + repository("raw-proxy", "raw-proxy", paths.toString())
+                + "    - name: offline-proxy\n      online: false\n      recipeName: raw-proxy\n      attributes:\n"
+                + "        proxy:\n          remoteUrl: http://upstream/\n        storage:\n          blobStoreName: default\n"
+                + "      warmup: [artifact.bin]\n");
+
+        assertTrue(nexus.proxyWarmup.awaitCompletion(10, TimeUnit.SECONDS));
+        assertEquals(10, upstreamPaths.size());
+        assertTrue(upstreamPaths.stream().allMatch(path -> path.startsWith("/raw-proxy/")));
+        assertTrue(upstreamPeak.get() <= 2, "at most 2 concurrent fetches: " + upstreamPeak.get());
+        // 10 fetches at 20 per second, the first one is not delayed
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(450));
+    }
+
+    @Test
+    void parsePaths() {
+        assertEquals(Arrays.asList("/a/b.jar", "/c"), ProxyWarmup.paths(Arrays.asList("a/b.jar", " //c ")));
+        assertEquals(Arrays.asList("/a/b.jar", "/c"), ProxyWarmup.paths("# comment\r\na/b.jar\n\n  /c\n"));
+        assertEquals(Collections.emptyList(), ProxyWarmup.paths(Collections.singletonMap("a", "b")));
+    }
+}
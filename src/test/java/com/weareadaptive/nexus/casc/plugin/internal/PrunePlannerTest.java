@@ -0,0 +1,34 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+import com.weareadaptive.nexus.casc.plugin.internal.config.ConfigPrune;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PrunePlannerTest {
+    @Test
+    void approveEverythingWithoutThresholds() {
+        PrunePlanner planner = new PrunePlanner(null);
+
+        assertTrue(planner.approve("repositories", Arrays.asList("a", "b", "c"), 3));
+        assertEquals(0, planner.getDeleteRepositoriesAfterRuns());
+    }
+
+    @Test
+    void refuseDeletionsAboveThresholds() {
+        ConfigPrune prune = new ConfigPrune();
+        prune.setMaxDeletions(2);
+        prune.setMaxDeletionPercent(50);
+        PrunePlanner planner = new PrunePlanner(prune);
+
+        assertTrue(planner.approve("repositories", Collections.emptyList(), 0));
+        assertTrue(planner.approve("repositories", Arrays.asList("a", "b"), 4));
+        assertEquals("3 repositories to delete exceeds prune.maxDeletions 2",
+                planner.check("repositories", Arrays.asList("a", "b", "c"), 100));
+        assertEquals("2 of 3 repositories to delete exceeds prune.maxDeletionPercent 50",
+                planner.check("repositories", Arrays.asList("a", "b"), 3));
+    }
+}
@@ -0,0 +1,89 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+import com.weareadaptive.nexus.casc.plugin.internal.config.ConfigRepositoryEntry;
+import org.junit.jupiter.api.Test;
+import org.sonatype.nexus.repository.Format;
+import org.sonatype.nexus.repository.Recipe;
+import org.sonatype.nexus.repository.Type;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecipeSchemasTest {
+    private final RecipeSchemas schemas = new RecipeSchemas(recipes("maven2-hosted", "maven2-proxy", "npm-group"));
+
+    static Map<String, Recipe> recipes(String... names) {
+        Map<String, Recipe> recipes = new HashMap<>();
+        for (String name : names) {
+            String[] formatAndType = name.split("-");
+            recipes.put(name, new Recipe() {
+                @Override
+                public Format getFormat() {
+                    return new Format(formatAndType[0]);
+                }
+
+                @Override
+                public Type getType() {
+                    return new Type(formatAndType[1]);
+                }
+            });
+        }
+        return recipes;
+    }
+
+    static ConfigRepositoryEntry repository(String recipeName, Map<String, Map<String, Object>> attributes) {
+        ConfigRepositoryEntry repository = new ConfigRepositoryEntry();
+        repository.setName("repo");
+        repository.setRecipeName(recipeName);
+        repository.setAttributes(attributes);
+        return repository;
+    }
+
+    static Map<String, Object> facet(Object... keysAndValues) {
+        Map<String, Object> facet = new HashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            facet.put((String) keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return facet;
+    }
+
+    @Test
+    void acceptValidAttributes() {
+        Map<String, Map<String, Object>> attributes = new HashMap<>();
+        attributes.put("storage", facet("blobStoreName", "maven", "writePolicy", "ALLOW_ONCE"));
+        attributes.put("maven", facet("versionPolicy", "RELEASE"));
+        attributes.put("proxy", facet("remoteUrl", "https://repo1.maven.org/maven2/", "contentMaxAge", -1.0));
+
+        assertEquals(Collections.emptyList(), schemas.validate(repository("maven2-proxy", attributes)));
+        assertSame(schemas.schema("maven2-proxy"), schemas.schema("maven2-proxy"));
+    }
+
+    @Test
+    void reportEveryInvalidAttribute() {
+        Map<String, Map<String, Object>> attributes = new LinkedHashMap<>();
+        attributes.put("storage", facet("writePolicy", "ALWAYS"));
+        attributes.put("maven", facet("layoutPolicy", "STRICT"));
+        attributes.put("proxy", facet("remoteUrl", "https://repo1.maven.org/maven2/"));
+
+        assertEquals(Arrays.asList(
+                "attributes.storage.blobStoreName is required",
+                "attributes.storage.writePolicy must be one of [ALLOW, ALLOW_ONCE, DENY]: ALWAYS",
+                "attributes.group.memberNames is required by npm-group",
+                "attributes.maven is not supported by npm-group",
+                "attributes.proxy is not supported by npm-group"
+        ), schemas.validate(repository("npm-group", attributes)));
+    }
+
+    @Test
+    void rejectRecipesWhichAreNotInstalled() {
+        assertEquals(Collections.singletonList("recipeName raw-hosted is not installed, installed are "
+                        + "[maven2-hosted, maven2-proxy, npm-group]"),
+                schemas.validate(repository("raw-hosted", new HashMap<>())));
+        assertNull(schemas.schema("raw-hosted"));
+    }
+}
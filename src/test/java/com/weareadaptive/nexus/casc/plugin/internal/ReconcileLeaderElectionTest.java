@@ -0,0 +1,191 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReconcileLeaderElectionTest {
+    private static final int NODES = 5;
+
+    @TempDir
+    Path lockDir;
+
+    /**
+     * Lock store of a single shared database
+     */
+    static class InMemoryReconcileLockStore implements ReconcileLockStore {
+        private String holder;
+        private long expiresAt;
+        private Completion completion;
+
+        @Override
+        public synchronized boolean tryAcquire(String nodeId, String digest, long ttlMs) {
+            if (getHolder() != null && !holder.equals(nodeId)) {
+                return false;
+            }
+            holder = nodeId;
+            expiresAt = System.currentTimeMillis() + ttlMs;
+            return true;
+        }
+
+        @Override
+        public synchronized boolean renew(String nodeId, long ttlMs) {
+            if (!nodeId.equals(getHolder())) {
+                return false;
+            }
+            expiresAt = System.currentTimeMillis() + ttlMs;
+            return true;
+        }
+
+        @Override
+        public synchronized void release(String nodeId, String completedDigest) {
+            if (nodeId.equals(getHolder())) {
+                holder = null;
+            }
+            if (completedDigest != null) {
+                completion = new Completion(completedDigest, nodeId, System.currentTimeMillis());
+            }
+        }
+
+        @Override
+        public synchronized String getHolder() {
+            return holder != null && expiresAt >= System.currentTimeMillis() ? holder : null;
+        }
+
+        @Override
+        public synchronized Completion getLastCompletion() {
+            return completion;
+        }
+    }
+
+    /**
+     * Start all nodes at once, each one applying the configuration with the given digest if elected
+     *
+     * @return the number of nodes which applied the configuration
+     */
+    private int startNodes(ReconcileLockStore store, String digest, boolean failFirstApply) throws Exception {
+        AtomicInteger applying = new AtomicInteger();
+        AtomicInteger applied = new AtomicInteger();
+        AtomicInteger attempts = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService nodes = Executors.newFixedThreadPool(NODES);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < NODES; ++i) {
+            ReconcileLeaderElection election = new ReconcileLeaderElection("node-" + i, store, 1000, 10, 10000);
+            futures.add(nodes.submit(() -> {
+                start.await();
+                if (!election.acquire(digest)) {
+                    return null;
+                }
+                boolean completed = false;
+                try {
+                    assertEquals(1, applying.incrementAndGet(), "Nodes applied the configuration concurrently");
+                    Thread.sleep(50);
+                    if (failFirstApply && attempts.getAndIncrement() == 0) {
+                        throw new IllegalStateException("Nexus killed");
+                    }
+                    applied.incrementAndGet();
+                    completed = true;
+                } finally {
+                    applying.decrementAndGet();
+                    election.release(completed ? digest : null);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            try {
+                future.get(10, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                if (!(e.getCause() instanceof IllegalStateException)) {
+                    throw e;
+                }
+            }
+        }
+        nodes.shutdown();
+        return applied.get();
+    }
+
+    @Test
+    void onlyOneNodeAppliesTheConfiguration() throws Exception {
+        assertEquals(1, startNodes(new InMemoryReconcileLockStore(), "digest-1", false));
+    }
+
+    @Test
+    void anotherNodeTakesOverWhenTheLeaderFails() throws Exception {
+        assertEquals(1, startNodes(new InMemoryReconcileLockStore(), "digest-1", true));
+    }
+
+    @Test
+    void newConfigurationIsAppliedAgain() throws Exception {
+        InMemoryReconcileLockStore store = new InMemoryReconcileLockStore();
+        assertEquals(1, startNodes(store, "digest-1", false));
+        assertEquals(1, startNodes(store, "digest-2", false));
+    }
+
+    @Test
+    void onlyOneNodeAppliesTheConfigurationWithFileLease() throws Exception {
+        assertEquals(1, startNodes(new FileReconcileLockStore(lockDir), "digest-1", false));
+    }
+
+    @Test
+    void expiredLeaseCanBeTakenOver() throws Exception {
+        FileReconcileLockStore store = new FileReconcileLockStore(lockDir);
+        assertTrue(store.tryAcquire("node-0", "digest-1", 1));
+        Thread.sleep(10);
+        assertNull(store.getHolder());
+        assertTrue(store.tryAcquire("node-1", "digest-1", 60000));
+        assertFalse(store.tryAcquire("node-0", "digest-1", 60000));
+        assertFalse(store.renew("node-0", 60000));
+
+        store.release("node-1", "digest-1");
+        assertNull(store.getHolder());
+        assertEquals("digest-1", store.getLastCompletion().getDigest());
+        assertEquals("node-1", store.getLastCompletion().getNodeId());
+    }
+
+    @Test
+    void disabledWithoutLockStore() throws Exception {
+        ReconcileLeaderElection election = new ReconcileLeaderElection("node-0", null, 1000, 10, 10000);
+        assertFalse(election.isEnabled());
+        assertTrue(election.acquire("digest-1"));
+        election.release("digest-1");
+        assertTrue(election.acquire("digest-1"));
+    }
+
+    @Test
+    void tryAcquireDoesNotWait() {
+        InMemoryReconcileLockStore store = new InMemoryReconcileLockStore();
+        ReconcileLeaderElection leader = new ReconcileLeaderElection("node-0", store, 1000, 10, 10000);
+        ReconcileLeaderElection follower = new ReconcileLeaderElection("node-1", store, 1000, 10, 10000);
+
+        assertEquals(ReconcileLeaderElection.Lease.ACQUIRED, leader.tryAcquire("digest-1"));
+        assertEquals(ReconcileLeaderElection.Lease.HELD_ELSEWHERE, follower.tryAcquire("digest-1"));
+        leader.release("digest-1");
+        assertEquals(ReconcileLeaderElection.Lease.APPLIED_ELSEWHERE, follower.tryAcquire("digest-1"));
+        assertEquals(ReconcileLeaderElection.Lease.ACQUIRED, follower.tryAcquire("digest-2"));
+        follower.release(null);
+    }
+
+    @Test
+    void invalidWaitFallsBackToTheDefault() {
+        assertEquals(ReconcileLeaderElection.DEFAULT_WAIT_MS, ReconcileLeaderElection.parseWait(null));
+        assertEquals(ReconcileLeaderElection.DEFAULT_WAIT_MS, ReconcileLeaderElection.parseWait(" "));
+        assertEquals(ReconcileLeaderElection.DEFAULT_WAIT_MS, ReconcileLeaderElection.parseWait("10m"));
+        assertEquals(ReconcileLeaderElection.DEFAULT_WAIT_MS, ReconcileLeaderElection.parseWait("-1"));
+        assertEquals(TimeUnit.SECONDS.toMillis(90), ReconcileLeaderElection.parseWait(" 90 "));
+    }
+}
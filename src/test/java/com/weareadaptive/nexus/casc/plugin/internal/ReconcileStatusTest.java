@@ -0,0 +1,55 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReconcileStatusTest {
+
+    @Test
+    void trackPhaseProgress() {
+        ReconcileStatus status = new ReconcileStatus();
+        status.started(false);
+        status.phase("repository.repositories", 3);
+        status.processed("repository:maven-central");
+        status.failed("repository:npm-proxy", "Can not change recipeName");
+
+        ReconcileStatusXO xo = status.snapshot();
+        assertEquals("RUNNING", xo.getState());
+        assertEquals("repository.repositories", xo.getPhase());
+        assertEquals(2, xo.getPhaseProcessed());
+        assertEquals(1, xo.getPhaseRemaining());
+        assertEquals(2, xo.getProcessed() + xo.getFailed());
+        assertEquals("Can not change recipeName", xo.getErrors().get("repository:npm-proxy"));
+        assertNull(xo.getLastRun());
+
+        status.completed();
+        xo = status.snapshot();
+        assertEquals("COMPLETED", xo.getState());
+        assertEquals(1, xo.getLastRun().getProcessed());
+        assertEquals(1, xo.getLastRun().getFailed());
+    }
+
+    @Test
+    void keepOnlyTheMostRecentErrors() {
+        ReconcileStatus status = new ReconcileStatus();
+        status.started(true);
+        status.phase("repository.repositories", 0);
+        status.failed("repository:npm-proxy", "Can not change recipeName");
+        status.phase("security.users", 0);
+        for (int i = 0; i <= ReconcileStatus.MAX_ERRORS; ++i) {
+            status.failed("user:" + i, "failed");
+        }
+
+        ReconcileStatusXO xo = status.snapshot();
+        assertEquals(ReconcileStatus.MAX_ERRORS, xo.getErrors().size());
+        assertFalse(xo.getErrors().containsKey("user:0"));
+        assertTrue(xo.getErrors().containsKey("user:" + ReconcileStatus.MAX_ERRORS));
+        assertEquals(ReconcileStatus.MAX_ERRORS + 2, xo.getFailed());
+        assertTrue(status.hasFailed("repository"));
+        assertFalse(status.hasFailed("role"));
+
+        status.started(true);
+        assertFalse(status.hasFailed("repository"));
+    }
+}
@@ -0,0 +1,32 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoutingRuleMatchersTest {
+    private final RoutingRuleMatchers matchers = new RoutingRuleMatchers();
+
+    @Test
+    void reportInvalidMatchersWithPosition() {
+        List<String> errors = matchers.validate(Arrays.asList(".*-SNAPSHOT/.*", "^/com/(example/.*"));
+
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0).startsWith("matchers[1] '^/com/(example/.*': Unclosed group at index "), errors.get(0));
+        assertEquals(Collections.singletonList("at least one matcher is required"), matchers.validate(null));
+    }
+
+    @Test
+    void reuseCompiledPatterns() {
+        Pattern pattern = matchers.compile("^/com/example/.*");
+        assertSame(pattern, matchers.compile("^/com/example/.*"));
+
+        matchers.clear();
+        assertNotSame(pattern, matchers.compile("^/com/example/.*"));
+    }
+}
@@ -0,0 +1,60 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class S3BlobStoreAttributesTest {
+    private static Map<String, Map<String, Object>> s3(Object... namesAndValues) {
+        Map<String, Object> s3 = new LinkedHashMap<>();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            s3.put((String) namesAndValues[i], namesAndValues[i + 1]);
+        }
+        return Collections.singletonMap(S3BlobStoreAttributes.CONFIG_KEY, s3);
+    }
+
+    @Test
+    void acceptDocumentedAttributes() {
+        assertEquals(Collections.emptyList(), S3BlobStoreAttributes.check("s3", s3(
+                "bucket", "nexus-blobs", "prefix", "/nexus/", "accessKeyId", "key", "secretAccessKey", "secret",
+                "region", "eu-west-1", "endpoint", "https://s3.example.com", "expiration", -1,
+                "signertype", "AWSS3V4SignerType", "forcepathstyle", "false", "encryption_type", "kmsManagedEncryption",
+                "encryption_key", "aws/s3", "max_connection_pool_size", "200")));
+    }
+
+    @Test
+    void reportEveryInvalidAttribute() {
+        assertEquals(Collections.singletonList("s3: attributes.s3.bucket is required"),
+                S3BlobStoreAttributes.check("s3", s3("region", "eu-west-1")));
+
+        assertEquals(Arrays.asList(
+                "s3: attributes.s3.endpoint must be an http(s) URL: minio:9000",
+                "s3: attributes.s3.expiration must be an integer: 3d",
+                "s3: attributes.s3.forcepathstyle must be true or false: yes",
+                "s3: attributes.s3.signertype must be one of [none, S3SignerType, AWSS3V4SignerType]: v4",
+                "s3: attributes.s3.bucket is not a valid bucket name: Nexus_Blobs",
+                "s3: attributes.s3.accessKeyId and attributes.s3.secretAccessKey must be set together",
+                "s3: attributes.s3.encryption_key requires attributes.s3.encryption_type kmsManagedEncryption"
+        ), S3BlobStoreAttributes.check("s3", s3(
+                "bucket", "Nexus_Blobs", "maxConnectionPoolSize", 50, "uploadThreads", 8, "endpoint", "minio:9000",
+                "expiration", "3d", "forcepathstyle", "yes", "signertype", "v4", "accessKeyId", "key",
+                "encryption_key", "aws/s3")));
+    }
+
+    @Test
+    void warnAboutUnknownAttributes() {
+        Map<String, Map<String, Object>> attributes = s3(
+                "bucket", "nexus-blobs", "maxConnectionPoolSize", 50, "uploadThreads", 8, "region", "eu-west-1");
+        assertEquals(Collections.emptyList(), S3BlobStoreAttributes.check("s3", attributes));
+        assertEquals(Arrays.asList(
+                "s3: unknown attribute attributes.s3.maxConnectionPoolSize is passed on to Nexus as is, did you mean "
+                        + "max_connection_pool_size?",
+                "s3: unknown attribute attributes.s3.uploadThreads is passed on to Nexus as is"
+        ), S3BlobStoreAttributes.warnings("s3", attributes));
+    }
+}
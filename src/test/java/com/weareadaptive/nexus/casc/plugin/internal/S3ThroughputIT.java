@@ -0,0 +1,130 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+import org.apache.http.HttpHost;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import static com.weareadaptive.nexus.casc.plugin.internal.ProxyThroughputIT.env;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Measures the upload and download throughput of a hosted repository on an S3 blob store, to compare S3 settings
+ * ({@code core.s3Transfer} and {@code max_connection_pool_size} of the blob store).
+ * <p>
+ * Only runs if {@code S3_BENCHMARK_REPOSITORY} names a raw hosted repository on an S3 blob store, e.g.
+ * {@code benchmark-s3} of {@code default-nexus.yml}, stored in the MinIO container of {@code docker-compose.yml}.
+ * Artifacts larger than {@code core.s3Transfer.multipartUploadChunkSize} are uploaded in parts.
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@EnabledIfEnvironmentVariable(named = "S3_BENCHMARK_REPOSITORY", matches = ".+")
+public class S3ThroughputIT {
+    private final Logger logger = LoggerFactory.getLogger(S3ThroughputIT.class);
+
+    private CloseableHttpClient client;
+    private int concurrency;
+
+    @BeforeAll
+    void createClient() {
+        concurrency = env("S3_BENCHMARK_CONCURRENCY", 8);
+
+        CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+        credentialsProvider.setCredentials(
+                new AuthScope(HttpHost.create(System.getenv("NEXUS_URL"))),
+                new UsernamePasswordCredentials("johndoe", "admin123")
+        );
+        client = HttpClients.custom()
+                .setDefaultCredentialsProvider(credentialsProvider)
+                .setDefaultRequestConfig(RequestConfig.copy(RequestConfig.DEFAULT)
+                        .setSocketTimeout(300000)
+                        .setConnectTimeout(5000)
+                        .build())
+                .setMaxConnTotal(concurrency)
+                .setMaxConnPerRoute(concurrency)
+                .build();
+    }
+
+    @AfterAll
+    void closeClient() throws IOException {
+        if (client != null) {
+            client.close();
+        }
+    }
+
+    @Test
+    void uploadAndDownload() throws Exception {
+        int artifacts = env("S3_BENCHMARK_ARTIFACTS", 64);
+        byte[] artifact = new byte[env("S3_BENCHMARK_ARTIFACT_BYTES", 16 * 1024 * 1024)];
+        new Random(0).nextBytes(artifact);
+        String base = new URL(System.getenv("NEXUS_URL")) + "/repository/" + System.getenv("S3_BENCHMARK_REPOSITORY")
+                + "/" + System.currentTimeMillis() + "/";
+
+        run("Uploaded", artifacts, artifact.length, i -> {
+            HttpPut put = new HttpPut(base + "artifact-" + i + ".bin");
+            put.setEntity(new ByteArrayEntity(artifact));
+            return put;
+        }, 201);
+        run("Downloaded", artifacts, artifact.length, i -> new HttpGet(base + "artifact-" + i + ".bin"), 200);
+    }
+
+    private void run(String action, int artifacts, int artifactBytes, IntFunction<HttpUriRequest> request,
+                     int expectedStatus) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        AtomicInteger failures = new AtomicInteger();
+        long start = System.nanoTime();
+        try {
+            List<Future<?>> transfers = new ArrayList<>();
+            for (int i = 0; i < artifacts; ++i) {
+                HttpUriRequest transfer = request.apply(i);
+                transfers.add(executor.submit(() -> {
+                    try (CloseableHttpResponse response = client.execute(transfer)) {
+                        EntityUtils.consume(response.getEntity());
+                        if (response.getStatusLine().getStatusCode() != expectedStatus) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> transfer : transfers) {
+                transfer.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        logger.info("{} {} artifacts of {} bytes with {} clients in {} s: {} MB/s", action, artifacts, artifactBytes,
+                concurrency, String.format("%.1f", seconds),
+                String.format("%.1f", (double) artifacts * artifactBytes / (1024 * 1024) / seconds));
+        assertEquals(0, failures.get());
+    }
+}
@@ -0,0 +1,71 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+import com.weareadaptive.nexus.casc.plugin.internal.config.ConfigTask;
+import com.weareadaptive.nexus.casc.plugin.internal.config.ConfigTaskStagger;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TaskStaggerTest {
+    private final List<ConfigTask> tasks = new ArrayList<>();
+
+    private ConfigTask task(String name, String type, String cron, String property, String value) {
+        ConfigTask task = new ConfigTask();
+        task.setName(name);
+        task.setType(type);
+        task.setCron(cron);
+        task.setProperties(property == null ? null : Collections.singletonMap(property, value));
+        tasks.add(task);
+        return task;
+    }
+
+    private static ConfigTaskStagger stagger(int windowMinutes, Integer slotMinutes, Integer maxPerBlobStore) {
+        ConfigTaskStagger stagger = new ConfigTaskStagger();
+        stagger.setWindowMinutes(windowMinutes);
+        stagger.setSlotMinutes(slotMinutes);
+        stagger.setMaxPerBlobStore(maxPerBlobStore);
+        return stagger;
+    }
+
+    @Test
+    void spreadTasksOfTheSameTypeAndCron() {
+        for (String blobStore : new String[]{"d", "c", "b", "a"}) {
+            task("compact-" + blobStore, "blobstore.compact", "0 0 1 * * ?", "blobstoreName", blobStore);
+        }
+        task("compact-manual", "blobstore.compact", "0 0 1 * * ?", "blobstoreName", "e").setStagger(false);
+        task("cleanup", "repository.cleanup", "0 */5 * * * ?", null, null);
+
+        Map<String, String> expected = new LinkedHashMap<>();
+        expected.put("compact-d", "0 30 2 * * ?");
+        expected.put("compact-c", "0 0 2 * * ?");
+        expected.put("compact-b", "0 30 1 * * ?");
+        expected.put("compact-a", "0 0 1 * * ?");
+        expected.put("compact-manual", "0 0 1 * * ?");
+        expected.put("cleanup", "0 */5 * * * ?");
+        assertEquals(expected, new TaskStagger(stagger(120, null, null))
+                .plan(tasks, task -> TaskReconciler.blobStoreOf(task, Collections.emptyMap())));
+    }
+
+    @Test
+    void capTasksPerBlobStoreAcrossTypes() {
+        task("compact-a", "blobstore.compact", "0 0 1 * * ?", "blobstoreName", "a");
+        task("compact-b", "blobstore.compact", "0 0 1 * * ?", "blobstoreName", "b");
+        task("rebuild-x", "repository.rebuild-index", "0 0 1 * * ?", "repositoryName", "x");
+        Map<String, String> blobStoreByRepository = new HashMap<>();
+        blobStoreByRepository.put("x", "a");
+
+        Map<String, String> schedule = new TaskStagger(stagger(60, 30, 1))
+                .plan(tasks, task -> TaskReconciler.blobStoreOf(task, blobStoreByRepository));
+
+        assertEquals("0 0 1 * * ?", schedule.get("compact-a"));
+        assertEquals("0 30 1 * * ?", schedule.get("compact-b"));
+        assertEquals("0 30 1 * * ?", schedule.get("rebuild-x"));
+    }
+}
@@ -0,0 +1,84 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+import org.junit.jupiter.api.Test;
+import org.sonatype.nexus.security.SecuritySystem;
+import org.sonatype.nexus.security.user.User;
+import org.sonatype.nexus.security.user.UserNotFoundException;
+import org.sonatype.nexus.security.user.UserSearchCriteria;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+
+import static java.util.stream.Collectors.toCollection;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Plans the pruning of the users of a source whose searches, like the ones of Nexus, match the user id prefix
+ * case-insensitively and return the users in no particular order
+ */
+class UserPrunerTest {
+    private final Map<String, User> users = new LinkedHashMap<>();
+
+    private void user(String userId) {
+        User user = new User();
+        user.setUserId(userId);
+        user.setSource("LDAP");
+        users.put(userId, user);
+    }
+
+    private SecuritySystem securitySystem() {
+        return (SecuritySystem) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{SecuritySystem.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "searchUsers": {
+                            UserSearchCriteria criteria = (UserSearchCriteria) args[0];
+                            String prefix = criteria.getUserId() == null ? "" : criteria.getUserId().toLowerCase(Locale.ROOT);
+                            return users.values().stream()
+                                    .filter(user -> user.getUserId().toLowerCase(Locale.ROOT).startsWith(prefix))
+                                    .limit(criteria.getLimit())
+                                    .collect(toCollection(LinkedHashSet::new));
+                        }
+                        case "getUser":
+                            if (!users.containsKey(args[0])) {
+                                throw new UserNotFoundException((String) args[0]);
+                            }
+                            return users.get(args[0]);
+                        default:
+                            throw new UnsupportedOperationException("SecuritySystem." + method.getName());
+                    }
+                });
+    }
+
+    @Test
+    void splitPrefixesMatchingMoreThanAPage() {
+        for (String userId : Arrays.asList("alice", "Bob", "carol", "dave", "erin")) {
+            user(userId);
+        }
+
+        UserPruner.Plan plan = new UserPruner(securitySystem(), 2, 0)
+                .plan("LDAP", new HashSet<>(Collections.singletonList("carol")));
+
+        assertEquals(5, plan.getExisting());
+        assertEquals(new HashSet<>(Arrays.asList("alice", "Bob", "dave", "erin")), new HashSet<>(plan.getDeletions()));
+    }
+
+    @Test
+    void findUsersTheLongerPrefixesDoNotMatch() {
+        // The first page of the users starting with a holds a+x, but neither a+y nor a
+        for (String userId : Arrays.asList("a1", "a+x", "a2", "a3", "a+y", "a")) {
+            user(userId);
+        }
+
+        UserPruner.Plan plan = new UserPruner(securitySystem(), 2, 0).plan("LDAP", Collections.emptySet());
+
+        assertEquals(6, plan.getExisting());
+        assertEquals(users.keySet(), new HashSet<>(plan.getDeletions()));
+        assertEquals(6, plan.getDeletions().size());
+    }
+}
@@ -0,0 +1,108 @@
+package com.weareadaptive.nexus.casc.plugin.internal;
+
+import org.apache.shiro.subject.Subject;
+import org.apache.shiro.util.ThreadContext;
+import org.junit.jupiter.api.Test;
+import org.sonatype.nexus.repository.Repository;
+import org.sonatype.nexus.repository.http.HttpMethods;
+import org.sonatype.nexus.repository.view.Payload;
+import org.sonatype.nexus.repository.view.Request;
+import org.sonatype.nexus.repository.view.Response;
+import org.sonatype.nexus.repository.view.Status;
+import org.sonatype.nexus.repository.view.ViewFacet;
+import org.sonatype.nexus.security.subject.FakeAlmightySubject;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Fetches paths with {@link ViewWarmupFetcher} from a repository whose view responds with a given status
+ */
+class ViewWarmupFetcherTest {
+    private final ViewWarmupFetcher fetcher = new ViewWarmupFetcher();
+
+    private final List<Request> requests = new ArrayList<>();
+    private final List<Subject> subjects = new ArrayList<>();
+    private final AtomicInteger closedPayloads = new AtomicInteger();
+
+    private Repository repository(Status status) {
+        ViewFacet view = (ViewFacet) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{ViewFacet.class},
+                (proxy, method, args) -> {
+                    if (!"dispatch".equals(method.getName())) {
+                        throw new UnsupportedOperationException("ViewFacet." + method.getName());
+                    }
+                    requests.add((Request) args[0]);
+                    subjects.add(ThreadContext.getSubject());
+                    return new Response.Builder().status(status).payload(payload()).build();
+                });
+        return (Repository) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Repository.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "facet":
+                            return ViewFacet.class.equals(args[0]) ? view : null;
+                        case "getName":
+                            return "maven-central";
+                        default:
+                            throw new UnsupportedOperationException("Repository." + method.getName());
+                    }
+                });
+    }
+
+    private Payload payload() {
+        return new Payload() {
+            @Override
+            public InputStream openInputStream() {
+                return new ByteArrayInputStream(new byte[0]);
+            }
+
+            @Override
+            public long getSize() {
+                return 0;
+            }
+
+            @Override
+            public String getContentType() {
+                return "application/java-archive";
+            }
+
+            @Override
+            public void close() {
+                closedPayloads.incrementAndGet();
+            }
+        };
+    }
+
+    @Test
+    void dispatchGetAsTheTaskSubject() throws Exception {
+        assertTrue(fetcher.fetch(repository(Status.success(200)), "/org/example/lib/1.0/lib-1.0.jar"));
+
+        assertEquals(1, requests.size());
+        assertEquals(HttpMethods.GET, requests.get(0).getAction());
+        assertEquals("/org/example/lib/1.0/lib-1.0.jar", requests.get(0).getPath());
+        assertSame(FakeAlmightySubject.TASK_SUBJECT, subjects.get(0));
+        assertNull(ThreadContext.getSubject());
+        assertEquals(1, closedPayloads.get());
+    }
+
+    @Test
+    void missingPathIsNotFound() throws Exception {
+        assertFalse(fetcher.fetch(repository(Status.failure(404)), "/org/example/missing/1.0/missing-1.0.jar"));
+        assertEquals(1, closedPayloads.get());
+        assertNull(ThreadContext.getSubject());
+    }
+
+    @Test
+    void failedFetchThrows() {
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> fetcher.fetch(repository(Status.failure(502)), "/org/example/lib/1.0/lib-1.0.jar"));
+        assertEquals("HTTP 502", e.getMessage());
+        assertEquals(1, closedPayloads.get());
+        assertNull(ThreadContext.getSubject());
+    }
+}